@@ -56,6 +56,7 @@ public class ServerSideScanMetrics {
     currentRegionScanMetricsData.createCounter(BYTES_READ_FROM_BLOCK_CACHE_METRIC_NAME);
     currentRegionScanMetricsData.createCounter(BYTES_READ_FROM_MEMSTORE_METRIC_NAME);
     currentRegionScanMetricsData.createCounter(BLOCK_READ_OPS_COUNT_METRIC_NAME);
+    currentRegionScanMetricsData.createCounter(BLOCK_READ_AHEAD_HITS_METRIC_NAME);
     currentRegionScanMetricsData.createCounter(RPC_SCAN_PROCESSING_TIME_METRIC_NAME);
     currentRegionScanMetricsData.createCounter(RPC_SCAN_QUEUE_WAIT_TIME_METRIC_NAME);
   }
@@ -79,6 +80,7 @@ public class ServerSideScanMetrics {
     "BYTES_READ_FROM_BLOCK_CACHE";
   public static final String BYTES_READ_FROM_MEMSTORE_METRIC_NAME = "BYTES_READ_FROM_MEMSTORE";
   public static final String BLOCK_READ_OPS_COUNT_METRIC_NAME = "BLOCK_READ_OPS_COUNT";
+  public static final String BLOCK_READ_AHEAD_HITS_METRIC_NAME = "BLOCK_READ_AHEAD_HITS";
   public static final String RPC_SCAN_PROCESSING_TIME_METRIC_NAME = "RPC_SCAN_PROCESSING_TIME";
   public static final String RPC_SCAN_QUEUE_WAIT_TIME_METRIC_NAME = "RPC_SCAN_QUEUE_WAIT_TIME";
 
@@ -109,6 +111,11 @@ public class ServerSideScanMetrics {
 
   public final AtomicLong blockReadOpsCount = createCounter(BLOCK_READ_OPS_COUNT_METRIC_NAME);
 
+  /**
+   * number of data blocks a scanner found in the block cache because they were read ahead of it
+   */
+  public final AtomicLong blockReadAheadHits = createCounter(BLOCK_READ_AHEAD_HITS_METRIC_NAME);
+
   public final AtomicLong rpcScanProcessingTime =
     createCounter(RPC_SCAN_PROCESSING_TIME_METRIC_NAME);
 
@@ -25,8 +25,11 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CompoundConfiguration;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.io.HeapSize;
 import org.apache.hadoop.hbase.nio.ByteBuff;
@@ -570,6 +573,44 @@ public final class Compression {
       }
     }
 
+    /**
+     * Signals if this codec can train compression dictionaries. If this method returns true, you
+     * can call {@link #trainDictionary(List, int)} and
+     * {@link #withDictionary(Configuration, String)}.
+     */
+    public boolean supportsDictionaryTraining() {
+      return getCodec(conf) instanceof DictionaryTrainingCodec;
+    }
+
+    /**
+     * Be sure to call {@link #supportsDictionaryTraining()} before calling this method.
+     * @return the trained dictionary, or null if no dictionary could be trained from the samples
+     * @throws IllegalStateException if the codec can not train dictionaries
+     */
+    @Nullable
+    public byte[] trainDictionary(List<byte[]> samples, int maxDictionarySize) {
+      return getDictionaryTrainingCodec().trainDictionary(samples, maxDictionarySize);
+    }
+
+    /**
+     * Returns a configuration which makes the codec compress and decompress with the dictionary at
+     * the given path, see {@link DictionaryCache#getDictionary(Configuration, String)}. Be sure to
+     * call {@link #supportsDictionaryTraining()} before calling this method.
+     * @throws IllegalStateException if the codec can not train dictionaries
+     */
+    public Configuration withDictionary(Configuration conf, String dictionaryPath) {
+      return new CompoundConfiguration().add(conf).addStringMap(
+        Collections.singletonMap(getDictionaryTrainingCodec().getDictionaryKey(), dictionaryPath));
+    }
+
+    private DictionaryTrainingCodec getDictionaryTrainingCodec() {
+      CompressionCodec codec = getCodec(conf);
+      if (codec instanceof DictionaryTrainingCodec) {
+        return (DictionaryTrainingCodec) codec;
+      }
+      throw new IllegalStateException("Codec " + codec + " does not support dictionary training");
+    }
+
     public String getName() {
       return compressName;
     }
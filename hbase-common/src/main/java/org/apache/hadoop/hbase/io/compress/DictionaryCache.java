@@ -21,12 +21,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.util.MD5Hash;
+import org.apache.hadoop.hbase.util.Pair;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,9 +51,13 @@ public final class DictionaryCache {
   public static final String DICTIONARY_MAX_SIZE_KEY = "hbase.io.compress.dictionary.max.size";
   public static final int DEFAULT_DICTIONARY_MAX_SIZE = 10 * 1024 * 1024;
   public static final String RESOURCE_SCHEME = "resource://";
+  public static final String MEMORY_SCHEME = "memory://";
 
   private static final Logger LOG = LoggerFactory.getLogger(DictionaryCache.class);
   private static volatile LoadingCache<String, byte[]> CACHE;
+  // Dictionaries registered in memory, with the number of registrations of each
+  private static final ConcurrentMap<String, Pair<byte[], AtomicInteger>> REGISTERED =
+    new ConcurrentHashMap<>();
 
   private DictionaryCache() {
   }
@@ -63,6 +72,13 @@ public final class DictionaryCache {
     if (path == null || path.isEmpty()) {
       return null;
     }
+    if (path.startsWith(MEMORY_SCHEME)) {
+      Pair<byte[], AtomicInteger> registered = REGISTERED.get(path);
+      if (registered == null) {
+        throw new RuntimeException("Dictionary " + path + " is not registered");
+      }
+      return registered.getFirst();
+    }
 
     // Create the dictionary loading cache if we haven't already
     if (CACHE == null) {
@@ -95,6 +111,35 @@ public final class DictionaryCache {
     }
   }
 
+  /**
+   * Registers a dictionary held in memory, e.g. one read from an HFile, so that codecs can load it
+   * by the returned path. The path is derived from the content, registering the same dictionary
+   * again returns the same path. Each registration must be paired with a call to
+   * {@link #releaseDictionary(String)}.
+   * @param dictionary the dictionary bytes
+   * @return the path of the dictionary
+   */
+  public static String registerDictionary(final byte[] dictionary) {
+    final String path = MEMORY_SCHEME + MD5Hash.getMD5AsHex(dictionary);
+    REGISTERED.compute(path, (k, v) -> {
+      if (v == null) {
+        return new Pair<>(dictionary, new AtomicInteger(1));
+      }
+      v.getSecond().incrementAndGet();
+      return v;
+    });
+    return path;
+  }
+
+  /**
+   * Releases a registration of an in-memory dictionary. The dictionary is dropped when its last
+   * registration is released.
+   * @param path the path returned by {@link #registerDictionary(byte[])}
+   */
+  public static void releaseDictionary(final String path) {
+    REGISTERED.computeIfPresent(path, (k, v) -> v.getSecond().decrementAndGet() > 0 ? v : null);
+  }
+
   // Visible for testing
   public static byte[] loadFromResource(final Configuration conf, final String s, final int maxSize)
     throws IOException {
@@ -155,6 +200,9 @@ public final class DictionaryCache {
 
   // Visible for testing
   public static boolean contains(String dictionaryPath) {
+    if (REGISTERED.containsKey(dictionaryPath)) {
+      return true;
+    }
     if (CACHE != null) {
       return CACHE.asMap().containsKey(dictionaryPath);
     }
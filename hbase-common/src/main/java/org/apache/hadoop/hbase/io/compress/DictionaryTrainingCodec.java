@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.compress;
+
+import java.util.List;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A codec which can train compression dictionaries from sample data, and load a dictionary given
+ * by path in its configuration, see {@link DictionaryCache}.
+ */
+@InterfaceAudience.Private
+public interface DictionaryTrainingCodec {
+
+  /** Returns the configuration key holding the path of the dictionary the codec uses */
+  String getDictionaryKey();
+
+  /**
+   * Trains a dictionary from the given samples.
+   * @param samples           the sample data, each sample a unit of data like the ones compressed
+   * @param maxDictionarySize the maximum size of the dictionary in bytes
+   * @return the dictionary, or null if no dictionary could be trained from the samples
+   */
+  byte[] trainDictionary(List<byte[]> samples, int maxDictionarySize);
+
+}
@@ -0,0 +1,478 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.hadoop.hbase.ByteBufferExtendedCell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
+import org.apache.hadoop.hbase.io.TagCompressionContext;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ObjectIntPair;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Splits the cells of a block into separate streams, for wide rows where every cell would
+ * otherwise repeat the same row, family, timestamp and a handful of qualifiers. Qualifiers are
+ * replaced by ids into a per-block dictionary, numbered in order of first use so rows with the same
+ * columns get consecutive ids. Row, family, timestamp, type and value length are only written when
+ * they differ from the previous cell, the qualifier id only when it is not the next one, and values
+ * are kept apart from the keys. Seeking and skipping cells then walks the compact key records only
+ * and never touches the value bytes of the columns passed over. Format:
+ *
+ * <pre>
+ * 0 (int) | unencoded size (int) | number of qualifiers (int) | qualifiers
+ *   | values size (int) | values | records
+ * qualifier: prefix shared with the previous qualifier (compressed int)
+ *   | suffix length (compressed int) | suffix
+ * value: bytes | tags length (compressed int) and tags, if the file includes tags
+ * record: flags (byte) | row length (compressed int) and row, if NEW_ROW
+ *   | family length (byte) and family, if NEW_FAMILY
+ *   | qualifier id (compressed int), unless NEXT_QUALIFIER | timestamp (long), if NEW_TIMESTAMP
+ *   | type (byte), if NEW_TYPE | value length (compressed int), if NEW_VALUE_LENGTH
+ *   | memstore timestamp (vlong), if the file includes it
+ * </pre>
+ *
+ * The block is buffered while cells are added and written out when it ends.
+ */
+@InterfaceAudience.Private
+public class ColumnarDataBlockEncoder extends BufferedDataBlockEncoder {
+
+  static final int NEW_ROW = 1;
+  static final int NEW_FAMILY = 1 << 1;
+  static final int NEW_TIMESTAMP = 1 << 2;
+  static final int NEW_TYPE = 1 << 3;
+  static final int NEW_VALUE_LENGTH = 1 << 4;
+  static final int NEXT_QUALIFIER = 1 << 5;
+
+  private static class ColumnarEncodingState extends EncodingState {
+    private final ByteArrayOutputStream qualifiers = new ByteArrayOutputStream(1024);
+    private final Map<ByteBuffer, Integer> qualifierIds = new HashMap<>();
+    private final ByteArrayOutputStream valuesBaos = new ByteArrayOutputStream(64 * 1024);
+    private final DataOutputStream values = new DataOutputStream(valuesBaos);
+    private final ByteArrayOutputStream recordsBaos = new ByteArrayOutputStream(16 * 1024);
+    private final DataOutputStream records = new DataOutputStream(recordsBaos);
+    private byte[] prevQualifier = HConstants.EMPTY_BYTE_ARRAY;
+    private byte[] prevRow;
+    private byte[] prevFamily;
+    private long prevTimestamp;
+    private byte prevType;
+    private int prevQualifierId = -1;
+    private int prevValueLength;
+
+    private int size() {
+      return qualifiers.size() + valuesBaos.size() + recordsBaos.size();
+    }
+
+    @Override
+    public void beforeShipped() {
+      // nothing refers to the cells, everything written so far has been copied
+    }
+  }
+
+  @Override
+  public void startBlockEncoding(HFileBlockEncodingContext blkEncodingCtx, DataOutputStream out)
+    throws IOException {
+    super.startBlockEncoding(blkEncodingCtx, out);
+    blkEncodingCtx.setEncodingState(new ColumnarEncodingState());
+  }
+
+  @Override
+  public void encode(ExtendedCell cell, HFileBlockEncodingContext encodingCtx, DataOutputStream out)
+    throws IOException {
+    ColumnarEncodingState state = (ColumnarEncodingState) encodingCtx.getEncodingState();
+    int sizeBeforeEncode = state.size();
+    int unencodedSize =
+      internalEncode(cell, (HFileBlockDefaultEncodingContext) encodingCtx, state.records);
+    state.postCellEncode(unencodedSize, state.size() - sizeBeforeEncode);
+  }
+
+  @Override
+  public int internalEncode(ExtendedCell cell, HFileBlockDefaultEncodingContext encodingCtx,
+    DataOutputStream records) throws IOException {
+    ColumnarEncodingState state = (ColumnarEncodingState) encodingCtx.getEncodingState();
+    boolean first = state.prevRow == null;
+    int flags = 0;
+    if (first || !CellUtil.matchingRows(cell, state.prevRow)) {
+      flags |= NEW_ROW;
+      state.prevRow = CellUtil.cloneRow(cell);
+    }
+    if (first || !CellUtil.matchingFamily(cell, state.prevFamily)) {
+      flags |= NEW_FAMILY;
+      state.prevFamily = CellUtil.cloneFamily(cell);
+    }
+    if (first || state.prevTimestamp != cell.getTimestamp()) {
+      flags |= NEW_TIMESTAMP;
+      state.prevTimestamp = cell.getTimestamp();
+    }
+    if (first || state.prevType != cell.getTypeByte()) {
+      flags |= NEW_TYPE;
+      state.prevType = cell.getTypeByte();
+    }
+    int qualifierId = qualifierId(state, cell);
+    if (qualifierId == state.prevQualifierId + 1) {
+      flags |= NEXT_QUALIFIER;
+    }
+    state.prevQualifierId = qualifierId;
+    int vlength = cell.getValueLength();
+    if (first || state.prevValueLength != vlength) {
+      flags |= NEW_VALUE_LENGTH;
+      state.prevValueLength = vlength;
+    }
+    records.writeByte(flags);
+    if ((flags & NEW_ROW) != 0) {
+      ByteBufferUtils.putCompressedInt(records, state.prevRow.length);
+      records.write(state.prevRow);
+    }
+    if ((flags & NEW_FAMILY) != 0) {
+      records.writeByte(state.prevFamily.length);
+      records.write(state.prevFamily);
+    }
+    if ((flags & NEXT_QUALIFIER) == 0) {
+      ByteBufferUtils.putCompressedInt(records, qualifierId);
+    }
+    if ((flags & NEW_TIMESTAMP) != 0) {
+      records.writeLong(state.prevTimestamp);
+    }
+    if ((flags & NEW_TYPE) != 0) {
+      records.writeByte(state.prevType);
+    }
+    if ((flags & NEW_VALUE_LENGTH) != 0) {
+      ByteBufferUtils.putCompressedInt(records, vlength);
+    }
+    PrivateCellUtil.writeValue(state.values, cell, vlength);
+    int size = KeyValueUtil.keyLength(cell) + vlength + KeyValue.KEYVALUE_INFRASTRUCTURE_SIZE;
+    if (encodingCtx.getHFileContext().isIncludesTags()) {
+      int tagsLength = cell.getTagsLength();
+      ByteBufferUtils.putCompressedInt(state.values, tagsLength);
+      if (tagsLength > 0) {
+        TagCompressionContext tagCompressionContext = encodingCtx.getTagCompressionContext();
+        if (tagCompressionContext != null) {
+          PrivateCellUtil.compressTags(state.values, cell, tagCompressionContext);
+        } else {
+          PrivateCellUtil.writeTags(state.values, cell, tagsLength);
+        }
+      }
+      size += tagsLength + KeyValue.TAGS_LENGTH_SIZE;
+    }
+    if (encodingCtx.getHFileContext().isIncludesMvcc()) {
+      long memstoreTS = cell.getSequenceId();
+      WritableUtils.writeVLong(records, memstoreTS);
+      size += WritableUtils.getVIntSize(memstoreTS);
+    }
+    return size;
+  }
+
+  private static int qualifierId(ColumnarEncodingState state, ExtendedCell cell)
+    throws IOException {
+    ByteBuffer qualifier;
+    if (cell instanceof ByteBufferExtendedCell) {
+      qualifier = ByteBuffer.wrap(CellUtil.cloneQualifier(cell));
+    } else {
+      qualifier = ByteBuffer.wrap(cell.getQualifierArray(), cell.getQualifierOffset(),
+        cell.getQualifierLength());
+    }
+    Integer id = state.qualifierIds.get(qualifier);
+    if (id == null) {
+      id = state.qualifierIds.size();
+      byte[] copy = CellUtil.cloneQualifier(cell);
+      state.qualifierIds.put(ByteBuffer.wrap(copy), id);
+      // ids follow first use, which is sorted order within a row, so neighbours share prefixes
+      int common = Bytes.findCommonPrefix(state.prevQualifier, copy, state.prevQualifier.length,
+        copy.length, 0, 0);
+      ByteBufferUtils.putCompressedInt(state.qualifiers, common);
+      ByteBufferUtils.putCompressedInt(state.qualifiers, copy.length - common);
+      state.qualifiers.write(copy, common, copy.length - common);
+      state.prevQualifier = copy;
+    }
+    return id;
+  }
+
+  @Override
+  public void endBlockEncoding(HFileBlockEncodingContext encodingCtx, DataOutputStream out,
+    byte[] uncompressedBytesWithHeader) throws IOException {
+    ColumnarEncodingState state = (ColumnarEncodingState) encodingCtx.getEncodingState();
+    out.writeInt(state.getUnencodedDataSizeWritten());
+    out.writeInt(state.qualifierIds.size());
+    out.write(state.qualifiers.getBuffer(), 0, state.qualifiers.size());
+    out.writeInt(state.valuesBaos.size());
+    out.write(state.valuesBaos.getBuffer(), 0, state.valuesBaos.size());
+    out.write(state.recordsBaos.getBuffer(), 0, state.recordsBaos.size());
+    postEncoding(encodingCtx);
+  }
+
+  @Override
+  protected ByteBuffer internalDecodeKeyValues(DataInputStream source, int allocateHeaderLength,
+    int skipLastBytes, HFileBlockDefaultDecodingContext decodingCtx) throws IOException {
+    ByteBuffer block = ByteBufferUtils.drainInputStreamToBuffer(source);
+    int unencodedSize = block.getInt(Bytes.SIZEOF_INT);
+    boolean includesTags = decodingCtx.getHFileContext().isIncludesTags();
+    boolean includesMvcc = decodingCtx.getHFileContext().isIncludesMvcc();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(allocateHeaderLength + unencodedSize);
+    DataOutputStream out = new DataOutputStream(baos);
+    out.write(new byte[allocateHeaderLength]);
+    ColumnarSeeker seeker = new ColumnarSeeker(decodingCtx);
+    seeker.setCurrentBuffer(new SingleByteBuff(block));
+    do {
+      ExtendedCell cell = seeker.getCell();
+      int klength = KeyValueUtil.keyLength(cell);
+      int vlength = cell.getValueLength();
+      out.writeInt(klength);
+      out.writeInt(vlength);
+      PrivateCellUtil.writeFlatKey(cell, (DataOutput) out);
+      PrivateCellUtil.writeValue(out, cell, vlength);
+      if (includesTags) {
+        int tagsLength = cell.getTagsLength();
+        out.writeShort(tagsLength);
+        PrivateCellUtil.writeTags(out, cell, tagsLength);
+      }
+      if (includesMvcc) {
+        WritableUtils.writeVLong(out, cell.getSequenceId());
+      }
+    } while (seeker.next());
+    ByteBuffer buffer = ByteBuffer.wrap(baos.getBuffer(), 0, baos.size());
+    buffer.position(allocateHeaderLength);
+    return buffer;
+  }
+
+  @Override
+  public ExtendedCell getFirstKeyCellInBlock(ByteBuff block) {
+    ByteBuff dup = block.duplicate();
+    dup.position(2 * Bytes.SIZEOF_INT);
+    int numQualifiers = dup.getInt();
+    // qualifiers are numbered by first use, so the first cell has the first one, which does not
+    // share a prefix with anything
+    byte[] qualifier = HConstants.EMPTY_BYTE_ARRAY;
+    for (int i = 0; i < numQualifiers; i++) {
+      ByteBuff.readCompressedInt(dup);
+      int suffixLength = ByteBuff.readCompressedInt(dup);
+      if (i == 0) {
+        qualifier = new byte[suffixLength];
+        dup.get(qualifier, 0, suffixLength);
+      } else {
+        dup.skip(suffixLength);
+      }
+    }
+    int valuesSize = dup.getInt();
+    dup.skip(valuesSize);
+    // the first record carries all of row, family, timestamp and type
+    int flags = dup.get();
+    int rowLength = ByteBuff.readCompressedInt(dup);
+    byte[] row = new byte[rowLength];
+    dup.get(row, 0, rowLength);
+    byte[] family = new byte[dup.get()];
+    dup.get(family, 0, family.length);
+    if ((flags & NEXT_QUALIFIER) == 0) {
+      ByteBuff.readCompressedInt(dup);
+    }
+    long timestamp = dup.getLong();
+    byte type = dup.get();
+    KeyValue kv = new KeyValue(row, family, qualifier, timestamp, KeyValue.Type.codeToType(type));
+    return new KeyValue.KeyOnlyKeyValue(kv.getKey());
+  }
+
+  @Override
+  public String toString() {
+    return ColumnarDataBlockEncoder.class.getSimpleName();
+  }
+
+  @Override
+  public EncodedSeeker createSeeker(final HFileBlockDecodingContext decodingCtx) {
+    return new ColumnarSeeker(decodingCtx);
+  }
+
+  private static class ColumnarSeekerState extends SeekerState {
+    // End of the value, and tags, of this cell in the values stream
+    private int valuesEnd;
+    private int qualifierId;
+
+    private ColumnarSeekerState(ObjectIntPair<ByteBuffer> tmpPair, boolean includeTags) {
+      super(tmpPair, includeTags);
+    }
+
+    @Override
+    protected void copyFromNext(SeekerState nextState) {
+      super.copyFromNext(nextState);
+      valuesEnd = ((ColumnarSeekerState) nextState).valuesEnd;
+      qualifierId = ((ColumnarSeekerState) nextState).qualifierId;
+    }
+  }
+
+  private static class ColumnarSeeker extends BufferedEncodedSeeker<ColumnarSeekerState> {
+    // The dictionary with the shared prefixes expanded
+    private byte[] qualifiers = HConstants.EMPTY_BYTE_ARRAY;
+    private int[] qualifierOffsets;
+    private int[] qualifierLengths;
+    private int valuesStart;
+    private int recordsStart;
+
+    private ColumnarSeeker(HFileBlockDecodingContext decodingCtx) {
+      super(decodingCtx);
+    }
+
+    @Override
+    protected ColumnarSeekerState createSeekerState() {
+      return new ColumnarSeekerState(this.tmpPair, this.includesTags());
+    }
+
+    @Override
+    public void setCurrentBuffer(ByteBuff buffer) {
+      buffer.position(2 * Bytes.SIZEOF_INT);
+      int numQualifiers = buffer.getInt();
+      if (qualifierOffsets == null || qualifierOffsets.length < numQualifiers) {
+        qualifierOffsets = new int[numQualifiers];
+        qualifierLengths = new int[numQualifiers];
+      }
+      int offset = 0;
+      for (int i = 0; i < numQualifiers; i++) {
+        int common = ByteBuff.readCompressedInt(buffer);
+        int suffixLength = ByteBuff.readCompressedInt(buffer);
+        int length = common + suffixLength;
+        if (qualifiers.length < offset + length) {
+          qualifiers = Arrays.copyOf(qualifiers, Math.max(2 * qualifiers.length, offset + length));
+        }
+        if (common > 0) {
+          System.arraycopy(qualifiers, qualifierOffsets[i - 1], qualifiers, offset, common);
+        }
+        buffer.get(qualifiers, offset + common, suffixLength);
+        qualifierOffsets[i] = offset;
+        qualifierLengths[i] = length;
+        offset += length;
+      }
+      int valuesSize = buffer.getInt();
+      valuesStart = buffer.position();
+      recordsStart = valuesStart + valuesSize;
+      buffer.rewind();
+      super.setCurrentBuffer(buffer);
+    }
+
+    @Override
+    protected void decodeFirst() {
+      currentBuffer.position(recordsStart);
+      current.valuesEnd = valuesStart;
+      current.keyLength = 0;
+      current.qualifierId = -1;
+      decodeNext();
+    }
+
+    @Override
+    protected void decodeNext() {
+      byte[] key = current.keyBuffer;
+      int prevKeyLength = current.keyLength;
+      int flags = currentBuffer.get();
+      int newRowLength = 0;
+      int rowPosition = 0;
+      if ((flags & NEW_ROW) != 0) {
+        newRowLength = ByteBuff.readCompressedInt(currentBuffer);
+        rowPosition = currentBuffer.position();
+        currentBuffer.skip(newRowLength);
+      }
+      int newFamilyLength = 0;
+      int familyPosition = 0;
+      if ((flags & NEW_FAMILY) != 0) {
+        newFamilyLength = currentBuffer.get();
+        familyPosition = currentBuffer.position();
+        currentBuffer.skip(newFamilyLength);
+      }
+      int qualifierId = (flags & NEXT_QUALIFIER) != 0
+        ? current.qualifierId + 1
+        : ByteBuff.readCompressedInt(currentBuffer);
+      long timestamp = (flags & NEW_TIMESTAMP) != 0
+        ? currentBuffer.getLong()
+        : Bytes.toLong(key, prevKeyLength - KeyValue.TIMESTAMP_TYPE_SIZE);
+      byte type = (flags & NEW_TYPE) != 0 ? currentBuffer.get() : key[prevKeyLength - 1];
+      if ((flags & NEW_VALUE_LENGTH) != 0) {
+        current.valueLength = ByteBuff.readCompressedInt(currentBuffer);
+      }
+
+      // The new key keeps the row and family of the previous one unless the record has them
+      int prevRowLength = (flags & NEW_ROW) != 0 && (flags & NEW_FAMILY) != 0
+        ? 0
+        : Bytes.toShort(key, 0);
+      int rowLength = (flags & NEW_ROW) != 0 ? newRowLength : prevRowLength;
+      int prevFamilyOffset = KeyValue.ROW_LENGTH_SIZE + prevRowLength;
+      int familyLength = (flags & NEW_FAMILY) != 0 ? newFamilyLength : key[prevFamilyOffset];
+      int familyOffset = KeyValue.ROW_LENGTH_SIZE + rowLength;
+      int qualifierOffset = familyOffset + KeyValue.FAMILY_LENGTH_SIZE + familyLength;
+      int qualifierLength = qualifierLengths[qualifierId];
+      current.qualifierId = qualifierId;
+      current.keyLength = qualifierOffset + qualifierLength + KeyValue.TIMESTAMP_TYPE_SIZE;
+      current.ensureSpaceForKey();
+      key = current.keyBuffer;
+      if ((flags & NEW_FAMILY) == 0 && familyOffset != prevFamilyOffset) {
+        System.arraycopy(key, prevFamilyOffset, key, familyOffset,
+          KeyValue.FAMILY_LENGTH_SIZE + familyLength);
+      }
+      if ((flags & NEW_ROW) != 0) {
+        Bytes.putShort(key, 0, (short) rowLength);
+        currentBuffer.get(rowPosition, key, KeyValue.ROW_LENGTH_SIZE, rowLength);
+      }
+      if ((flags & NEW_FAMILY) != 0) {
+        key[familyOffset] = (byte) familyLength;
+        currentBuffer.get(familyPosition, key, familyOffset + KeyValue.FAMILY_LENGTH_SIZE,
+          familyLength);
+      }
+      System.arraycopy(qualifiers, qualifierOffsets[qualifierId], key, qualifierOffset,
+        qualifierLength);
+      Bytes.putLong(key, qualifierOffset + qualifierLength, timestamp);
+      key[current.keyLength - 1] = type;
+      if ((flags & NEW_ROW) != 0) {
+        current.lastCommonPrefix = 0;
+      } else if ((flags & NEW_FAMILY) != 0) {
+        current.lastCommonPrefix = familyOffset;
+      } else {
+        current.lastCommonPrefix = qualifierOffset;
+      }
+
+      // value, and tags, from the values stream
+      current.valueOffset = current.valuesEnd;
+      int valueEnd = current.valueOffset + current.valueLength;
+      if (includesTags()) {
+        int recordsPosition = currentBuffer.position();
+        currentBuffer.position(valueEnd);
+        decodeTags();
+        current.valuesEnd = currentBuffer.position();
+        currentBuffer.position(recordsPosition);
+      } else {
+        current.valuesEnd = valueEnd;
+      }
+      if (includesMvcc()) {
+        current.memstoreTS = ByteBufferUtils.readVLong(currentBuffer);
+      } else {
+        current.memstoreTS = 0;
+      }
+      current.nextKvOffset = currentBuffer.position();
+    }
+  }
+}
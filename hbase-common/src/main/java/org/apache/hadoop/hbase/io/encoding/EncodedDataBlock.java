@@ -281,15 +281,14 @@ public class EncodedDataBlock {
       baos.flush();
       baosBytes = baos.toByteArray();
       this.dataBlockEncoder.endBlockEncoding(encodingCtx, out, baosBytes);
-      // In endBlockEncoding(encodingCtx, out, baosBytes), Encoder ROW_INDEX_V1 write integer in
-      // out while the others write integer in baosBytes(byte array). We need to add
-      // baos.toByteArray() after endBlockEncoding again to make sure the integer writes in
-      // outputstream with Encoder ROW_INDEX_V1 dump to byte array (baosBytes).
-      // The if branch is necessary because Encoders excepts ROW_INDEX_V1 write integer in
-      // baosBytes directly, without if branch and do toByteArray() again, baosBytes won't
-      // contains the integer wrotten in endBlockEncoding.
-      if (this.encoding.equals(DataBlockEncoding.ROW_INDEX_V1)) {
-        baosBytes = baos.toByteArray();
+      // In endBlockEncoding(encodingCtx, out, baosBytes), Encoders ROW_INDEX_V1, PREFIX_RESTART and
+      // COLUMNAR write to out, while the others only write the unencoded size integer in baosBytes
+      // (byte array). If out grew, copy what was appended after baosBytes was taken, keeping the
+      // integer written in baosBytes.
+      if (baos.size() > baosBytes.length) {
+        byte[] withTrailer = baos.toByteArray();
+        System.arraycopy(baosBytes, 0, withTrailer, 0, baosBytes.length);
+        baosBytes = withTrailer;
       }
     } catch (IOException e) {
       throw new RuntimeException(String.format("Bug in encoding part of algorithm %s. "
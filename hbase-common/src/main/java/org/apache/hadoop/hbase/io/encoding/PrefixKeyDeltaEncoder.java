@@ -188,9 +188,9 @@ public class PrefixKeyDeltaEncoder extends BufferedDataBlockEncoder {
     return new SeekerStateBufferedEncodedSeeker(decodingCtx);
   }
 
-  private static class SeekerStateBufferedEncodedSeeker extends BufferedEncodedSeeker<SeekerState> {
+  static class SeekerStateBufferedEncodedSeeker extends BufferedEncodedSeeker<SeekerState> {
 
-    private SeekerStateBufferedEncodedSeeker(HFileBlockDecodingContext decodingCtx) {
+    SeekerStateBufferedEncodedSeeker(HFileBlockDecodingContext decodingCtx) {
       super(decodingCtx);
     }
 
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.hadoop.hbase.ByteBufferKeyOnlyKeyValue;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Prefix encoding with restart points. Cells are written exactly as {@link PrefixKeyDeltaEncoder}
+ * writes them, except that every {@link #RESTART_INTERVAL}th cell stores its full key. The offsets
+ * of those cells are appended to the block, so a seek binary searches the restart keys in place
+ * and then decodes at most one interval forward, instead of decoding from the start of the block.
+ * Format:
+ *
+ * <pre>
+ * 0 (int) | cells | restart offsets (int each, from the block start) | unencoded size (int)
+ *   | number of restarts (int)
+ * </pre>
+ *
+ * The unencoded size goes to the end rather than into the leading int the other prefix encoders
+ * patch, because appending the restarts may have moved the block away from the array it would be
+ * written to.
+ * <p>
+ * When tags are compressed the tag dictionary is built cell by cell, so the seeker can not jump and
+ * falls back to decoding from the current position.
+ */
+@InterfaceAudience.Private
+public class PrefixRestartDeltaEncoder extends PrefixKeyDeltaEncoder {
+
+  static final int RESTART_INTERVAL = 16;
+
+  private static class RestartEncodingState extends EncodingState {
+    // Offset of the unencoded size int at the start of the block.
+    private int blockStart;
+    private int cellCount;
+    private final ByteArrayOutputStream restarts = new ByteArrayOutputStream(64 * 4);
+  }
+
+  @Override
+  public void startBlockEncoding(HFileBlockEncodingContext blkEncodingCtx, DataOutputStream out)
+    throws IOException {
+    super.startBlockEncoding(blkEncodingCtx, out);
+    RestartEncodingState state = new RestartEncodingState();
+    state.blockStart = out.size() - Bytes.SIZEOF_INT;
+    blkEncodingCtx.setEncodingState(state);
+  }
+
+  @Override
+  public int internalEncode(ExtendedCell cell, HFileBlockDefaultEncodingContext encodingContext,
+    DataOutputStream out) throws IOException {
+    RestartEncodingState state = (RestartEncodingState) encodingContext.getEncodingState();
+    if (state.cellCount++ % RESTART_INTERVAL == 0) {
+      state.restarts.writeInt(out.size() - state.blockStart);
+      // no previous cell means no common prefix, so the full key is written
+      state.prevCell = null;
+      // account for the restart offset written at the end of the block
+      state.postCellEncode(0, Bytes.SIZEOF_INT);
+    }
+    return super.internalEncode(cell, encodingContext, out);
+  }
+
+  @Override
+  public void endBlockEncoding(HFileBlockEncodingContext encodingCtx, DataOutputStream out,
+    byte[] uncompressedBytesWithHeader) throws IOException {
+    RestartEncodingState state = (RestartEncodingState) encodingCtx.getEncodingState();
+    out.write(state.restarts.getBuffer(), 0, state.restarts.size());
+    out.writeInt(state.getUnencodedDataSizeWritten());
+    out.writeInt(state.restarts.size() / Bytes.SIZEOF_INT);
+    postEncoding(encodingCtx);
+  }
+
+  @Override
+  protected ByteBuffer internalDecodeKeyValues(DataInputStream source, int allocateHeaderLength,
+    int skipLastBytes, HFileBlockDefaultDecodingContext decodingCtx) throws IOException {
+    ByteBuffer block = ByteBufferUtils.drainInputStreamToBuffer(source);
+    int numRestarts = block.getInt(block.limit() - Bytes.SIZEOF_INT);
+    int trailerSize = Bytes.SIZEOF_INT * (numRestarts + 2);
+    // PrefixKeyDeltaEncoder reads the unencoded size from the start of the block
+    block.putInt(0, block.getInt(block.limit() - 2 * Bytes.SIZEOF_INT));
+    DataInputStream cells = new DataInputStream(
+      new ByteArrayInputStream(block.array(), block.arrayOffset(), block.limit()));
+    return super.internalDecodeKeyValues(cells, allocateHeaderLength, skipLastBytes + trailerSize,
+      decodingCtx);
+  }
+
+  @Override
+  public String toString() {
+    return PrefixRestartDeltaEncoder.class.getSimpleName();
+  }
+
+  @Override
+  public EncodedSeeker createSeeker(final HFileBlockDecodingContext decodingCtx) {
+    return new RestartSeeker(decodingCtx);
+  }
+
+  private static class RestartSeeker extends SeekerStateBufferedEncodedSeeker {
+    private final CellComparator comparator;
+    private final ByteBufferKeyOnlyKeyValue restartKey = new ByteBufferKeyOnlyKeyValue();
+    private ByteBuff restarts;
+    private int numRestarts;
+
+    private RestartSeeker(HFileBlockDecodingContext decodingCtx) {
+      super(decodingCtx);
+      this.comparator = decodingCtx.getHFileContext().getCellComparator();
+    }
+
+    @Override
+    public void setCurrentBuffer(ByteBuff buffer) {
+      numRestarts = buffer.getInt(buffer.limit() - Bytes.SIZEOF_INT);
+      int restartsStart = buffer.limit() - Bytes.SIZEOF_INT * (numRestarts + 2);
+      ByteBuff dup = buffer.duplicate();
+      dup.position(restartsStart);
+      dup.limit(restartsStart + Bytes.SIZEOF_INT * numRestarts);
+      restarts = dup.slice();
+      // The cells only, so that the seeker sees the end of the block where the restarts begin
+      dup = buffer.duplicate();
+      dup.position(buffer.position());
+      dup.limit(restartsStart);
+      super.setCurrentBuffer(dup.slice());
+    }
+
+    private int restartOffset(int restart) {
+      return restarts.getInt(restart * Bytes.SIZEOF_INT);
+    }
+
+    private int compareToRestart(ExtendedCell seekCell, int restart) {
+      currentBuffer.position(restartOffset(restart));
+      int keyLength = ByteBuff.readCompressedInt(currentBuffer);
+      // value length and the common prefix length, which is always 0 at a restart
+      ByteBuff.readCompressedInt(currentBuffer);
+      ByteBuff.readCompressedInt(currentBuffer);
+      currentBuffer.asSubByteBuffer(currentBuffer.position(), keyLength, tmpPair);
+      restartKey.setKey(tmpPair.getFirst(), tmpPair.getSecond(), keyLength);
+      return PrivateCellUtil.compareKeyIgnoresMvcc(comparator, seekCell, restartKey);
+    }
+
+    /**
+     * Returns the last restart whose key is before the seek key, or -1 if there is none. An equal
+     * restart key is skipped, as cells with the same key may sit on both sides of a restart.
+     */
+    private int findRestart(ExtendedCell seekCell) {
+      int low = 0;
+      int high = numRestarts - 1;
+      while (low <= high) {
+        int mid = low + ((high - low) >> 1);
+        if (compareToRestart(seekCell, mid) > 0) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return high;
+    }
+
+    @Override
+    public int seekToKeyInBlock(ExtendedCell seekCell, boolean seekBefore) {
+      if (tagCompressionContext == null && numRestarts > 1) {
+        int position = currentBuffer.position();
+        int restart = findRestart(seekCell);
+        // The caller either rewound to the first cell or is on a cell not after the seek key, so
+        // only jump when the restart is ahead of the current cell.
+        if (restart > 0 && restartOffset(restart) >= current.nextKvOffset) {
+          currentBuffer.position(restartOffset(restart));
+          decodeNext();
+          current.setKey(current.keyBuffer, current.memstoreTS);
+        } else {
+          currentBuffer.position(position);
+        }
+      }
+      return super.seekToKeyInBlock(seekCell, seekBefore);
+    }
+  }
+}
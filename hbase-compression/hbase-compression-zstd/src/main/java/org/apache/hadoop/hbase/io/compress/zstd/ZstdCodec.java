@@ -19,12 +19,15 @@ package org.apache.hadoop.hbase.io.compress.zstd;
 
 import com.github.luben.zstd.Zstd;
 import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import org.apache.hadoop.conf.Configurable;
@@ -34,6 +37,7 @@ import org.apache.hadoop.hbase.io.compress.ByteBuffDecompressionCodec;
 import org.apache.hadoop.hbase.io.compress.ByteBuffDecompressor;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.compress.DictionaryCache;
+import org.apache.hadoop.hbase.io.compress.DictionaryTrainingCodec;
 import org.apache.hadoop.hbase.util.Pair;
 import org.apache.hadoop.io.compress.BlockCompressorStream;
 import org.apache.hadoop.io.compress.BlockDecompressorStream;
@@ -53,7 +57,8 @@ import org.apache.hbase.thirdparty.com.google.common.cache.CacheBuilder;
  * This is data format compatible with Hadoop's native ZStandard codec.
  */
 @InterfaceAudience.Private
-public class ZstdCodec implements Configurable, CompressionCodec, ByteBuffDecompressionCodec {
+public class ZstdCodec
+  implements Configurable, CompressionCodec, ByteBuffDecompressionCodec, DictionaryTrainingCodec {
 
   public static final String ZSTD_LEVEL_KEY = "hbase.io.compress.zstd.level";
   public static final String ZSTD_BUFFER_SIZE_KEY = "hbase.io.compress.zstd.buffersize";
@@ -148,6 +153,34 @@ public class ZstdCodec implements Configurable, CompressionCodec, ByteBuffDecomp
     return ".zst";
   }
 
+  @Override
+  public String getDictionaryKey() {
+    return ZSTD_DICTIONARY_KEY;
+  }
+
+  @Override
+  @Nullable
+  public byte[] trainDictionary(List<byte[]> samples, int maxDictionarySize) {
+    long sampleSize = 0;
+    for (byte[] sample : samples) {
+      sampleSize += sample.length;
+    }
+    ZstdDictTrainer trainer =
+      new ZstdDictTrainer((int) Math.min(sampleSize, Integer.MAX_VALUE), maxDictionarySize);
+    for (byte[] sample : samples) {
+      if (!trainer.addSample(sample)) {
+        break;
+      }
+    }
+    try {
+      byte[] dictionary = trainer.trainSamples();
+      return dictionary.length >= 8 && isDictionary(dictionary) ? dictionary : null;
+    } catch (ZstdException e) {
+      // Typically too few or too uniform samples
+      return null;
+    }
+  }
+
   // Package private
 
   static int getLevel(Configuration conf) {
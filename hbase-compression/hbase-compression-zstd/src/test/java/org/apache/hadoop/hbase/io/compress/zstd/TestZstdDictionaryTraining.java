@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.compress.zstd;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.io.FSDataInputStreamWrapper;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.compress.DictionaryCache;
+import org.apache.hadoop.hbase.io.compress.HFileTestBase;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.io.hfile.HFileInfo;
+import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.hadoop.hbase.io.hfile.ReaderContext;
+import org.apache.hadoop.hbase.io.hfile.ReaderContext.ReaderType;
+import org.apache.hadoop.hbase.io.hfile.ReaderContextBuilder;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.RedundantKVGenerator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test training a ZSTD dictionary from cells and storing it in the file info of an HFile.
+ */
+@Tag(IOTests.TAG)
+@Tag(SmallTests.TAG)
+public class TestZstdDictionaryTraining extends HFileTestBase {
+
+  private static final int MAX_DICTIONARY_SIZE = 16 * 1024;
+
+  private static Configuration conf;
+
+  @BeforeAll
+  public static void setUpBeforeClass() throws Exception {
+    HFileTestBase.setUpBeforeClass();
+  }
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    conf = TEST_UTIL.getConfiguration();
+    conf.set(Compression.ZSTD_CODEC_CLASS_KEY, ZstdCodec.class.getCanonicalName());
+    Compression.Algorithm.ZSTD.reload(conf);
+  }
+
+  @Test
+  public void testTrainDictionary() throws Exception {
+    assertTrue(Compression.Algorithm.ZSTD.supportsDictionaryTraining());
+    List<KeyValue> kvs = new RedundantKVGenerator().generateTestKeyValues(10000);
+    byte[] dictionary = Compression.Algorithm.ZSTD.trainDictionary(samples(kvs),
+      MAX_DICTIONARY_SIZE);
+    assertNotNull(dictionary);
+    assertTrue(dictionary.length <= MAX_DICTIONARY_SIZE);
+    assertTrue(ZstdCodec.isDictionary(dictionary));
+  }
+
+  @Test
+  public void testWriteAndReadWithDictionary() throws Exception {
+    List<KeyValue> kvs = new RedundantKVGenerator().generateTestKeyValues(10000);
+    byte[] dictionary = Compression.Algorithm.ZSTD.trainDictionary(samples(kvs),
+      MAX_DICTIONARY_SIZE);
+    assertNotNull(dictionary);
+    Path path = writeHFile(kvs, dictionary);
+
+    String dictionaryPath;
+    try (HFile.Reader reader = HFile.createReader(FS, path, CacheConfig.DISABLED, true, conf)) {
+      assertArrayEquals(dictionary, reader.getHFileInfo().get(HFileInfo.COMPRESSION_DICTIONARY));
+      dictionaryPath = reader.getHFileInfo().getCompressionDictionaryPath();
+      assertNotNull(dictionaryPath);
+      assertTrue(DictionaryCache.contains(dictionaryPath));
+      assertReadsAll(reader, kvs, true);
+    }
+    // the reader releases the dictionary when it is closed
+    assertFalse(DictionaryCache.contains(dictionaryPath));
+  }
+
+  @Test
+  public void testStreamReaderWithDictionary() throws Exception {
+    List<KeyValue> kvs = new RedundantKVGenerator().generateTestKeyValues(10000);
+    byte[] dictionary = Compression.Algorithm.ZSTD.trainDictionary(samples(kvs),
+      MAX_DICTIONARY_SIZE);
+    assertNotNull(dictionary);
+    Path path = writeHFile(kvs, dictionary);
+
+    try (HFile.Reader reader = HFile.createReader(FS, path, CacheConfig.DISABLED, true, conf)) {
+      // a stream reader, as used by compactions, shares the file info of the pread reader
+      ReaderContext context = new ReaderContextBuilder().withFilePath(path)
+        .withInputStreamWrapper(new FSDataInputStreamWrapper(FS, path))
+        .withFileSize(FS.getFileStatus(path).getLen()).withFileSystem(FS)
+        .withReaderType(ReaderType.STREAM).build();
+      try (HFile.Reader streamReader =
+        HFile.createReader(context, reader.getHFileInfo(), CacheConfig.DISABLED, conf)) {
+        assertReadsAll(streamReader, kvs, false);
+      }
+    }
+  }
+
+  private Path writeHFile(List<KeyValue> kvs, byte[] dictionary) throws Exception {
+    Path path =
+      new Path(TEST_UTIL.getDataTestDir(), HBaseTestingUtil.getRandomUUID().toString() + ".hfile");
+    HFileContext fileContext = new HFileContextBuilder().withBlockSize(4096)
+      .withCompression(Compression.Algorithm.ZSTD).build();
+    try (HFile.Writer writer = HFile.getWriterFactory(conf, CacheConfig.DISABLED)
+      .withPath(FS, path).withFileContext(fileContext).withCompressionDictionary(dictionary)
+      .create()) {
+      for (KeyValue kv : kvs) {
+        writer.append(kv);
+      }
+    }
+    return path;
+  }
+
+  private static void assertReadsAll(HFile.Reader reader, List<KeyValue> kvs, boolean pread)
+    throws Exception {
+    int count = 0;
+    try (HFileScanner scanner = reader.getScanner(conf, false, pread)) {
+      assertTrue(scanner.seekTo());
+      do {
+        ExtendedCell cell = scanner.getCell();
+        assertEquals(kvs.get(count), KeyValueUtil.ensureKeyValue(cell));
+        count++;
+      } while (scanner.next());
+    }
+    assertEquals(kvs.size(), count);
+  }
+
+  private static List<byte[]> samples(List<KeyValue> kvs) {
+    List<byte[]> samples = new ArrayList<>(kvs.size());
+    for (KeyValue kv : kvs) {
+      samples.add(KeyValueUtil.copyToNewByteArray(kv));
+    }
+    return samples;
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseInterfaceAudience;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.util.AbstractHBaseTool;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.base.Preconditions;
+import org.apache.hbase.thirdparty.org.apache.commons.cli.CommandLine;
+import org.apache.hbase.thirdparty.org.apache.commons.cli.Option;
+
+/**
+ * Replays a block cache trace recorded by {@link BlockCacheTracer} against several block cache
+ * implementations and sizes, and prints the hit ratio each of them would have achieved. This
+ * allows sizing the block cache and picking a policy from the real access pattern of a
+ * regionserver without touching production. Example command: $ bin/hbase
+ * org.apache.hadoop.hbase.io.hfile.BlockCacheTraceSimulator -trace /tmp/blockcache.trace -policies
+ * lru,tinylfu,adaptive -sizes 1g,4g,16g
+ * <p>
+ * Blocks are replayed as placeholders of the traced size, so on heap policies account for the same
+ * number of bytes as in production. The bucket policy allocates its full capacity from the
+ * configured IOEngine, so simulating large bucket caches needs that much memory or disk.
+ */
+@InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.TOOLS)
+public class BlockCacheTraceSimulator extends AbstractHBaseTool {
+  private static final Logger LOG = LoggerFactory.getLogger(BlockCacheTraceSimulator.class);
+
+  private static final Option TRACE_OPT =
+    new Option("trace", true, "Block cache trace file to replay. Required.");
+
+  private static final String DEFAULT_POLICIES = "lru,tinylfu,adaptive";
+  private static final Option POLICIES_OPT = new Option("policies", true,
+    "Comma separated block cache policies to simulate, any of lru, tinylfu, adaptive and bucket."
+      + " Default: " + DEFAULT_POLICIES);
+
+  private static final String DEFAULT_SIZES = "1g";
+  private static final Option SIZES_OPT = new Option("sizes", true,
+    "Comma separated block cache sizes to simulate, e.g. 512m,2g. Default: " + DEFAULT_SIZES);
+
+  private static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+  private static final Option BLOCK_SIZE_OPT = new Option("block_size", true,
+    "Average block size the caches are sized for. Default: " + DEFAULT_BLOCK_SIZE);
+
+  private static final String DEFAULT_BUCKET_IOENGINE = "offheap";
+  private static final Option BUCKET_IOENGINE_OPT = new Option("bucket_ioengine", true,
+    "IOEngine of the simulated bucket cache. Default: " + DEFAULT_BUCKET_IOENGINE);
+
+  private File traceFile;
+  private List<String> policies;
+  private List<Long> sizes;
+  private int blockSize;
+  private String bucketIOEngine;
+
+  @Override
+  protected void addOptions() {
+    addOption(TRACE_OPT);
+    addOption(POLICIES_OPT);
+    addOption(SIZES_OPT);
+    addOption(BLOCK_SIZE_OPT);
+    addOption(BUCKET_IOENGINE_OPT);
+  }
+
+  @Override
+  protected void processOptions(CommandLine cmd) {
+    String trace = cmd.getOptionValue(TRACE_OPT.getOpt());
+    Preconditions.checkArgument(trace != null, "Trace file is required!");
+    traceFile = new File(trace);
+
+    policies = new ArrayList<>();
+    for (String policy : cmd.getOptionValue(POLICIES_OPT.getOpt(), DEFAULT_POLICIES).split(",")) {
+      policies.add(policy.trim().toLowerCase(Locale.ROOT));
+    }
+    sizes = new ArrayList<>();
+    for (String size : cmd.getOptionValue(SIZES_OPT.getOpt(), DEFAULT_SIZES).split(",")) {
+      long bytes = StringUtils.TraditionalBinaryPrefix.string2long(size.trim());
+      Preconditions.checkArgument(bytes > 0, "Invalid cache size " + size);
+      sizes.add(bytes);
+    }
+    blockSize = getOptionAsInt(cmd, BLOCK_SIZE_OPT.getOpt(), DEFAULT_BLOCK_SIZE);
+    Preconditions.checkArgument(blockSize > 0, "Invalid block size!");
+    bucketIOEngine = cmd.getOptionValue(BUCKET_IOENGINE_OPT.getOpt(), DEFAULT_BUCKET_IOENGINE);
+  }
+
+  private BlockCache createCache(String policy, long size) throws IOException {
+    switch (policy) {
+      case "lru":
+        // no eviction thread, so evictions happen inline and runs are repeatable
+        return new LruBlockCache(size, blockSize, false, conf);
+      case "tinylfu":
+        return new TinyLfuBlockCache(size, blockSize, Runnable::run, conf);
+      case "adaptive":
+        return new LruAdaptiveBlockCache(size, blockSize, false, conf);
+      case "bucket":
+        // wait for the writer rather than dropping blocks when it falls behind the replay
+        Configuration bucketConf = new Configuration(conf);
+        bucketConf.setIfUnset("hbase.bucketcache.queue.addition.waittime", "1000");
+        return new BucketCache(bucketIOEngine, size, blockSize, null, 1, 64, null, 60 * 1000,
+          bucketConf);
+      default:
+        throw new IllegalArgumentException("Unknown block cache policy " + policy);
+    }
+  }
+
+  @Override
+  protected int doWork() throws Exception {
+    System.out.printf("%-10s %10s %12s %8s %8s %8s %8s%n", "policy", "size", "requests", "hit%",
+      "data%", "index%", "bloom%");
+    for (String policy : policies) {
+      for (long size : sizes) {
+        BlockCache cache = createCache(policy, size);
+        try {
+          Result result = replay(cache);
+          System.out.printf("%-10s %10s %12d %8.2f %8.2f %8.2f %8.2f%n", policy,
+            StringUtils.byteDesc(size), result.requests, result.hitRatio(null),
+            result.hitRatio(BlockType.BlockCategory.DATA),
+            result.hitRatio(BlockType.BlockCategory.INDEX),
+            result.hitRatio(BlockType.BlockCategory.BLOOM));
+        } finally {
+          cache.shutdown();
+        }
+      }
+    }
+    return EXIT_SUCCESS;
+  }
+
+  private Result replay(BlockCache cache) throws IOException {
+    Result result = new Result();
+    try (BlockCacheTraceReader reader = new BlockCacheTraceReader(traceFile)) {
+      LOG.info("Replaying {} records from {} against {}", reader.getCount(), traceFile, cache);
+      BlockCacheTraceRecord record;
+      while ((record = reader.next()) != null) {
+        BlockCacheKey key = new BlockCacheKey(traceFile.getName(), record.getKeyHash(),
+          record.isPrimary(), record.getBlockType());
+        BlockCacheTraceRecord.Caller caller = record.getCaller();
+        if (caller == BlockCacheTraceRecord.Caller.WRITE) {
+          cache.cacheBlock(key, new TraceBlock(record), record.isInMemory(), true);
+          continue;
+        }
+        // the prefetcher only populates the cache, do not count it as a request
+        boolean countRequest = caller != BlockCacheTraceRecord.Caller.PREFETCH;
+        Cacheable cached = cache.getBlock(key, true, false, countRequest);
+        if (cached != null) {
+          cached.release();
+        } else if (record.isCache() || record.isHit()) {
+          // a block that was hit in the trace must have been cached on its miss
+          cache.cacheBlock(key, new TraceBlock(record), record.isInMemory(), true);
+        }
+        if (countRequest) {
+          result.add(record.getBlockType(), cached != null);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static final class Result {
+    private final Map<BlockType.BlockCategory, long[]> byCategory =
+      new EnumMap<>(BlockType.BlockCategory.class);
+    private long requests;
+    private long hits;
+
+    void add(BlockType type, boolean hit) {
+      requests++;
+      long[] counts = byCategory.computeIfAbsent(
+        type == null ? BlockType.BlockCategory.UNKNOWN : type.getCategory(), k -> new long[2]);
+      counts[0]++;
+      if (hit) {
+        hits++;
+        counts[1]++;
+      }
+    }
+
+    /** Returns the hit ratio in percent for the given category, or all blocks if null. */
+    double hitRatio(BlockType.BlockCategory category) {
+      long[] counts =
+        category == null ? new long[] { requests, hits } : byCategory.get(category);
+      return counts == null || counts[0] == 0 ? 0 : 100.0 * counts[1] / counts[0];
+    }
+  }
+
+  /**
+   * Stands in for a traced block in the simulated caches. Only its size and type matter.
+   */
+  private static final class TraceBlock implements Cacheable {
+
+    private static final CacheableDeserializer<Cacheable> DESERIALIZER =
+      new CacheableDeserializer<Cacheable>() {
+        @Override
+        public Cacheable deserialize(ByteBuff b, ByteBuffAllocator allocator) {
+          int size = b.getInt();
+          byte type = b.get();
+          return new TraceBlock(size, type < 0 ? null : BlockType.values()[type]);
+        }
+
+        @Override
+        public int getDeserializerIdentifier() {
+          return DESERIALIZER_ID;
+        }
+      };
+
+    private static final int DESERIALIZER_ID =
+      CacheableDeserializerIdManager.registerDeserializer(DESERIALIZER);
+
+    // room for the size and the type written by serialize
+    private static final int MIN_SIZE = Integer.BYTES + 1;
+
+    private final int size;
+    private final BlockType blockType;
+
+    TraceBlock(BlockCacheTraceRecord record) {
+      this(Math.max(record.getSize(), MIN_SIZE), record.getBlockType());
+    }
+
+    private TraceBlock(int size, BlockType blockType) {
+      this.size = size;
+      this.blockType = blockType;
+    }
+
+    @Override
+    public long heapSize() {
+      return size;
+    }
+
+    @Override
+    public int getSerializedLength() {
+      return size;
+    }
+
+    @Override
+    public void serialize(ByteBuffer destination, boolean includeNextBlockMetadata) {
+      int start = destination.position();
+      destination.putInt(size);
+      destination.put((byte) (blockType == null ? -1 : blockType.ordinal()));
+      destination.position(start + size);
+      destination.rewind();
+    }
+
+    @Override
+    public CacheableDeserializer<Cacheable> getDeserializer() {
+      return DESERIALIZER;
+    }
+
+    @Override
+    public BlockType getBlockType() {
+      return blockType;
+    }
+  }
+
+  public static void main(String[] args) {
+    new BlockCacheTraceSimulator().doStaticMain(args);
+  }
+}
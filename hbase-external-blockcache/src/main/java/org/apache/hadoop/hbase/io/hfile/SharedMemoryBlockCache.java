@@ -0,0 +1,573 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Block cache kept in a memory mapped file, by default under /dev/shm, which can be shared by all
+ * the regionservers of a host and survives their restarts. Unlike {@link MemcachedBlockCache} there
+ * is no daemon to run and no network hop, blocks are copied straight out of shared memory.
+ * <p>
+ * The file is split into fixed size slots grouped into small sets. A block can only live in the
+ * set its key hashes to, and replaces the least recently accessed block of that set, so there is no
+ * separate index to keep consistent between processes. Every slot is guarded by a sequence number
+ * used as a seqlock: a writer, from any process, claims the slot by moving the sequence to an odd
+ * value with a CAS and releases it by moving it to the next even value with another CAS, and
+ * readers retry or give up when the sequence changed while they were copying. No locks are taken on
+ * the read or write path.
+ * <p>
+ * A slot held for longer than {@link #STALE_WRITE_MS} is assumed to belong to a dead process and is
+ * taken over. Should its writer still be alive it finds out when checking that it owns the slot
+ * before writing the slot header, or when its release CAS fails, and abandons the write. Blocks are
+ * serialized before the slot is claimed so a slot is only held for the time of a copy.
+ * <p>
+ * Blocks are copied out of the mapping on read instead of being handed out in place, as a slot can
+ * be overwritten by another process at any time and there is no way to pin it across processes.
+ * Blocks larger than a slot are not cached. Blocks of removed files are not evicted eagerly, they
+ * are never read again and age out of their set.
+ */
+@InterfaceAudience.Private
+public class SharedMemoryBlockCache implements BlockCache {
+  private static final Logger LOG = LoggerFactory.getLogger(SharedMemoryBlockCache.class);
+
+  public static final String SHM_PATH_KEY = "hbase.cache.shm.path";
+  public static final String SHM_PATH_DEFAULT = "/dev/shm/hbase-blockcache";
+  public static final String SHM_SIZE_KEY = "hbase.cache.shm.size";
+  public static final long SHM_SIZE_DEFAULT = 1024L * 1024 * 1024;
+  public static final String SHM_SLOT_SIZE_KEY = "hbase.cache.shm.slot.size";
+  public static final int SHM_SLOT_SIZE_DEFAULT = 72 * 1024;
+  public static final int STAT_THREAD_PERIOD = 60 * 5;
+
+  /** Number of slots a block may be placed in. */
+  static final int WAYS = 4;
+
+  /** A writer which did not release its slot within this time is assumed to have died. */
+  static final long STALE_WRITE_MS = 30_000;
+
+  private static final long MAGIC = 0x4842534D42434831L; // "HBSMBCH1"
+  private static final int VERSION = 1;
+  private static final int FILE_HEADER_SIZE = 4096;
+  private static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+  // slot layout, the sequence must stay 8 byte aligned for the atomic accesses
+  private static final int SEQ_OFFSET = 0;
+  private static final int HASH_OFFSET = 8;
+  private static final int ACCESS_TIME_OFFSET = 16;
+  private static final int KEY_LENGTH_OFFSET = 24;
+  private static final int DATA_LENGTH_OFFSET = 28;
+  static final int SLOT_HEADER_SIZE = 32;
+
+  private static final VarHandle SEQ =
+    MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  private final File file;
+  private final int slotSize;
+  private final long slotCount;
+  private final long setCount;
+  private final int slotsPerSegment;
+  private final MappedByteBuffer[] segments;
+
+  private final CacheStats cacheStats = new CacheStats("SharedMemoryBlockCache");
+  private final LongAdder cachedCount = new LongAdder();
+  private final LongAdder notCachedCount = new LongAdder();
+  private final LongAdder raceCount = new LongAdder();
+
+  /** Statistics thread schedule pool (for heavy debugging, could remove) */
+  private final ScheduledExecutorService scheduleThreadPool =
+    Executors.newScheduledThreadPool(1, new ThreadFactoryBuilder()
+      .setNameFormat("SharedMemoryBlockCacheStatsExecutor").setDaemon(true).build());
+
+  public SharedMemoryBlockCache(Configuration c) throws IOException {
+    this.file = new File(c.get(SHM_PATH_KEY, SHM_PATH_DEFAULT));
+    // keep slots 8 byte aligned
+    this.slotSize = (c.getInt(SHM_SLOT_SIZE_KEY, SHM_SLOT_SIZE_DEFAULT) + 7) & ~7;
+    long size = c.getLongBytes(SHM_SIZE_KEY, SHM_SIZE_DEFAULT);
+    this.setCount = size / slotSize / WAYS;
+    if (slotSize <= SLOT_HEADER_SIZE || setCount < 1) {
+      throw new IllegalArgumentException(
+        "Shared memory block cache of " + size + " bytes can not hold slots of " + slotSize);
+    }
+    this.slotCount = setCount * WAYS;
+    // sets never span two segments
+    this.slotsPerSegment = Math.max(1, MAX_SEGMENT_SIZE / slotSize / WAYS) * WAYS;
+    LOG.info("Creating SharedMemoryBlockCache at {}, slots={}, slotSize={}", file, slotCount,
+      slotSize);
+    this.segments = map();
+    this.scheduleThreadPool.scheduleAtFixedRate(new StatisticsThread(this), STAT_THREAD_PERIOD,
+      STAT_THREAD_PERIOD, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Maps the cache file, creating it if this is the first process on the host to use it. The file
+   * lock only serializes the set up, the cache itself is not locked.
+   */
+  private MappedByteBuffer[] map() throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+      StandardOpenOption.READ, StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+      long fileSize = FILE_HEADER_SIZE + slotCount * slotSize;
+      ByteBuffer header = ByteBuffer.allocate(24);
+      if (channel.size() == 0) {
+        header.putLong(MAGIC).putInt(VERSION).putInt(slotSize).putLong(slotCount).flip();
+        channel.write(header, 0);
+        // extending the file zero fills it, which marks every slot empty
+        channel.write(ByteBuffer.allocate(1), fileSize - 1);
+      } else {
+        channel.read(header, 0);
+        header.flip();
+        if (
+          header.getLong() != MAGIC || header.getInt() != VERSION || header.getInt() != slotSize
+            || header.getLong() != slotCount || channel.size() != fileSize
+        ) {
+          throw new IOException(file + " is in use by a shared memory block cache with a different"
+            + " layout, remove it or configure the same size and slot size");
+        }
+        LOG.info("Reusing blocks already cached in {}", file);
+      }
+      int segmentCount = (int) ((slotCount + slotsPerSegment - 1) / slotsPerSegment);
+      MappedByteBuffer[] mapped = new MappedByteBuffer[segmentCount];
+      for (int i = 0; i < segmentCount; i++) {
+        long slots = Math.min(slotsPerSegment, slotCount - (long) i * slotsPerSegment);
+        mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+          FILE_HEADER_SIZE + (long) i * slotsPerSegment * slotSize, slots * slotSize);
+      }
+      return mapped;
+    }
+  }
+
+  private ByteBuffer segment(long slot) {
+    return segments[(int) (slot / slotsPerSegment)];
+  }
+
+  private int slotOffset(long slot) {
+    return (int) (slot % slotsPerSegment) * slotSize;
+  }
+
+  private static byte[] keyBytes(BlockCacheKey key) {
+    byte[] name = Bytes.toBytes(key.getHfileName());
+    byte[] bytes = new byte[name.length + Bytes.SIZEOF_LONG];
+    System.arraycopy(name, 0, bytes, 0, name.length);
+    Bytes.putLong(bytes, name.length, key.getOffset());
+    return bytes;
+  }
+
+  /**
+   * Hash of the key which is stable across processes, never 0 as 0 marks an empty slot.
+   */
+  private static long hash(BlockCacheKey key) {
+    long h = key.getHfileName().hashCode() * 0x9E3779B97F4A7C15L + key.getOffset();
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h == 0 ? 1 : h;
+  }
+
+  private long firstSlot(long hash) {
+    return Long.remainderUnsigned(hash, setCount) * WAYS;
+  }
+
+  private boolean keyEquals(ByteBuffer segment, int offset, byte[] key) {
+    if (segment.getInt(offset + KEY_LENGTH_OFFSET) != key.length) {
+      return false;
+    }
+    int keyOffset = offset + SLOT_HEADER_SIZE;
+    for (int i = 0; i < key.length; i++) {
+      if (segment.get(keyOffset + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Claims the slot for writing and stamps it with the claim time. Returns the odd sequence the
+   * slot is now owned with, or -1 if another writer holds it.
+   */
+  private long claim(ByteBuffer segment, int offset, long now) {
+    long seq = (long) SEQ.getVolatile(segment, offset + SEQ_OFFSET);
+    long owned;
+    if ((seq & 1) == 0) {
+      owned = seq + 1;
+    } else if (now - segment.getLong(offset + ACCESS_TIME_OFFSET) > STALE_WRITE_MS) {
+      // taking over a slot whose writer went away in the middle of a write
+      owned = seq + 2;
+    } else {
+      return -1;
+    }
+    if (!SEQ.compareAndSet(segment, offset + SEQ_OFFSET, seq, owned)) {
+      return -1;
+    }
+    segment.putLong(offset + ACCESS_TIME_OFFSET, now);
+    return owned;
+  }
+
+  private static boolean owns(ByteBuffer segment, int offset, long owned) {
+    return (long) SEQ.getVolatile(segment, offset + SEQ_OFFSET) == owned;
+  }
+
+  /**
+   * Releases a slot claimed with {@link #claim(ByteBuffer, int, long)}. Returns false if the slot
+   * was taken over in the meantime, it then belongs to another writer and must be left alone.
+   */
+  private boolean release(ByteBuffer segment, int offset, long owned) {
+    if (SEQ.compareAndSet(segment, offset + SEQ_OFFSET, owned, owned + 1)) {
+      return true;
+    }
+    LOG.warn("Lost slot at offset {} to another writer after holding it for more than {} ms",
+      offset, STALE_WRITE_MS);
+    raceCount.increment();
+    return false;
+  }
+
+  long claim(long slot, long now) {
+    return claim(segment(slot), slotOffset(slot), now);
+  }
+
+  boolean release(long slot, long owned) {
+    return release(segment(slot), slotOffset(slot), owned);
+  }
+
+  @Override
+  public void cacheBlock(BlockCacheKey cacheKey, Cacheable buf, boolean inMemory) {
+    cacheBlock(cacheKey, buf);
+  }
+
+  @Override
+  public void cacheBlock(BlockCacheKey cacheKey, Cacheable buf) {
+    if (!(buf instanceof HFileBlock)) {
+      LOG.debug("Can not cache Cacheables of type {} with key {}", buf.getClass(), cacheKey);
+      notCachedCount.increment();
+      return;
+    }
+    byte[] key = keyBytes(cacheKey);
+    int length = buf.getSerializedLength();
+    if (SLOT_HEADER_SIZE + key.length + length > slotSize) {
+      LOG.debug("Block with key {} is too large, size={}, slotSize={}, will not cache", cacheKey,
+        length, slotSize);
+      notCachedCount.increment();
+      return;
+    }
+    long hash = hash(cacheKey);
+    long first = firstSlot(hash);
+    ByteBuffer segment = segment(first);
+    long now = EnvironmentEdgeManager.currentTime();
+    int victim = -1;
+    long oldest = Long.MAX_VALUE;
+    for (int i = 0; i < WAYS; i++) {
+      int offset = slotOffset(first + i);
+      long seq = (long) SEQ.getVolatile(segment, offset + SEQ_OFFSET);
+      long accessTime = segment.getLong(offset + ACCESS_TIME_OFFSET);
+      if ((seq & 1) != 0) {
+        if (now - accessTime > STALE_WRITE_MS) {
+          victim = offset;
+          oldest = Long.MIN_VALUE;
+        }
+        continue;
+      }
+      long slotHash = segment.getLong(offset + HASH_OFFSET);
+      if (slotHash == 0) {
+        if (oldest != Long.MIN_VALUE) {
+          victim = offset;
+          oldest = Long.MIN_VALUE;
+        }
+      } else if (slotHash == hash && keyEquals(segment, offset, key)) {
+        // already cached, maybe by another process
+        return;
+      } else if (accessTime < oldest) {
+        victim = offset;
+        oldest = accessTime;
+      }
+    }
+    if (victim < 0) {
+      raceCount.increment();
+      notCachedCount.increment();
+      return;
+    }
+    byte[] body = new byte[key.length + length];
+    System.arraycopy(key, 0, body, 0, key.length);
+    try {
+      buf.serialize(ByteBuffer.wrap(body, key.length, length).slice(), true);
+    } catch (RuntimeException e) {
+      LOG.warn("Failed to cache block with key {}", cacheKey, e);
+      notCachedCount.increment();
+      return;
+    }
+    long owned = claim(segment, victim, now);
+    if (owned < 0) {
+      raceCount.increment();
+      notCachedCount.increment();
+      return;
+    }
+    segment.put(victim + SLOT_HEADER_SIZE, body);
+    if (!owns(segment, victim, owned)) {
+      // taken over while copying, the slot is the new owner's to write
+      raceCount.increment();
+      notCachedCount.increment();
+      return;
+    }
+    segment.putLong(victim + HASH_OFFSET, hash);
+    segment.putInt(victim + KEY_LENGTH_OFFSET, key.length);
+    segment.putInt(victim + DATA_LENGTH_OFFSET, length);
+    if (release(segment, victim, owned)) {
+      cachedCount.increment();
+    } else {
+      notCachedCount.increment();
+    }
+  }
+
+  @Override
+  public Cacheable getBlock(BlockCacheKey cacheKey, boolean caching, boolean repeat,
+    boolean updateCacheMetrics) {
+    HFileBlock result = null;
+    try {
+      result = read(cacheKey);
+    } catch (IOException e) {
+      LOG.warn("Failed to deserialize block with key {}", cacheKey, e);
+    } finally {
+      if (updateCacheMetrics) {
+        if (result == null) {
+          cacheStats.miss(caching, cacheKey.isPrimary(), cacheKey.getBlockType());
+        } else {
+          cacheStats.hit(caching, cacheKey.isPrimary(), cacheKey.getBlockType());
+        }
+      }
+    }
+    return result;
+  }
+
+  private HFileBlock read(BlockCacheKey cacheKey) throws IOException {
+    long hash = hash(cacheKey);
+    long first = firstSlot(hash);
+    ByteBuffer segment = segment(first);
+    byte[] key = null;
+    for (int i = 0; i < WAYS; i++) {
+      int offset = slotOffset(first + i);
+      long seq = (long) SEQ.getAcquire(segment, offset + SEQ_OFFSET);
+      if ((seq & 1) != 0 || segment.getLong(offset + HASH_OFFSET) != hash) {
+        continue;
+      }
+      if (key == null) {
+        key = keyBytes(cacheKey);
+      }
+      int length = segment.getInt(offset + DATA_LENGTH_OFFSET);
+      // the slot may be rewritten under us, check the length before trusting it
+      if (
+        length <= 0 || SLOT_HEADER_SIZE + key.length + length > slotSize
+          || !keyEquals(segment, offset, key)
+      ) {
+        continue;
+      }
+      byte[] data = new byte[length];
+      segment.get(offset + SLOT_HEADER_SIZE + key.length, data);
+      VarHandle.acquireFence();
+      if ((long) SEQ.getVolatile(segment, offset + SEQ_OFFSET) != seq) {
+        // overwritten while copying
+        raceCount.increment();
+        return null;
+      }
+      segment.putLong(offset + ACCESS_TIME_OFFSET, EnvironmentEdgeManager.currentTime());
+      return (HFileBlock) HFileBlock.BLOCK_DESERIALIZER
+        .deserialize(new SingleByteBuff(ByteBuffer.wrap(data)), ByteBuffAllocator.HEAP);
+    }
+    return null;
+  }
+
+  @Override
+  public boolean evictBlock(BlockCacheKey cacheKey) {
+    long hash = hash(cacheKey);
+    long first = firstSlot(hash);
+    ByteBuffer segment = segment(first);
+    byte[] key = keyBytes(cacheKey);
+    for (int i = 0; i < WAYS; i++) {
+      int offset = slotOffset(first + i);
+      if (segment.getLong(offset + HASH_OFFSET) != hash || !keyEquals(segment, offset, key)) {
+        continue;
+      }
+      long owned = claim(segment, offset, EnvironmentEdgeManager.currentTime());
+      if (owned < 0) {
+        return false;
+      }
+      boolean evicted = false;
+      // check again now that we own the slot
+      if (
+        owns(segment, offset, owned) && segment.getLong(offset + HASH_OFFSET) == hash
+          && keyEquals(segment, offset, key)
+      ) {
+        segment.putLong(offset + HASH_OFFSET, 0);
+        evicted = true;
+      }
+      if (!release(segment, offset, owned)) {
+        return false;
+      }
+      if (evicted) {
+        cacheStats.evict();
+        cacheStats.evicted(0, cacheKey.isPrimary());
+      }
+      return evicted;
+    }
+    return false;
+  }
+
+  /**
+   * This method does nothing, the blocks of the file are left to age out of their sets as they
+   * might be shared with other regionservers.
+   */
+  @Override
+  public int evictBlocksByHfileName(String hfileName) {
+    return 0;
+  }
+
+  @Override
+  public CacheStats getStats() {
+    return cacheStats;
+  }
+
+  @Override
+  public void shutdown() {
+    this.scheduleThreadPool.shutdown();
+    for (int i = 0; i < 10; i++) {
+      if (!this.scheduleThreadPool.isShutdown()) {
+        try {
+          Thread.sleep(10);
+        } catch (InterruptedException e) {
+          LOG.warn("Interrupted while sleeping");
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    if (!this.scheduleThreadPool.isShutdown()) {
+      List<Runnable> runnables = this.scheduleThreadPool.shutdownNow();
+      LOG.debug("Still running " + runnables);
+    }
+    // the blocks stay in shared memory for the other processes and the next start
+    for (MappedByteBuffer segment : segments) {
+      segment.force();
+    }
+  }
+
+  @Override
+  public long size() {
+    return getMaxSize();
+  }
+
+  @Override
+  public long getMaxSize() {
+    return slotCount * slotSize;
+  }
+
+  @Override
+  public long getFreeSize() {
+    return 0;
+  }
+
+  @Override
+  public long getCurrentSize() {
+    return 0;
+  }
+
+  @Override
+  public long getCurrentDataSize() {
+    return 0;
+  }
+
+  @Override
+  public long getBlockCount() {
+    return 0;
+  }
+
+  @Override
+  public long getDataBlockCount() {
+    return 0;
+  }
+
+  @Override
+  public Iterator<CachedBlock> iterator() {
+    return new Iterator<CachedBlock>() {
+      @Override
+      public boolean hasNext() {
+        return false;
+      }
+
+      @Override
+      public CachedBlock next() {
+        throw new NoSuchElementException("SharedMemoryBlockCache can't iterate over blocks.");
+      }
+    };
+  }
+
+  @Override
+  public BlockCache[] getBlockCaches() {
+    return null;
+  }
+
+  private static class StatisticsThread extends Thread {
+
+    private final SharedMemoryBlockCache c;
+
+    public StatisticsThread(SharedMemoryBlockCache c) {
+      super("SharedMemoryBlockCacheStats");
+      setDaemon(true);
+      this.c = c;
+    }
+
+    @Override
+    public void run() {
+      c.logStats();
+    }
+  }
+
+  public void logStats() {
+    LOG.info("cached=" + cachedCount.sum() + ", notCached=" + notCachedCount.sum() + ", races="
+      + raceCount.sum() + ", reads=" + cacheStats.getRequestCount() + ", hits="
+      + cacheStats.getHitCount() + ", hitRatio="
+      + (cacheStats.getHitCount() == 0
+        ? "0, "
+        : (StringUtils.formatPercent(cacheStats.getHitRatio(), 2) + ", "))
+      + "evicted=" + cacheStats.getEvictedCount());
+  }
+}
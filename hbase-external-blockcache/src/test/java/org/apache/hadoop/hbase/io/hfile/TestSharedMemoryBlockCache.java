@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseCommonTestingUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils.HFileBlockPair;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag(IOTests.TAG)
+@Tag(SmallTests.TAG)
+public class TestSharedMemoryBlockCache {
+
+  private static final HBaseCommonTestingUtil TEST_UTIL = new HBaseCommonTestingUtil();
+
+  private Configuration conf;
+
+  private File file;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    file = new File(TEST_UTIL.getDataTestDir("shm-" + System.nanoTime()).toString());
+    file.getParentFile().mkdirs();
+    conf = new Configuration();
+    conf.set(SharedMemoryBlockCache.SHM_PATH_KEY, file.getAbsolutePath());
+    conf.setLong(SharedMemoryBlockCache.SHM_SIZE_KEY, 4 * 1024 * 1024);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    file.delete();
+  }
+
+  private static void assertBlockEquals(HFileBlock expected, Cacheable actual) {
+    assertNotNull(actual);
+    assertEquals(expected.getBlockType(), actual.getBlockType());
+    assertEquals(expected.getSerializedLength(), actual.getSerializedLength());
+    ByteBuffer expectedBuf = ByteBuffer.allocate(expected.getSerializedLength());
+    expected.serialize(expectedBuf, true);
+    ByteBuffer actualBuf = ByteBuffer.allocate(actual.getSerializedLength());
+    actual.serialize(actualBuf, true);
+    assertEquals(expectedBuf, actualBuf);
+  }
+
+  @Test
+  public void testCache() throws Exception {
+    SharedMemoryBlockCache cache = new SharedMemoryBlockCache(conf);
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(HConstants.DEFAULT_BLOCKSIZE, 10);
+    for (HFileBlockPair block : blocks) {
+      assertNull(cache.getBlock(block.getBlockName(), true, false, true));
+      cache.cacheBlock(block.getBlockName(), block.getBlock());
+    }
+    for (HFileBlockPair block : blocks) {
+      assertBlockEquals(block.getBlock(), cache.getBlock(block.getBlockName(), true, false, true));
+    }
+    assertEquals(10, cache.getStats().getHitCount());
+    assertEquals(10, cache.getStats().getMissCount());
+    cache.shutdown();
+  }
+
+  @Test
+  public void testSharedBetweenInstancesAndRestarts() throws Exception {
+    // two caches mapping the same file stand in for two regionservers on a host
+    SharedMemoryBlockCache cache1 = new SharedMemoryBlockCache(conf);
+    SharedMemoryBlockCache cache2 = new SharedMemoryBlockCache(conf);
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(HConstants.DEFAULT_BLOCKSIZE, 10);
+    for (HFileBlockPair block : blocks) {
+      cache1.cacheBlock(block.getBlockName(), block.getBlock());
+    }
+    for (HFileBlockPair block : blocks) {
+      assertBlockEquals(block.getBlock(), cache2.getBlock(block.getBlockName(), true, false, true));
+    }
+    assertTrue(cache2.evictBlock(blocks[0].getBlockName()));
+    assertNull(cache1.getBlock(blocks[0].getBlockName(), true, false, true));
+    cache1.shutdown();
+    cache2.shutdown();
+
+    SharedMemoryBlockCache restarted = new SharedMemoryBlockCache(conf);
+    for (int i = 1; i < blocks.length; i++) {
+      assertBlockEquals(blocks[i].getBlock(),
+        restarted.getBlock(blocks[i].getBlockName(), true, false, true));
+    }
+    restarted.shutdown();
+  }
+
+  @Test
+  public void testReplacesLeastRecentlyAccessedInSet() throws Exception {
+    // a single set, so every block competes for the same slots
+    conf.setLong(SharedMemoryBlockCache.SHM_SIZE_KEY,
+      SharedMemoryBlockCache.WAYS * (long) SharedMemoryBlockCache.SHM_SLOT_SIZE_DEFAULT);
+    SharedMemoryBlockCache cache = new SharedMemoryBlockCache(conf);
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(HConstants.DEFAULT_BLOCKSIZE,
+      SharedMemoryBlockCache.WAYS + 1);
+    for (int i = 0; i < SharedMemoryBlockCache.WAYS; i++) {
+      cache.cacheBlock(blocks[i].getBlockName(), blocks[i].getBlock());
+      Thread.sleep(2);
+    }
+    // touch the first block so the second becomes the oldest
+    assertNotNull(cache.getBlock(blocks[0].getBlockName(), true, false, true));
+    cache.cacheBlock(blocks[SharedMemoryBlockCache.WAYS].getBlockName(),
+      blocks[SharedMemoryBlockCache.WAYS].getBlock());
+    assertNotNull(cache.getBlock(blocks[0].getBlockName(), true, false, true));
+    assertNull(cache.getBlock(blocks[1].getBlockName(), true, false, true));
+    assertNotNull(cache.getBlock(blocks[SharedMemoryBlockCache.WAYS].getBlockName(), true, false,
+      true));
+    cache.shutdown();
+  }
+
+  @Test
+  public void testStaleWriterLosesSlotAfterTakeover() throws Exception {
+    conf.setLong(SharedMemoryBlockCache.SHM_SIZE_KEY,
+      SharedMemoryBlockCache.WAYS * (long) SharedMemoryBlockCache.SHM_SLOT_SIZE_DEFAULT);
+    SharedMemoryBlockCache cache1 = new SharedMemoryBlockCache(conf);
+    SharedMemoryBlockCache cache2 = new SharedMemoryBlockCache(conf);
+    long now = EnvironmentEdgeManager.currentTime();
+    long stale = cache1.claim(0, now);
+    assertTrue(stale > 0);
+    assertEquals(-1, cache2.claim(0, now));
+    // the first writer looks dead to the second one
+    long owned = cache2.claim(0, now + SharedMemoryBlockCache.STALE_WRITE_MS + 1);
+    assertTrue(owned > stale);
+    // the first writer finishing late must not move the sequence back
+    assertFalse(cache1.release(0, stale));
+    assertEquals(-1, cache1.claim(0, now + SharedMemoryBlockCache.STALE_WRITE_MS + 1));
+    assertTrue(cache2.release(0, owned));
+
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(HConstants.DEFAULT_BLOCKSIZE,
+      SharedMemoryBlockCache.WAYS);
+    for (HFileBlockPair block : blocks) {
+      cache1.cacheBlock(block.getBlockName(), block.getBlock());
+    }
+    for (HFileBlockPair block : blocks) {
+      assertBlockEquals(block.getBlock(), cache2.getBlock(block.getBlockName(), true, false, true));
+    }
+    cache1.shutdown();
+    cache2.shutdown();
+  }
+
+  @Test
+  public void testBlockLargerThanSlotNotCached() throws Exception {
+    conf.setInt(SharedMemoryBlockCache.SHM_SLOT_SIZE_KEY, 8 * 1024);
+    SharedMemoryBlockCache cache = new SharedMemoryBlockCache(conf);
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(HConstants.DEFAULT_BLOCKSIZE, 1);
+    cache.cacheBlock(blocks[0].getBlockName(), blocks[0].getBlock());
+    assertNull(cache.getBlock(blocks[0].getBlockName(), true, false, true));
+    assertFalse(cache.evictBlock(blocks[0].getBlockName()));
+    cache.shutdown();
+  }
+
+  @Test
+  public void testRefusesDifferentLayout() throws Exception {
+    new SharedMemoryBlockCache(conf).shutdown();
+    conf.setInt(SharedMemoryBlockCache.SHM_SLOT_SIZE_KEY, 128 * 1024);
+    assertThrows(IOException.class, () -> new SharedMemoryBlockCache(conf));
+  }
+}
@@ -82,6 +82,16 @@ public interface MetricsHeapMemoryManagerSource extends BaseSource {
    */
   void setCurMemStoreOffHeapSizeGauge(long memStoreOffHeapSize);
 
+  /**
+   * Set the MSLAB chunk pool gauges
+   * @param pooledChunksSize   the size of the free chunks retained by the pools, in bytes.
+   * @param pooledChunkCount   the number of chunks created by the pools.
+   * @param reusedChunkCount   the number of chunks handed out again by the pools.
+   * @param unpooledChunkCount the number of chunks created outside of the pools.
+   */
+  void setChunkPoolGauges(long pooledChunksSize, long pooledChunkCount, long reusedChunkCount,
+    long unpooledChunkCount);
+
   /**
    * Update the increase/decrease memstore size histogram
    * @param memStoreDeltaSize the tuning result of memstore.
@@ -140,6 +150,17 @@ public interface MetricsHeapMemoryManagerSource extends BaseSource {
   String BLOCKCACHE_SIZE_GAUGE_NAME = "blockCacheSize";
   String BLOCKCACHE_SIZE_GAUGE_DESC = "BlockCache used in bytes by the RegionServer";
 
+  String CHUNK_POOL_SIZE_GAUGE_NAME = "chunkPoolSize";
+  String CHUNK_POOL_SIZE_GAUGE_DESC = "Free MemStoreLAB chunks retained by the pools in bytes";
+  String CHUNK_POOL_CREATED_GAUGE_NAME = "chunkPoolCreatedChunks";
+  String CHUNK_POOL_CREATED_GAUGE_DESC = "Number of MemStoreLAB chunks created by the pools";
+  String CHUNK_POOL_REUSED_GAUGE_NAME = "chunkPoolReusedChunks";
+  String CHUNK_POOL_REUSED_GAUGE_DESC = "Number of MemStoreLAB chunks reused from the pools";
+  String UNPOOLED_CHUNKS_GAUGE_NAME = "unpooledChunks";
+  String UNPOOLED_CHUNKS_GAUGE_DESC =
+    "Number of MemStoreLAB chunks created outside of the pools, as the pools were exhausted or "
+      + "the chunks were not of a pooled size";
+
   // Counters
   String DO_NOTHING_COUNTER_NAME = "tunerDoNothingCounter";
   String DO_NOTHING_COUNTER_DESC =
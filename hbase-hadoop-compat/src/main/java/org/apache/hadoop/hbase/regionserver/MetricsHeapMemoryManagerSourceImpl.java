@@ -44,6 +44,10 @@ public class MetricsHeapMemoryManagerSourceImpl extends BaseSourceImpl
   private final MutableGaugeLong memStoreOnHeapSizeGauge;
   private final MutableGaugeLong memStoreOffHeapSizeGauge;
   private final MutableGaugeLong blockCacheSizeGauge;
+  private final MutableGaugeLong chunkPoolSizeGauge;
+  private final MutableGaugeLong chunkPoolCreatedGauge;
+  private final MutableGaugeLong chunkPoolReusedGauge;
+  private final MutableGaugeLong unpooledChunksGauge;
 
   private final MutableFastCounter doNothingCounter;
   private final MutableFastCounter aboveHeapOccupancyLowWatermarkCounter;
@@ -83,6 +87,14 @@ public class MetricsHeapMemoryManagerSourceImpl extends BaseSourceImpl
       MEMSTORE_OFFHEAP_SIZE_GAUGE_DESC, 0L);
     blockCacheSizeGauge =
       getMetricsRegistry().newGauge(BLOCKCACHE_SIZE_GAUGE_NAME, BLOCKCACHE_SIZE_GAUGE_DESC, 0L);
+    chunkPoolSizeGauge =
+      getMetricsRegistry().newGauge(CHUNK_POOL_SIZE_GAUGE_NAME, CHUNK_POOL_SIZE_GAUGE_DESC, 0L);
+    chunkPoolCreatedGauge = getMetricsRegistry().newGauge(CHUNK_POOL_CREATED_GAUGE_NAME,
+      CHUNK_POOL_CREATED_GAUGE_DESC, 0L);
+    chunkPoolReusedGauge =
+      getMetricsRegistry().newGauge(CHUNK_POOL_REUSED_GAUGE_NAME, CHUNK_POOL_REUSED_GAUGE_DESC, 0L);
+    unpooledChunksGauge =
+      getMetricsRegistry().newGauge(UNPOOLED_CHUNKS_GAUGE_NAME, UNPOOLED_CHUNKS_GAUGE_DESC, 0L);
 
     // Counters
     doNothingCounter =
@@ -127,6 +139,15 @@ public class MetricsHeapMemoryManagerSourceImpl extends BaseSourceImpl
     memStoreOffHeapSizeGauge.set(memstoreOffHeapSize);
   }
 
+  @Override
+  public void setChunkPoolGauges(long pooledChunksSize, long pooledChunkCount,
+    long reusedChunkCount, long unpooledChunkCount) {
+    chunkPoolSizeGauge.set(pooledChunksSize);
+    chunkPoolCreatedGauge.set(pooledChunkCount);
+    chunkPoolReusedGauge.set(reusedChunkCount);
+    unpooledChunksGauge.set(unpooledChunkCount);
+  }
+
   @Override
   public void updateMemStoreDeltaSizeHistogram(int memStoreDeltaSize) {
     if (memStoreDeltaSize >= 0) {
@@ -174,6 +174,19 @@ public interface MetricsRegionServerSource extends BaseSource, JvmPauseMonitorSo
    */
   void updateFlushOutputSize(long bytes);
 
+  /**
+   * Update the in-memory compaction time histogram
+   * @param t time it took, in milliseconds
+   */
+  void updateInMemoryCompactionTime(long t);
+
+  /**
+   * Update the in-memory compaction input size and throughput histograms
+   * @param bytes          the number of bytes of the compacted memstore segments
+   * @param bytesPerSecond the rate the segments were compacted at
+   */
+  void updateInMemoryCompactionInputSize(long bytes, long bytesPerSecond);
+
   /**
    * Update the compaction time histogram, both major and minor
    * @param isMajor whether compaction is a major compaction
@@ -364,6 +377,12 @@ public interface MetricsRegionServerSource extends BaseSource, JvmPauseMonitorSo
   String BLOCK_CACHE_FAILED_INSERTION_COUNT = "blockCacheFailedInsertionCount";
   String BLOCK_CACHE_FAILED_INSERTION_COUNT_DESC =
     "Number of times that a block cache " + "insertion failed. Usually due to size restrictions.";
+  String BLOCK_CACHE_COMPRESSED_HIT_COUNT = "blockCacheCompressedHitCount";
+  String BLOCK_CACHE_COMPRESSED_HIT_COUNT_DESC =
+    "Count of block cache hits on blocks that were cached compressed and had to be decompressed.";
+  String BLOCK_CACHE_DECOMPRESS_TIME_PER_HIT = "blockCacheDecompressTimePerHit";
+  String BLOCK_CACHE_DECOMPRESS_TIME_PER_HIT_DESC =
+    "Mean time in microseconds to decompress a block that was cached compressed.";
   String BLOCK_CACHE_DATA_MISS_COUNT = "blockCacheDataMissCount";
   String BLOCK_CACHE_ENCODED_DATA_MISS_COUNT = "blockCacheEncodedDataMissCount";
   String BLOCK_CACHE_LEAF_INDEX_MISS_COUNT = "blockCacheLeafIndexMissCount";
@@ -439,6 +458,16 @@ public interface MetricsRegionServerSource extends BaseSource, JvmPauseMonitorSo
   String L2_CACHE_MISS_RATIO_DESC = "L2 cache miss ratio.";
   String L2_CACHE_MISS_CACHING_RATIO = "l2CacheMissCachingRatio";
   String L2_CACHE_MISS_CACHING_RATIO_DESC = "Miss Caching ratio of L2 cache";
+  // Per tier metrics of a bucket cache demoting to slower tiers, formatted with the tier number
+  String L2_CACHE_TIER_SIZE = "l2CacheTier%dSize";
+  String L2_CACHE_TIER_SIZE_DESC = "Size of tier %d of the L2 cache in bytes";
+  String L2_CACHE_TIER_HIT_COUNT = "l2CacheTier%dHitCount";
+  String L2_CACHE_TIER_HIT_COUNT_DESC = "Count of the L2 cache hits served by tier %d";
+  String L2_CACHE_TIER_EVICTION_COUNT = "l2CacheTier%dEvictionCount";
+  String L2_CACHE_TIER_EVICTION_COUNT_DESC = "Count of blocks evicted from tier %d of the L2 cache";
+  String L2_CACHE_TIER_DEMOTED_COUNT = "l2CacheTier%dDemotedCount";
+  String L2_CACHE_TIER_DEMOTED_COUNT_DESC =
+    "Count of blocks demoted from tier %d of the L2 cache to the next tier";
   String RS_START_TIME_NAME = "regionServerStartTime";
   String ZOOKEEPER_QUORUM_NAME = "zookeeperQuorum";
   String SERVER_NAME_NAME = "serverName";
@@ -567,6 +596,19 @@ public interface MetricsRegionServerSource extends BaseSource, JvmPauseMonitorSo
   String FLUSHED_MEMSTORE_BYTES = "flushedMemstoreBytes";
   String FLUSHED_MEMSTORE_BYTES_DESC = "Total number of bytes of cells in memstore from flush";
 
+  String IN_MEMORY_COMPACTION_TIME = "inMemoryCompactionTime";
+  String IN_MEMORY_COMPACTION_TIME_DESC =
+    "Histogram for the time in millis for in-memory compaction and merge of memstore segments";
+  String IN_MEMORY_COMPACTION_INPUT_SIZE = "inMemoryCompactionInputSize";
+  String IN_MEMORY_COMPACTION_INPUT_SIZE_DESC =
+    "Histogram for number of bytes of the memstore segments of an in-memory compaction";
+  String IN_MEMORY_COMPACTION_THROUGHPUT = "inMemoryCompactionThroughput";
+  String IN_MEMORY_COMPACTION_THROUGHPUT_DESC =
+    "Histogram for the bytes per second memstore segments are compacted in memory at";
+  String IN_MEMORY_COMPACTED_INPUT_BYTES = "inMemoryCompactedInputBytes";
+  String IN_MEMORY_COMPACTED_INPUT_BYTES_DESC =
+    "Total number of bytes of memstore segments compacted in memory";
+
   String COMPACTION_TIME = "compactionTime";
   String COMPACTION_TIME_DESC =
     "Histogram for the time in millis for compaction, both major and minor";
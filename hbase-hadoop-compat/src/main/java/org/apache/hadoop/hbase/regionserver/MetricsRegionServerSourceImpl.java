@@ -71,6 +71,12 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
   private final MutableFastCounter flushedMemstoreBytes;
   private final MutableFastCounter flushedOutputBytes;
 
+  // in-memory compaction related metrics
+  private final MetricHistogram inMemoryCompactionTimeHisto;
+  private final MetricHistogram inMemoryCompactionInputSizeHisto;
+  private final MetricHistogram inMemoryCompactionThroughputHisto;
+  private final MutableFastCounter inMemoryCompactedInputBytes;
+
   // compaction related metrics
   private final MetricHistogram compactionTimeHisto;
   private final MetricHistogram compactionInputFileCountHisto;
@@ -150,6 +156,15 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
     flushedMemstoreBytes =
       getMetricsRegistry().newCounter(FLUSHED_MEMSTORE_BYTES, FLUSHED_MEMSTORE_BYTES_DESC, 0L);
 
+    inMemoryCompactionTimeHisto = getMetricsRegistry().newTimeHistogram(IN_MEMORY_COMPACTION_TIME,
+      IN_MEMORY_COMPACTION_TIME_DESC);
+    inMemoryCompactionInputSizeHisto = getMetricsRegistry()
+      .newSizeHistogram(IN_MEMORY_COMPACTION_INPUT_SIZE, IN_MEMORY_COMPACTION_INPUT_SIZE_DESC);
+    inMemoryCompactionThroughputHisto = getMetricsRegistry()
+      .newSizeHistogram(IN_MEMORY_COMPACTION_THROUGHPUT, IN_MEMORY_COMPACTION_THROUGHPUT_DESC);
+    inMemoryCompactedInputBytes = getMetricsRegistry()
+      .newCounter(IN_MEMORY_COMPACTED_INPUT_BYTES, IN_MEMORY_COMPACTED_INPUT_BYTES_DESC, 0L);
+
     compactionTimeHisto =
       getMetricsRegistry().newTimeHistogram(COMPACTION_TIME, COMPACTION_TIME_DESC);
     compactionInputFileCountHisto = getMetricsRegistry().newHistogram(COMPACTION_INPUT_FILE_COUNT,
@@ -293,6 +308,18 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
     flushedOutputBytes.incr(bytes);
   }
 
+  @Override
+  public void updateInMemoryCompactionTime(long t) {
+    inMemoryCompactionTimeHisto.add(t);
+  }
+
+  @Override
+  public void updateInMemoryCompactionInputSize(long bytes, long bytesPerSecond) {
+    inMemoryCompactionInputSizeHisto.add(bytes);
+    inMemoryCompactionThroughputHisto.add(bytesPerSecond);
+    inMemoryCompactedInputBytes.incr(bytes);
+  }
+
   @Override
   public void updateCompactionTime(boolean isMajor, long t) {
     compactionTimeHisto.add(t);
@@ -406,6 +433,11 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
         .addCounter(
           Interns.info(BLOCK_CACHE_FAILED_INSERTION_COUNT, BLOCK_CACHE_FAILED_INSERTION_COUNT_DESC),
           rsWrap.getBlockCacheFailedInsertions())
+        .addCounter(
+          Interns.info(BLOCK_CACHE_COMPRESSED_HIT_COUNT, BLOCK_CACHE_COMPRESSED_HIT_COUNT_DESC),
+          rsWrap.getBlockCacheCompressedHitCount())
+        .addGauge(Interns.info(BLOCK_CACHE_DECOMPRESS_TIME_PER_HIT,
+          BLOCK_CACHE_DECOMPRESS_TIME_PER_HIT_DESC), rsWrap.getBlockCacheDecompressTimePerHit())
         .addCounter(Interns.info(BLOCK_CACHE_DATA_MISS_COUNT, ""), rsWrap.getDataMissCount())
         .addCounter(Interns.info(BLOCK_CACHE_LEAF_INDEX_MISS_COUNT, ""),
           rsWrap.getLeafIndexMissCount())
@@ -494,6 +526,12 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
           Interns.info(EXCLUDE_DATA_NODES_DETAILS, EXCLUDE_DATA_NODES_DETAILS_DESC),
           rsWrap.getWALExcludeDNs().toString());
       }
+      int l2CacheTiers = rsWrap.getL2CacheTierCount();
+      if (l2CacheTiers > 1) {
+        for (int tier = 0; tier < l2CacheTiers; tier++) {
+          addL2CacheTierMetrics(metricsRecordBuilder, tier);
+        }
+      }
     }
 
     metricsRegistry.snapshot(mrb, all);
@@ -505,6 +543,22 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
     }
   }
 
+  private void addL2CacheTierMetrics(MetricsRecordBuilder mrb, int tier) {
+    mrb
+      .addGauge(Interns.info(String.format(L2_CACHE_TIER_SIZE, tier),
+        String.format(L2_CACHE_TIER_SIZE_DESC, tier)), rsWrap.getL2CacheTierSize(tier))
+      .addGauge(Interns.info(String.format(L2_CACHE_TIER_HIT_COUNT, tier),
+        String.format(L2_CACHE_TIER_HIT_COUNT_DESC, tier)), rsWrap.getL2CacheTierHitCount(tier))
+      .addCounter(
+        Interns.info(String.format(L2_CACHE_TIER_EVICTION_COUNT, tier),
+          String.format(L2_CACHE_TIER_EVICTION_COUNT_DESC, tier)),
+        rsWrap.getL2CacheTierEvictedCount(tier))
+      .addCounter(
+        Interns.info(String.format(L2_CACHE_TIER_DEMOTED_COUNT, tier),
+          String.format(L2_CACHE_TIER_DEMOTED_COUNT_DESC, tier)),
+        rsWrap.getL2CacheTierDemotedCount(tier));
+  }
+
   private MetricsRecordBuilder addGaugesToMetricsRecordBuilder(MetricsRecordBuilder mrb) {
     return mrb.addGauge(Interns.info(REGION_COUNT, REGION_COUNT_DESC), rsWrap.getNumOnlineRegions())
       .addGauge(Interns.info(STORE_COUNT, STORE_COUNT_DESC), rsWrap.getNumStores())
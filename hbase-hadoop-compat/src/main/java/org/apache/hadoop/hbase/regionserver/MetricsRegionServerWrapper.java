@@ -349,6 +349,16 @@ public interface MetricsRegionServerWrapper {
    */
   long getBlockCacheFailedInsertions();
 
+  /**
+   * Number of block cache hits on blocks that were cached compressed.
+   */
+  long getBlockCacheCompressedHitCount();
+
+  /**
+   * Mean time in microseconds to decompress a block that was cached compressed.
+   */
+  double getBlockCacheDecompressTimePerHit();
+
   /**
    * Cache size (bytes) of L1 cache
    */
@@ -469,6 +479,32 @@ public interface MetricsRegionServerWrapper {
    */
   double getL2CacheMissCachingRatio();
 
+  /**
+   * Number of tiers of L2 cache, more than 1 when the bucket cache demotes to slower tiers.
+   */
+  int getL2CacheTierCount();
+
+  /**
+   * Cache size (bytes) of the given tier of L2 cache, 0 being the first tier.
+   */
+  long getL2CacheTierSize(int tier);
+
+  /**
+   * Count of the L2 cache hits served by the given tier, 0 being the first tier.
+   */
+  long getL2CacheTierHitCount(int tier);
+
+  /**
+   * Number of blocks evicted from the given tier of L2 cache, 0 being the first tier.
+   */
+  long getL2CacheTierEvictedCount(int tier);
+
+  /**
+   * Number of blocks demoted from the given tier of L2 cache to the next tier, 0 being the first
+   * tier.
+   */
+  long getL2CacheTierDemotedCount(int tier);
+
   /**
    * Force a re-computation of the metrics.
    */
@@ -58,7 +58,10 @@ public enum ExecutorType {
   RS_FLUSH_OPERATIONS(37),
   RS_RELOAD_QUOTAS_OPERATIONS(38),
   RS_LOG_ROLL(39),
-  RS_REFRESH_HFILES(39);
+  RS_REFRESH_HFILES(39),
+  RS_IN_MEMORY_COMPACTION_RANGES(40),
+  RS_MULTIGET_BLOCK_LOAD(41),
+  RS_HFILE_READ_AHEAD(42);
 
   ExecutorType(int value) {
   }
@@ -87,6 +87,24 @@ public interface BlockCache extends Iterable<CachedBlock>, ConfigurationObserver
     return getBlock(cacheKey, caching, repeat, updateCacheMetrics);
   }
 
+  /**
+   * Fetch several blocks from cache in one call. Caches which can serve a batch of lookups cheaper
+   * than one lookup at a time, for instance by merging their device reads, should override this.
+   * The default looks the blocks up one after another.
+   * @param cacheKeys          Blocks to fetch.
+   * @param caching            Whether this request has caching enabled (used for stats)
+   * @param updateCacheMetrics Whether to update cache metrics or not
+   * @return Blocks in the same order as {@code cacheKeys}, null for the ones not in cache.
+   */
+  default Cacheable[] getBlocks(BlockCacheKey[] cacheKeys, boolean caching,
+    boolean updateCacheMetrics) {
+    Cacheable[] blocks = new Cacheable[cacheKeys.length];
+    for (int i = 0; i < cacheKeys.length; i++) {
+      blocks[i] = getBlock(cacheKeys[i], caching, false, updateCacheMetrics);
+    }
+    return blocks;
+  }
+
   /**
    * Evict block from cache.
    * @param cacheKey Block to evict
@@ -59,6 +59,20 @@ public final class BlockCacheFactory {
    */
   public static final String BUCKET_CACHE_BUCKETS_KEY = "hbase.bucketcache.bucket.sizes";
 
+  /**
+   * Prefix of the configuration of the slower tiers of a multi device bucket cache. The bucket
+   * cache configured with {@link HConstants#BUCKET_CACHE_IOENGINE_KEY} is the first tier, blocks
+   * its eviction process drops are demoted to tier 1, configured with
+   * <code>hbase.bucketcache.tier.1.ioengine</code>, <code>hbase.bucketcache.tier.1.size</code> (in
+   * bytes, size suffixes like 'g' allowed) and optionally
+   * <code>hbase.bucketcache.tier.1.persistent.path</code>, then to tier 2 and so on. Tiers are read
+   * until the first one without an ioengine.
+   */
+  public static final String BUCKET_CACHE_TIER_KEY_PREFIX = "hbase.bucketcache.tier.";
+  public static final String BUCKET_CACHE_TIER_IOENGINE_SUFFIX = ".ioengine";
+  public static final String BUCKET_CACHE_TIER_SIZE_SUFFIX = ".size";
+  public static final String BUCKET_CACHE_TIER_PERSISTENT_PATH_SUFFIX = ".persistent.path";
+
   /**
    * Defaults for Bucket cache
    */
@@ -109,6 +123,7 @@ public final class BlockCacheFactory {
 
   public static BlockCache createBlockCache(Configuration conf,
     Map<String, HRegion> onlineRegions) {
+    BlockCacheTracer.startIfConfigured(conf);
     FirstLevelBlockCache l1Cache = createFirstLevelCache(conf);
     if (l1Cache == null) {
       return null;
@@ -161,7 +176,8 @@ public final class BlockCacheFactory {
    * Enum of all built in external block caches. This is used for config.
    */
   private static enum ExternalBlockCaches {
-    memcached("org.apache.hadoop.hbase.io.hfile.MemcachedBlockCache");
+    memcached("org.apache.hadoop.hbase.io.hfile.MemcachedBlockCache"),
+    shm("org.apache.hadoop.hbase.io.hfile.SharedMemoryBlockCache");
 
     // TODO(eclark): Consider more. Redis, etc.
     Class<? extends BlockCache> clazz;
@@ -257,6 +273,27 @@ public final class BlockCacheFactory {
       bucketCache = new BucketCache(bucketCacheIOEngineName, bucketCacheSize, blockSize,
         bucketSizes, writerThreads, writerQueueLen, persistentPath, ioErrorsTolerationDuration, c,
         onlineRegions);
+      BucketCache lastTier = bucketCache;
+      for (int tier = 1;; tier++) {
+        String tierPrefix = BUCKET_CACHE_TIER_KEY_PREFIX + tier;
+        String tierIOEngineName = c.get(tierPrefix + BUCKET_CACHE_TIER_IOENGINE_SUFFIX);
+        if (tierIOEngineName == null || tierIOEngineName.isEmpty()) {
+          break;
+        }
+        long tierSize = c.getLongBytes(tierPrefix + BUCKET_CACHE_TIER_SIZE_SUFFIX, 0);
+        if (tierSize <= 0) {
+          throw new IllegalStateException("Bucket cache tier " + tier + " size <= 0; Check "
+            + tierPrefix + BUCKET_CACHE_TIER_SIZE_SUFFIX + " setting");
+        }
+        LOG.info("Creating bucket cache tier {} with ioengine={}, size={}", tier, tierIOEngineName,
+          StringUtils.byteDesc(tierSize));
+        BucketCache nextTier = new BucketCache(tierIOEngineName, tierSize, blockSize, bucketSizes,
+          writerThreads, writerQueueLen,
+          c.get(tierPrefix + BUCKET_CACHE_TIER_PERSISTENT_PATH_SUFFIX), ioErrorsTolerationDuration,
+          c, onlineRegions);
+        lastTier.setNextTier(nextTier);
+        lastTier = nextTier;
+      }
     } catch (IOException ioex) {
       LOG.error("Can't instantiate bucket cache", ioex);
       throw new RuntimeException(ioex);
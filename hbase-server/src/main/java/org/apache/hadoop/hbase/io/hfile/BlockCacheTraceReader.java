@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Reads back a trace written by {@link BlockCacheTracer}, oldest record first. If the trace
+ * wrapped around its ring, only the last capacity records are available.
+ */
+@InterfaceAudience.Private
+public class BlockCacheTraceReader implements Closeable {
+
+  private static final int READ_BATCH = 4096;
+
+  private final FileChannel channel;
+  private final long capacity;
+  private final long count;
+  private final long first;
+  private final ByteBuffer buf = ByteBuffer.allocate(READ_BATCH * BlockCacheTraceRecord.SIZE);
+  private long read;
+
+  public BlockCacheTraceReader(File file) throws IOException {
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      ByteBuffer header = ByteBuffer.allocate(BlockCacheTracer.HEADER_SIZE);
+      readFully(header, 0);
+      header.flip();
+      if (header.getInt() != BlockCacheTracer.MAGIC) {
+        throw new IOException(file + " is not a block cache trace");
+      }
+      int recordSize = header.getInt();
+      if (recordSize != BlockCacheTraceRecord.SIZE) {
+        throw new IOException("Unsupported record size " + recordSize + " in " + file);
+      }
+      this.capacity = header.getLong();
+      long written = header.getLong();
+      this.count = Math.min(written, capacity);
+      this.first = written - count;
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    buf.flip();
+  }
+
+  /** Returns the number of records in the trace. */
+  public long getCount() {
+    return count;
+  }
+
+  /** Returns the next record, or null once all records have been read. */
+  public BlockCacheTraceRecord next() throws IOException {
+    if (!buf.hasRemaining()) {
+      if (read >= count) {
+        return null;
+      }
+      long slot = (first + read) % capacity;
+      // read up to the end of the ring at most, the next call continues from its start
+      long n = Math.min(Math.min(READ_BATCH, count - read), capacity - slot);
+      buf.clear();
+      buf.limit((int) n * BlockCacheTraceRecord.SIZE);
+      readFully(buf, BlockCacheTracer.HEADER_SIZE + slot * BlockCacheTraceRecord.SIZE);
+      buf.flip();
+    }
+    read++;
+    return BlockCacheTraceRecord.readFrom(buf);
+  }
+
+  private void readFully(ByteBuffer dst, long pos) throws IOException {
+    while (dst.hasRemaining()) {
+      int n = channel.read(dst, pos);
+      if (n < 0) {
+        throw new IOException("Unexpected end of block cache trace at " + pos);
+      }
+      pos += n;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
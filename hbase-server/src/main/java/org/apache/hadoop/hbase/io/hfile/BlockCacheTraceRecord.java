@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.nio.ByteBuffer;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A single block cache access as recorded by {@link BlockCacheTracer}. Records have a fixed
+ * {@link #SIZE} byte binary layout so a trace file can be used as a ring and be replayed without
+ * any framing:
+ *
+ * <pre>
+ * timestamp (8) | key hash (8) | size (4) | block type (1) | caller (1) | flags (1) | unused (1)
+ * </pre>
+ *
+ * The key is reduced to a 64 bit hash of the hfile name and block offset, enough to tell blocks
+ * apart when replaying the trace without keeping file names around.
+ */
+@InterfaceAudience.Private
+public final class BlockCacheTraceRecord {
+
+  public static final int SIZE = 24;
+
+  private static final byte FLAG_HIT = 0x01;
+  private static final byte FLAG_CACHE = 0x02;
+  private static final byte FLAG_IN_MEMORY = 0x04;
+  private static final byte FLAG_PRIMARY = 0x08;
+
+  private static final BlockType[] BLOCK_TYPES = BlockType.values();
+
+  /**
+   * What the block was read for.
+   */
+  public enum Caller {
+    /** Positional read, usually a Get or a short scan. */
+    GET,
+    /** Streaming read of a user scan. */
+    SCAN,
+    /** Read on behalf of a compaction. */
+    COMPACTION,
+    /** Read by the prefetcher, only populates the cache. */
+    PREFETCH,
+    /** Block cached on write, i.e. while flushing or compacting. */
+    WRITE;
+
+    private static final Caller[] VALUES = values();
+
+    static Caller of(boolean pread, boolean isCompaction, boolean cacheOnly) {
+      if (cacheOnly) {
+        return PREFETCH;
+      }
+      if (isCompaction) {
+        return COMPACTION;
+      }
+      return pread ? GET : SCAN;
+    }
+  }
+
+  private final long timestamp;
+  private final long keyHash;
+  private final int size;
+  private final BlockType blockType;
+  private final Caller caller;
+  private final byte flags;
+
+  BlockCacheTraceRecord(long timestamp, long keyHash, int size, BlockType blockType,
+    Caller caller, boolean hit, boolean cache, boolean inMemory, boolean primary) {
+    this(timestamp, keyHash, size, blockType, caller,
+      (byte) ((hit ? FLAG_HIT : 0) | (cache ? FLAG_CACHE : 0) | (inMemory ? FLAG_IN_MEMORY : 0)
+        | (primary ? FLAG_PRIMARY : 0)));
+  }
+
+  private BlockCacheTraceRecord(long timestamp, long keyHash, int size, BlockType blockType,
+    Caller caller, byte flags) {
+    this.timestamp = timestamp;
+    this.keyHash = keyHash;
+    this.size = size;
+    this.blockType = blockType;
+    this.caller = caller;
+    this.flags = flags;
+  }
+
+  /**
+   * Hashes the parts of a {@link BlockCacheKey} which identify a block, the hfile name and the
+   * offset.
+   */
+  static long hash(BlockCacheKey key) {
+    // String caches its hash code so this does not rehash the name on every access
+    long h = key.getHfileName().hashCode();
+    h = h * 0x9E3779B97F4A7C15L + key.getOffset();
+    // murmur3 finalizer to spread the bits of the combined value
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  void writeTo(ByteBuffer buf) {
+    buf.putLong(timestamp);
+    buf.putLong(keyHash);
+    buf.putInt(size);
+    buf.put((byte) (blockType == null ? -1 : blockType.ordinal()));
+    buf.put((byte) caller.ordinal());
+    buf.put(flags);
+    buf.put((byte) 0);
+  }
+
+  static BlockCacheTraceRecord readFrom(ByteBuffer buf) {
+    long timestamp = buf.getLong();
+    long keyHash = buf.getLong();
+    int size = buf.getInt();
+    byte type = buf.get();
+    byte caller = buf.get();
+    byte flags = buf.get();
+    buf.get();
+    return new BlockCacheTraceRecord(timestamp, keyHash, size, type < 0 ? null : BLOCK_TYPES[type],
+      Caller.VALUES[caller], flags);
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public long getKeyHash() {
+    return keyHash;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /** Returns the type of the block, or null if it was not known when the access was recorded. */
+  public BlockType getBlockType() {
+    return blockType;
+  }
+
+  public Caller getCaller() {
+    return caller;
+  }
+
+  /** Returns true if the block was served from the block cache. */
+  public boolean isHit() {
+    return (flags & FLAG_HIT) != 0;
+  }
+
+  /** Returns true if the block was, or on a miss would have been, put into the block cache. */
+  public boolean isCache() {
+    return (flags & FLAG_CACHE) != 0;
+  }
+
+  public boolean isInMemory() {
+    return (flags & FLAG_IN_MEMORY) != 0;
+  }
+
+  public boolean isPrimary() {
+    return (flags & FLAG_PRIMARY) != 0;
+  }
+
+  @Override
+  public String toString() {
+    return "timestamp=" + timestamp + ", key=" + Long.toHexString(keyHash) + ", size=" + size
+      + ", type=" + blockType + ", caller=" + caller + ", hit=" + isHit() + ", cache=" + isCache();
+  }
+}
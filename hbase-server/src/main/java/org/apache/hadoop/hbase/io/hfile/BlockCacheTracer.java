@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records every block cache lookup and insertion made by the HFile readers and writers into a
+ * local trace file, so the access pattern of a production regionserver can be replayed offline
+ * against different cache policies and sizes.
+ * <p>
+ * Tracing is off unless {@link #TRACE_FILE_KEY} is set. When off, the cost on the read path is a
+ * single volatile read. When on, callers only enqueue a {@link BlockCacheTraceRecord} into a
+ * bounded queue; if the writer falls behind records are dropped rather than slowing reads down.
+ * A background thread writes the records into a file of at most {@link #TRACE_MAX_RECORDS_KEY}
+ * records which is used as a ring, overwriting the oldest records once full. The file starts with
+ * a {@link #HEADER_SIZE} byte header:
+ *
+ * <pre>
+ * magic (4) | record size (4) | capacity in records (8) | records written (8)
+ * </pre>
+ *
+ * See {@link BlockCacheTraceReader} for reading a trace back.
+ */
+@InterfaceAudience.Private
+public final class BlockCacheTracer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlockCacheTracer.class);
+
+  public static final String TRACE_FILE_KEY = "hbase.blockcache.trace.file";
+
+  public static final String TRACE_MAX_RECORDS_KEY = "hbase.blockcache.trace.max.records";
+
+  public static final long DEFAULT_TRACE_MAX_RECORDS = 10_000_000L;
+
+  public static final String TRACE_QUEUE_SIZE_KEY = "hbase.blockcache.trace.queue.size";
+
+  public static final int DEFAULT_TRACE_QUEUE_SIZE = 65536;
+
+  static final int MAGIC = 0x42435431; // "BCT1"
+
+  static final int HEADER_SIZE = 24;
+
+  private static final int WRITE_BATCH = 1024;
+
+  private static volatile BlockCacheTracer instance;
+
+  private final File file;
+  private final FileChannel channel;
+  private final long capacity;
+  private final BlockingQueue<BlockCacheTraceRecord> queue;
+  private final LongAdder dropped = new LongAdder();
+  private final Thread writer;
+  private volatile boolean running = true;
+  private long written;
+
+  private BlockCacheTracer(File file, long capacity, int queueSize) throws IOException {
+    this.file = file;
+    this.capacity = capacity;
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    writeHeader();
+    this.writer = new Thread(this::writeLoop, "BlockCacheTracer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Starts tracing to the file named by {@link #TRACE_FILE_KEY} if it is set, replacing any trace
+   * already running in this JVM.
+   */
+  public static synchronized void startIfConfigured(Configuration conf) {
+    String path = conf.get(TRACE_FILE_KEY);
+    if (path == null || path.isEmpty()) {
+      return;
+    }
+    stop();
+    long capacity = conf.getLong(TRACE_MAX_RECORDS_KEY, DEFAULT_TRACE_MAX_RECORDS);
+    int queueSize = conf.getInt(TRACE_QUEUE_SIZE_KEY, DEFAULT_TRACE_QUEUE_SIZE);
+    try {
+      instance = new BlockCacheTracer(new File(path), capacity, queueSize);
+      LOG.info("Tracing block cache accesses to {}, capacity={} records", path, capacity);
+    } catch (IOException e) {
+      LOG.warn("Failed to open block cache trace file {}, not tracing", path, e);
+    }
+  }
+
+  /**
+   * Stops tracing, writing out whatever is still queued.
+   */
+  public static synchronized void stop() {
+    BlockCacheTracer tracer = instance;
+    if (tracer == null) {
+      return;
+    }
+    instance = null;
+    tracer.close();
+  }
+
+  public static boolean isEnabled() {
+    return instance != null;
+  }
+
+  /**
+   * Records an access to the block cache. Does nothing unless tracing is on.
+   * @param key       the key of the block
+   * @param blockType the type of the block, may be null if not known
+   * @param size      the serialized size of the block
+   * @param caller    what the block was read or written for
+   * @param hit       whether the block was served from the cache
+   * @param cache     whether the block was, or would have been if not already there, cached
+   * @param inMemory  whether the block belongs to an in-memory family
+   */
+  public static void record(BlockCacheKey key, BlockType blockType, int size,
+    BlockCacheTraceRecord.Caller caller, boolean hit, boolean cache, boolean inMemory) {
+    BlockCacheTracer tracer = instance;
+    if (tracer == null) {
+      return;
+    }
+    BlockCacheTraceRecord record = new BlockCacheTraceRecord(EnvironmentEdgeManager.currentTime(),
+      BlockCacheTraceRecord.hash(key), size, blockType, caller, hit, cache, inMemory,
+      key.isPrimary());
+    if (!tracer.queue.offer(record)) {
+      tracer.dropped.increment();
+    }
+  }
+
+  private void writeLoop() {
+    ByteBuffer buf = ByteBuffer.allocate(WRITE_BATCH * BlockCacheTraceRecord.SIZE);
+    List<BlockCacheTraceRecord> batch = new ArrayList<>(WRITE_BATCH);
+    try {
+      while (running || !queue.isEmpty()) {
+        BlockCacheTraceRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, WRITE_BATCH - 1);
+        write(batch, buf);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      LOG.warn("Failed writing block cache trace to {}, stopping trace", file, e);
+      running = false;
+      instance = null;
+    }
+  }
+
+  private void write(List<BlockCacheTraceRecord> batch, ByteBuffer buf) throws IOException {
+    long batchStart = written;
+    for (BlockCacheTraceRecord record : batch) {
+      record.writeTo(buf);
+      written++;
+      // a batch is written as one contiguous region, so flush when wrapping around the ring
+      if (written % capacity == 0) {
+        flush(buf, batchStart);
+        batchStart = written;
+      }
+    }
+    flush(buf, batchStart);
+    writeHeader();
+  }
+
+  private void flush(ByteBuffer buf, long firstRecord) throws IOException {
+    buf.flip();
+    long pos = HEADER_SIZE + (firstRecord % capacity) * BlockCacheTraceRecord.SIZE;
+    while (buf.hasRemaining()) {
+      pos += channel.write(buf, pos);
+    }
+    buf.clear();
+  }
+
+  private void writeHeader() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC).putInt(BlockCacheTraceRecord.SIZE).putLong(capacity).putLong(written);
+    header.flip();
+    long pos = 0;
+    while (header.hasRemaining()) {
+      pos += channel.write(header, pos);
+    }
+  }
+
+  private void close() {
+    running = false;
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close block cache trace file {}", file, e);
+    }
+    LOG.info("Stopped tracing block cache accesses to {}, written={}, dropped={}", file, written,
+      dropped.sum());
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.monitoring.ThreadLocalServerSideScanMetrics;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the blocks following the current block of a scanner into the block cache in the
+ * background, so that a scanner walking a file sequentially finds its next blocks in the cache
+ * instead of waiting for the file system.
+ * <p>
+ * The read-ahead window starts at {@link #INITIAL_BLOCKS} blocks and doubles, up to
+ * {@link #MAX_BLOCKS_KEY}, each time the scanner catches up with the blocks read so far, that is
+ * whenever the scanner consumes blocks faster than the read-ahead provides them. When the scanner
+ * moves to a block that does not follow the blocks read ahead, after a seek, the read-ahead
+ * restarts behind that block with the initial window. A new read is only issued once the blocks
+ * read ahead of the scanner fall under half the window.
+ * <p>
+ * Not thread safe, {@link #onDataBlock(HFileBlock)} and {@link #close()} are called by the scanner
+ * thread. The background reads only publish how far they got. Each background read pins the file
+ * through the {@link HFileReaderImpl.FilePin} of the reader until it is done, and does not read at
+ * all once the scanner has closed or moved elsewhere.
+ * <p>
+ * The reads run in the region server pool of {@link CacheConfig#getReadAheadPool()}, scanners of
+ * readers without a pool do not read ahead.
+ */
+@InterfaceAudience.Private
+public class BlockReadAhead {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlockReadAhead.class);
+
+  /**
+   * Maximum number of blocks to read ahead of a scanner. 0, the default, disables read-ahead. Can
+   * be set per column family through the family configuration. Only used by user scans on files
+   * whose blocks are cached.
+   */
+  public static final String MAX_BLOCKS_KEY = "hbase.hfile.readahead.max.blocks";
+
+  /** Number of threads of the region server pool reading ahead for all scanners */
+  public static final String THREADS_KEY = "hbase.hfile.readahead.threads";
+  public static final int DEFAULT_THREADS = 4;
+
+  /**
+   * Number of read-aheads waiting for a thread, further ones are dropped. Defaults to 16 per
+   * thread of the pool.
+   */
+  static final String QUEUE_SIZE_KEY = "hbase.hfile.readahead.queue.size";
+
+  static final int INITIAL_BLOCKS = 2;
+
+  private final HFile.Reader reader;
+  private final HFileReaderImpl.FilePin filePin;
+  private final ThreadPoolExecutor pool;
+  private final int maxQueued;
+  private final DataBlockEncoding encoding;
+  private final int maxBlocks;
+  private final long lastDataBlockOffset;
+
+  /** Read-ahead window in blocks */
+  private int blocks;
+  /** Offset where the current run of read-ahead started */
+  private long start = Long.MAX_VALUE;
+  /** Background reads stop at the first block starting at or after this offset */
+  private volatile long limit;
+  /** Bumped to stop the background reads of a previous run */
+  private volatile int generation;
+  /** Blocks of the current run before this offset are in the cache */
+  private volatile long readyEnd = -1;
+  /** On-disk size of the block at readyEnd, -1 if unknown */
+  private volatile int readyNextSize = -1;
+  private Future<?> task;
+  private long hits;
+
+  BlockReadAhead(HFile.Reader reader, DataBlockEncoding encoding, int maxBlocks,
+    ThreadPoolExecutor pool, int maxQueued) {
+    this.reader = reader;
+    this.filePin =
+      reader instanceof HFileReaderImpl ? ((HFileReaderImpl) reader).getFilePin() : null;
+    this.pool = pool;
+    this.maxQueued = maxQueued;
+    this.encoding = encoding;
+    this.maxBlocks = maxBlocks;
+    this.blocks = Math.min(INITIAL_BLOCKS, maxBlocks);
+    this.lastDataBlockOffset = reader.getTrailer().getLastDataBlockOffset();
+  }
+
+  /**
+   * Returns a read-ahead for a scanner of the given reader, or null if the scanner should not read
+   * ahead.
+   */
+  static BlockReadAhead create(HFile.Reader reader, DataBlockEncoding encoding,
+    boolean cacheBlocks, boolean isCompaction) {
+    if (!cacheBlocks || isCompaction || !(reader instanceof HFileReaderImpl)) {
+      return null;
+    }
+    HFileReaderImpl readerImpl = (HFileReaderImpl) reader;
+    Configuration conf = readerImpl.getConf();
+    int maxBlocks = conf == null ? 0 : conf.getInt(MAX_BLOCKS_KEY, 0);
+    if (maxBlocks <= 0) {
+      return null;
+    }
+    CacheConfig cacheConf = readerImpl.getCacheConf();
+    if (
+      cacheConf == null || !cacheConf.getBlockCache().isPresent()
+        || cacheConf.getReadAheadPool() == null
+    ) {
+      return null;
+    }
+    ThreadPoolExecutor pool = cacheConf.getReadAheadPool();
+    int maxQueued = conf.getInt(QUEUE_SIZE_KEY, pool.getCorePoolSize() * 16);
+    return new BlockReadAhead(reader, encoding, maxBlocks, pool, maxQueued);
+  }
+
+  /**
+   * Called with every data block the scanner moves to with {@link HFileScanner#next()}. Adapts the
+   * window and issues more background reads if needed.
+   * @return true if the block had been read ahead
+   */
+  boolean onDataBlock(HFileBlock block) {
+    long offset = block.getOffset();
+    long end = offset + block.getOnDiskSizeWithHeader();
+    long ready = readyEnd;
+    boolean hit = false;
+    if (offset < start || offset > ready) {
+      // the scanner did not follow the blocks read ahead, restart behind its block
+      synchronized (this) {
+        generation++;
+        start = end;
+        readyEnd = end;
+        readyNextSize = block.getNextBlockOnDiskSize();
+      }
+      blocks = Math.min(INITIAL_BLOCKS, maxBlocks);
+    } else if (end <= ready) {
+      hit = true;
+      hits++;
+      if (ThreadLocalServerSideScanMetrics.isScanMetricsEnabled()) {
+        ThreadLocalServerSideScanMetrics.addBlockReadAheadHits(1);
+      }
+    } else {
+      // the scanner caught up with the read-ahead, which has to go further
+      blocks = Math.min(blocks * 2, maxBlocks);
+    }
+    limit = end + (long) blocks * block.getOnDiskSizeWithHeader();
+    if (
+      (task == null || task.isDone()) && readyEnd <= lastDataBlockOffset
+        && readyEnd - end < (limit - end) / 2
+    ) {
+      // when too many read-aheads wait for a thread drop this one, the scanner reads the blocks
+      if (pool.getQueue().size() < maxQueued) {
+        submit();
+      }
+    }
+    return hit;
+  }
+
+  private void submit() {
+    int gen = generation;
+    // pinned here while the scanner holds the file, so that the file can not go away before the
+    // task has run. A queued task is never cancelled, as the unpin would then be skipped.
+    if (filePin != null) {
+      filePin.pin();
+    }
+    try {
+      task = pool.submit(() -> {
+        try {
+          readAhead(gen);
+        } finally {
+          if (filePin != null) {
+            filePin.unpin();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      if (filePin != null) {
+        filePin.unpin();
+      }
+      LOG.debug("Read-ahead rejected for {}", reader.getPath());
+    }
+  }
+
+  private void readAhead(int gen) {
+    if (gen != generation) {
+      // the scanner closed or moved elsewhere while the task was queued
+      return;
+    }
+    long offset = readyEnd;
+    int size = readyNextSize;
+    while (gen == generation && offset < limit && offset <= lastDataBlockOffset) {
+      try {
+        HFileBlock block =
+          reader.readBlock(offset, size, true, true, false, false, null, encoding, false);
+        try {
+          offset += block.getOnDiskSizeWithHeader();
+          size = block.getNextBlockOnDiskSize();
+        } finally {
+          block.release();
+        }
+      } catch (IOException | RuntimeException e) {
+        // the scanner reads the block itself
+        LOG.debug("Read-ahead of {} at offset {} failed", reader.getPath(), offset, e);
+        return;
+      }
+      synchronized (this) {
+        if (gen != generation) {
+          return;
+        }
+        readyNextSize = size;
+        readyEnd = offset;
+      }
+    }
+  }
+
+  /** Stops reading ahead */
+  void close() {
+    generation++;
+  }
+
+  /** Returns the number of blocks the scanner found read ahead */
+  long getHits() {
+    return hits;
+  }
+
+  /** Returns true if blocks are being read ahead in the background */
+  boolean isReading() {
+    return task != null && !task.isDone();
+  }
+
+  /** Returns the current read-ahead window in blocks */
+  int getWindow() {
+    return blocks;
+  }
+}
@@ -18,6 +18,7 @@
 package org.apache.hadoop.hbase.io.hfile;
 
 import java.util.Optional;
+import java.util.concurrent.ThreadPoolExecutor;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.ColumnFamilyDescriptor;
 import org.apache.hadoop.hbase.conf.ConfigurationManager;
@@ -63,7 +64,8 @@ public class CacheConfig implements PropagatingConfigurationObserver {
   public static final String CACHE_BLOOM_BLOCKS_ON_WRITE_KEY = "hfile.block.bloom.cacheonwrite";
 
   /**
-   * Configuration key to cache data blocks in compressed and/or encrypted format.
+   * Configuration key to cache data blocks in compressed and/or encrypted format. Can also be set
+   * in the configuration of a column family, which takes precedence over the global setting.
    */
   public static final String CACHE_DATA_BLOCKS_COMPRESSED_KEY = "hbase.block.data.cachecompressed";
 
@@ -178,6 +180,9 @@ public class CacheConfig implements PropagatingConfigurationObserver {
 
   private final ByteBuffAllocator byteBuffAllocator;
 
+  /** Region server pool reading blocks ahead of scanners, null if scanners do not read ahead */
+  private ThreadPoolExecutor readAheadPool;
+
   private double heapUsageThreshold;
 
   /**
@@ -203,8 +208,12 @@ public class CacheConfig implements PropagatingConfigurationObserver {
     if (family == null || family.isBlockCacheEnabled()) {
       this.cacheDataOnRead = conf.getBoolean(CACHE_DATA_ON_READ_KEY, DEFAULT_CACHE_DATA_ON_READ);
       this.inMemory = family == null ? DEFAULT_IN_MEMORY : family.isInMemory();
-      this.cacheDataCompressed =
-        conf.getBoolean(CACHE_DATA_BLOCKS_COMPRESSED_KEY, DEFAULT_CACHE_DATA_COMPRESSED);
+      // The family may override the global setting in its own configuration
+      String familyCacheDataCompressed =
+        family == null ? null : family.getConfigurationValue(CACHE_DATA_BLOCKS_COMPRESSED_KEY);
+      this.cacheDataCompressed = familyCacheDataCompressed != null
+        ? Boolean.parseBoolean(familyCacheDataCompressed)
+        : conf.getBoolean(CACHE_DATA_BLOCKS_COMPRESSED_KEY, DEFAULT_CACHE_DATA_COMPRESSED);
       this.dropBehindCompaction =
         conf.getBoolean(DROP_BEHIND_CACHE_COMPACTION_KEY, DROP_BEHIND_CACHE_COMPACTION_DEFAULT);
       // For the following flags we enable them regardless of per-schema settings
@@ -251,6 +260,7 @@ public class CacheConfig implements PropagatingConfigurationObserver {
     this.dropBehindCompaction = cacheConf.dropBehindCompaction;
     this.blockCache = cacheConf.blockCache;
     this.byteBuffAllocator = cacheConf.byteBuffAllocator;
+    this.readAheadPool = cacheConf.readAheadPool;
     this.heapUsageThreshold = cacheConf.heapUsageThreshold;
   }
 
@@ -477,6 +487,16 @@ public class CacheConfig implements PropagatingConfigurationObserver {
     return this.byteBuffAllocator;
   }
 
+  /** Returns the pool reading blocks ahead of scanners, or null if scanners do not read ahead */
+  public ThreadPoolExecutor getReadAheadPool() {
+    return this.readAheadPool;
+  }
+
+  /** Sets the region server pool the scanners read blocks ahead with, see BlockReadAhead */
+  public void setReadAheadPool(ThreadPoolExecutor readAheadPool) {
+    this.readAheadPool = readAheadPool;
+  }
+
   public double getHeapUsageThreshold() {
     return heapUsageThreshold;
   }
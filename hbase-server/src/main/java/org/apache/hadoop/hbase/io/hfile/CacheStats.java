@@ -77,6 +77,12 @@ public class CacheStats {
   /** The total number of blocks for primary replica that have been evicted */
   private final LongAdder primaryEvictedBlockCount = new LongAdder();
 
+  /** The number of getBlock hits on blocks that were cached compressed and had to be unpacked */
+  private final LongAdder compressedHitCount = new LongAdder();
+
+  /** The total time spent unpacking blocks that were cached compressed, in nanoseconds */
+  private final LongAdder decompressTime = new LongAdder();
+
   /** The total number of blocks that were not inserted. */
   private final AtomicLong failedInserts = new AtomicLong(0);
 
@@ -180,6 +186,25 @@ public class CacheStats {
       + ", evictedAgeMean=" + snapshot.getMean();
   }
 
+  /**
+   * Records the unpacking of a block that was cached in its compressed and/or encrypted form.
+   * @param decompressTimeNanos time taken to unpack the block, in nanoseconds
+   */
+  public void compressedHit(long decompressTimeNanos) {
+    compressedHitCount.increment();
+    decompressTime.add(decompressTimeNanos);
+  }
+
+  public long getCompressedHitCount() {
+    return compressedHitCount.sum();
+  }
+
+  /** Returns the mean time taken to unpack a block cached compressed, in microseconds */
+  public double getDecompressTimePerHit() {
+    long count = compressedHitCount.sum();
+    return count == 0 ? 0.0 : (double) decompressTime.sum() / count / 1000;
+  }
+
   public void miss(boolean caching, boolean primary, BlockType type) {
     missCount.increment();
     if (primary) primaryMissCount.increment();
@@ -430,6 +455,41 @@ public class CacheStats {
     return getHitCount() / requestCount;
   }
 
+  /**
+   * Returns the hit ratio of the blocks of the given category, 0 if none was requested. Lets the
+   * effect of an eviction policy on the costlier to miss index and bloom blocks be told apart from
+   * the overall hit ratio, which data blocks dominate.
+   */
+  public double getHitRatio(BlockType.BlockCategory category) {
+    long hits;
+    long misses;
+    switch (category) {
+      case DATA:
+        hits = getDataHitCount();
+        misses = getDataMissCount();
+        break;
+      case INDEX:
+        hits = getLeafIndexHitCount() + getIntermediateIndexHitCount() + getRootIndexHitCount();
+        misses =
+          getLeafIndexMissCount() + getIntermediateIndexMissCount() + getRootIndexMissCount();
+        break;
+      case BLOOM:
+        hits = getBloomChunkHitCount() + getGeneralBloomMetaHitCount()
+          + getDeleteFamilyBloomHitCount();
+        misses = getBloomChunkMissCount() + getGeneralBloomMetaMissCount()
+          + getDeleteFamilyBloomMissCount();
+        break;
+      case META:
+        hits = getMetaHitCount() + getFileInfoHitCount() + getTrailerHitCount();
+        misses = getMetaMissCount() + getFileInfoMissCount() + getTrailerMissCount();
+        break;
+      default:
+        return getHitRatio();
+    }
+    long requests = hits + misses;
+    return requests == 0 ? 0 : (double) hits / requests;
+  }
+
   public double getHitCachingRatio() {
     double requestCachingCount = getRequestCachingCount();
 
@@ -19,11 +19,16 @@ package org.apache.hadoop.hbase.io.hfile;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
 import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.nio.SingleByteBuff;
 import org.apache.hadoop.hbase.util.ChecksumType;
+import org.apache.hadoop.hbase.util.ObjectIntPair;
 import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.NativeCodeLoader;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,8 +40,6 @@ import org.slf4j.LoggerFactory;
 public class ChecksumUtil {
   public static final Logger LOG = LoggerFactory.getLogger(ChecksumUtil.class);
 
-  public static final int CHECKSUM_BUF_SIZE = 256;
-
   /**
    * This is used by unit tests to make checksum failures throw an exception instead of returning
    * null. Returning a null value from checksum validation will cause the higher layer to retry that
@@ -86,70 +89,58 @@ public class ChecksumUtil {
    */
   private static boolean verifyChunkedSums(DataChecksum dataChecksum, ByteBuff data,
     ByteBuff checksums, String pathName) {
-    // Almost all of the HFile Block are about 64KB, and it would be a SingleByteBuff, use the
-    // Hadoop's verify checksum directly, because it'll use the native checksum, which has no extra
-    // byte[] allocation or copying. (HBASE-21917)
-    if (data instanceof SingleByteBuff && checksums instanceof SingleByteBuff) {
-      // the checksums ByteBuff must also be an SingleByteBuff because it's duplicated from data.
-      ByteBuffer dataBB = (ByteBuffer) (data.nioByteBuffers()[0]).duplicate()
-        .position(data.position()).limit(data.limit());
-      ByteBuffer checksumBB = (ByteBuffer) (checksums.nioByteBuffers()[0]).duplicate()
-        .position(checksums.position()).limit(checksums.limit());
-      try {
-        dataChecksum.verifyChunkedSums(dataBB, checksumBB, pathName, 0);
-        return true;
-      } catch (ChecksumException e) {
-        return false;
-      }
-    }
-
-    // If the block is a MultiByteBuff. we use a small byte[] to update the checksum many times for
-    // reducing GC pressure. it's a rare case.
-    int checksumTypeSize = dataChecksum.getChecksumType().size;
-    if (checksumTypeSize == 0) {
+    // the checksums ByteBuff must also be an SingleByteBuff because it's duplicated from data.
+    ByteBuffer dataBB = (ByteBuffer) (data.nioByteBuffers()[0]).duplicate()
+      .position(data.position()).limit(data.limit());
+    ByteBuffer checksumBB = (ByteBuffer) (checksums.nioByteBuffers()[0]).duplicate()
+      .position(checksums.position()).limit(checksums.limit());
+    try {
+      dataChecksum.verifyChunkedSums(dataBB, checksumBB, pathName, 0);
       return true;
+    } catch (ChecksumException e) {
+      return false;
     }
-    // we have 5 checksum type now: NULL,DEFAULT,MIXED,CRC32,CRC32C. the former three need 0 byte,
-    // and the other two need 4 bytes.
-    assert checksumTypeSize == 4;
+  }
 
-    int bytesPerChecksum = dataChecksum.getBytesPerChecksum();
+  /**
+   * Verifies the checksum of each chunk in data with the JDK {@link CRC32} or {@link CRC32C},
+   * which are intrinsics on heap and direct buffers alike. The chunks are fed to the checksum
+   * straight from the nio buffers backing data, so a MultiByteBuff is verified without copying,
+   * one piece at a time where a chunk crosses from one buffer to the next.
+   * @param checksum         to calculate the checksum.
+   * @param bytesPerChecksum number of bytes in a checksum chunk
+   * @param data             as the input
+   * @param checksums        to compare
+   * @param pathName         indicate that the data is read from which file.
+   * @return a flag indicate the checksum match or mismatch.
+   */
+  private static boolean verifyChunkedSums(Checksum checksum, int bytesPerChecksum, ByteBuff data,
+    ByteBuff checksums, String pathName) {
+    ObjectIntPair<ByteBuffer> segment = new ObjectIntPair<>();
     int startDataPos = data.position();
-    data.mark();
-    checksums.mark();
-    try {
-      // allocate an small buffer for reducing young GC (HBASE-21917), and copy 256 bytes from
-      // ByteBuff to update the checksum each time. if we upgrade to an future JDK and hadoop
-      // version which support DataCheckSum#update(ByteBuffer), we won't need to update the checksum
-      // multiple times then.
-      byte[] buf = new byte[CHECKSUM_BUF_SIZE];
-      byte[] sum = new byte[checksumTypeSize];
-      while (data.remaining() > 0) {
-        int n = Math.min(data.remaining(), bytesPerChecksum);
-        checksums.get(sum);
-        dataChecksum.reset();
-        for (int remain = n, len; remain > 0; remain -= len) {
-          // Copy 256 bytes from ByteBuff to update the checksum each time, if the remaining
-          // bytes is less than 256, then just update the remaining bytes.
-          len = Math.min(CHECKSUM_BUF_SIZE, remain);
-          data.get(buf, 0, len);
-          dataChecksum.update(buf, 0, len);
-        }
-        int calculated = (int) dataChecksum.getValue();
-        int stored = (sum[0] << 24 & 0xff000000) | (sum[1] << 16 & 0xff0000)
-          | (sum[2] << 8 & 0xff00) | (sum[3] & 0xff);
-        if (calculated != stored) {
-          if (LOG.isTraceEnabled()) {
-            long errPos = data.position() - startDataPos - n;
-            LOG.trace("Checksum error: {} at {} expected: {} got: {}", pathName, errPos, stored,
-              calculated);
-          }
-          return false;
+    int endDataPos = data.limit();
+    int checksumPos = checksums.position();
+    for (int chunkStart = startDataPos; chunkStart < endDataPos; chunkStart += bytesPerChecksum) {
+      int chunkEnd = Math.min(endDataPos, chunkStart + bytesPerChecksum);
+      checksum.reset();
+      for (int pos = chunkStart, len; pos < chunkEnd; pos += len) {
+        // asking for a single byte never copies, it just finds the nio buffer holding pos
+        data.asSubByteBuffer(pos, 1, segment);
+        ByteBuffer bb = segment.getFirst();
+        int offset = segment.getSecond();
+        len = Math.min(chunkEnd - pos, bb.limit() - offset);
+        checksum.update(bb.duplicate().limit(offset + len).position(offset));
+      }
+      int calculated = (int) checksum.getValue();
+      int stored = checksums.getInt(checksumPos);
+      checksumPos += HFileBlock.CHECKSUM_SIZE;
+      if (calculated != stored) {
+        if (LOG.isTraceEnabled()) {
+          LOG.trace("Checksum error: {} at {} expected: {} got: {}", pathName,
+            chunkStart - startDataPos, stored, calculated);
         }
+        return false;
       }
-    } finally {
-      data.reset();
-      checksums.reset();
     }
     return true;
   }
@@ -171,9 +162,6 @@ public class ChecksumUtil {
 
     // read in the stored value of the checksum size from the header.
     int bytesPerChecksum = buf.getInt(HFileBlock.Header.BYTES_PER_CHECKSUM_INDEX);
-    DataChecksum dataChecksum =
-      DataChecksum.newDataChecksum(ctype.getDataChecksumType(), bytesPerChecksum);
-    assert dataChecksum != null;
     int onDiskDataSizeWithHeader =
       buf.getInt(HFileBlock.Header.ON_DISK_DATA_SIZE_WITH_HEADER_INDEX);
     LOG.trace(
@@ -183,7 +171,23 @@ public class ChecksumUtil {
       bytesPerChecksum);
     ByteBuff data = buf.duplicate().position(0).limit(onDiskDataSizeWithHeader);
     ByteBuff checksums = buf.duplicate().position(onDiskDataSizeWithHeader).limit(buf.limit());
-    return verifyChunkedSums(dataChecksum, data, checksums, pathName);
+    // Almost all of the HFile Block are about 64KB, and it would be a SingleByteBuff. When the
+    // native hadoop library is loaded, use the Hadoop's verify checksum directly, it checksums all
+    // the chunks in one native call with no extra byte[] allocation or copying (HBASE-21917).
+    // Without it, Hadoop copies every chunk of a direct buffer into a byte[] first, so use the JDK
+    // checksums which read the buffers in place, and which also cover the MultiByteBuff case.
+    if (
+      data instanceof SingleByteBuff && checksums instanceof SingleByteBuff
+        && NativeCodeLoader.isNativeCodeLoaded()
+    ) {
+      DataChecksum dataChecksum =
+        DataChecksum.newDataChecksum(ctype.getDataChecksumType(), bytesPerChecksum);
+      assert dataChecksum != null;
+      return verifyChunkedSums(dataChecksum, data, checksums, pathName);
+    }
+    // we have 3 checksum type now: NULL,CRC32,CRC32C. NULL was handled above.
+    Checksum checksum = ctype == ChecksumType.CRC32C ? new CRC32C() : new CRC32();
+    return verifyChunkedSums(checksum, bytesPerChecksum, data, checksums, pathName);
   }
 
   /**
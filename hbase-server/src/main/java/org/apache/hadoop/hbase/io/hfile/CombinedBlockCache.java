@@ -17,7 +17,9 @@
  */
 package org.apache.hadoop.hbase.io.hfile;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import org.apache.commons.lang3.mutable.Mutable;
@@ -119,6 +121,36 @@ public class CombinedBlockCache implements ResizableBlockCache, HeapSize {
     return block;
   }
 
+  @Override
+  public Cacheable[] getBlocks(BlockCacheKey[] cacheKeys, boolean caching,
+    boolean updateCacheMetrics) {
+    Cacheable[] blocks = new Cacheable[cacheKeys.length];
+    // Blocks in L1 are looked up one by one as in getBlock, the rest is handed to L2 as one batch.
+    List<Integer> l2Indexes = new ArrayList<>(cacheKeys.length);
+    for (int i = 0; i < cacheKeys.length; i++) {
+      if (l1Cache.containsBlock(cacheKeys[i])) {
+        blocks[i] = getBlock(cacheKeys[i], caching, false, updateCacheMetrics);
+      } else {
+        l2Indexes.add(i);
+      }
+    }
+    if (l2Indexes.isEmpty()) {
+      return blocks;
+    }
+    BlockCacheKey[] l2Keys = new BlockCacheKey[l2Indexes.size()];
+    for (int j = 0; j < l2Keys.length; j++) {
+      l2Keys[j] = cacheKeys[l2Indexes.get(j)];
+    }
+    Cacheable[] l2Blocks = l2Cache.getBlocks(l2Keys, caching, false);
+    for (int j = 0; j < l2Keys.length; j++) {
+      blocks[l2Indexes.get(j)] = l2Blocks[j];
+      if (updateCacheMetrics) {
+        updateBlockMetrics(l2Blocks[j], l2Keys[j], l2Cache, caching);
+      }
+    }
+    return blocks;
+  }
+
   private void updateBlockMetrics(Cacheable block, BlockCacheKey key, BlockCache cache,
     boolean caching) {
     if (block == null) {
@@ -23,6 +23,7 @@ import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.HBaseInterfaceAudience;
 import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.util.BinaryFuseFilterChunk;
 import org.apache.hadoop.hbase.util.BloomFilter;
 import org.apache.hadoop.hbase.util.BloomFilterUtil;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -48,6 +49,9 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
   private int hashCount;
   private Hash hash;
 
+  /** Whether the chunks are binary fuse filters, then hashCount is the fingerprint width */
+  private final boolean binaryFuse;
+
   private long[] numQueriesPerChunk;
   private long[] numPositivesPerChunk;
 
@@ -60,8 +64,23 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
    */
   public CompoundBloomFilter(DataInput meta, HFile.Reader reader, BloomFilterMetrics metrics)
     throws IOException {
+    this(meta, reader, metrics, false);
+  }
+
+  /**
+   * De-serialization for compound Bloom filter metadata. Must be consistent with what
+   * {@link CompoundBloomFilterWriter} does.
+   * @param meta       serialized Bloom filter metadata without any magic blocks
+   * @param reader     reader for hfile
+   * @param metrics    for collecting bloom filter metrics. may be null
+   * @param binaryFuse whether the chunks are binary fuse filters, see
+   *                   {@link CompoundBloomFilterBase#BINARY_FUSE_VERSION}
+   */
+  public CompoundBloomFilter(DataInput meta, HFile.Reader reader, BloomFilterMetrics metrics,
+    boolean binaryFuse) throws IOException {
     this.reader = reader;
     this.metrics = metrics;
+    this.binaryFuse = binaryFuse;
 
     totalByteSize = meta.readLong();
     hashCount = meta.readInt();
@@ -108,8 +127,11 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
     HFileBlock bloomBlock = getBloomBlock(block);
     try {
       ByteBuff bloomBuf = bloomBlock.getBufferReadOnly();
-      result = BloomFilterUtil.contains(key, keyOffset, keyLength, bloomBuf,
-        bloomBlock.headerSize(), bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
+      result = binaryFuse
+        ? BinaryFuseFilterChunk.contains(key, keyOffset, keyLength, bloomBuf,
+          bloomBlock.headerSize(), hash, hashCount)
+        : BloomFilterUtil.contains(key, keyOffset, keyLength, bloomBuf, bloomBlock.headerSize(),
+          bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
     } finally {
       // After the use, should release the block to deallocate byte buffers.
       bloomBlock.release();
@@ -158,8 +180,11 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
     HFileBlock bloomBlock = getBloomBlock(block);
     try {
       ByteBuff bloomBuf = bloomBlock.getBufferReadOnly();
-      result = BloomFilterUtil.contains(keyCell, bloomBuf, bloomBlock.headerSize(),
-        bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount, type);
+      result = binaryFuse
+        ? BinaryFuseFilterChunk.contains(keyCell, bloomBuf, bloomBlock.headerSize(), hash,
+          hashCount, type)
+        : BloomFilterUtil.contains(keyCell, bloomBuf, bloomBlock.headerSize(),
+          bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount, type);
     } finally {
       // After the use, should release the block to deallocate the byte buffers.
       bloomBlock.release();
@@ -214,6 +239,9 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
     StringBuilder sb = new StringBuilder();
     sb.append(BloomFilterUtil.formatStats(this));
     sb.append(BloomFilterUtil.STATS_RECORD_SEP + "Number of chunks: " + numChunks);
+    if (binaryFuse) {
+      sb.append(BloomFilterUtil.STATS_RECORD_SEP + "Binary fuse fingerprint bits: " + hashCount);
+    }
     sb.append(BloomFilterUtil.STATS_RECORD_SEP + ((comparator != null)
       ? "Comparator: " + comparator.getClass().getSimpleName()
       : "Comparator: " + Bytes.BYTES_RAWCOMPARATOR.getClass().getSimpleName()));
@@ -35,6 +35,13 @@ public class CompoundBloomFilterBase implements BloomFilterBase {
    */
   public static final int VERSION = 3;
 
+  /**
+   * The version of a compound filter made of
+   * {@link org.apache.hadoop.hbase.util.BinaryFuseFilterChunk}s. Same metadata as {@link #VERSION},
+   * with the fingerprint width in bits in place of the hash count.
+   */
+  public static final int BINARY_FUSE_VERSION = 4;
+
   /** Target error rate for configuring the filter and for information */
   protected float errorRate;
 
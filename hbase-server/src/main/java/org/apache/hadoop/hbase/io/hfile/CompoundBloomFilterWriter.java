@@ -30,6 +30,7 @@ import org.apache.hadoop.hbase.ExtendedCell;
 import org.apache.hadoop.hbase.KeyValueUtil;
 import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.util.BinaryFuseFilterChunk;
 import org.apache.hadoop.hbase.util.BloomFilterChunk;
 import org.apache.hadoop.hbase.util.BloomFilterUtil;
 import org.apache.hadoop.hbase.util.BloomFilterWriter;
@@ -83,6 +84,9 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
 
   private BloomType bloomType;
 
+  /** Whether the chunks are binary fuse filters rather than Bloom filters */
+  private final boolean binaryFuse;
+
   /**
    * each chunk's size in bytes. The real chunk size might be different as required by the fold
    * factor. target false positive rate hash function type to use maximum degree of folding allowed
@@ -90,6 +94,13 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
    */
   public CompoundBloomFilterWriter(int chunkByteSizeHint, float errorRate, int hashType,
     int maxFold, boolean cacheOnWrite, CellComparator comparator, BloomType bloomType) {
+    this(chunkByteSizeHint, errorRate, hashType, maxFold, cacheOnWrite, comparator, bloomType,
+      false);
+  }
+
+  public CompoundBloomFilterWriter(int chunkByteSizeHint, float errorRate, int hashType,
+    int maxFold, boolean cacheOnWrite, CellComparator comparator, BloomType bloomType,
+    boolean binaryFuse) {
     chunkByteSize = BloomFilterUtil.computeFoldableByteSize(chunkByteSizeHint * 8L, maxFold);
 
     this.errorRate = errorRate;
@@ -98,6 +109,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
     this.cacheOnWrite = cacheOnWrite;
     this.comparator = comparator;
     this.bloomType = bloomType;
+    this.binaryFuse = binaryFuse;
   }
 
   @Override
@@ -187,7 +199,9 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
   private void allocateNewChunk() {
     if (prevChunk == null) {
       // First chunk
-      chunk = BloomFilterUtil.createBySize(chunkByteSize, errorRate, hashType, maxFold, bloomType);
+      chunk = binaryFuse
+        ? BinaryFuseFilterChunk.createBySize(chunkByteSize, errorRate, hashType, bloomType)
+        : BloomFilterUtil.createBySize(chunkByteSize, errorRate, hashType, maxFold, bloomType);
     } else {
       // Use the same parameters as the last chunk, but a new array and
       // a zero key count.
@@ -241,7 +255,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
      */
     @Override
     public void write(DataOutput out) throws IOException {
-      out.writeInt(VERSION);
+      out.writeInt(binaryFuse ? BINARY_FUSE_VERSION : VERSION);
 
       out.writeLong(getByteSize());
       out.writeInt(prevChunk.getHashCount());
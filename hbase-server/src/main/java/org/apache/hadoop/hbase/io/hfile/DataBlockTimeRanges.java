@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.hadoop.hbase.io.HeapSize;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * The timestamp range of the cells in each data block of an {@link HFile}, keyed by block offset.
+ * Like the file level {@link org.apache.hadoop.hbase.regionserver.TimeRangeTracker}, the range of
+ * a block holding a column or family delete starts at 0. Written by {@link HFileWriterImpl} as a
+ * meta block when {@link HFileWriterImpl#DATA_BLOCK_TIMERANGES_ENABLED} is set, and loaded by the
+ * first scan with a time range, see {@link HFileInfo#getDataBlockTimeRanges(HFile.Reader)}. Lets a
+ * scanner whose time range starts after all cells of a data block move past that block without
+ * reading it. Once loaded, its heap size counts towards the index size of the reader.
+ * <p>
+ * Serialized as the number of blocks followed by, for each block in file order, the gap to the end
+ * of the previous block, the on-disk size with header, the minimum timestamp, and the distance from
+ * the minimum to the maximum timestamp, all as variable length integers.
+ */
+@InterfaceAudience.Private
+public class DataBlockTimeRanges implements Writable, HeapSize {
+
+  private static final long FIXED_OVERHEAD =
+    ClassSize.align(ClassSize.OBJECT + 4 * ClassSize.REFERENCE + Bytes.SIZEOF_INT);
+
+  /** Name of the meta block holding the data block time ranges */
+  public static final String META_BLOCK_NAME = "DATA_BLOCK_TIMERANGES";
+
+  private int count;
+  private long[] offsets;
+  private int[] onDiskSizes;
+  private long[] minTimestamps;
+  private long[] maxTimestamps;
+
+  public DataBlockTimeRanges() {
+    this(16);
+  }
+
+  private DataBlockTimeRanges(int capacity) {
+    offsets = new long[capacity];
+    onDiskSizes = new int[capacity];
+    minTimestamps = new long[capacity];
+    maxTimestamps = new long[capacity];
+  }
+
+  /**
+   * Adds a data block. Blocks have to be added in file order.
+   * @param offset              offset of the block in the file
+   * @param onDiskSizeWithHeader on-disk size of the block, including its header
+   * @param minTimestamp        smallest timestamp of a cell in the block
+   * @param maxTimestamp        largest timestamp of a cell in the block
+   */
+  public void add(long offset, int onDiskSizeWithHeader, long minTimestamp, long maxTimestamp) {
+    if (count == offsets.length) {
+      int capacity = count * 2;
+      offsets = Arrays.copyOf(offsets, capacity);
+      onDiskSizes = Arrays.copyOf(onDiskSizes, capacity);
+      minTimestamps = Arrays.copyOf(minTimestamps, capacity);
+      maxTimestamps = Arrays.copyOf(maxTimestamps, capacity);
+    }
+    offsets[count] = offset;
+    onDiskSizes[count] = onDiskSizeWithHeader;
+    minTimestamps[count] = minTimestamp;
+    maxTimestamps[count] = maxTimestamp;
+    count++;
+  }
+
+  /** Returns the number of data blocks */
+  public int size() {
+    return count;
+  }
+
+  /** Returns the index of the data block at the given offset, or -1 if there is none */
+  public int indexOf(long offset) {
+    int index = Arrays.binarySearch(offsets, 0, count, offset);
+    return index >= 0 ? index : -1;
+  }
+
+  public long getOffset(int index) {
+    return offsets[index];
+  }
+
+  public int getOnDiskSize(int index) {
+    return onDiskSizes[index];
+  }
+
+  public long getMinTimestamp(int index) {
+    return minTimestamps[index];
+  }
+
+  public long getMaxTimestamp(int index) {
+    return maxTimestamps[index];
+  }
+
+  @Override
+  public long heapSize() {
+    // the offsets and the min and max timestamps are longs, the on-disk sizes ints
+    return FIXED_OVERHEAD
+      + 3 * ClassSize.align(ClassSize.ARRAY + (long) offsets.length * Bytes.SIZEOF_LONG)
+      + ClassSize.align(ClassSize.ARRAY + (long) onDiskSizes.length * Bytes.SIZEOF_INT);
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, count);
+    long end = 0;
+    for (int i = 0; i < count; i++) {
+      WritableUtils.writeVLong(out, offsets[i] - end);
+      WritableUtils.writeVInt(out, onDiskSizes[i]);
+      WritableUtils.writeVLong(out, minTimestamps[i]);
+      WritableUtils.writeVLong(out, maxTimestamps[i] - minTimestamps[i]);
+      end = offsets[i] + onDiskSizes[i];
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    int n = WritableUtils.readVInt(in);
+    if (n < 0) {
+      throw new IOException("Invalid number of data blocks: " + n);
+    }
+    DataBlockTimeRanges ranges = new DataBlockTimeRanges(Math.max(n, 1));
+    long end = 0;
+    for (int i = 0; i < n; i++) {
+      long offset = end + WritableUtils.readVLong(in);
+      int onDiskSize = WritableUtils.readVInt(in);
+      long minTimestamp = WritableUtils.readVLong(in);
+      ranges.add(offset, onDiskSize, minTimestamp, minTimestamp + WritableUtils.readVLong(in));
+      end = offset + onDiskSize;
+    }
+    count = ranges.count;
+    offsets = ranges.offsets;
+    onDiskSizes = ranges.onDiskSizes;
+    minTimestamps = ranges.minTimestamps;
+    maxTimestamps = ranges.maxTimestamps;
+  }
+}
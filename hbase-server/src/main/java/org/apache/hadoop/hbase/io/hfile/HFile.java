@@ -271,6 +271,7 @@ public final class HFile {
     protected InetSocketAddress[] favoredNodes;
     private HFileContext fileContext;
     protected boolean shouldDropBehind = false;
+    private byte[] compressionDictionary;
 
     WriterFactory(Configuration conf, CacheConfig cacheConf) {
       this.conf = conf;
@@ -307,6 +308,15 @@ public final class HFile {
       return this;
     }
 
+    /**
+     * Compresses the data blocks with the given dictionary, which is stored in the file info so
+     * that readers pick it up. Requires a compression codec which supports dictionary training.
+     */
+    public WriterFactory withCompressionDictionary(byte[] compressionDictionary) {
+      this.compressionDictionary = compressionDictionary;
+      return this;
+    }
+
     public Writer create() throws IOException {
       if ((path != null ? 1 : 0) + (ostream != null ? 1 : 0) != 1) {
         throw new AssertionError("Please specify exactly one of " + "filesystem/path or path");
@@ -320,7 +330,8 @@ public final class HFile {
           LOG.debug("Unable to set drop behind on {}", path.getName());
         }
       }
-      return new HFileWriterImpl(conf, cacheConf, path, ostream, fileContext);
+      return new HFileWriterImpl(conf, cacheConf, path, ostream, fileContext,
+        compressionDictionary);
     }
   }
 
@@ -435,6 +446,17 @@ public final class HFile {
 
     HFileScanner getScanner(Configuration conf, boolean cacheBlocks, boolean pread);
 
+    /**
+     * Loads the data blocks which may contain the given keys into the block cache. The blocks are
+     * looked up in the cache with one
+     * {@link BlockCache#getBlocks(BlockCacheKey[], boolean, boolean)} call, and the ones which are
+     * not cached yet are read together, see
+     * {@link HFileBlock.FSReader#readBlocksData(long[], int[], boolean, boolean)}.
+     * @param keys the keys to look up, in any order
+     * @return the number of blocks read from the file system
+     */
+    int cacheDataBlocks(List<? extends ExtendedCell> keys) throws IOException;
+
     /**
      * Retrieves general Bloom filter metadata as appropriate for each {@link HFile} version. Knows
      * nothing about how that metadata is structured.
@@ -40,6 +40,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.hbase.ExtendedCell;
 import org.apache.hadoop.hbase.HBaseInterfaceAudience;
 import org.apache.hadoop.hbase.HConstants;
@@ -49,6 +50,7 @@ import org.apache.hadoop.hbase.io.ByteBuffAllocator;
 import org.apache.hadoop.hbase.io.ByteBuffInputStream;
 import org.apache.hadoop.hbase.io.ByteBufferWriterDataOutputStream;
 import org.apache.hadoop.hbase.io.FSDataInputStreamWrapper;
+import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 import org.apache.hadoop.hbase.io.encoding.EncodingState;
 import org.apache.hadoop.hbase.io.encoding.HFileBlockDecodingContext;
@@ -68,6 +70,7 @@ import org.apache.hadoop.hbase.util.ChecksumType;
 import org.apache.hadoop.hbase.util.ClassSize;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.functional.FutureIO;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -631,6 +634,17 @@ public class HFileBlock implements Cacheable {
    */
   @InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.UNITTEST)
   public HFileBlock unpack(HFileContext fileContext, FSReader reader) throws IOException {
+    return unpack(fileContext, reader, allocator);
+  }
+
+  /**
+   * Same as {@link #unpack(HFileContext, FSReader)}, but the decompressed/decrypted view is
+   * allocated from the given allocator rather than the one this block was created with. Used for
+   * blocks served compressed from the block cache, whose allocator is not necessarily the pooled
+   * one of the reader, e.g. after the bucket cache was restored from its persistence file.
+   */
+  HFileBlock unpack(HFileContext fileContext, FSReader reader, ByteBuffAllocator alloc)
+    throws IOException {
     if (!fileContext.isCompressedOrEncrypted()) {
       // TODO: cannot use our own fileContext here because HFileBlock(ByteBuffer, boolean),
       // which is used for block serialization to L2 cache, does not preserve encoding and
@@ -638,14 +652,14 @@ public class HFileBlock implements Cacheable {
       return this;
     }
 
-    ByteBuff newBuf = allocateBufferForUnpacking(); // allocates space for the decompressed block
+    ByteBuff newBuf = allocateBufferForUnpacking(alloc); // space for the decompressed block
     HFileBlock unpacked = shallowClone(this, newBuf);
 
     boolean succ = false;
     final Context context =
       Context.current().with(CONTEXT_KEY, new HFileContextAttributesBuilderConsumer(fileContext));
     try (Scope ignored = context.makeCurrent()) {
-      HFileBlockDecodingContext ctx = blockType == BlockType.ENCODED_DATA
+      HFileBlockDecodingContext ctx = blockType.isData()
         ? reader.getBlockDecodingContext()
         : reader.getDefaultBlockDecodingContext();
       // Create a duplicated buffer without the header part.
@@ -669,12 +683,12 @@ public class HFileBlock implements Cacheable {
    * Always allocates a new buffer of the correct size. Copies header bytes from the existing
    * buffer. Does not change header fields. Reserve room to keep checksum bytes too.
    */
-  private ByteBuff allocateBufferForUnpacking() {
+  private ByteBuff allocateBufferForUnpacking(ByteBuffAllocator alloc) {
     int headerSize = headerSize();
     int capacityNeeded = headerSize + uncompressedSizeWithoutHeader;
 
     ByteBuff source = bufWithoutChecksum.duplicate();
-    ByteBuff newBuf = allocator.allocate(capacityNeeded);
+    ByteBuff newBuf = alloc.allocate(capacityNeeded);
 
     // Copy header bytes into newBuf.
     source.position(0);
@@ -840,6 +854,16 @@ public class HFileBlock implements Cacheable {
 
     public Writer(Configuration conf, HFileDataBlockEncoder dataBlockEncoder,
       HFileContext fileContext, ByteBuffAllocator allocator, int maxSizeUnCompressed) {
+      this(conf, conf, dataBlockEncoder, fileContext, allocator, maxSizeUnCompressed);
+    }
+
+    /**
+     * @param dataBlockConf configuration used to compress the data blocks, e.g. pointing the codec
+     *                      to a compression dictionary
+     */
+    public Writer(Configuration conf, Configuration dataBlockConf,
+      HFileDataBlockEncoder dataBlockEncoder, HFileContext fileContext, ByteBuffAllocator allocator,
+      int maxSizeUnCompressed) {
       if (fileContext.getBytesPerChecksum() < HConstants.HFILEBLOCK_HEADER_SIZE) {
         throw new RuntimeException("Unsupported value of bytesPerChecksum. " + " Minimum is "
           + HConstants.HFILEBLOCK_HEADER_SIZE + " but the configured value is "
@@ -848,7 +872,7 @@ public class HFileBlock implements Cacheable {
       this.allocator = allocator;
       this.dataBlockEncoder =
         dataBlockEncoder != null ? dataBlockEncoder : NoOpDataBlockEncoder.INSTANCE;
-      this.dataBlockEncodingCtx = this.dataBlockEncoder.newDataBlockEncodingContext(conf,
+      this.dataBlockEncodingCtx = this.dataBlockEncoder.newDataBlockEncodingContext(dataBlockConf,
         HConstants.HFILEBLOCK_DUMMY_HEADER, fileContext);
       // TODO: This should be lazily instantiated
       this.defaultBlockEncodingCtx = new HFileBlockDefaultEncodingContext(conf, null,
@@ -1299,6 +1323,22 @@ public class HFileBlock implements Cacheable {
     HFileBlock readBlockData(long offset, long onDiskSize, boolean pread, boolean updateMetrics,
       boolean intoHeap) throws IOException;
 
+    /**
+     * Reads the blocks at the given offsets in the file with positional reads. Blocks lying close
+     * to each other are read together, and all the reads are issued at once as a vectored read, so
+     * that the file system can run them in parallel.
+     * @param offsets       offsets of the blocks in the file, sorted in increasing order
+     * @param onDiskSizes   the on-disk sizes of the blocks, including headers, as recorded in the
+     *                      block index
+     * @param updateMetrics update the metrics or not.
+     * @param intoHeap      allocate the blocks' ByteBuffs from the JVM heap or with the
+     *                      {@link ByteBuffAllocator}, see
+     *                      {@link #readBlockData(long, long, boolean, boolean, boolean)}
+     * @return the newly read blocks, in the order of the offsets
+     */
+    List<HFileBlock> readBlocksData(long[] offsets, int[] onDiskSizes, boolean updateMetrics,
+      boolean intoHeap) throws IOException;
+
     /**
      * Creates a block iterator over the given portion of the {@link HFile}. The iterator returns
      * blocks starting with offset such that offset &lt;= startOffset &lt; endOffset. Returned
@@ -1323,6 +1363,15 @@ public class HFileBlock implements Cacheable {
 
     void setDataBlockEncoder(HFileDataBlockEncoder encoder, Configuration conf);
 
+    /**
+     * Same as {@link #setDataBlockEncoder(HFileDataBlockEncoder, Configuration)}, for data blocks
+     * compressed with a dictionary.
+     * @param dictionaryPath the path the dictionary is registered under, see
+     *                       {@link org.apache.hadoop.hbase.io.compress.DictionaryCache}
+     */
+    void setDataBlockEncoder(HFileDataBlockEncoder encoder, Configuration conf,
+      String dictionaryPath);
+
     /**
      * To close the stream's socket. Note: This can be concurrently called from multiple threads and
      * implementation should take care of thread safety.
@@ -1593,6 +1642,137 @@ public class HFileBlock implements Cacheable {
       }
     }
 
+    @Override
+    public List<HFileBlock> readBlocksData(long[] offsets, int[] onDiskSizes,
+      boolean updateMetrics, boolean intoHeap) throws IOException {
+      Preconditions.checkArgument(offsets.length == onDiskSizes.length,
+        "%s offsets but %s sizes", offsets.length, onDiskSizes.length);
+      for (int i = 0; i < offsets.length; i++) {
+        Preconditions.checkArgument(checkOnDiskSizeWithHeader(onDiskSizes[i]),
+          "Invalid onDiskSizeWithHeader=%s at offset %s", onDiskSizes[i], offsets[i]);
+        Preconditions.checkArgument(i == 0 || offsets[i] >= offsets[i - 1] + onDiskSizes[i - 1],
+          "Offsets are not sorted or blocks overlap at offset %s", offsets[i]);
+      }
+      List<HFileBlock> blocks = new ArrayList<>(offsets.length);
+      if (offsets.length == 0) {
+        return blocks;
+      }
+      boolean doVerificationThruHBaseChecksum = streamWrapper.shouldUseHBaseChecksum();
+      if (!doVerificationThruHBaseChecksum || offsets.length == 1) {
+        // Nothing to gain, or we are reading with HDFS checksums for a while after a checksum
+        // failure, let readBlockData handle it.
+        for (int i = 0; i < offsets.length; i++) {
+          blocks.add(readBlockData(offsets[i], onDiskSizes[i], true, updateMetrics, intoHeap));
+        }
+        return blocks;
+      }
+      FSDataInputStream is = streamWrapper.getStream(true);
+      // Merge the blocks into ranges the way the stream would merge them for a vectored read. The
+      // range of a block also covers the header of the next block when it is in the file, so that
+      // we know the size of the next block.
+      int minSeek = is.minSeekForVectorReads();
+      int maxReadSize = is.maxReadSizeForVectorReads();
+      List<FileRange> ranges = new ArrayList<>();
+      int first = 0;
+      for (int i = 1; i <= offsets.length; i++) {
+        long end = offsets[i - 1] + onDiskSizes[i - 1];
+        if (
+          i == offsets.length || offsets[i] - end > minSeek
+            || offsets[i] + onDiskSizes[i] - offsets[first] > maxReadSize
+        ) {
+          if (fileSize < 0 || end + hdrSize <= fileSize) {
+            end += hdrSize;
+          }
+          ranges.add(
+            FileRange.createFileRange(offsets[first], (int) (end - offsets[first]), first));
+          first = i;
+        }
+      }
+      long startTime = EnvironmentEdgeManager.currentTime();
+      boolean success = false;
+      try {
+        is.readVectored(ranges, ByteBuffer::allocate);
+        for (int r = 0; r < ranges.size(); r++) {
+          FileRange range = ranges.get(r);
+          ByteBuff data = new SingleByteBuff(FutureIO.awaitFuture(range.getData()));
+          if (ThreadLocalServerSideScanMetrics.isScanMetricsEnabled()) {
+            ThreadLocalServerSideScanMetrics.addBytesReadFromFs(range.getLength());
+            ThreadLocalServerSideScanMetrics.addBlockReadOpsCount(1);
+          }
+          int last =
+            r + 1 < ranges.size() ? (int) ranges.get(r + 1).getReference() : offsets.length;
+          for (int i = (int) range.getReference(); i < last; i++) {
+            int position = (int) (offsets[i] - range.getOffset());
+            HFileBlock block = createBlockFromRange(data, position, offsets[i], onDiskSizes[i],
+              intoHeap);
+            if (block == null) {
+              // checksum failure, read the block alone to fall back to HDFS checksums
+              block = readBlockData(offsets[i], onDiskSizes[i], true, updateMetrics, intoHeap);
+            }
+            blocks.add(block);
+          }
+        }
+        if (updateMetrics) {
+          long duration = EnvironmentEdgeManager.currentTime() - startTime;
+          HFile.updateReadLatency(duration, true,
+            this.readWarnTime >= 0 && duration > this.readWarnTime);
+        }
+        success = true;
+        return blocks;
+      } finally {
+        if (!success) {
+          blocks.forEach(HFileBlock::release);
+        }
+      }
+    }
+
+    /**
+     * Creates the block at the given position of a range read by
+     * {@link #readBlocksData(long[], int[], boolean, boolean)}. The range may hold the header of
+     * the next block right after the block.
+     * @return the block or null if its HBase checksum or its size does not match
+     */
+    private HFileBlock createBlockFromRange(ByteBuff data, int position, long offset,
+      int onDiskSizeWithHeader, boolean intoHeap) throws IOException {
+      boolean readNextHeader = position + onDiskSizeWithHeader + hdrSize <= data.limit();
+      int size = onDiskSizeWithHeader + (readNextHeader ? hdrSize : 0);
+      ByteBuff onDiskBlock = this.allocate(onDiskSizeWithHeader + hdrSize, intoHeap);
+      boolean initHFileBlockSuccess = false;
+      try {
+        onDiskBlock.put(0, data, position, size);
+        onDiskBlock.rewind();
+        ByteBuff curBlock = onDiskBlock.duplicate().position(0).limit(onDiskSizeWithHeader);
+        boolean checksumSupport = this.fileContext.isUseHBaseChecksum();
+        if (
+          getOnDiskSizeWithHeader(curBlock, checksumSupport) != onDiskSizeWithHeader
+            || !validateChecksum(offset, curBlock, hdrSize)
+        ) {
+          invalidateNextBlockHeader();
+          return null;
+        }
+        int nextBlockOnDiskSize = -1;
+        if (readNextHeader) {
+          int parsedVal = getNextBlockOnDiskSize(onDiskBlock, onDiskSizeWithHeader);
+          if (checkOnDiskSizeWithHeader(parsedVal)) {
+            nextBlockOnDiskSize = parsedVal;
+          }
+        }
+        // remove checksum from buffer now that it's verified
+        curBlock.limit(curBlock.getInt(Header.ON_DISK_DATA_SIZE_WITH_HEADER_INDEX));
+        HFileBlock hFileBlock = createFromBuff(curBlock, checksumSupport, offset,
+          nextBlockOnDiskSize, fileContext, intoHeap ? HEAP : allocator);
+        if (!fileContext.isCompressedOrEncrypted()) {
+          hFileBlock.sanityCheckUncompressed();
+        }
+        initHFileBlockSuccess = true;
+        return hFileBlock;
+      } finally {
+        if (!initHFileBlockSuccess) {
+          onDiskBlock.release();
+        }
+      }
+    }
+
     /**
      * Check that checksumType on {@code headerBuf} read from a block header seems reasonable,
      * within the known value range.
@@ -1908,6 +2088,21 @@ public class HFileBlock implements Cacheable {
       encodedBlockDecodingCtx = encoder.newDataBlockDecodingContext(conf, fileContext);
     }
 
+    @Override
+    public void setDataBlockEncoder(HFileDataBlockEncoder encoder, Configuration conf,
+      String dictionaryPath) {
+      // Only the data blocks are compressed with the dictionary, so they get their own
+      // decompression context
+      Compression.Algorithm compression = fileContext.getCompression();
+      Configuration dataBlockConf = compression.withDictionary(conf, dictionaryPath);
+      HFileContext dataBlockContext = new HFileContextBuilder(fileContext)
+        .withDecompressionContext(
+          compression.getHFileDecompressionContextForConfiguration(dataBlockConf))
+        .build();
+      encodedBlockDecodingCtx =
+        encoder.newDataBlockDecodingContext(dataBlockConf, dataBlockContext);
+    }
+
     @Override
     public HFileBlockDecodingContext getBlockDecodingContext() {
       return this.encodedBlockDecodingCtx;
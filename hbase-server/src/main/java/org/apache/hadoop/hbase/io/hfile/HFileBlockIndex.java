@@ -47,6 +47,7 @@ import org.apache.hadoop.hbase.regionserver.KeyValueScanner;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
 import org.apache.hadoop.hbase.util.ObjectIntPair;
+import org.apache.hadoop.hbase.util.Pair;
 import org.apache.hadoop.hbase.util.Strings;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.yetus.audience.InterfaceAudience;
@@ -382,6 +383,21 @@ public class HFileBlockIndex {
       return new BlockWithScanInfo(block, nextIndexedKey);
     }
 
+    /**
+     * Finds the data block which may contain the given key, without reading the data block.
+     * @return the offset and the on-disk size of the data block, or null if the key is before the
+     *         first key of the file
+     */
+    public Pair<Long, Integer> locateDataBlock(ExtendedCell key,
+      CachingBlockReader cachingBlockReader) throws IOException {
+      int rootLevelIndex = rootBlockContainingKey(key);
+      if (rootLevelIndex < 0 || rootLevelIndex >= blockOffsets.length) {
+        return null;
+      }
+      return locateNonRootDataBlock(key, blockOffsets[rootLevelIndex],
+        blockDataSizes[rootLevelIndex], searchTreeLevel, comparator, cachingBlockReader);
+    }
+
     @Override
     public ExtendedCell midkey(CachingBlockReader cachingBlockReader) throws IOException {
       if (rootCount == 0) {
@@ -513,6 +529,12 @@ public class HFileBlockIndex {
         expectedDataBlockEncoding, cachingBlockReader);
     }
 
+    @Override
+    public Pair<Long, Integer> locateDataBlock(ExtendedCell key,
+      CachingBlockReader cachingBlockReader) throws IOException {
+      return seeker.locateDataBlock(key, cachingBlockReader);
+    }
+
     @Override
     public ExtendedCell midkey(CachingBlockReader cachingBlockReader) throws IOException {
       return seeker.midkey(cachingBlockReader);
@@ -834,6 +856,39 @@ public class HFileBlockIndex {
       return entryIndex;
     }
 
+    /**
+     * Walks down the non-root levels of a multi-level index, starting from the given root-level
+     * entry, to the data block which may contain the given key. The data block is not read.
+     * @param offset          offset of the block pointed to by the root-level entry
+     * @param onDiskSize      on-disk size of the block pointed to by the root-level entry
+     * @param searchTreeLevel the number of levels of the index
+     * @return the offset and the on-disk size of the data block, or null if the key is before the
+     *         first key of a non-root index block
+     */
+    static Pair<Long, Integer> locateNonRootDataBlock(ExtendedCell key, long offset,
+      int onDiskSize, int searchTreeLevel, CellComparator comparator,
+      CachingBlockReader cachingBlockReader) throws IOException {
+      for (int lookupLevel = 1; lookupLevel < searchTreeLevel; lookupLevel++) {
+        BlockType expectedBlockType = lookupLevel < searchTreeLevel - 1
+          ? BlockType.INTERMEDIATE_INDEX
+          : BlockType.LEAF_INDEX;
+        // We always cache index blocks
+        HFileBlock block = cachingBlockReader.readBlock(offset, onDiskSize, true, true, false, true,
+          expectedBlockType, null);
+        try {
+          ByteBuff buffer = block.getBufferWithoutHeader();
+          if (locateNonRootIndexEntry(buffer, key, comparator) == -1) {
+            return null;
+          }
+          offset = buffer.getLong();
+          onDiskSize = buffer.getInt();
+        } finally {
+          block.release();
+        }
+      }
+      return new Pair<>(offset, onDiskSize);
+    }
+
     /**
      * Read in the root-level index from the given input stream. Must match what was written into
      * the root level by {@link BlockIndexWriter#writeIndexBlocks(FSDataOutputStream)} at the offset
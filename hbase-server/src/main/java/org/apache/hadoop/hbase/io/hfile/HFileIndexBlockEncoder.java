@@ -26,6 +26,7 @@ import org.apache.hadoop.hbase.io.HeapSize;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 import org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
 import org.apache.yetus.audience.InterfaceAudience;
 
 /**
@@ -71,5 +72,14 @@ public interface HFileIndexBlockEncoder {
       boolean cacheBlocks, boolean pread, boolean isCompaction,
       DataBlockEncoding expectedDataBlockEncoding, HFile.CachingBlockReader cachingBlockReader)
       throws IOException;
+
+    /**
+     * Finds the data block which may contain the given key, without reading the data block. The
+     * intermediate and leaf-level index blocks on the way are read and cached.
+     * @return the offset and the on-disk size of the data block, or null if the key is before the
+     *         first key of the file
+     */
+    Pair<Long, Integer> locateDataBlock(ExtendedCell key,
+      HFile.CachingBlockReader cachingBlockReader) throws IOException;
   }
 }
@@ -29,6 +29,7 @@ import org.apache.yetus.audience.InterfaceAudience;
 @InterfaceAudience.Private
 public class HFileIndexBlockEncoderImpl implements HFileIndexBlockEncoder {
   private final IndexBlockEncoding indexBlockEncoding;
+  private final HFileIndexBlockEncoder delegate;
 
   /**
    * Do index block encoding with specified options.
@@ -36,6 +37,9 @@ public class HFileIndexBlockEncoderImpl implements HFileIndexBlockEncoder {
    */
   public HFileIndexBlockEncoderImpl(IndexBlockEncoding encoding) {
     this.indexBlockEncoding = encoding != null ? encoding : IndexBlockEncoding.NONE;
+    this.delegate = this.indexBlockEncoding == IndexBlockEncoding.PREFIX_TREE
+      ? PrefixTreeIndexBlockEncoder.INSTANCE
+      : NoOpIndexBlockEncoder.INSTANCE;
   }
 
   public static HFileIndexBlockEncoder createFromFileInfo(HFileInfo fileInfo) throws IOException {
@@ -70,12 +74,12 @@ public class HFileIndexBlockEncoderImpl implements HFileIndexBlockEncoder {
   @Override
   public void encode(BlockIndexChunk blockIndexChunk, boolean rootIndexBlock, DataOutput out)
     throws IOException {
-    // TODO
+    delegate.encode(blockIndexChunk, rootIndexBlock, out);
   }
 
   @Override
   public EncodedSeeker createSeeker() {
-    return null;
+    return delegate.createSeeker();
   }
 
   @Override
@@ -38,6 +38,8 @@ import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellUtil;
 import org.apache.hadoop.hbase.ExtendedCell;
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ByteBuffInputStream;
+import org.apache.hadoop.hbase.io.compress.DictionaryCache;
 import org.apache.hadoop.hbase.protobuf.ProtobufMagic;
 import org.apache.hadoop.hbase.security.SecurityUtil;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -79,6 +81,9 @@ public class HFileInfo implements SortedMap<byte[], byte[]> {
   public static final byte[] MAX_TAGS_LEN = Bytes.toBytes(RESERVED_PREFIX + "MAX_TAGS_LEN");
   public static final byte[] FILE_SIZE = Bytes.toBytes(RESERVED_PREFIX + "FILE_SIZE");
   public static final byte[] FILE_PATH = Bytes.toBytes(RESERVED_PREFIX + "FILE_PATH");
+  /** The dictionary the data blocks were compressed with, if any */
+  public static final byte[] COMPRESSION_DICTIONARY =
+    Bytes.toBytes(RESERVED_PREFIX + "COMPRESSION_DICTIONARY");
   private final SortedMap<byte[], byte[]> map = new TreeMap<>(Bytes.BYTES_COMPARATOR);
 
   /**
@@ -120,6 +125,14 @@ public class HFileInfo implements SortedMap<byte[], byte[]> {
   private HFileBlockIndex.CellBasedKeyBlockIndexReader dataIndexReader;
   private HFileBlockIndex.ByteArrayKeyBlockIndexReader metaIndexReader;
 
+  /** Whether the file has a data block time ranges meta block */
+  private boolean hasDataBlockTimeRanges;
+  /** Timestamp ranges of the data blocks, null until a scan first asks for them */
+  private volatile DataBlockTimeRanges dataBlockTimeRanges;
+  private boolean dataBlockTimeRangesLoaded;
+  /** The path the compression dictionary of the data blocks is registered under, if any */
+  private String compressionDictionaryPath;
+
   private FixedFileTrailer trailer;
   private HFileContext hfileContext;
   private boolean initialized = false;
@@ -397,12 +410,14 @@ public class HFileInfo implements SortedMap<byte[], byte[]> {
       while ((b = blockIter.nextBlock()) != null) {
         loadOnOpenBlocks.add(b);
       }
+      hasDataBlockTimeRanges = hasMetaBlock(DataBlockTimeRanges.META_BLOCK_NAME);
       // close the block reader
       context.getInputStreamWrapper().unbuffer();
 
       put(FILE_SIZE, Bytes.toBytes(context.getFileSize()));
       put(FILE_PATH, Bytes.toBytes(context.getFilePath().toString()));
     } catch (Throwable t) {
+      releaseCompressionDictionary();
       IOUtils.closeQuietly(context.getInputStreamWrapper(),
         e -> LOG.warn("failed to close input stream wrapper", e));
       throw new CorruptHFileException(
@@ -411,6 +426,31 @@ public class HFileInfo implements SortedMap<byte[], byte[]> {
     initialized = true;
   }
 
+  private boolean hasMetaBlock(String metaBlockName) {
+    byte[] name = Bytes.toBytes(metaBlockName);
+    // the meta index finds the last block whose name sorts before, so check for an exact match
+    int index = metaIndexReader.rootBlockContainingKey(name, 0, name.length);
+    return index >= 0 && Bytes.equals(name, metaIndexReader.getRootBlockKey(index));
+  }
+
+  private void loadDataBlockTimeRanges(HFile.Reader reader) {
+    HFileBlock block = null;
+    try {
+      block = reader.getMetaBlock(DataBlockTimeRanges.META_BLOCK_NAME, false);
+      DataBlockTimeRanges ranges = new DataBlockTimeRanges();
+      ranges.readFields(
+        new DataInputStream(new ByteBuffInputStream(block.getBufferWithoutHeader())));
+      dataBlockTimeRanges = ranges;
+    } catch (IOException e) {
+      LOG.warn("Error reading data block time ranges of {} -- proceeding without", reader.getPath(),
+        e);
+    } finally {
+      if (block != null) {
+        block.release();
+      }
+    }
+  }
+
   private HFileContext createHFileContext(ReaderContext readerContext, Path path,
     FixedFileTrailer trailer, Configuration conf) throws IOException {
     return new HFileContextBuilder().withHBaseCheckSum(true).withHFileName(path.getName())
@@ -454,6 +494,10 @@ public class HFileInfo implements SortedMap<byte[], byte[]> {
     if (includesMemstoreTS) {
       decodeMemstoreTS = Bytes.toLong(get(HFileWriterImpl.MAX_MEMSTORE_TS_KEY)) > 0;
     }
+    byte[] compressionDictionary = get(HFileInfo.COMPRESSION_DICTIONARY);
+    if (compressionDictionary != null) {
+      compressionDictionaryPath = DictionaryCache.registerDictionary(compressionDictionary);
+    }
   }
 
   /**
@@ -479,6 +523,22 @@ public class HFileInfo implements SortedMap<byte[], byte[]> {
     if (blockIter != null) {
       blockIter.freeBlocks();
     }
+    releaseCompressionDictionary();
+  }
+
+  private void releaseCompressionDictionary() {
+    if (compressionDictionaryPath != null) {
+      DictionaryCache.releaseDictionary(compressionDictionaryPath);
+      compressionDictionaryPath = null;
+    }
+  }
+
+  /**
+   * Returns the path the dictionary the data blocks were compressed with is registered under, see
+   * {@link DictionaryCache}, or null if the data blocks were compressed without a dictionary
+   */
+  public String getCompressionDictionaryPath() {
+    return compressionDictionaryPath;
   }
 
   public int getMajorVersion() {
@@ -505,6 +565,36 @@ public class HFileInfo implements SortedMap<byte[], byte[]> {
     return this.hfileContext;
   }
 
+  /**
+   * Returns the timestamp ranges of the data blocks, or null if the file does not have them. They
+   * are only read from the file the first time they are asked for, so that files which are never
+   * scanned with a time range do not keep them on the heap.
+   * @param reader a reader of the file, to read the ranges with
+   */
+  public DataBlockTimeRanges getDataBlockTimeRanges(HFile.Reader reader) {
+    if (!hasDataBlockTimeRanges) {
+      return null;
+    }
+    DataBlockTimeRanges ranges = dataBlockTimeRanges;
+    if (ranges == null) {
+      synchronized (this) {
+        if (!dataBlockTimeRangesLoaded) {
+          loadDataBlockTimeRanges(reader);
+          // do not read the ranges again after a failure
+          dataBlockTimeRangesLoaded = true;
+        }
+        ranges = dataBlockTimeRanges;
+      }
+    }
+    return ranges;
+  }
+
+  /** Returns the heap size of the data block time ranges, 0 as long as they are not loaded */
+  public long getDataBlockTimeRangesHeapSize() {
+    DataBlockTimeRanges ranges = dataBlockTimeRanges;
+    return ranges != null ? ranges.heapSize() : 0;
+  }
+
   public List<HFileBlock> getLoadOnOpenBlocks() {
     return loadOnOpenBlocks;
   }
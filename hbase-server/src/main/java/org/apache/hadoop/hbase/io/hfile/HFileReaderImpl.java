@@ -25,7 +25,10 @@ import java.io.DataInput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.function.IntConsumer;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
@@ -55,6 +58,7 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.HFileArchiveUtil;
 import org.apache.hadoop.hbase.util.IdLock;
 import org.apache.hadoop.hbase.util.ObjectIntPair;
+import org.apache.hadoop.hbase.util.Pair;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
@@ -133,6 +137,22 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
 
   private final boolean archived;
 
+  /** Pins the file while the scanners read it in the background, null if it needs no pinning */
+  private volatile FilePin filePin;
+
+  /**
+   * Keeps the file of a reader from being closed or archived while a background read of one of its
+   * scanners is reading it.
+   */
+  public interface FilePin {
+
+    /** Takes a reference on the file. Only called while a scanner of the reader is open. */
+    void pin();
+
+    /** Drops a reference taken with {@link #pin()}. */
+    void unpin();
+  }
+
   /**
    * Opens a HFile.
    * @param context   Reader context info
@@ -155,7 +175,7 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
     this.fsBlockReader =
       new HFileBlock.FSReaderImpl(context, hfileContext, cacheConf.getByteBuffAllocator(), conf);
     this.dataBlockEncoder = HFileDataBlockEncoderImpl.createFromFileInfo(fileInfo);
-    fsBlockReader.setDataBlockEncoder(dataBlockEncoder, conf);
+    initFsBlockReaderEncoder();
     dataBlockIndexReader = fileInfo.getDataBlockIndexReader();
     metaBlockIndexReader = fileInfo.getMetaBlockIndexReader();
     fileName = path.getName();
@@ -176,6 +196,14 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
     return cacheConf;
   }
 
+  public void setFilePin(FilePin filePin) {
+    this.filePin = filePin;
+  }
+
+  FilePin getFilePin() {
+    return filePin;
+  }
+
   private Optional<String> toStringFirstKey() {
     return getFirstKey().map(CellUtil::getCellKeyAsString);
   }
@@ -259,7 +287,8 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
   @Override
   public long indexSize() {
     return (dataBlockIndexReader != null ? dataBlockIndexReader.heapSize() : 0)
-      + ((metaBlockIndexReader != null) ? metaBlockIndexReader.heapSize() : 0);
+      + ((metaBlockIndexReader != null) ? metaBlockIndexReader.heapSize() : 0)
+      + fileInfo.getDataBlockTimeRangesHeapSize();
   }
 
   @Override
@@ -270,7 +299,21 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
   @Override
   public void setDataBlockEncoder(HFileDataBlockEncoder dataBlockEncoder) {
     this.dataBlockEncoder = dataBlockEncoder;
-    this.fsBlockReader.setDataBlockEncoder(dataBlockEncoder, conf);
+    initFsBlockReaderEncoder();
+  }
+
+  /**
+   * Hands the data block encoder to the block reader, along with the compression dictionary of the
+   * data blocks if there is one. Stream readers share the file info of the pread reader, whose
+   * meta and index were loaded already, and only go through here.
+   */
+  private void initFsBlockReaderEncoder() {
+    String dictionaryPath = fileInfo.getCompressionDictionaryPath();
+    if (dictionaryPath != null) {
+      this.fsBlockReader.setDataBlockEncoder(dataBlockEncoder, conf, dictionaryPath);
+    } else {
+      this.fsBlockReader.setDataBlockEncoder(dataBlockEncoder, conf);
+    }
   }
 
   @Override
@@ -366,12 +409,22 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
     // Previous blocks that were used in the course of the read
     protected final ArrayList<HFileBlock> prevBlocks = new ArrayList<>();
 
+    // Timestamp ranges of the data blocks, set when readNextDataBlock() may skip data blocks whose
+    // cells are all older than minTimestamp
+    private DataBlockTimeRanges dataBlockTimeRanges;
+    private long minTimestamp = Long.MIN_VALUE;
+
+    // Reads the data blocks following the current one into the block cache, null if disabled
+    private final BlockReadAhead readAhead;
+
     public HFileScannerImpl(final HFile.Reader reader, final boolean cacheBlocks,
       final boolean pread, final boolean isCompaction) {
       this.reader = reader;
       this.cacheBlocks = cacheBlocks;
       this.pread = pread;
       this.isCompaction = isCompaction;
+      this.readAhead = BlockReadAhead.create(reader,
+        reader.getEffectiveEncodingInCache(isCompaction), cacheBlocks, isCompaction);
     }
 
     void updateCurrBlockRef(HFileBlock block) {
@@ -440,6 +493,9 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
         // For seek + pread stream socket should be closed when the scanner is closed. HBASE-9393
         reader.unbufferStream();
       }
+      if (readAhead != null) {
+        readAhead.close();
+      }
       this.returnBlocks(true);
     }
 
@@ -775,10 +831,24 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
           releaseIfNotCurBlock(block);
           throw new IOException("Invalid block offset: " + block + ", path=" + reader.getPath());
         }
+        long offset = block.getOffset() + block.getOnDiskSizeWithHeader();
+        int onDiskSize = block.getNextBlockOnDiskSize();
+        if (dataBlockTimeRanges != null) {
+          // Move past data blocks that only hold cells older than the scan needs. The last data
+          // block is always read so that the checks above end the scan.
+          int index = dataBlockTimeRanges.indexOf(offset);
+          while (
+            index >= 0 && offset < lastDataBlockOffset
+              && dataBlockTimeRanges.getMaxTimestamp(index) < minTimestamp
+          ) {
+            offset += dataBlockTimeRanges.getOnDiskSize(index);
+            index = dataBlockTimeRanges.indexOf(offset);
+            onDiskSize = index >= 0 ? dataBlockTimeRanges.getOnDiskSize(index) : -1;
+          }
+        }
         // We are reading the next block without block type validation, because
         // it might turn out to be a non-data block.
-        block = reader.readBlock(block.getOffset() + block.getOnDiskSizeWithHeader(),
-          block.getNextBlockOnDiskSize(), cacheBlocks, pread, isCompaction, true, null,
+        block = reader.readBlock(offset, onDiskSize, cacheBlocks, pread, isCompaction, true, null,
           getEffectiveDataBlockEncoding());
         if (block != null && !block.getBlockType().isData()) {
           // Whatever block we read we will be returning it unless
@@ -786,13 +856,29 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
           block.release();
         }
       } while (!block.getBlockType().isData());
+      if (readAhead != null) {
+        readAhead.onDataBlock(block);
+      }
       return block;
     }
 
+    BlockReadAhead getReadAhead() {
+      return readAhead;
+    }
+
     public DataBlockEncoding getEffectiveDataBlockEncoding() {
       return this.reader.getEffectiveEncodingInCache(isCompaction);
     }
 
+    @Override
+    public void skipDataBlocksOlderThan(long timestamp) {
+      if (isCompaction) {
+        return;
+      }
+      this.dataBlockTimeRanges = reader.getHFileInfo().getDataBlockTimeRanges(reader);
+      this.minTimestamp = timestamp;
+    }
+
     @Override
     public ExtendedCell getCell() {
       if (!isSeeked()) {
@@ -1128,10 +1214,15 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
         if (cachedBlock != null) {
           if (cacheConf.shouldCacheCompressed(cachedBlock.getBlockType().getCategory())) {
             HFileBlock compressedBlock = cachedBlock;
-            cachedBlock = compressedBlock.unpack(hfileContext, fsBlockReader);
+            long startTime = System.nanoTime();
+            cachedBlock = compressedBlock.unpack(hfileContext, fsBlockReader,
+              cacheConf.getByteBuffAllocator());
             // In case of compressed block after unpacking we can release the compressed block
             if (compressedBlock != cachedBlock) {
               compressedBlock.release();
+              if (updateCacheMetrics) {
+                cache.getStats().compressedHit(System.nanoTime() - startTime);
+              }
             }
           }
           try {
@@ -1393,6 +1484,10 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
                   + dataBlockEncoder.getDataBlockEncoding() + "), path=" + path);
               }
             }
+            BlockCacheTracer.record(cacheKey, cachedBlock.getBlockType(),
+              cachedBlock.getSerializedLength(),
+              BlockCacheTraceRecord.Caller.of(pread, isCompaction, cacheOnly), true, cacheBlock,
+              cacheConf.isInMemory());
             // Cache-hit. Return!
             return cachedBlock;
           }
@@ -1415,55 +1510,137 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
           hfileBlock.release();
           throw e;
         }
-        BlockType.BlockCategory category = hfileBlock.getBlockType().getCategory();
-        final boolean cacheCompressed = cacheConf.shouldCacheCompressed(category);
-        final boolean cacheOnRead =
-          cacheConf.shouldCacheBlockOnRead(category, getHFileInfo(), conf);
-
-        // Don't need the unpacked block back and we're storing the block in the cache compressed
-        if (cacheOnly && cacheCompressed && cacheOnRead) {
-          HFileBlock blockNoChecksum = BlockCacheUtil.getBlockForCaching(cacheConf, hfileBlock);
-          cacheConf.getBlockCache().ifPresent(cache -> {
-            LOG.debug("Skipping decompression of block {} in prefetch", cacheKey);
-            // Cache the block if necessary
-            if (cacheBlock && cacheOnRead) {
-              cache.cacheBlock(cacheKey, blockNoChecksum, cacheConf.isInMemory(), cacheOnly);
-            }
-          });
+        return cacheBlockReadFromFs(cacheKey, hfileBlock, cacheBlock, pread, isCompaction,
+          updateCacheMetrics, cacheOnly);
+      }
+    } finally {
+      if (lockEntry != null) {
+        offsetLock.releaseLockEntry(lockEntry);
+      }
+    }
+  }
 
-          if (updateCacheMetrics && hfileBlock.getBlockType().isData()) {
-            HFile.DATABLOCK_READ_COUNT.increment();
-          }
-          return blockNoChecksum;
-        }
-        HFileBlock unpacked = hfileBlock.unpack(hfileContext, fsBlockReader);
-        HFileBlock unpackedNoChecksum = BlockCacheUtil.getBlockForCaching(cacheConf, unpacked);
+  @Override
+  public int cacheDataBlocks(List<? extends ExtendedCell> keys) throws IOException {
+    if (
+      dataBlockIndexReader == null || !cacheConf.getBlockCache().isPresent()
+        || !cacheConf.shouldCacheBlockOnRead(BlockType.BlockCategory.DATA)
+    ) {
+      return 0;
+    }
+    BlockCache cache = cacheConf.getBlockCache().get();
+    // the data blocks to read, sorted by offset, with their on-disk sizes
+    TreeMap<Long, Integer> blocks = new TreeMap<>();
+    for (ExtendedCell key : keys) {
+      Pair<Long, Integer> block = dataBlockIndexReader.locateDataBlock(key, this);
+      if (block != null) {
+        blocks.putIfAbsent(block.getFirst(), block.getSecond());
+      }
+    }
+    if (blocks.isEmpty()) {
+      return 0;
+    }
+    // Look all the blocks up in one call, so that a cache on a device serves them with one batch of
+    // reads, and only go to the file system for the ones it does not have.
+    BlockCacheKey[] cacheKeys = new BlockCacheKey[blocks.size()];
+    int k = 0;
+    for (long offset : blocks.keySet()) {
+      cacheKeys[k++] = newDataBlockCacheKey(offset);
+    }
+    Cacheable[] cachedBlocks = cache.getBlocks(cacheKeys, false, false);
+    for (int j = 0; j < cachedBlocks.length; j++) {
+      if (cachedBlocks[j] != null) {
+        cachedBlocks[j].release();
+        blocks.remove(cacheKeys[j].getOffset());
+      }
+    }
+    if (blocks.isEmpty()) {
+      return 0;
+    }
+    long[] offsets = new long[blocks.size()];
+    int[] onDiskSizes = new int[blocks.size()];
+    int i = 0;
+    for (Map.Entry<Long, Integer> entry : blocks.entrySet()) {
+      offsets[i] = entry.getKey();
+      onDiskSizes[i] = entry.getValue();
+      i++;
+    }
+    List<HFileBlock> hfileBlocks = fsBlockReader.readBlocksData(offsets, onDiskSizes, true,
+      shouldUseHeap(BlockType.DATA, true));
+    int cached = 0;
+    try {
+      for (HFileBlock hfileBlock : hfileBlocks) {
+        validateBlockType(hfileBlock, BlockType.DATA);
+        cached++;
+        cacheBlockReadFromFs(newDataBlockCacheKey(hfileBlock.getOffset()), hfileBlock, true, true,
+          false, false, true).release();
+      }
+    } finally {
+      for (int j = cached; j < hfileBlocks.size(); j++) {
+        hfileBlocks.get(j).release();
+      }
+    }
+    return hfileBlocks.size();
+  }
+
+  private BlockCacheKey newDataBlockCacheKey(long offset) {
+    return new BlockCacheKey(fileName, family, region, offset, this.isPrimaryReplicaReader(),
+      BlockType.DATA, archived);
+  }
+
+  /**
+   * Caches a block just read from the file system, if the cache configuration asks for it, and
+   * returns the block to hand to the caller of {@link #readBlock}.
+   */
+  private HFileBlock cacheBlockReadFromFs(BlockCacheKey cacheKey, HFileBlock hfileBlock,
+    boolean cacheBlock, boolean pread, boolean isCompaction, boolean updateCacheMetrics,
+    boolean cacheOnly) throws IOException {
+    BlockType.BlockCategory category = hfileBlock.getBlockType().getCategory();
+    final boolean cacheCompressed = cacheConf.shouldCacheCompressed(category);
+    final boolean cacheOnRead = cacheConf.shouldCacheBlockOnRead(category, getHFileInfo(), conf);
+    BlockCacheTracer.record(cacheKey, hfileBlock.getBlockType(),
+      hfileBlock.getUncompressedSizeWithoutHeader() + hfileBlock.headerSize(),
+      BlockCacheTraceRecord.Caller.of(pread, isCompaction, cacheOnly), false,
+      cacheBlock && cacheOnRead, cacheConf.isInMemory());
+
+    // Don't need the unpacked block back and we're storing the block in the cache compressed
+    if (cacheOnly && cacheCompressed && cacheOnRead) {
+      HFileBlock blockNoChecksum = BlockCacheUtil.getBlockForCaching(cacheConf, hfileBlock);
+      cacheConf.getBlockCache().ifPresent(cache -> {
+        LOG.debug("Skipping decompression of block {} in prefetch", cacheKey);
         // Cache the block if necessary
-        cacheConf.getBlockCache().ifPresent(cache -> {
-          if (cacheBlock && cacheOnRead) {
-            // Using the wait on cache during compaction and prefetching.
-            cache.cacheBlock(cacheKey,
-              cacheCompressed
-                ? BlockCacheUtil.getBlockForCaching(cacheConf, hfileBlock)
-                : unpackedNoChecksum,
-              cacheConf.isInMemory(), cacheOnly);
-          }
-        });
-        if (unpacked != hfileBlock) {
-          // End of life here if hfileBlock is an independent block.
-          hfileBlock.release();
-        }
-        if (updateCacheMetrics && hfileBlock.getBlockType().isData()) {
-          HFile.DATABLOCK_READ_COUNT.increment();
+        if (cacheBlock && cacheOnRead) {
+          cache.cacheBlock(cacheKey, blockNoChecksum, cacheConf.isInMemory(), cacheOnly);
         }
+      });
 
-        return unpackedNoChecksum;
+      if (updateCacheMetrics && hfileBlock.getBlockType().isData()) {
+        HFile.DATABLOCK_READ_COUNT.increment();
       }
-    } finally {
-      if (lockEntry != null) {
-        offsetLock.releaseLockEntry(lockEntry);
+      return blockNoChecksum;
+    }
+    HFileBlock unpacked = hfileBlock.unpack(hfileContext, fsBlockReader);
+    HFileBlock unpackedNoChecksum = BlockCacheUtil.getBlockForCaching(cacheConf, unpacked);
+    // Cache the block if necessary
+    cacheConf.getBlockCache().ifPresent(cache -> {
+      if (cacheBlock && cacheOnRead) {
+        // Using the wait on cache during compaction and prefetching.
+        cache.cacheBlock(cacheKey,
+          cacheCompressed
+            ? BlockCacheUtil.getBlockForCaching(cacheConf, hfileBlock)
+            : unpackedNoChecksum,
+          cacheConf.isInMemory(), cacheOnly);
       }
+    });
+    if (unpacked != hfileBlock) {
+      // End of life here if hfileBlock is an independent block.
+      hfileBlock.release();
     }
+    if (updateCacheMetrics && hfileBlock.getBlockType().isData()) {
+      HFile.DATABLOCK_READ_COUNT.increment();
+    }
+
+    return unpackedNoChecksum;
   }
 
   @Override
@@ -131,4 +131,13 @@ public interface HFileScanner extends Shipper, Closeable {
    * @param blockSizeConsumer to be called with block size in bytes, once per block.
    */
   void recordBlockSize(IntConsumer blockSizeConsumer);
+
+  /**
+   * Lets {@link #next()} move past data blocks whose cells are all older than the given timestamp
+   * without reading them, when the file records the timestamp range of its data blocks. Only for
+   * forward scans that do not return any cell older than the timestamp. Seeks are not affected.
+   * @param timestamp the smallest timestamp the scan can return
+   */
+  default void skipDataBlocksOlderThan(long timestamp) {
+  }
 }
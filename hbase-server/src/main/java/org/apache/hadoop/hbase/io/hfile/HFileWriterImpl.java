@@ -48,6 +48,7 @@ import org.apache.hadoop.hbase.KeyValueUtil;
 import org.apache.hadoop.hbase.MetaCellComparator;
 import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.compress.DictionaryCache;
 import org.apache.hadoop.hbase.io.crypto.Encryption;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 import org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding;
@@ -82,6 +83,20 @@ public class HFileWriterImpl implements HFile.Writer {
   /** Block size limit after encoding, used to unify encoded block Cache entry size */
   private final int encodedBlockSizeLimit;
 
+  /**
+   * Whether to record the timestamp range of every data block, see {@link DataBlockTimeRanges}.
+   * Can be set per column family through the family configuration.
+   */
+  public static final String DATA_BLOCK_TIMERANGES_ENABLED =
+    "hbase.hfile.data.block.timeranges.enabled";
+
+  /** Timestamp ranges of the data blocks written so far, null if not recorded */
+  private final DataBlockTimeRanges dataBlockTimeRanges;
+
+  /** Timestamp range of the cells in the current data block */
+  private long blockMinTimestamp = Long.MAX_VALUE;
+  private long blockMaxTimestamp = Long.MIN_VALUE;
+
   /** The Cell previously appended. Becomes the last cell in the file. */
   protected ExtendedCell lastCell = null;
 
@@ -193,8 +208,24 @@ public class HFileWriterImpl implements HFile.Writer {
 
   private String familyName;
 
+  /** The dictionary the data blocks are compressed with, if any */
+  private final byte[] compressionDictionary;
+
+  private String compressionDictionaryPath;
+
+  /** The configuration used to compress the data blocks */
+  private final Configuration dataBlockConf;
+
   public HFileWriterImpl(final Configuration conf, CacheConfig cacheConf, Path path,
     FSDataOutputStream outputStream, HFileContext fileContext) {
+    this(conf, cacheConf, path, outputStream, fileContext, null);
+  }
+
+  /**
+   * @param compressionDictionary the dictionary to compress the data blocks with, or null
+   */
+  public HFileWriterImpl(final Configuration conf, CacheConfig cacheConf, Path path,
+    FSDataOutputStream outputStream, HFileContext fileContext, byte[] compressionDictionary) {
     this.outputStream = outputStream;
     this.path = path;
     if (path != null) {
@@ -225,6 +256,16 @@ public class HFileWriterImpl implements HFile.Writer {
     this.conf = conf;
     float encodeBlockSizeRatio = conf.getFloat(UNIFIED_ENCODED_BLOCKSIZE_RATIO, 0f);
     this.encodedBlockSizeLimit = (int) (hFileContext.getBlocksize() * encodeBlockSizeRatio);
+    this.dataBlockTimeRanges =
+      conf.getBoolean(DATA_BLOCK_TIMERANGES_ENABLED, false) ? new DataBlockTimeRanges() : null;
+    this.compressionDictionary = compressionDictionary;
+    if (compressionDictionary != null) {
+      this.compressionDictionaryPath = DictionaryCache.registerDictionary(compressionDictionary);
+      this.dataBlockConf =
+        hFileContext.getCompression().withDictionary(conf, compressionDictionaryPath);
+    } else {
+      this.dataBlockConf = conf;
+    }
 
     finishInit(conf);
     if (LOG.isTraceEnabled()) {
@@ -342,9 +383,9 @@ public class HFileWriterImpl implements HFile.Writer {
     if (blockWriter != null) {
       throw new IllegalStateException("finishInit called twice");
     }
-    blockWriter =
-      new HFileBlock.Writer(conf, blockEncoder, hFileContext, cacheConf.getByteBuffAllocator(),
-        conf.getInt(MAX_BLOCK_SIZE_UNCOMPRESSED, hFileContext.getBlocksize() * 10));
+    blockWriter = new HFileBlock.Writer(conf, dataBlockConf, blockEncoder, hFileContext,
+      cacheConf.getByteBuffAllocator(),
+      conf.getInt(MAX_BLOCK_SIZE_UNCOMPRESSED, hFileContext.getBlocksize() * 10));
     // Data block index writer
     boolean cacheIndexesOnWrite = cacheConf.shouldCacheIndexesOnWrite();
     dataBlockIndexWriter = new HFileBlockIndex.BlockIndexWriter(blockWriter,
@@ -397,6 +438,12 @@ public class HFileWriterImpl implements HFile.Writer {
       getMidpoint(this.hFileContext.getCellComparator(), lastCellOfPreviousBlock, firstCellInBlock);
     dataBlockIndexWriter.addEntry(PrivateCellUtil.getCellKeySerializedAsKeyValueKey(indexEntry),
       lastDataBlockOffset, onDiskSize);
+    if (dataBlockTimeRanges != null) {
+      dataBlockTimeRanges.add(lastDataBlockOffset, onDiskSize, blockMinTimestamp,
+        blockMaxTimestamp);
+      blockMinTimestamp = Long.MAX_VALUE;
+      blockMaxTimestamp = Long.MIN_VALUE;
+    }
     totalUncompressedBytes += blockWriter.getUncompressedSizeWithHeader();
     if (cacheConf.shouldCacheDataOnWrite()) {
       doCacheOnWrite(lastDataBlockOffset);
@@ -594,6 +641,9 @@ public class HFileWriterImpl implements HFile.Writer {
           return;
         }
         cache.cacheBlock(key, cacheFormatBlock, cacheConf.isInMemory(), true);
+        BlockCacheTracer.record(key, cacheFormatBlock.getBlockType(),
+          cacheFormatBlock.getSerializedLength(), BlockCacheTraceRecord.Caller.WRITE, false, true,
+          cacheConf.isInMemory());
       } finally {
         // refCnt will auto increase when block add to Cache, see RAMCache#putIfAbsent
         cacheFormatBlock.release();
@@ -657,12 +707,19 @@ public class HFileWriterImpl implements HFile.Writer {
     blockEncoder.saveMetadata(this);
     // Save index block encoder metadata in the file info.
     indexBlockEncoder.saveMetadata(this);
+    if (compressionDictionary != null) {
+      fileInfo.append(HFileInfo.COMPRESSION_DICTIONARY, compressionDictionary, false);
+    }
     // Write out the end of the data blocks, then write meta data blocks.
     // followed by fileinfo, data block index and meta block index.
 
     finishBlock();
     writeInlineBlocks(true);
 
+    if (dataBlockTimeRanges != null && dataBlockTimeRanges.size() > 0) {
+      appendMetaBlock(DataBlockTimeRanges.META_BLOCK_NAME, dataBlockTimeRanges);
+    }
+
     FixedFileTrailer trailer = new FixedFileTrailer(getMajorVersion(), getMinorVersion());
 
     // Write out the metadata blocks if any.
@@ -728,6 +785,10 @@ public class HFileWriterImpl implements HFile.Writer {
     finishClose(trailer);
 
     blockWriter.release();
+    if (compressionDictionaryPath != null) {
+      DictionaryCache.releaseDictionary(compressionDictionaryPath);
+      compressionDictionaryPath = null;
+    }
   }
 
   @Override
@@ -948,5 +1009,12 @@ public class HFileWriterImpl implements HFile.Writer {
       earliestPutTs = Math.min(earliestPutTs, cell.getTimestamp());
     }
     timeRangeTracker.includeTimestamp(cell);
+    if (dataBlockTimeRanges != null) {
+      // same as the TimeRangeTracker, column and family deletes cover everything older
+      long timestamp = cell.getTimestamp();
+      blockMinTimestamp =
+        Math.min(blockMinTimestamp, PrivateCellUtil.isDeleteColumnOrFamily(cell) ? 0 : timestamp);
+      blockMaxTimestamp = Math.max(blockMaxTimestamp, timestamp);
+    }
   }
 }
@@ -35,6 +35,16 @@ public class InclusiveCombinedBlockCache extends CombinedBlockCache {
     return l1Cache.getBlock(cacheKey, caching, repeat, updateCacheMetrics);
   }
 
+  @Override
+  public Cacheable[] getBlocks(BlockCacheKey[] cacheKeys, boolean caching,
+    boolean updateCacheMetrics) {
+    Cacheable[] blocks = new Cacheable[cacheKeys.length];
+    for (int i = 0; i < cacheKeys.length; i++) {
+      blocks[i] = getBlock(cacheKeys[i], caching, false, updateCacheMetrics);
+    }
+    return blocks;
+  }
+
   /**
    * @param cacheKey The block's cache key.
    * @param buf      The block contents wrapped in a ByteBuffer.
@@ -1340,7 +1340,9 @@ public class LruAdaptiveBlockCache implements FirstLevelBlockCache {
       List<Runnable> runnables = this.scheduleThreadPool.shutdownNow();
       LOG.debug("Still running " + runnables);
     }
-    this.evictionThread.shutdown();
+    if (this.evictionThread != null) {
+      this.evictionThread.shutdown();
+    }
   }
 
   /** Clears the cache. Used in tests. */
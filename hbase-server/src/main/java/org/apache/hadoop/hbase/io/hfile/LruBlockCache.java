@@ -20,8 +20,10 @@ package org.apache.hadoop.hbase.io.hfile;
 import static java.util.Objects.requireNonNull;
 
 import java.lang.ref.WeakReference;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
@@ -123,6 +125,27 @@ public class LruBlockCache implements FirstLevelBlockCache {
   private static final String LRU_IN_MEMORY_FORCE_MODE_CONFIG_NAME =
     "hbase.lru.rs.inmemoryforcemode";
 
+  /**
+   * How the cache space not reserved for in-memory blocks is split between the single and multi
+   * access priorities. 'lru' uses the fixed single and multi percentages. 'arc' starts from them
+   * and adapts the split the way ARC does: the keys of blocks the eviction process drops are
+   * remembered in a ghost list per priority, and a miss on a key in the single ghost list grows
+   * the single share while one on the multi ghost list grows the multi share. A large scan then
+   * only churns the single priority, as its blocks are never asked for again.
+   */
+  static final String LRU_EVICTION_POLICY_CONFIG_NAME = "hbase.lru.blockcache.eviction.policy";
+
+  /**
+   * Whether the victims inside a priority are chosen by cost weighted recency instead of recency
+   * alone. The age of a block since its last access is divided by the cost of missing it, so an
+   * index or bloom block, which stalls every read of its file when missing, outlives data blocks
+   * that were accessed as long ago.
+   */
+  static final String LRU_COST_AWARE_EVICTION_CONFIG_NAME =
+    "hbase.lru.blockcache.eviction.cost.aware";
+  static final String LRU_INDEX_BLOCK_COST_CONFIG_NAME = "hbase.lru.blockcache.index.block.cost";
+  static final String LRU_BLOOM_BLOCK_COST_CONFIG_NAME = "hbase.lru.blockcache.bloom.block.cost";
+
   /* Default Configuration Parameters */
 
   /* Backing Concurrent Map Configuration */
@@ -142,6 +165,11 @@ public class LruBlockCache implements FirstLevelBlockCache {
 
   private static final boolean DEFAULT_IN_MEMORY_FORCE_MODE = false;
 
+  private static final String DEFAULT_EVICTION_POLICY = "lru";
+  private static final boolean DEFAULT_COST_AWARE_EVICTION = false;
+  private static final float DEFAULT_INDEX_BLOCK_COST = 4.0f;
+  private static final float DEFAULT_BLOOM_BLOCK_COST = 4.0f;
+
   /* Statistics thread */
   private static final int STAT_THREAD_PERIOD = 60 * 5;
   private static final String LRU_MAX_BLOCK_SIZE = "hbase.lru.max.block.size";
@@ -234,6 +262,21 @@ public class LruBlockCache implements FirstLevelBlockCache {
   /** Whether in-memory hfile's data block has higher priority when evicting */
   private boolean forceInMemory;
 
+  /**
+   * Keys of the blocks recently evicted from the single and multi access priorities, null unless
+   * the 'arc' eviction policy is on.
+   */
+  private GhostList singleGhosts;
+  private GhostList multiGhosts;
+
+  /** Single access share of the cache when the 'arc' eviction policy adapts it */
+  private volatile float adaptiveSingleFactor;
+
+  /** Cost of missing index and bloom blocks relative to data blocks, when cost aware */
+  private boolean costAwareEviction = DEFAULT_COST_AWARE_EVICTION;
+  private float indexBlockCost = DEFAULT_INDEX_BLOCK_COST;
+  private float bloomBlockCost = DEFAULT_BLOOM_BLOCK_COST;
+
   /**
    * Where to send victims (blocks evicted/missing from the cache). This is used only when we use an
    * external cache as L2. Note: See org.apache.hadoop.hbase.io.hfile.MemcachedBlockCache
@@ -273,6 +316,23 @@ public class LruBlockCache implements FirstLevelBlockCache {
       conf.getFloat(LRU_HARD_CAPACITY_LIMIT_FACTOR_CONFIG_NAME, DEFAULT_HARD_CAPACITY_LIMIT_FACTOR),
       conf.getBoolean(LRU_IN_MEMORY_FORCE_MODE_CONFIG_NAME, DEFAULT_IN_MEMORY_FORCE_MODE),
       conf.getLong(LRU_MAX_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE));
+    String evictionPolicy = conf.get(LRU_EVICTION_POLICY_CONFIG_NAME, DEFAULT_EVICTION_POLICY);
+    if ("arc".equalsIgnoreCase(evictionPolicy)) {
+      int ghostCapacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxSize / blockSize));
+      this.singleGhosts = new GhostList(ghostCapacity);
+      this.multiGhosts = new GhostList(ghostCapacity);
+      this.adaptiveSingleFactor = this.singleFactor;
+    } else if (!DEFAULT_EVICTION_POLICY.equalsIgnoreCase(evictionPolicy)) {
+      throw new IllegalArgumentException("Unknown eviction policy '" + evictionPolicy + "' for "
+        + LRU_EVICTION_POLICY_CONFIG_NAME + ", expected 'lru' or 'arc'");
+    }
+    this.costAwareEviction =
+      conf.getBoolean(LRU_COST_AWARE_EVICTION_CONFIG_NAME, DEFAULT_COST_AWARE_EVICTION);
+    this.indexBlockCost = conf.getFloat(LRU_INDEX_BLOCK_COST_CONFIG_NAME, DEFAULT_INDEX_BLOCK_COST);
+    this.bloomBlockCost = conf.getFloat(LRU_BLOOM_BLOCK_COST_CONFIG_NAME, DEFAULT_BLOOM_BLOCK_COST);
+    if (indexBlockCost <= 0 || bloomBlockCost <= 0) {
+      throw new IllegalArgumentException("Block costs must be positive");
+    }
   }
 
   public LruBlockCache(long maxSize, long blockSize, Configuration conf) {
@@ -528,6 +588,9 @@ public class LruBlockCache implements FirstLevelBlockCache {
       if (!repeat && updateCacheMetrics) {
         stats.miss(caching, cacheKey.isPrimary(), cacheKey.getBlockType());
       }
+      if (!repeat && singleGhosts != null) {
+        adaptToGhostHit(cacheKey);
+      }
       // If there is another block cache then try and read there.
       // However if this is a retry ( second time in double checked locking )
       // And it's already a miss then the l2 will also be a miss.
@@ -636,6 +699,13 @@ public class LruBlockCache implements FirstLevelBlockCache {
       // When the eviction of the block happened because of invalidation of HFiles, no need to
       // update the stats counter.
       stats.evicted(block.getCachedTime(), block.getCacheKey().isPrimary());
+      if (singleGhosts != null) {
+        if (block.getPriority() == BlockPriority.SINGLE) {
+          singleGhosts.add(block.getCacheKey());
+        } else if (block.getPriority() == BlockPriority.MULTI) {
+          multiGhosts.add(block.getCacheKey());
+        }
+      }
     }
     return block.heapSize();
   }
@@ -684,9 +754,13 @@ public class LruBlockCache implements FirstLevelBlockCache {
       }
 
       // Instantiate priority buckets
-      BlockBucket bucketSingle = new BlockBucket("single", bytesToFree, blockSize, singleSize());
-      BlockBucket bucketMulti = new BlockBucket("multi", bytesToFree, blockSize, multiSize());
-      BlockBucket bucketMemory = new BlockBucket("memory", bytesToFree, blockSize, memorySize());
+      Comparator<LruCachedBlock> order = evictionOrder(count.get());
+      BlockBucket bucketSingle =
+        new BlockBucket("single", bytesToFree, blockSize, singleSize(), order);
+      BlockBucket bucketMulti =
+        new BlockBucket("multi", bytesToFree, blockSize, multiSize(), order);
+      BlockBucket bucketMemory =
+        new BlockBucket("memory", bytesToFree, blockSize, memorySize(), order);
 
       // Scan entire map putting into appropriate buckets
       for (LruCachedBlock cachedBlock : map.values()) {
@@ -795,6 +869,87 @@ public class LruBlockCache implements FirstLevelBlockCache {
       .toString();
   }
 
+  /**
+   * Returns the order in which an eviction run, started at access sequence number {@code now},
+   * picks its victims inside each priority. The largest blocks in this order go first.
+   */
+  private Comparator<LruCachedBlock> evictionOrder(long now) {
+    if (!costAwareEviction) {
+      return Comparator.naturalOrder();
+    }
+    return Comparator.comparingDouble(block -> (now - block.getAccessTime()) / missCost(block));
+  }
+
+  private double missCost(LruCachedBlock block) {
+    BlockType blockType = block.getBuffer().getBlockType();
+    if (blockType == null) {
+      return 1;
+    }
+    if (blockType.isIndex()) {
+      return indexBlockCost;
+    }
+    if (blockType.isBloom()) {
+      return bloomBlockCost;
+    }
+    return 1;
+  }
+
+  /**
+   * Moves the single/multi split towards the priority the missed block was recently evicted from.
+   * The step follows ARC: one block, scaled up by how much larger the other ghost list is. Racing
+   * updates may lose a step, which only slows the adaptation down.
+   */
+  private void adaptToGhostHit(BlockCacheKey cacheKey) {
+    float total = singleFactor + multiFactor;
+    float blockShare = total / singleGhosts.capacity();
+    if (singleGhosts.remove(cacheKey)) {
+      float step =
+        blockShare * Math.max(1f, (float) multiGhosts.size() / Math.max(1, singleGhosts.size()));
+      adaptiveSingleFactor = Math.min(total, adaptiveSingleFactor + step);
+    } else if (multiGhosts.remove(cacheKey)) {
+      float step =
+        blockShare * Math.max(1f, (float) singleGhosts.size() / Math.max(1, multiGhosts.size()));
+      adaptiveSingleFactor = Math.max(0f, adaptiveSingleFactor - step);
+    }
+  }
+
+  /** Returns the current share of the cache for single access blocks */
+  float getSingleFactor() {
+    return singleGhosts == null ? singleFactor : adaptiveSingleFactor;
+  }
+
+  /** Bounded FIFO of the keys of blocks recently evicted from one priority. */
+  private static final class GhostList {
+    private final int capacity;
+    private final Map<BlockCacheKey, Boolean> keys;
+
+    GhostList(int capacity) {
+      this.capacity = capacity;
+      this.keys = new LinkedHashMap<BlockCacheKey, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BlockCacheKey, Boolean> eldest) {
+          return size() > GhostList.this.capacity;
+        }
+      };
+    }
+
+    int capacity() {
+      return capacity;
+    }
+
+    synchronized void add(BlockCacheKey key) {
+      keys.put(key, Boolean.TRUE);
+    }
+
+    synchronized boolean remove(BlockCacheKey key) {
+      return keys.remove(key) != null;
+    }
+
+    synchronized int size() {
+      return keys.size();
+    }
+  }
+
   /**
    * Used to group blocks into priority buckets. There will be a BlockBucket for each priority
    * (single, multi, memory). Once bucketed, the eviction algorithm takes the appropriate number of
@@ -807,10 +962,11 @@ public class LruBlockCache implements FirstLevelBlockCache {
     private long totalSize = 0;
     private long bucketSize;
 
-    public BlockBucket(String name, long bytesToFree, long blockSize, long bucketSize) {
+    public BlockBucket(String name, long bytesToFree, long blockSize, long bucketSize,
+      Comparator<LruCachedBlock> order) {
       this.name = name;
       this.bucketSize = bucketSize;
-      queue = new LruCachedBlockQueue(bytesToFree, blockSize);
+      queue = new LruCachedBlockQueue(bytesToFree, blockSize, order);
       totalSize = 0;
     }
 
@@ -1032,7 +1188,13 @@ public class LruBlockCache implements FirstLevelBlockCache {
         ? "0,"
         : (StringUtils.formatPercent(stats.getHitCachingRatio(), 2) + ", "))
       + "evictions=" + stats.getEvictionCount() + ", " + "evicted=" + stats.getEvictedCount() + ", "
-      + "evictedPerRun=" + stats.evictedPerEviction());
+      + "evictedPerRun=" + stats.evictedPerEviction() + ", dataHitRatio="
+      + StringUtils.formatPercent(stats.getHitRatio(BlockType.BlockCategory.DATA), 2)
+      + ", indexHitRatio="
+      + StringUtils.formatPercent(stats.getHitRatio(BlockType.BlockCategory.INDEX), 2)
+      + ", bloomHitRatio="
+      + StringUtils.formatPercent(stats.getHitRatio(BlockType.BlockCategory.BLOOM), 2)
+      + ", singleFactor=" + getSingleFactor());
   }
 
   /**
@@ -1162,11 +1324,12 @@ public class LruBlockCache implements FirstLevelBlockCache {
   }
 
   private long singleSize() {
-    return (long) Math.floor(this.maxSize * this.singleFactor * this.minFactor);
+    return (long) Math.floor(this.maxSize * getSingleFactor() * this.minFactor);
   }
 
   private long multiSize() {
-    return (long) Math.floor(this.maxSize * this.multiFactor * this.minFactor);
+    float multi = this.singleFactor + this.multiFactor - getSingleFactor();
+    return (long) Math.floor(this.maxSize * multi * this.minFactor);
   }
 
   private long memorySize() {
@@ -1195,7 +1358,9 @@ public class LruBlockCache implements FirstLevelBlockCache {
       List<Runnable> runnables = this.scheduleThreadPool.shutdownNow();
       LOG.debug("Still running " + runnables);
     }
-    this.evictionThread.shutdown();
+    if (this.evictionThread != null) {
+      this.evictionThread.shutdown();
+    }
   }
 
   /** Clears the cache. Used in tests. */
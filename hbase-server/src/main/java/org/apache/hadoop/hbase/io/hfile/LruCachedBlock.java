@@ -80,6 +80,11 @@ public class LruCachedBlock implements HeapSize, Comparable<LruCachedBlock> {
     }
   }
 
+  /** Returns the access sequence number of the last access to this block */
+  public long getAccessTime() {
+    return accessTime;
+  }
+
   /** Returns Time we were cached at in nano seconds. */
   public long getCachedTime() {
     return this.cachedTime;
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hbase.io.hfile;
 
+import java.util.Comparator;
 import org.apache.hadoop.hbase.io.HeapSize;
 import org.apache.yetus.audience.InterfaceAudience;
 
@@ -38,6 +39,7 @@ import org.apache.hbase.thirdparty.com.google.common.collect.MinMaxPriorityQueue
 public class LruCachedBlockQueue implements HeapSize {
 
   private MinMaxPriorityQueue<LruCachedBlock> queue;
+  private final Comparator<LruCachedBlock> comparator;
 
   private long heapSize;
   private long maxSize;
@@ -47,13 +49,24 @@ public class LruCachedBlockQueue implements HeapSize {
    * @param blockSize expected average size of blocks
    */
   public LruCachedBlockQueue(long maxSize, long blockSize) {
+    this(maxSize, blockSize, Comparator.naturalOrder());
+  }
+
+  /**
+   * @param maxSize    the target size of elements in the queue
+   * @param blockSize  expected average size of blocks
+   * @param comparator ordering of the blocks, the largest ones are kept
+   */
+  public LruCachedBlockQueue(long maxSize, long blockSize,
+    Comparator<LruCachedBlock> comparator) {
     Preconditions.checkArgument(blockSize > 0, "negative blockSize %s", blockSize);
     Preconditions.checkArgument(maxSize > 0, "negative maxSize %s", maxSize);
     int initialSize = (int) (maxSize / blockSize);
     if (initialSize == 0) {
       initialSize++;
     }
-    queue = MinMaxPriorityQueue.expectedSize(initialSize).create();
+    this.comparator = comparator;
+    queue = MinMaxPriorityQueue.orderedBy(comparator).expectedSize(initialSize).create();
     heapSize = 0;
     this.maxSize = maxSize;
   }
@@ -76,7 +89,7 @@ public class LruCachedBlockQueue implements HeapSize {
       heapSize += cb.heapSize();
     } else {
       LruCachedBlock head = queue.peek();
-      if (cb.compareTo(head) > 0) {
+      if (comparator.compare(cb, head) > 0) {
         heapSize += cb.heapSize();
         heapSize -= head.heapSize();
         if (heapSize > maxSize) {
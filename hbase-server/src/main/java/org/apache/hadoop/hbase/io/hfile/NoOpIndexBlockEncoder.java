@@ -36,6 +36,7 @@ import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.regionserver.KeyValueScanner;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.hbase.util.Pair;
 import org.apache.yetus.audience.InterfaceAudience;
 
 /**
@@ -408,6 +409,18 @@ public class NoOpIndexBlockEncoder implements HFileIndexBlockEncoder {
       return new BlockWithScanInfo(block, nextIndexedKey);
     }
 
+    @Override
+    public Pair<Long, Integer> locateDataBlock(ExtendedCell key,
+      HFile.CachingBlockReader cachingBlockReader) throws IOException {
+      int rootLevelIndex = rootBlockContainingKey(key);
+      if (rootLevelIndex < 0 || rootLevelIndex >= blockOffsets.length) {
+        return null;
+      }
+      return HFileBlockIndex.BlockIndexReader.locateNonRootDataBlock(key,
+        blockOffsets[rootLevelIndex], blockDataSizes[rootLevelIndex], searchTreeLevel, comparator,
+        cachingBlockReader);
+    }
+
     @Override
     public int rootBlockContainingKey(Cell key) {
       // Here the comparator should not be null as this happens for the root-level block
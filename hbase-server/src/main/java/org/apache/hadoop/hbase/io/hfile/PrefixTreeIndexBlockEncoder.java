@@ -0,0 +1,580 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.apache.hadoop.hbase.io.hfile.HFileBlockIndex.MID_KEY_METADATA_SIZE;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.hadoop.hbase.ByteBufferKeyOnlyKeyValue;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseInterfaceAudience;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.regionserver.KeyValueScanner;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.hbase.util.ObjectIntPair;
+import org.apache.hadoop.hbase.util.Pair;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Index block encoding which stores every key as the length of the prefix it shares with the
+ * previous key followed by the remaining suffix, the flattened form of a prefix trie over the keys
+ * of the block. Index keys of neighbouring blocks usually share most of their row, so this keeps
+ * index blocks, and the root index held by every reader, a fraction of their plain size.
+ * <p>
+ * Every {@link #RESTART_INTERVAL} entries the full key is stored again and its position recorded,
+ * so a block is searched where it lies: a binary search over the restart keys, compared in place,
+ * then a short forward scan rebuilding at most {@link #RESTART_INTERVAL} keys. Root and non-root
+ * blocks use the same layout:
+ *
+ * <pre>
+ * numEntries (int) | restartInterval (int) | numRestarts (int) | restart offsets (int each)
+ *   | entriesSize (int) | entries
+ * entry: commonPrefixLength (vint) | suffixLength (vint) | suffix | blockOffset (vlong)
+ *   | onDiskDataSize (vint)
+ * </pre>
+ *
+ * As with no encoding, the root block is followed by the mid-key metadata when there are leaf
+ * blocks.
+ */
+@InterfaceAudience.Private
+public class PrefixTreeIndexBlockEncoder implements HFileIndexBlockEncoder {
+
+  public static final PrefixTreeIndexBlockEncoder INSTANCE = new PrefixTreeIndexBlockEncoder();
+
+  static final int RESTART_INTERVAL = 16;
+
+  /** Cannot be instantiated. Use {@link #INSTANCE} instead. */
+  private PrefixTreeIndexBlockEncoder() {
+  }
+
+  @Override
+  public void saveMetadata(HFile.Writer writer) throws IOException {
+    writer.appendFileInfo(INDEX_BLOCK_ENCODING, IndexBlockEncoding.PREFIX_TREE.getNameInBytes());
+  }
+
+  @Override
+  public void encode(BlockIndexChunk blockIndexChunk, boolean rootIndexBlock, DataOutput out)
+    throws IOException {
+    int numEntries = blockIndexChunk.getNumEntries();
+    int numRestarts = (numEntries + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+    int[] restarts = new int[numRestarts];
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(blockIndexChunk.getNonRootSize());
+    DataOutputStream entries = new DataOutputStream(baos);
+    byte[] prevKey = null;
+    for (int i = 0; i < numEntries; i++) {
+      byte[] key = blockIndexChunk.getBlockKey(i);
+      int common = 0;
+      if (i % RESTART_INTERVAL == 0) {
+        restarts[i / RESTART_INTERVAL] = entries.size();
+      } else {
+        common = Bytes.findCommonPrefix(prevKey, key, prevKey.length, key.length, 0, 0);
+      }
+      WritableUtils.writeVInt(entries, common);
+      WritableUtils.writeVInt(entries, key.length - common);
+      entries.write(key, common, key.length - common);
+      WritableUtils.writeVLong(entries, blockIndexChunk.getBlockOffset(i));
+      WritableUtils.writeVInt(entries, blockIndexChunk.getOnDiskDataSize(i));
+      prevKey = key;
+    }
+    out.writeInt(numEntries);
+    out.writeInt(RESTART_INTERVAL);
+    out.writeInt(numRestarts);
+    for (int restart : restarts) {
+      out.writeInt(restart);
+    }
+    out.writeInt(baos.size());
+    out.write(baos.getBuffer(), 0, baos.size());
+  }
+
+  @Override
+  public IndexBlockEncoding getIndexBlockEncoding() {
+    return IndexBlockEncoding.PREFIX_TREE;
+  }
+
+  @Override
+  public EncodedSeeker createSeeker() {
+    return new PrefixTreeEncodedSeeker();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
+
+  /**
+   * Walks the entries of an encoded index block. Not thread safe, create one per search.
+   */
+  static final class Cursor {
+    private final ByteBuff buf;
+    private final CellComparator comparator;
+    private final int numEntries;
+    private final int restartInterval;
+    private final int numRestarts;
+    private final int entriesOffset;
+    private final ByteBufferKeyOnlyKeyValue restartKey = new ByteBufferKeyOnlyKeyValue();
+    private final KeyValue.KeyOnlyKeyValue currentKey = new KeyValue.KeyOnlyKeyValue();
+    private final ObjectIntPair<ByteBuffer> pair = new ObjectIntPair<>();
+
+    private byte[] key = new byte[128];
+    private int keyLength;
+    private int index;
+    private long blockOffset;
+    private int blockSize;
+
+    // result of the last locate
+    private boolean hasNextKey;
+    private long foundOffset;
+    private int foundSize;
+
+    Cursor(ByteBuff buf, CellComparator comparator) {
+      this.buf = buf;
+      this.comparator = comparator;
+      this.numEntries = buf.getInt(0);
+      this.restartInterval = buf.getInt(Bytes.SIZEOF_INT);
+      this.numRestarts = buf.getInt(2 * Bytes.SIZEOF_INT);
+      this.entriesOffset = Bytes.SIZEOF_INT * (numRestarts + 4);
+    }
+
+    private int restartPosition(int restart) {
+      return entriesOffset + buf.getInt(Bytes.SIZEOF_INT * (restart + 3));
+    }
+
+    private void seekToRestart(int restart) {
+      buf.position(restartPosition(restart));
+      index = restart * restartInterval - 1;
+      keyLength = 0;
+    }
+
+    /** Moves to the next entry, returns false if there is none. */
+    boolean next() {
+      if (index + 1 >= numEntries) {
+        return false;
+      }
+      int common = (int) ByteBufferUtils.readVLong(buf);
+      int suffix = (int) ByteBufferUtils.readVLong(buf);
+      if (common + suffix > key.length) {
+        key = Arrays.copyOf(key, Math.max(common + suffix, key.length * 2));
+      }
+      buf.get(key, common, suffix);
+      keyLength = common + suffix;
+      blockOffset = ByteBufferUtils.readVLong(buf);
+      blockSize = (int) ByteBufferUtils.readVLong(buf);
+      index++;
+      return true;
+    }
+
+    /** Positions the cursor on entry i. */
+    void seekTo(int i) {
+      seekToRestart(i / restartInterval);
+      while (index < i) {
+        next();
+      }
+    }
+
+    private int compareToRestart(Cell searchKey, int restart) {
+      buf.position(restartPosition(restart));
+      // restart entries share no prefix with their predecessor
+      ByteBufferUtils.readVLong(buf);
+      int length = (int) ByteBufferUtils.readVLong(buf);
+      buf.asSubByteBuffer(buf.position(), length, pair);
+      restartKey.setKey(pair.getFirst(), pair.getSecond(), length);
+      return PrivateCellUtil.compareKeyIgnoresMvcc(comparator, searchKey, restartKey);
+    }
+
+    /**
+     * Positions the cursor on the entry i such that key[i] &lt;= searchKey &lt; key[i + 1].
+     * Afterwards {@link #hasNextKey()} tells whether entry i + 1 exists, in which case
+     * {@link #copyKey()} returns its key.
+     * @return i, or -1 if the search key is before the first key of the block
+     */
+    int locate(Cell searchKey) {
+      int low = 0;
+      int high = numRestarts - 1;
+      int restart = -1;
+      while (low <= high) {
+        int mid = low + ((high - low) >> 1);
+        int cmp = compareToRestart(searchKey, mid);
+        if (cmp < 0) {
+          high = mid - 1;
+        } else {
+          restart = mid;
+          if (cmp == 0) {
+            break;
+          }
+          low = mid + 1;
+        }
+      }
+      if (restart < 0) {
+        return -1;
+      }
+      seekToRestart(restart);
+      next();
+      int found = index;
+      foundOffset = blockOffset;
+      foundSize = blockSize;
+      hasNextKey = false;
+      // the key of the next restart is known to be larger, so this reads at most one interval
+      while (next()) {
+        if (PrivateCellUtil.compareKeyIgnoresMvcc(comparator, searchKey, current()) < 0) {
+          hasNextKey = true;
+          break;
+        }
+        found = index;
+        foundOffset = blockOffset;
+        foundSize = blockSize;
+      }
+      return found;
+    }
+
+    boolean hasNextKey() {
+      return hasNextKey;
+    }
+
+    long getFoundOffset() {
+      return foundOffset;
+    }
+
+    int getFoundSize() {
+      return foundSize;
+    }
+
+    private Cell current() {
+      currentKey.setKey(key, 0, keyLength);
+      return currentKey;
+    }
+
+    /** Returns a copy of the key the cursor is on. */
+    byte[] copyKey() {
+      return Arrays.copyOf(key, keyLength);
+    }
+
+    long getBlockOffset() {
+      return blockOffset;
+    }
+
+    int getBlockSize() {
+      return blockSize;
+    }
+  }
+
+  @InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.UNITTEST)
+  public static class PrefixTreeEncodedSeeker implements EncodedSeeker {
+
+    /** The encoded root index, searched in place like the non-root blocks. */
+    private byte[] root = HConstants.EMPTY_BYTE_ARRAY;
+    protected int rootCount = 0;
+
+    // Mid-key metadata.
+    protected long midLeafBlockOffset = -1;
+    protected int midLeafBlockOnDiskSize = -1;
+    protected int midKeyEntry = -1;
+
+    private CellComparator comparator;
+    protected int searchTreeLevel;
+
+    /** Pre-computed mid-key */
+    private AtomicReference<ExtendedCell> midKey = new AtomicReference<>();
+
+    private Cursor rootCursor() {
+      return new Cursor(new SingleByteBuff(ByteBuffer.wrap(root)), comparator);
+    }
+
+    @Override
+    public long heapSize() {
+      long heapSize = ClassSize.align(ClassSize.OBJECT);
+      // Mid-key metadata.
+      heapSize += MID_KEY_METADATA_SIZE;
+      heapSize += ClassSize.REFERENCE + ClassSize.align(ClassSize.ARRAY + root.length);
+      // Add comparator and the midkey atomicreference
+      heapSize += 2 * ClassSize.REFERENCE;
+      // Add rootCount and searchTreeLevel
+      heapSize += 2 * Bytes.SIZEOF_INT;
+      return ClassSize.align(heapSize);
+    }
+
+    @Override
+    public void initRootIndex(HFileBlock blk, int numEntries, CellComparator comparator,
+      int treeLevel) throws IOException {
+      this.comparator = comparator;
+      this.searchTreeLevel = treeLevel;
+      this.rootCount = numEntries;
+      DataInputStream in = blk.getByteStream();
+      int count = in.readInt();
+      if (count != numEntries) {
+        throw new IOException(
+          "Root index has " + count + " entries but " + numEntries + " were expected");
+      }
+      int restartInterval = in.readInt();
+      int numRestarts = in.readInt();
+      int headerSize = Bytes.SIZEOF_INT * (numRestarts + 4);
+      byte[] header = new byte[headerSize];
+      Bytes.putInt(header, 0, count);
+      Bytes.putInt(header, Bytes.SIZEOF_INT, restartInterval);
+      Bytes.putInt(header, 2 * Bytes.SIZEOF_INT, numRestarts);
+      in.readFully(header, 3 * Bytes.SIZEOF_INT, headerSize - 3 * Bytes.SIZEOF_INT);
+      int entriesSize = Bytes.toInt(header, headerSize - Bytes.SIZEOF_INT);
+      root = Arrays.copyOf(header, headerSize + entriesSize);
+      in.readFully(root, headerSize, entriesSize);
+      if (in.available() < MID_KEY_METADATA_SIZE) {
+        // No mid-key metadata available.
+        return;
+      }
+      midLeafBlockOffset = in.readLong();
+      midLeafBlockOnDiskSize = in.readInt();
+      midKeyEntry = in.readInt();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return rootCount == 0;
+    }
+
+    @Override
+    public ExtendedCell getRootBlockKey(int i) {
+      Cursor cursor = rootCursor();
+      cursor.seekTo(i);
+      byte[] key = cursor.copyKey();
+      return new KeyValue.KeyOnlyKeyValue(key, 0, key.length);
+    }
+
+    @Override
+    public int getRootBlockCount() {
+      return rootCount;
+    }
+
+    @Override
+    public int rootBlockContainingKey(Cell key) {
+      return rootCount == 0 ? -1 : rootCursor().locate(key);
+    }
+
+    @Override
+    public ExtendedCell midkey(HFile.CachingBlockReader cachingBlockReader) throws IOException {
+      if (rootCount == 0) {
+        throw new IOException("HFile empty");
+      }
+
+      ExtendedCell targetMidKey = this.midKey.get();
+      if (targetMidKey != null) {
+        return targetMidKey;
+      }
+
+      if (midLeafBlockOffset >= 0) {
+        if (cachingBlockReader == null) {
+          throw new IOException(
+            "Have to read the middle leaf block but " + "no block reader available");
+        }
+
+        // Caching, using pread, assuming this is not a compaction.
+        HFileBlock midLeafBlock = cachingBlockReader.readBlock(midLeafBlockOffset,
+          midLeafBlockOnDiskSize, true, true, false, true, BlockType.LEAF_INDEX, null);
+        try {
+          Cursor cursor = new Cursor(midLeafBlock.getBufferWithoutHeader(), comparator);
+          cursor.seekTo(midKeyEntry);
+          byte[] bytes = cursor.copyKey();
+          targetMidKey = new KeyValue.KeyOnlyKeyValue(bytes, 0, bytes.length);
+        } finally {
+          midLeafBlock.release();
+        }
+      } else {
+        // The middle of the root-level index.
+        targetMidKey = getRootBlockKey(rootCount / 2);
+      }
+
+      this.midKey.set(targetMidKey);
+      return targetMidKey;
+    }
+
+    @Override
+    public BlockWithScanInfo loadDataBlockWithScanInfo(ExtendedCell key, HFileBlock currentBlock,
+      boolean cacheBlocks, boolean pread, boolean isCompaction,
+      DataBlockEncoding expectedDataBlockEncoding, HFile.CachingBlockReader cachingBlockReader)
+      throws IOException {
+      if (rootCount == 0) {
+        return null;
+      }
+      Cursor rootCursor = rootCursor();
+      int rootLevelIndex = rootCursor.locate(key);
+      if (rootLevelIndex < 0) {
+        return null;
+      }
+
+      // Read the next-level (intermediate or leaf) index block.
+      long currentOffset = rootCursor.getFoundOffset();
+      int currentOnDiskSize = rootCursor.getFoundSize();
+
+      // the next indexed key
+      ExtendedCell nextIndexedKey;
+      if (rootCursor.hasNextKey()) {
+        byte[] nextKey = rootCursor.copyKey();
+        nextIndexedKey = new KeyValue.KeyOnlyKeyValue(nextKey, 0, nextKey.length);
+      } else {
+        nextIndexedKey = KeyValueScanner.NO_NEXT_INDEXED_KEY;
+      }
+
+      int lookupLevel = 1; // How many levels deep we are in our lookup.
+
+      HFileBlock block = null;
+      while (true) {
+        try {
+          // Must initialize it with null here, because if don't and once an exception happen in
+          // readBlock, then we'll release the previous assigned block twice in the finally block.
+          // (See HBASE-22422)
+          block = null;
+          if (currentBlock != null && currentBlock.getOffset() == currentOffset) {
+            // Avoid reading the same block again, even with caching turned off.
+            block = currentBlock;
+          } else {
+            // We always cache index blocks, otherwise we might get terrible performance.
+            boolean shouldCache = cacheBlocks || (lookupLevel < searchTreeLevel);
+            BlockType expectedBlockType;
+            if (lookupLevel < searchTreeLevel - 1) {
+              expectedBlockType = BlockType.INTERMEDIATE_INDEX;
+            } else if (lookupLevel == searchTreeLevel - 1) {
+              expectedBlockType = BlockType.LEAF_INDEX;
+            } else {
+              // this also accounts for ENCODED_DATA
+              expectedBlockType = BlockType.DATA;
+            }
+            block = cachingBlockReader.readBlock(currentOffset, currentOnDiskSize, shouldCache,
+              pread, isCompaction, true, expectedBlockType, expectedDataBlockEncoding);
+          }
+
+          if (block == null) {
+            throw new IOException("Failed to read block at offset " + currentOffset
+              + ", onDiskSize=" + currentOnDiskSize);
+          }
+
+          // Found a data block, break the loop and check our level in the tree.
+          if (block.getBlockType().isData()) {
+            break;
+          }
+
+          // Not a data block. This must be a leaf-level or intermediate-level
+          // index block. We don't allow going deeper than searchTreeLevel.
+          if (++lookupLevel > searchTreeLevel) {
+            throw new IOException("Search Tree Level overflow: lookupLevel=" + lookupLevel
+              + ", searchTreeLevel=" + searchTreeLevel);
+          }
+
+          // Locate the entry corresponding to the given key in the non-root
+          // (leaf or intermediate-level) index block, without decoding the block.
+          Cursor cursor = new Cursor(block.getBufferWithoutHeader(), comparator);
+          if (cursor.locate(key) == -1) {
+            throw new IOException("The key " + CellUtil.getCellKeyAsString(key) + " is before the"
+              + " first key of the non-root index block " + block);
+          }
+          currentOffset = cursor.getFoundOffset();
+          currentOnDiskSize = cursor.getFoundSize();
+
+          // Only update next indexed key if there is a next indexed key in the current level
+          if (cursor.hasNextKey()) {
+            byte[] nextKey = cursor.copyKey();
+            nextIndexedKey = new KeyValue.KeyOnlyKeyValue(nextKey, 0, nextKey.length);
+          }
+        } finally {
+          if (block != null && !block.getBlockType().isData()) {
+            // Release the block immediately if it is not the data block
+            block.release();
+          }
+        }
+      }
+
+      if (lookupLevel != searchTreeLevel) {
+        assert block.getBlockType().isData();
+        // Though we have retrieved a data block we have found an issue
+        // in the retrieved data block. Hence returned the block so that
+        // the ref count can be decremented
+        block.release();
+        throw new IOException("Reached a data block at level " + lookupLevel
+          + " but the number of levels is " + searchTreeLevel);
+      }
+
+      // set the next indexed key for the current block.
+      return new BlockWithScanInfo(block, nextIndexedKey);
+    }
+
+    @Override
+    public Pair<Long, Integer> locateDataBlock(ExtendedCell key,
+      HFile.CachingBlockReader cachingBlockReader) throws IOException {
+      if (rootCount == 0) {
+        return null;
+      }
+      Cursor cursor = rootCursor();
+      if (cursor.locate(key) < 0) {
+        return null;
+      }
+      long offset = cursor.getFoundOffset();
+      int onDiskSize = cursor.getFoundSize();
+      for (int lookupLevel = 1; lookupLevel < searchTreeLevel; lookupLevel++) {
+        BlockType expectedBlockType = lookupLevel < searchTreeLevel - 1
+          ? BlockType.INTERMEDIATE_INDEX
+          : BlockType.LEAF_INDEX;
+        // We always cache index blocks
+        HFileBlock block = cachingBlockReader.readBlock(offset, onDiskSize, true, true, false, true,
+          expectedBlockType, null);
+        try {
+          cursor = new Cursor(block.getBufferWithoutHeader(), comparator);
+          if (cursor.locate(key) < 0) {
+            return null;
+          }
+          offset = cursor.getFoundOffset();
+          onDiskSize = cursor.getFoundSize();
+        } finally {
+          block.release();
+        }
+      }
+      return new Pair<>(offset, onDiskSize);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("size=" + rootCount).append("\n");
+      if (rootCount > 0) {
+        Cursor cursor = rootCursor();
+        cursor.seekTo(0);
+        do {
+          byte[] key = cursor.copyKey();
+          sb.append("key=").append(new KeyValue.KeyOnlyKeyValue(key, 0, key.length))
+            .append("\n  offset=").append(cursor.getBlockOffset())
+            .append(", dataSize=" + cursor.getBlockSize()).append("\n");
+        } while (cursor.next());
+      }
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockPriority;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Walks the entries of a {@link BucketCache#backingMap}. The getters read the fields of the
+ * current entry in place, so that a scan of an {@link OffHeapBackingMap} does not build a
+ * {@link BlockCacheKey} and a {@link BucketEntry} for every block it looks at. Callers keeping an
+ * entry, to evict it or to queue it, get it from {@link #key()}, {@link #entry()} or
+ * {@link #toMapEntry()}.
+ * <p>
+ * Like the iterators of the backing map, a cursor is weakly consistent.
+ */
+@InterfaceAudience.Private
+interface BackingMapCursor {
+
+  /** Returns a cursor positioned before the first entry of the given backing map. */
+  static BackingMapCursor of(Map<BlockCacheKey, BucketEntry> backingMap) {
+    if (backingMap instanceof OffHeapBackingMap) {
+      return ((OffHeapBackingMap) backingMap).cursor();
+    }
+    return new EntryCursor(backingMap.entrySet().iterator());
+  }
+
+  /** Moves to the next entry, returns false once there is none left. */
+  boolean next();
+
+  String getHfileName();
+
+  String getCfName();
+
+  String getRegionName();
+
+  boolean isPrimary();
+
+  BlockType getBlockType();
+
+  long getBlockOffset();
+
+  long getBucketOffset();
+
+  int getLength();
+
+  int getOnDiskSizeWithHeader();
+
+  long getAccessCounter();
+
+  long getCachedTime();
+
+  BlockPriority getPriority();
+
+  byte getDeserializerIndex();
+
+  /** See {@link BucketEntry#isRpcRef()}. */
+  boolean isRpcRef();
+
+  /** Returns the key of the current entry. */
+  BlockCacheKey key();
+
+  /** Returns the current entry. */
+  BucketEntry entry();
+
+  /** Returns the key and the entry, as the iterators of the backing map would. */
+  Map.Entry<BlockCacheKey, BucketEntry> toMapEntry();
+
+  /** A cursor over a map holding its entries as objects. */
+  final class EntryCursor implements BackingMapCursor {
+    private final Iterator<Map.Entry<BlockCacheKey, BucketEntry>> iterator;
+    private Map.Entry<BlockCacheKey, BucketEntry> current;
+
+    EntryCursor(Iterator<Map.Entry<BlockCacheKey, BucketEntry>> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean next() {
+      current = iterator.hasNext() ? iterator.next() : null;
+      return current != null;
+    }
+
+    @Override
+    public String getHfileName() {
+      return current.getKey().getHfileName();
+    }
+
+    @Override
+    public String getCfName() {
+      return current.getKey().getCfName();
+    }
+
+    @Override
+    public String getRegionName() {
+      return current.getKey().getRegionName();
+    }
+
+    @Override
+    public boolean isPrimary() {
+      return current.getKey().isPrimary();
+    }
+
+    @Override
+    public BlockType getBlockType() {
+      return current.getKey().getBlockType();
+    }
+
+    @Override
+    public long getBlockOffset() {
+      return current.getKey().getOffset();
+    }
+
+    @Override
+    public long getBucketOffset() {
+      return current.getValue().offset();
+    }
+
+    @Override
+    public int getLength() {
+      return current.getValue().getLength();
+    }
+
+    @Override
+    public int getOnDiskSizeWithHeader() {
+      return current.getValue().getOnDiskSizeWithHeader();
+    }
+
+    @Override
+    public long getAccessCounter() {
+      return current.getValue().getAccessCounter();
+    }
+
+    @Override
+    public long getCachedTime() {
+      return current.getValue().getCachedTime();
+    }
+
+    @Override
+    public BlockPriority getPriority() {
+      return current.getValue().getPriority();
+    }
+
+    @Override
+    public byte getDeserializerIndex() {
+      return current.getValue().deserializerIndex;
+    }
+
+    @Override
+    public boolean isRpcRef() {
+      return current.getValue().isRpcRef();
+    }
+
+    @Override
+    public BlockCacheKey key() {
+      return current.getKey();
+    }
+
+    @Override
+    public BucketEntry entry() {
+      return current.getValue();
+    }
+
+    @Override
+    public Map.Entry<BlockCacheKey, BucketEntry> toMapEntry() {
+      return current;
+    }
+  }
+}
@@ -42,7 +42,12 @@ import org.apache.hbase.thirdparty.org.apache.commons.collections4.map.LinkedMap
  * manages an array of buckets, each bucket is associated with a size and caches elements up to this
  * size. For a completely empty bucket, this size could be re-specified dynamically.
  * <p/>
- * This class is not thread safe.
+ * {@link #allocateBlock(int)} and {@link #freeBlock(long, int)} may be called concurrently. There
+ * is no allocator wide lock, each {@link BucketSizeInfo} guards its own buckets with its monitor,
+ * so writers allocating or freeing blocks of different sizes do not contend with each other. A
+ * bucket only moves between size classes while it is completely free, and it is removed from the
+ * old {@link BucketSizeInfo} under that one's lock before being instantiated under the new one's
+ * lock, so no thread ever holds two of them at once. The rest of this class is not thread safe.
  */
 @InterfaceAudience.Private
 public final class BucketAllocator {
@@ -201,16 +206,23 @@ public final class BucketAllocator {
      * @return the offset in the IOEngine
      */
     public long allocateBlock(int blockSize) {
-      Bucket b = null;
-      if (freeBuckets.size() > 0) {
-        // Use up an existing one first...
-        b = (Bucket) freeBuckets.lastKey();
-      }
-      if (b == null) {
-        b = grabGlobalCompletelyFreeBucket();
-        if (b != null) instantiateBucket(b);
+      synchronized (this) {
+        if (freeBuckets.size() > 0) {
+          // Use up an existing one first...
+          return allocateBlock((Bucket) freeBuckets.lastKey(), blockSize);
+        }
       }
+      // Grab a completely free bucket without holding our own lock, the other size classes are
+      // locked one at a time while looking for one.
+      Bucket b = grabGlobalCompletelyFreeBucket();
       if (b == null) return -1;
+      synchronized (this) {
+        instantiateBucket(b);
+        return allocateBlock(b, blockSize);
+      }
+    }
+
+    private long allocateBlock(Bucket b, int blockSize) {
       long result = b.allocate();
       blockAllocated(b);
       if (blockSize < b.getItemAllocationSize()) {
@@ -224,7 +236,7 @@ public final class BucketAllocator {
       if (!b.hasFreeSpace()) freeBuckets.remove(b);
     }
 
-    public Bucket findAndRemoveCompletelyFreeBucket() {
+    public synchronized Bucket findAndRemoveCompletelyFreeBucket() {
       Bucket b = null;
       assert bucketList.size() > 0;
       if (bucketList.size() == 1) {
@@ -246,7 +258,7 @@ public final class BucketAllocator {
       completelyFreeBuckets.remove(b);
     }
 
-    public void freeBlock(Bucket b, long offset, int length) {
+    public synchronized void freeBlock(Bucket b, long offset, int length) {
       assert bucketList.containsKey(b);
       // else we shouldn't have anything to free...
       assert (!completelyFreeBuckets.containsKey(b));
@@ -318,7 +330,7 @@ public final class BucketAllocator {
   private Bucket[] buckets;
   private BucketSizeInfo[] bucketSizeInfos;
   private final long totalSize;
-  private transient long usedSize = 0;
+  private final LongAdder usedSize = new LongAdder();
 
   BucketAllocator(long availableSpace, int[] bucketSizes) throws BucketAllocatorException {
     this.bucketSizes = bucketSizes == null ? DEFAULT_BUCKET_SIZES : bucketSizes;
@@ -408,7 +420,7 @@ public final class BucketAllocator {
       }
       if (buckets[bucketNo].addAllocation(foundOffset)) {
         realCacheSize.add(foundLen);
-        usedSize += buckets[bucketNo].getItemAllocationSize();
+        usedSize.add(buckets[bucketNo].getItemAllocationSize());
         bucketSizeInfos[bucketSizeIndex].blockAllocated(b);
       }
     }
@@ -436,7 +448,7 @@ public final class BucketAllocator {
   }
 
   public long getUsedSize() {
-    return this.usedSize;
+    return this.usedSize.sum();
   }
 
   public long getFreeSize() {
@@ -452,7 +464,7 @@ public final class BucketAllocator {
    * @param blockSize size of block
    * @return the offset in the IOEngine
    */
-  public synchronized long allocateBlock(int blockSize)
+  public long allocateBlock(int blockSize)
     throws CacheFullException, BucketAllocatorException {
     assert blockSize > 0;
     BucketSizeInfo bsi = roundUpToBucketSizeInfo(blockSize);
@@ -465,7 +477,7 @@ public final class BucketAllocator {
 
     // Ask caller to free up space and try again!
     if (offset < 0) throw new CacheFullException(blockSize, bsi.sizeIndex());
-    usedSize += bucketSizes[bsi.sizeIndex()];
+    usedSize.add(bucketSizes[bsi.sizeIndex()]);
     return offset;
   }
 
@@ -482,13 +494,16 @@ public final class BucketAllocator {
    * @param offset block's offset
    * @return size freed
    */
-  public synchronized int freeBlock(long offset, int length) {
+  public int freeBlock(long offset, int length) {
     int bucketNo = (int) (offset / bucketCapacity);
     assert bucketNo >= 0 && bucketNo < buckets.length;
     Bucket targetBucket = buckets[bucketNo];
+    // The bucket holds the block being freed, so it can not move to another size class until the
+    // block is freed. Once it is, the bucket may be reconfigured by a concurrent allocation.
+    int itemAllocationSize = targetBucket.getItemAllocationSize();
     bucketSizeInfos[targetBucket.sizeIndex()].freeBlock(targetBucket, offset, length);
-    usedSize -= targetBucket.getItemAllocationSize();
-    return targetBucket.getItemAllocationSize();
+    usedSize.add(-itemAllocationSize);
+    return itemAllocationSize;
   }
 
   public int sizeIndexOfAllocation(long offset) {
@@ -27,11 +27,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -45,8 +48,13 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -56,6 +64,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -92,6 +101,7 @@ import org.apache.hadoop.hbase.util.IdReadWriteLockStrongRef;
 import org.apache.hadoop.hbase.util.IdReadWriteLockWithObjectPool;
 import org.apache.hadoop.hbase.util.IdReadWriteLockWithObjectPool.ReferenceType;
 import org.apache.hadoop.hbase.util.Pair;
+import org.apache.hadoop.hbase.util.ReflectionUtils;
 import org.apache.hadoop.hbase.util.Threads;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.yetus.audience.InterfaceAudience;
@@ -100,6 +110,7 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.hbase.thirdparty.com.google.common.base.Preconditions;
 import org.apache.hbase.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hbase.thirdparty.com.google.protobuf.CodedInputStream;
 
 import org.apache.hadoop.hbase.shaded.protobuf.generated.BucketCacheProtos;
 
@@ -134,6 +145,14 @@ public class BucketCache implements BlockCache, HeapSize {
   static final String BACKING_MAP_PERSISTENCE_CHUNK_SIZE =
     "hbase.bucketcache.persistence.chunksize";
 
+  /**
+   * Number of threads decoding the chunks of the persisted backing map on startup. The chunks are
+   * read from the persistence file sequentially, their protobuf parsing and conversion to backing
+   * map entries is spread over this many threads. One or less decodes on the retriever thread.
+   */
+  static final String BACKING_MAP_RETRIEVAL_THREADS =
+    "hbase.bucketcache.persistence.retrieve.threads";
+
   /** Use strong reference for offsetLock or not */
   private static final String STRONG_REF_KEY = "hbase.bucketcache.offsetlock.usestrongref";
   private static final boolean STRONG_REF_DEFAULT = false;
@@ -144,6 +163,30 @@ public class BucketCache implements BlockCache, HeapSize {
 
   static final long BLOCK_ORPHAN_GRACE_PERIOD_DEFAULT = 24 * 60 * 60 * 1000L;
 
+  /** Whether blocks have to pass an admission policy before being written to the cache */
+  public static final String ADMISSION_POLICY_ENABLED_KEY = "hbase.bucketcache.admission.enabled";
+  public static final boolean ADMISSION_POLICY_ENABLED_DEFAULT = false;
+
+  /** The {@link BucketCacheAdmissionPolicy} implementation, used when admission is enabled */
+  public static final String ADMISSION_POLICY_CLASS_KEY =
+    "hbase.bucketcache.admission.policy.class";
+
+  /**
+   * Number of demoted blocks waiting to be written to the next tier. Further demotions are dropped.
+   * A waiting demotion keeps the bucket of its block allocated until the block has been read.
+   */
+  public static final String DEMOTION_QUEUE_SIZE_KEY = "hbase.bucketcache.demotion.queue.size";
+  public static final int DEFAULT_DEMOTION_QUEUE_SIZE = 1024;
+
+  /**
+   * Whether the backing map keeps its entries in direct memory, see {@link OffHeapBackingMap}. Only
+   * applies to IOEngines which do not use shared memory, such as the file IOEngine. An entry takes
+   * a slot of {@value OffHeapBackingMap#SLOT_SIZE} bytes of direct memory, counted against
+   * -XX:MaxDirectMemorySize, and the table keeps at least a quarter of its slots free.
+   */
+  public static final String OFFHEAP_BACKING_MAP_KEY = "hbase.bucketcache.backingmap.offheap";
+  public static final boolean OFFHEAP_BACKING_MAP_DEFAULT = false;
+
   /** Priority buckets */
   static final float DEFAULT_SINGLE_FACTOR = 0.25f;
   static final float DEFAULT_MULTI_FACTOR = 0.50f;
@@ -317,6 +360,24 @@ public class BucketCache implements BlockCache, HeapSize {
 
   private long orphanBlockGracePeriod = 0;
 
+  /** Null when every block is admitted to the cache */
+  private final BucketCacheAdmissionPolicy admissionPolicy;
+
+  /**
+   * The slower cache blocks are demoted to instead of being dropped, when this cache is one tier of
+   * a multi device hierarchy. Null for the last (or only) tier.
+   */
+  private volatile BucketCache nextTier;
+
+  /**
+   * Reads the blocks the eviction process demotes and writes them to the next tier, so that the
+   * eviction does not wait on either while holding its locks. Created with the next tier.
+   */
+  private transient volatile ThreadPoolExecutor demotionPool;
+
+  /** Position of this cache in a multi device hierarchy, 0 for the first tier */
+  private volatile int tier;
+
   public BucketCache(String ioEngineName, long capacity, int blockSize, int[] bucketSizes,
     int writerThreadNum, int writerQLen, String persistencePath) throws IOException {
     this(ioEngineName, capacity, blockSize, bucketSizes, writerThreadNum, writerQLen,
@@ -353,6 +414,7 @@ public class BucketCache implements BlockCache, HeapSize {
       // Enough for about 32TB of cache!
       throw new IllegalArgumentException("Cache capacity is too large, only support 32TB now");
     }
+    this.admissionPolicy = createAdmissionPolicy(conf, blockNumCapacity);
 
     // these sets the dynamic configs
     this.onConfigurationChange(conf);
@@ -380,7 +442,7 @@ public class BucketCache implements BlockCache, HeapSize {
     assert writerQueues.size() == writerThreads.length;
     this.ramCache = new RAMCache();
 
-    this.backingMap = new ConcurrentHashMap<>((int) blockNumCapacity);
+    this.backingMap = createBackingMap(conf, blockNumCapacity);
     instantiateWriterThreads();
 
     if (isCachePersistent()) {
@@ -405,6 +467,32 @@ public class BucketCache implements BlockCache, HeapSize {
       + persistencePath + ", bucketAllocator=" + BucketAllocator.class.getName());
   }
 
+  private Map<BlockCacheKey, BucketEntry> createBackingMap(Configuration conf,
+    long blockNumCapacity) {
+    if (conf.getBoolean(OFFHEAP_BACKING_MAP_KEY, OFFHEAP_BACKING_MAP_DEFAULT)) {
+      if (!ioEngine.usesSharedMemory()) {
+        OffHeapBackingMap map = new OffHeapBackingMap(blockNumCapacity, this::createRecycler);
+        LOG.info("Using off-heap backing map taking {} of direct memory",
+          StringUtils.byteDesc(map.getOffHeapSize()));
+        return map;
+      }
+      // Entries of shared memory IOEngines are reference counted by the readers of the block.
+      LOG.warn("Ignoring {}, {} uses shared memory", OFFHEAP_BACKING_MAP_KEY, ioEngine);
+    }
+    return new ConcurrentHashMap<>((int) blockNumCapacity);
+  }
+
+  private static BucketCacheAdmissionPolicy createAdmissionPolicy(Configuration conf,
+    long blockNumCapacity) {
+    if (!conf.getBoolean(ADMISSION_POLICY_ENABLED_KEY, ADMISSION_POLICY_ENABLED_DEFAULT)) {
+      return null;
+    }
+    Class<? extends BucketCacheAdmissionPolicy> clazz = conf.getClass(ADMISSION_POLICY_CLASS_KEY,
+      TinyLfuAdmissionPolicy.class, BucketCacheAdmissionPolicy.class);
+    LOG.info("Using {} as bucket cache admission policy", clazz.getName());
+    return ReflectionUtils.newInstance(clazz, conf, blockNumCapacity);
+  }
+
   private void startPersistenceRetriever(int[] bucketSizes, long capacity) {
     Runnable persistentCacheRetriever = () -> {
       try {
@@ -514,7 +602,9 @@ public class BucketCache implements BlockCache, HeapSize {
       // the compatibility
       String[] filePaths =
         ioEngineName.substring(ioEngineName.indexOf(":") + 1).split(FileIOEngine.FILE_DELIMITER);
-      return new FileIOEngine(capacity, persistencePath != null, filePaths);
+      return new FileIOEngine(capacity, persistencePath != null,
+        conf.getInt(FileIOEngine.READER_THREADS_KEY, FileIOEngine.DEFAULT_READER_THREADS),
+        filePaths);
     } else if (ioEngineName.startsWith("offheap")) {
       return new ByteBufferIOEngine(capacity);
     } else if (ioEngineName.startsWith("mmap:")) {
@@ -607,6 +697,14 @@ public class BucketCache implements BlockCache, HeapSize {
     if (cacheKey.getBlockType() == null && cachedItem.getBlockType() != null) {
       cacheKey.setBlockType(cachedItem.getBlockType());
     }
+    if (admissionPolicy != null) {
+      if (!admissionPolicy.admit(cacheKey, cachedItem, isCacheFull())) {
+        LOG.trace("Admission policy rejected block {}", cacheKey);
+        cacheStats.rejected();
+        return;
+      }
+      cacheStats.admitted();
+    }
     LOG.debug("Caching key={}, item={}, key heap size={}", cacheKey, cachedItem,
       cacheKey.heapSize());
     // Stuff the entry into the RAM cache so it can get drained to the persistent store
@@ -684,10 +782,22 @@ public class BucketCache implements BlockCache, HeapSize {
   @Override
   public Cacheable getBlock(BlockCacheKey key, boolean caching, boolean repeat,
     boolean updateCacheMetrics) {
+    return getBlock(key, caching, repeat, updateCacheMetrics, !repeat);
+  }
+
+  /**
+   * Same as {@link #getBlock(BlockCacheKey, boolean, boolean, boolean)}, with recordAccess telling
+   * whether the lookup still has to be counted by the admission policy.
+   */
+  private Cacheable getBlock(BlockCacheKey key, boolean caching, boolean repeat,
+    boolean updateCacheMetrics, boolean recordAccess) {
     if (!isCacheEnabled()) {
       cacheStats.miss(caching, key.isPrimary(), key.getBlockType());
       return null;
     }
+    if (admissionPolicy != null && recordAccess) {
+      admissionPolicy.recordAccess(key);
+    }
     RAMQueueEntry re = ramCache.get(key);
     if (re != null) {
       if (updateCacheMetrics) {
@@ -717,7 +827,7 @@ public class BucketCache implements BlockCache, HeapSize {
         // We can not read here even if backingMap does contain the given key because its offset
         // maybe changed. If we lock BlockCacheKey instead of offset, then we can only check
         // existence here.
-        if (bucketEntry.equals(backingMap.get(backingMapLookupKey))) {
+        if (bucketEntry.isSameBlock(backingMap.get(backingMapLookupKey))) {
           // Read the block from IOEngine based on the bucketEntry's offset and length, NOTICE: the
           // block will use the refCnt of bucketEntry, which means if two HFileBlock mapping to
           // the same BucketEntry, then all of the three will share the same refCnt.
@@ -753,15 +863,185 @@ public class BucketCache implements BlockCache, HeapSize {
         evictInconsistentEntry(backingMapLookupKey, bucketEntry);
       }
     }
+    Cacheable nextTierBlock = getBlockFromNextTier(key, caching, repeat, updateCacheMetrics);
+    if (nextTierBlock != null) {
+      if (updateCacheMetrics) {
+        cacheStats.hit(caching, key.isPrimary(), key.getBlockType());
+        cacheStats.nextTierHit();
+      }
+      return nextTierBlock;
+    }
     if (!repeat && updateCacheMetrics) {
       cacheStats.miss(caching, key.isPrimary(), key.getBlockType());
     }
     return null;
   }
 
+  /**
+   * Looks the block up in the next tier, if there is one, and promotes it into this tier on a hit.
+   * The next tier keeps its copy, so a block which is promoted and later demoted again does not
+   * have to be rewritten to the slower device.
+   */
+  private Cacheable getBlockFromNextTier(BlockCacheKey key, boolean caching, boolean repeat,
+    boolean updateCacheMetrics) {
+    BucketCache tier = nextTier;
+    if (tier == null) {
+      return null;
+    }
+    Cacheable block = tier.getBlock(key, caching, repeat, updateCacheMetrics);
+    if (block != null && caching) {
+      cacheBlockWithWait(key, block, false, false);
+    }
+    return block;
+  }
+
+  /**
+   * Get the buffers of several blocks in one call. Blocks found in the backing map are read from
+   * the IOEngine with a single {@link IOEngine#read(BucketEntry[], ObjIntConsumer)}, which lets
+   * engines such as {@link FileIOEngine} merge and overlap the device reads of a multi block
+   * lookup. The offset lock of an entry is let go as soon as the engine has read that entry.
+   * Anything that can not be served by the batch, because its entry changed while we were locking
+   * it or the batch read failed, is looked up again on its own.
+   * @param keys               blocks' cache keys
+   * @param caching            true if the caller caches blocks on cache misses
+   * @param updateCacheMetrics Whether we should update cache metrics or not
+   * @return buffers in the same order as {@code keys}, with null for keys not in the cache
+   */
+  @Override
+  public Cacheable[] getBlocks(BlockCacheKey[] keys, boolean caching, boolean updateCacheMetrics) {
+    Cacheable[] result = new Cacheable[keys.length];
+    if (!isCacheEnabled()) {
+      for (BlockCacheKey key : keys) {
+        cacheStats.miss(caching, key.isPrimary(), key.getBlockType());
+      }
+      return result;
+    }
+    BlockCacheKey[] lookupKeys = new BlockCacheKey[keys.length];
+    BucketEntry[] bucketEntries = new BucketEntry[keys.length];
+    List<Integer> pending = new ArrayList<>(keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      BlockCacheKey key = keys[i];
+      if (admissionPolicy != null) {
+        admissionPolicy.recordAccess(key);
+      }
+      RAMQueueEntry re = ramCache.get(key);
+      if (re != null) {
+        if (updateCacheMetrics) {
+          cacheStats.hit(caching, key.isPrimary(), key.getBlockType());
+        }
+        re.access(accessCount.incrementAndGet());
+        result[i] = re.getData();
+        continue;
+      }
+      BlockCacheKey lookupKey = key;
+      BucketEntry bucketEntry = backingMap.get(lookupKey);
+      if (bucketEntry == null) {
+        lookupKey = getBlockKeyForReference(key);
+        if (lookupKey != null) {
+          bucketEntry = backingMap.get(lookupKey);
+        }
+      }
+      if (bucketEntry == null) {
+        result[i] = getBlockFromNextTier(key, caching, false, updateCacheMetrics);
+        if (updateCacheMetrics) {
+          if (result[i] != null) {
+            cacheStats.hit(caching, key.isPrimary(), key.getBlockType());
+            cacheStats.nextTierHit();
+          } else {
+            cacheStats.miss(caching, key.isPrimary(), key.getBlockType());
+          }
+        }
+        continue;
+      }
+      lookupKeys[i] = lookupKey;
+      bucketEntries[i] = bucketEntry;
+      pending.add(i);
+    }
+    if (pending.isEmpty()) {
+      return result;
+    }
+    // Take the offset locks in offset order, so two batches never wait on each other in a cycle
+    // while a writer is queued on one of the locks.
+    pending.sort(Comparator.comparingLong(i -> bucketEntries[i].offset()));
+    ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[keys.length];
+    try {
+      List<Integer> readable = new ArrayList<>(pending.size());
+      for (int i : pending) {
+        ReentrantReadWriteLock lock = offsetLock.getLock(bucketEntries[i].offset());
+        lock.readLock().lock();
+        // Same check as in getBlock, the offset may have been reused by another block.
+        if (bucketEntries[i].isSameBlock(backingMap.get(lookupKeys[i]))) {
+          locks[i] = lock;
+          readable.add(i);
+        } else {
+          lock.readLock().unlock();
+        }
+      }
+      if (!readable.isEmpty()) {
+        BucketEntry[] toRead = new BucketEntry[readable.size()];
+        for (int j = 0; j < toRead.length; j++) {
+          toRead[j] = bucketEntries[readable.get(j)];
+        }
+        long start = System.nanoTime();
+        // the blocks the engine handed over, which are released if the batch fails after them
+        Cacheable[] handedOver = new Cacheable[toRead.length];
+        Cacheable[] cachedBlocks;
+        try {
+          cachedBlocks = ioEngine.read(toRead, (cachedBlock, j) -> {
+            int i = readable.get(j);
+            if (ioEngine.usesSharedMemory()) {
+              // See getBlock, count the RPC reference on the RefCnt shared with the BucketEntry.
+              cachedBlock.retain();
+            }
+            handedOver[j] = cachedBlock;
+            bucketEntries[i].access(accessCount.incrementAndGet());
+            locks[i].readLock().unlock();
+            locks[i] = null;
+          });
+        } catch (IOException | RuntimeException e) {
+          for (Cacheable cachedBlock : handedOver) {
+            if (cachedBlock != null) {
+              cachedBlock.release();
+            }
+          }
+          throw e;
+        }
+        long timePerBlock = (System.nanoTime() - start) / toRead.length;
+        for (int j = 0; j < toRead.length; j++) {
+          int i = readable.get(j);
+          if (updateCacheMetrics) {
+            cacheStats.hit(caching, keys[i].isPrimary(), keys[i].getBlockType());
+            cacheStats.ioHit(timePerBlock);
+          }
+          result[i] = cachedBlocks[j];
+        }
+        if (this.ioErrorStartTime > 0) {
+          ioErrorStartTime = -1;
+        }
+      }
+    } catch (IOException ioex) {
+      // Retried one by one below, getBlock takes care of inconsistent entries and IO error
+      // toleration.
+      LOG.debug("Batched read of {} blocks from bucket cache failed", pending.size(), ioex);
+    } finally {
+      for (ReentrantReadWriteLock lock : locks) {
+        if (lock != null) {
+          lock.readLock().unlock();
+        }
+      }
+    }
+    for (int i : pending) {
+      if (result[i] == null) {
+        // The access was recorded above already, do not count it twice.
+        result[i] = getBlock(keys[i], caching, false, updateCacheMetrics, false);
+      }
+    }
+    return result;
+  }
+
   private void evictInconsistentEntry(BlockCacheKey lookupKey, BucketEntry bucketEntry) {
-    BlockCacheKey storedKey = blocksByHFile.ceiling(lookupKey);
-    if (storedKey == null || !storedKey.equals(lookupKey)) {
+    BlockCacheKey storedKey = getStoredKey(lookupKey);
+    if (storedKey == null) {
       return;
     }
     bucketEntry.withWriteLock(offsetLock, () -> {
@@ -772,6 +1052,19 @@ public class BucketCache implements BlockCache, HeapSize {
     });
   }
 
+  /**
+   * Returns the key a block was cached with, which has the region and family a lookup key may lack.
+   * The {@link OffHeapBackingMap} keeps the blocks of a file itself, else they are kept in
+   * {@link #blocksByHFile}.
+   */
+  private BlockCacheKey getStoredKey(BlockCacheKey lookupKey) {
+    if (backingMap instanceof OffHeapBackingMap) {
+      return ((OffHeapBackingMap) backingMap).getStoredKey(lookupKey);
+    }
+    BlockCacheKey storedKey = blocksByHFile.ceiling(lookupKey);
+    return storedKey != null && storedKey.equals(lookupKey) ? storedKey : null;
+  }
+
   /**
    * This method is invoked after the bucketEntry is removed from {@link BucketCache#backingMap}
    */
@@ -843,7 +1136,7 @@ public class BucketCache implements BlockCache, HeapSize {
    * <p>
    * Firstly, we'll try to remove the block from RAMCache,and then try to evict from backingMap.
    * Here we evict the block from backingMap immediately, but only free the reference from bucket
-   * cache by calling {@link BucketEntry#markedAsEvicted}. If there're still some RPC referring this
+   * cache by calling {@link BucketEntry#markAsEvicted}. If there're still some RPC referring this
    * block, block can only be de-allocated when all of them release the block.
    * <p>
    * NOTICE: we need to grab the write offset lock firstly before releasing the reference from
@@ -854,7 +1147,12 @@ public class BucketCache implements BlockCache, HeapSize {
    */
   @Override
   public boolean evictBlock(BlockCacheKey cacheKey) {
-    return doEvictBlock(cacheKey, null, false);
+    boolean evicted = doEvictBlock(cacheKey, null, false);
+    BucketCache tier = nextTier;
+    if (tier != null) {
+      evicted |= tier.evictBlock(cacheKey);
+    }
+    return evicted;
   }
 
   /**
@@ -887,7 +1185,16 @@ public class BucketCache implements BlockCache, HeapSize {
         if (backingMap.remove(cacheKey, bucketEntryToUse)) {
           LOG.debug("removed key {} from back map with offset lock {} in the evict process",
             cacheKey, bucketEntryToUse.offset());
+          // Pin the bucket before blockEvicted releases the cache's reference, so it stays
+          // allocated until the demotion has read the block.
+          boolean demote = evictedByEvictionProcess && shouldDemote(cacheKey);
+          if (demote) {
+            bucketEntryToUse.retain();
+          }
           blockEvicted(cacheKey, bucketEntryToUse, !existedInRamCache, evictedByEvictionProcess);
+          if (demote) {
+            scheduleDemotion(cacheKey, bucketEntryToUse);
+          }
           return true;
         }
         return false;
@@ -895,6 +1202,75 @@ public class BucketCache implements BlockCache, HeapSize {
     }
   }
 
+  /**
+   * Returns true if a block the eviction process drops should be handed to the next tier, that is
+   * there is a next tier and it does not have the block yet.
+   */
+  private boolean shouldDemote(BlockCacheKey cacheKey) {
+    BucketCache tier = nextTier;
+    return tier != null && demotionPool != null && tier.isCacheEnabled()
+      && !tier.ramCache.containsKey(cacheKey) && !tier.backingMap.containsKey(cacheKey);
+  }
+
+  /**
+   * Queues the demotion of an evicted block. The caller has pinned the bucket entry, the pin is
+   * released once the block has been read, or right away if the queue is full.
+   */
+  private void scheduleDemotion(BlockCacheKey cacheKey, BucketEntry bucketEntry) {
+    try {
+      demotionPool.execute(new Demotion(cacheKey, bucketEntry));
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Demotion queue is full, dropping block {}", cacheKey);
+      cacheStats.demotionDropped();
+      bucketEntry.release();
+    }
+  }
+
+  /**
+   * Reads a block the eviction process dropped from this tier and caches it in the next one.
+   */
+  private final class Demotion implements Runnable {
+    private final BlockCacheKey cacheKey;
+    private final BucketEntry bucketEntry;
+
+    Demotion(BlockCacheKey cacheKey, BucketEntry bucketEntry) {
+      this.cacheKey = cacheKey;
+      this.bucketEntry = bucketEntry;
+    }
+
+    @Override
+    public void run() {
+      try {
+        BucketCache tier = nextTier;
+        if (tier == null || !tier.isCacheEnabled() || !isCacheEnabled()) {
+          return;
+        }
+        // The entry is not in the backing map any more, the pin taken at eviction keeps its bucket
+        // from being reused, so it can be read without the offset lock.
+        Cacheable block = ioEngine.read(bucketEntry);
+        try {
+          cacheStats.demoted();
+          tier.cacheBlock(cacheKey, block, bucketEntry.getPriority() == BlockPriority.MEMORY,
+            false);
+        } finally {
+          if (!ioEngine.usesSharedMemory()) {
+            // With shared memory the block uses the refCnt of the entry, released below.
+            block.release();
+          }
+        }
+      } catch (IOException e) {
+        LOG.debug("Failed to read block {} for demotion to the next tier", cacheKey, e);
+      } finally {
+        bucketEntry.release();
+      }
+    }
+
+    /** Drops the demotion without running it */
+    void cancel() {
+      bucketEntry.release();
+    }
+  }
+
   /**
    * <pre>
    * Create the {@link Recycler} for {@link BucketEntry#refCnt},which would be used as
@@ -1022,7 +1398,8 @@ public class BucketCache implements BlockCache, HeapSize {
     long usedSize = bucketAllocator.getUsedSize();
     long freeSize = totalSize - usedSize;
     long cacheSize = getRealCacheSize();
-    LOG.info("failedBlockAdditions=" + cacheStats.getFailedInserts() + ", " + "totalSize="
+    LOG.info("tier=" + tier + ", failedBlockAdditions=" + cacheStats.getFailedInserts() + ", "
+      + "totalSize="
       + StringUtils.byteDesc(totalSize) + ", " + "freeSize=" + StringUtils.byteDesc(freeSize) + ", "
       + "usedSize=" + StringUtils.byteDesc(usedSize) + ", " + "cacheSize="
       + StringUtils.byteDesc(cacheSize) + ", " + "accesses=" + cacheStats.getRequestCount() + ", "
@@ -1039,7 +1416,11 @@ public class BucketCache implements BlockCache, HeapSize {
         : (StringUtils.formatPercent(cacheStats.getHitCachingRatio(), 2) + ", "))
       + "evictions=" + cacheStats.getEvictionCount() + ", " + "evicted="
       + cacheStats.getEvictedCount() + ", " + "evictedPerRun=" + cacheStats.evictedPerEviction()
-      + ", " + "allocationFailCount=" + cacheStats.getAllocationFailCount() + ", blocksCount="
+      + ", " + "allocationFailCount=" + cacheStats.getAllocationFailCount() + ", admittedCount="
+      + cacheStats.getAdmittedCount() + ", rejectedCount=" + cacheStats.getRejectedCount()
+      + ", demotedCount=" + cacheStats.getDemotedCount() + ", demotionDroppedCount="
+      + cacheStats.getDemotionDroppedCount() + ", pendingDemotions=" + getPendingDemotionCount()
+      + ", nextTierHitCount=" + cacheStats.getNextTierHitCount() + ", blocksCount="
       + backingMap.size());
     cacheStats.reset();
 
@@ -1050,6 +1431,14 @@ public class BucketCache implements BlockCache, HeapSize {
     return this.realCacheSize.sum();
   }
 
+  /**
+   * Returns true if the used size is above the acceptable size, i.e. caching another block makes
+   * the cache free space.
+   */
+  private boolean isCacheFull() {
+    return bucketAllocator.getUsedSize() >= acceptableSize();
+  }
+
   public long acceptableSize() {
     if (!isCacheInitialized("BucketCache::acceptableSize")) {
       return 0;
@@ -1101,16 +1490,18 @@ public class BucketCache implements BlockCache, HeapSize {
       // First we will build a set where the offsets are reference counted, usually
       // this set is small around O(Handler Count) unless something else is wrong
       Set<Integer> inUseBuckets = new HashSet<>();
-      backingMap.forEach((k, be) -> {
-        if (be.isRpcRef()) {
-          inUseBuckets.add(bucketAllocator.getBucketIndex(be.offset()));
+      BackingMapCursor cursor = BackingMapCursor.of(backingMap);
+      while (cursor.next()) {
+        if (cursor.isRpcRef()) {
+          inUseBuckets.add(bucketAllocator.getBucketIndex(cursor.getBucketOffset()));
         }
-      });
+      }
       Set<Integer> candidateBuckets =
         bucketAllocator.getLeastFilledBuckets(inUseBuckets, completelyFreeBucketsNeeded);
-      for (Map.Entry<BlockCacheKey, BucketEntry> entry : backingMap.entrySet()) {
-        if (candidateBuckets.contains(bucketAllocator.getBucketIndex(entry.getValue().offset()))) {
-          evictBucketEntryIfNoRpcReferenced(entry.getKey(), entry.getValue());
+      cursor = BackingMapCursor.of(backingMap);
+      while (cursor.next()) {
+        if (candidateBuckets.contains(bucketAllocator.getBucketIndex(cursor.getBucketOffset()))) {
+          evictBucketEntryIfNoRpcReferenced(cursor.key(), cursor.entry());
         }
       }
     }
@@ -1195,10 +1586,9 @@ public class BucketCache implements BlockCache, HeapSize {
         coldFiles = dataTieringManager.getColdFilesList();
       }
       // Scan entire map putting bucket entry into appropriate bucket entry
-      // group
-      for (Map.Entry<BlockCacheKey, BucketEntry> bucketEntryWithKey : backingMap.entrySet()) {
-        BlockCacheKey key = bucketEntryWithKey.getKey();
-        BucketEntry entry = bucketEntryWithKey.getValue();
+      // group. The cursor only builds the keys and entries which are evicted or queued.
+      BackingMapCursor cursor = BackingMapCursor.of(backingMap);
+      while (cursor.next()) {
         // Under certain conditions, blocks for regions not on the current region server might
         // be hanging on the cache. For example, when using the persistent cache feature, if the
         // RS crashes, then if not the same regions are assigned back once its online again, blocks
@@ -1214,14 +1604,14 @@ public class BucketCache implements BlockCache, HeapSize {
         // period (default 24 hours) where a block should be checked if it's an orphan block.
         if (
           allValidFiles != null
-            && entry.getCachedTime() < (System.nanoTime() - orphanGracePeriodNanos)
+            && cursor.getCachedTime() < (System.nanoTime() - orphanGracePeriodNanos)
         ) {
-          if (!allValidFiles.contains(key.getHfileName())) {
-            if (evictBucketEntryIfNoRpcReferenced(key, entry)) {
+          if (!allValidFiles.contains(cursor.getHfileName())) {
+            if (evictBucketEntryIfNoRpcReferenced(cursor.key(), cursor.entry())) {
               // We calculate the freed bytes, but we don't stop if the goal was reached because
               // these are orphan blocks anyway, so let's leverage this run of freeSpace
               // to get rid of all orphans at once.
-              bytesFreed += entry.getLength();
+              bytesFreed += cursor.getLength();
               continue;
             }
           }
@@ -1229,26 +1619,26 @@ public class BucketCache implements BlockCache, HeapSize {
 
         if (
           bytesFreed < bytesToFreeWithExtra && coldFiles != null
-            && coldFiles.containsKey(bucketEntryWithKey.getKey().getHfileName())
+            && coldFiles.containsKey(cursor.getHfileName())
         ) {
-          int freedBlockSize = bucketEntryWithKey.getValue().getLength();
-          if (evictBlockIfNoRpcReferenced(bucketEntryWithKey.getKey())) {
+          int freedBlockSize = cursor.getLength();
+          if (evictBlockIfNoRpcReferenced(cursor.key())) {
             bytesFreed += freedBlockSize;
           }
           continue;
         }
 
-        switch (entry.getPriority()) {
+        switch (cursor.getPriority()) {
           case SINGLE: {
-            bucketSingle.add(bucketEntryWithKey);
+            bucketSingle.add(cursor);
             break;
           }
           case MULTI: {
-            bucketMulti.add(bucketEntryWithKey);
+            bucketMulti.add(cursor);
             break;
           }
           case MEMORY: {
-            bucketMemory.add(bucketEntryWithKey);
+            bucketMemory.add(cursor);
             break;
           }
         }
@@ -1385,14 +1775,17 @@ public class BucketCache implements BlockCache, HeapSize {
   protected void putIntoBackingMap(BlockCacheKey key, BucketEntry bucketEntry) {
     BucketEntry previousEntry = backingMap.put(key, bucketEntry);
     updateRegionCachedSize(key, bucketEntry.getLength());
-    if (previousEntry != null && previousEntry != bucketEntry) {
+    if (previousEntry != null && !previousEntry.isSameBlock(bucketEntry)) {
       previousEntry.withWriteLock(offsetLock, () -> {
         blockEvicted(key, previousEntry, false, false);
         return null;
       });
     }
+    if (backingMap instanceof OffHeapBackingMap) {
+      return;
+    }
     bucketEntry.withWriteLock(offsetLock, () -> {
-      if (backingMap.get(key) == bucketEntry) {
+      if (bucketEntry.isSameBlock(backingMap.get(key))) {
         blocksByHFile.add(key);
       }
       return null;
@@ -1590,10 +1983,13 @@ public class BucketCache implements BlockCache, HeapSize {
   @edu.umd.cs.findbugs.annotations.SuppressWarnings(value = "OBL_UNSATISFIED_OBLIGATION",
       justification = "false positive, try-with-resources ensures close is called.")
   void persistToFile() throws IOException {
-    persistToFile(entry -> {
-    });
+    persistToFile(null);
   }
 
+  /**
+   * @param entryCopiedAction called with each entry once it is persisted, or null if nothing is to
+   *                          be done with the entries
+   */
   private void persistToFile(Consumer<Map.Entry<BlockCacheKey, BucketEntry>> entryCopiedAction)
     throws IOException {
     LOG.debug("Thread {} started persisting bucket cache to file",
@@ -1709,9 +2105,12 @@ public class BucketCache implements BlockCache, HeapSize {
       throw new IOException("Class name for IO engine mismatch: " + ioclass + ", expected:"
         + ioEngine.getClass().getName());
     }
-    if (!backingMap.getClass().getName().equals(mapclass)) {
-      throw new IOException("Class name for cache map mismatch: " + mapclass + ", expected:"
-        + backingMap.getClass().getName());
+    // The entries are persisted the same way for both maps, either can restore them.
+    if (
+      !ConcurrentHashMap.class.getName().equals(mapclass)
+        && !OffHeapBackingMap.class.getName().equals(mapclass)
+    ) {
+      throw new IOException("Unknown class name for cache map: " + mapclass);
     }
   }
 
@@ -1759,21 +2158,30 @@ public class BucketCache implements BlockCache, HeapSize {
 
   private void updateCacheIndex(BucketCacheProtos.BackingMap chunk,
     java.util.Map<java.lang.Integer, java.lang.String> deserializer) throws IOException {
-    Pair<ConcurrentHashMap<BlockCacheKey, BucketEntry>, NavigableSet<BlockCacheKey>> pair2 =
-      BucketProtoUtils.fromPB(deserializer, chunk, this::createRecycler);
-    pair2.getFirst().forEach((k, v) -> {
+    boolean indexByHFile = !(backingMap instanceof OffHeapBackingMap);
+    BucketProtoUtils.fromPB(deserializer, chunk, this::createRecycler, (k, v) -> {
       backingMap.put(k, v);
       updateRegionCachedSize(k, v.getLength());
+      if (indexByHFile) {
+        blocksByHFile.add(k);
+      }
     });
-    blocksByHFile.addAll(pair2.getSecond());
   }
 
   private void parsePB(BucketCacheProtos.BucketCacheEntry proto) throws IOException {
-    Pair<ConcurrentHashMap<BlockCacheKey, BucketEntry>, NavigableSet<BlockCacheKey>> pair =
+    if (backingMap instanceof OffHeapBackingMap) {
+      // Fill the off-heap map as the entries are decoded rather than building them all on the
+      // heap first.
+      backingMap.clear();
       BucketProtoUtils.fromPB(proto.getDeserializersMap(), proto.getBackingMap(),
-        this::createRecycler);
-    backingMap = pair.getFirst();
-    blocksByHFile = pair.getSecond();
+        this::createRecycler, backingMap::put);
+    } else {
+      Pair<ConcurrentHashMap<BlockCacheKey, BucketEntry>, NavigableSet<BlockCacheKey>> pair =
+        BucketProtoUtils.fromPB(proto.getDeserializersMap(), proto.getBackingMap(),
+          this::createRecycler);
+      backingMap = pair.getFirst();
+      blocksByHFile = pair.getSecond();
+    }
     fullyCachedFiles.clear();
     fullyCachedFiles.putAll(BucketProtoUtils.fromPB(proto.getCachedFilesMap()));
 
@@ -1819,17 +2227,78 @@ public class BucketCache implements BlockCache, HeapSize {
     regionCachedSize.clear();
 
     // Read the backing map entries in batches.
+    long startTime = EnvironmentEdgeManager.currentTime();
+    int threads =
+      conf.getInt(BACKING_MAP_RETRIEVAL_THREADS, Runtime.getRuntime().availableProcessors());
+    int numChunks = threads > 1
+      ? retrieveChunksInParallel(in, cacheEntry.getDeserializersMap(), threads)
+      : retrieveChunks(in, cacheEntry.getDeserializersMap());
+
+    LOG.info("Retrieved {} of chunks with blockCount = {} using {} threads in {}ms.", numChunks,
+      backingMap.size(), Math.max(threads, 1), EnvironmentEdgeManager.currentTime() - startTime);
+    verifyFileIntegrity(cacheEntry);
+    verifyCapacityAndClasses(cacheEntry.getCacheCapacity(), cacheEntry.getIoClass(),
+      cacheEntry.getMapClass());
+  }
+
+  private int retrieveChunks(FileInputStream in, Map<Integer, String> deserializers)
+    throws IOException {
     int numChunks = 0;
     while (in.available() > 0) {
-      updateCacheIndex(BucketCacheProtos.BackingMap.parseDelimitedFrom(in),
-        cacheEntry.getDeserializersMap());
+      updateCacheIndex(BucketCacheProtos.BackingMap.parseDelimitedFrom(in), deserializers);
       numChunks++;
     }
+    return numChunks;
+  }
 
-    LOG.info("Retrieved {} of chunks with blockCount = {}.", numChunks, backingMap.size());
-    verifyFileIntegrity(cacheEntry);
-    verifyCapacityAndClasses(cacheEntry.getCacheCapacity(), cacheEntry.getIoClass(),
-      cacheEntry.getMapClass());
+  /**
+   * Reads the raw chunks sequentially and hands their parsing to a pool, at most a few chunks per
+   * thread are held in memory at any time. All the index structures updated by
+   * {@link #updateCacheIndex} are concurrent.
+   */
+  private int retrieveChunksInParallel(FileInputStream in, Map<Integer, String> deserializers,
+    int threads) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+      .setNameFormat("BucketCacheChunkRetriever-%d").setDaemon(true).build());
+    Deque<Future<?>> inFlight = new ArrayDeque<>();
+    int numChunks = 0;
+    try {
+      while (in.available() > 0) {
+        int firstByte = in.read();
+        int length = CodedInputStream.readRawVarint32(firstByte, in);
+        byte[] chunk = new byte[length];
+        IOUtils.readFully(in, chunk, 0, length);
+        inFlight.add(pool.submit(() -> {
+          updateCacheIndex(BucketCacheProtos.BackingMap.parseFrom(chunk), deserializers);
+          return null;
+        }));
+        numChunks++;
+        if (inFlight.size() >= threads * 2) {
+          waitForChunk(inFlight.poll());
+        }
+      }
+      while (!inFlight.isEmpty()) {
+        waitForChunk(inFlight.poll());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    return numChunks;
+  }
+
+  private static void waitForChunk(Future<?> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (IOException) new InterruptedIOException("Interrupted while retrieving backing map")
+        .initCause(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to retrieve backing map chunk", e.getCause());
+    }
   }
 
   /**
@@ -1953,6 +2422,16 @@ public class BucketCache implements BlockCache, HeapSize {
     }
     LOG.info("Shutdown bucket cache: IO persistent=" + ioEngine.isPersistent() + "; path to write="
       + persistencePath);
+    ThreadPoolExecutor pool = demotionPool;
+    if (pool != null) {
+      for (Runnable pending : pool.shutdownNow()) {
+        ((Demotion) pending).cancel();
+      }
+    }
+    BucketCache tier = nextTier;
+    if (tier != null) {
+      tier.shutdown();
+    }
   }
 
   /**
@@ -1975,6 +2454,51 @@ public class BucketCache implements BlockCache, HeapSize {
     return this.bucketAllocator;
   }
 
+  /**
+   * Sets the cache blocks evicted by the eviction process are demoted to. Misses in this cache are
+   * looked up in the next tier and promoted on a hit. Evictions of a file, and shutdown, are passed
+   * down the chain. Demoted blocks are read and written to the next tier by a background thread,
+   * see {@link #DEMOTION_QUEUE_SIZE_KEY}.
+   */
+  public synchronized void setNextTier(BucketCache nextTier) {
+    Preconditions.checkArgument(nextTier != this, "A BucketCache can not be its own next tier");
+    if (nextTier != null && demotionPool == null) {
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(conf.getInt(DEMOTION_QUEUE_SIZE_KEY, DEFAULT_DEMOTION_QUEUE_SIZE)),
+        new ThreadFactoryBuilder().setNameFormat("BucketCacheDemotion-%d").setDaemon(true).build());
+      pool.allowCoreThreadTimeOut(true);
+      demotionPool = pool;
+    }
+    this.nextTier = nextTier;
+    if (nextTier != null) {
+      nextTier.setTier(tier + 1);
+    }
+  }
+
+  private void setTier(int tier) {
+    this.tier = tier;
+    BucketCache next = nextTier;
+    if (next != null) {
+      next.setTier(tier + 1);
+    }
+  }
+
+  /** Returns the position of this cache in a multi device hierarchy, 0 for the first tier */
+  public int getTier() {
+    return tier;
+  }
+
+  /** Returns the number of demoted blocks waiting to be written to the next tier */
+  public int getPendingDemotionCount() {
+    ThreadPoolExecutor pool = demotionPool;
+    return pool == null ? 0 : pool.getQueue().size();
+  }
+
+  /** Returns the next tier of this cache, or null if this is the last tier */
+  public BucketCache getNextTier() {
+    return nextTier;
+  }
+
   @Override
   public long heapSize() {
     return this.heapSize.sum();
@@ -2038,7 +2562,12 @@ public class BucketCache implements BlockCache, HeapSize {
     // split references, we might be evicting just half of the blocks
     LOG.debug("found {} blocks for file {}, starting offset: {}, end offset: {}", keySet.size(),
       hfileName, initOffset, endOffset);
-    return evictBlockSet(keySet);
+    int numEvicted = evictBlockSet(keySet);
+    BucketCache tier = nextTier;
+    if (tier != null) {
+      numEvicted += tier.evictBlocksRangeByHfileName(hfileName, initOffset, endOffset);
+    }
+    return numEvicted;
   }
 
   private int evictBlockSet(Set<BlockCacheKey> keySet) {
@@ -2064,6 +2593,10 @@ public class BucketCache implements BlockCache, HeapSize {
       }
     }
 
+    if (backingMap instanceof OffHeapBackingMap) {
+      cacheKeys.addAll(((OffHeapBackingMap) backingMap).getKeysForFile(hfileName, init, end));
+      return cacheKeys;
+    }
     // These keys are just for comparison and are short lived, so we need only file name and offset
     cacheKeys.addAll(blocksByHFile.subSet(new BlockCacheKey(hfileName, init), true,
       new BlockCacheKey(hfileName, end), true));
@@ -2087,9 +2620,11 @@ public class BucketCache implements BlockCache, HeapSize {
       totalSize = 0;
     }
 
-    public void add(Map.Entry<BlockCacheKey, BucketEntry> block) {
-      totalSize += block.getValue().getLength();
-      queue.add(block);
+    public void add(BackingMapCursor block) {
+      totalSize += block.getLength();
+      if (queue.wouldAdd(block.getAccessCounter())) {
+        queue.add(block.toMapEntry());
+      }
     }
 
     public long free(long toFree) {
@@ -2336,7 +2871,7 @@ public class BucketCache implements BlockCache, HeapSize {
   public int getRpcRefCount(BlockCacheKey cacheKey) {
     BucketEntry bucketEntry = backingMap.get(cacheKey);
     if (bucketEntry != null) {
-      return bucketEntry.refCnt() - (bucketEntry.markedAsEvicted.get() ? 0 : 1);
+      return bucketEntry.refCnt() - (bucketEntry.isMarkedAsEvicted() ? 0 : 1);
     }
     return 0;
   }
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Decides whether a block handed to {@link BucketCache#cacheBlock} is worth a bucket slot. Without
+ * an admission policy every block goes to the RAMCache and the writer queues, so a large scan or a
+ * compaction that caches on write can push the hot working set out of the cache with blocks that
+ * are never read again.
+ * <p>
+ * Implementations must be thread safe, both methods are called concurrently from the RPC handlers.
+ * They are created through a constructor taking the {@link org.apache.hadoop.conf.Configuration}
+ * and the number of blocks the cache is expected to hold, see
+ * {@link BucketCache#ADMISSION_POLICY_CLASS_KEY}.
+ */
+@InterfaceAudience.Private
+public interface BucketCacheAdmissionPolicy {
+
+  /**
+   * Records a lookup of the given block, whether it was a hit or a miss.
+   */
+  void recordAccess(BlockCacheKey key);
+
+  /**
+   * Returns true if the given block should be cached.
+   * @param key       the block's cache key
+   * @param block     the block to be cached
+   * @param cacheFull true if the cache is above its acceptable size, i.e. admitting the block will
+   *                  cause another block to be evicted
+   */
+  boolean admit(BlockCacheKey key, Cacheable block, boolean cacheFull);
+}
@@ -36,6 +36,18 @@ public class BucketCacheStats extends CacheStats {
   /* Tracing failed Bucket Cache allocations. */
   private LongAdder allocationFailCount = new LongAdder();
 
+  /* Blocks accepted and turned away by the admission policy, if one is configured. */
+  private final LongAdder admittedCount = new LongAdder();
+  private final LongAdder rejectedCount = new LongAdder();
+
+  /*
+   * Blocks handed down to, blocks which could not be queued for, and hits served by, the next tier
+   * when this cache is tiered. Not reset with the IO counters, like the hit and eviction counts.
+   */
+  private final LongAdder demotedCount = new LongAdder();
+  private final LongAdder demotionDroppedCount = new LongAdder();
+  private final LongAdder nextTierHitCount = new LongAdder();
+
   BucketCacheStats(int numPeriodsInWindow, int periodTimeInMinutes) {
     super("BucketCache", numPeriodsInWindow, periodTimeInMinutes);
     allocationFailCount.reset();
@@ -44,7 +56,10 @@ public class BucketCacheStats extends CacheStats {
   @Override
   public String toString() {
     return super.toString() + ", ioHitsPerSecond=" + getIOHitsPerSecond() + ", ioTimePerHit="
-      + getIOTimePerHit() + ", allocationFailCount=" + getAllocationFailCount();
+      + getIOTimePerHit() + ", allocationFailCount=" + getAllocationFailCount()
+      + ", admittedCount=" + getAdmittedCount() + ", rejectedCount=" + getRejectedCount()
+      + ", demotedCount=" + getDemotedCount() + ", demotionDroppedCount="
+      + getDemotionDroppedCount() + ", nextTierHitCount=" + getNextTierHitCount();
   }
 
   public void ioHit(long time) {
@@ -69,6 +84,8 @@ public class BucketCacheStats extends CacheStats {
     ioHitCount.reset();
     ioHitTime.reset();
     allocationFailCount.reset();
+    admittedCount.reset();
+    rejectedCount.reset();
   }
 
   public long getAllocationFailCount() {
@@ -78,4 +95,44 @@ public class BucketCacheStats extends CacheStats {
   public void allocationFailed() {
     allocationFailCount.increment();
   }
+
+  public long getAdmittedCount() {
+    return admittedCount.sum();
+  }
+
+  public void admitted() {
+    admittedCount.increment();
+  }
+
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  public void rejected() {
+    rejectedCount.increment();
+  }
+
+  public long getDemotedCount() {
+    return demotedCount.sum();
+  }
+
+  public void demoted() {
+    demotedCount.increment();
+  }
+
+  public long getDemotionDroppedCount() {
+    return demotionDroppedCount.sum();
+  }
+
+  public void demotionDropped() {
+    demotionDroppedCount.increment();
+  }
+
+  public long getNextTierHitCount() {
+    return nextTierHitCount.sum();
+  }
+
+  public void nextTierHit() {
+    nextTierHitCount.increment();
+  }
 }
@@ -20,7 +20,7 @@ package org.apache.hadoop.hbase.io.hfile.bucket;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Comparator;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
 import org.apache.hadoop.hbase.io.ByteBuffAllocator;
@@ -40,7 +40,8 @@ import org.apache.yetus.audience.InterfaceAudience;
  * headers; after this, we want to use as little as possible - so we only use 8 bytes, but in order
  * to do so we end up messing around with all this Java casting stuff. Offset stored as 5 bytes that
  * make up the long. Doubt we'll see devices this big for ages. Offsets are divided by 256. So 5
- * bytes gives us 256TB or so.
+ * bytes gives us 256TB or so. The evicted flag is a plain volatile int updated through a field
+ * updater rather than an AtomicBoolean, which saves an extra object for every cached block.
  */
 @InterfaceAudience.Private
 public class BucketEntry implements HBaseReferenceCounted {
@@ -87,9 +88,12 @@ public class BucketEntry implements HBaseReferenceCounted {
    * </pre>
    */
   private final RefCnt refCnt;
-  final AtomicBoolean markedAsEvicted;
+  private volatile int markedAsEvicted;
   final ByteBuffAllocator allocator;
 
+  private static final AtomicIntegerFieldUpdater<BucketEntry> MARKED_AS_EVICTED_UPDATER =
+    AtomicIntegerFieldUpdater.newUpdater(BucketEntry.class, "markedAsEvicted");
+
   /**
    * Time this block was cached. Presumes we are created just before we are added to the cache.
    */
@@ -109,6 +113,13 @@ public class BucketEntry implements HBaseReferenceCounted {
   BucketEntry(long offset, int length, int onDiskSizeWithHeader, long accessCounter,
     long cachedTime, boolean inMemory, Function<BucketEntry, Recycler> createRecycler,
     ByteBuffAllocator allocator) {
+    this(offset, length, onDiskSizeWithHeader, accessCounter, cachedTime,
+      inMemory ? BlockPriority.MEMORY : BlockPriority.SINGLE, createRecycler, allocator);
+  }
+
+  BucketEntry(long offset, int length, int onDiskSizeWithHeader, long accessCounter,
+    long cachedTime, BlockPriority priority, Function<BucketEntry, Recycler> createRecycler,
+    ByteBuffAllocator allocator) {
     if (createRecycler == null) {
       throw new IllegalArgumentException("createRecycler could not be null!");
     }
@@ -117,9 +128,8 @@ public class BucketEntry implements HBaseReferenceCounted {
     this.onDiskSizeWithHeader = onDiskSizeWithHeader;
     this.accessCounter = accessCounter;
     this.cachedTime = cachedTime;
-    this.priority = inMemory ? BlockPriority.MEMORY : BlockPriority.SINGLE;
+    this.priority = priority;
     this.refCnt = RefCnt.create(createRecycler.apply(this));
-    this.markedAsEvicted = new AtomicBoolean(false);
     this.allocator = allocator;
   }
 
@@ -177,6 +187,17 @@ public class BucketEntry implements HBaseReferenceCounted {
     return onDiskSizeWithHeader;
   }
 
+  /**
+   * Returns true if the given entry describes the same cached block as this one, that is the block
+   * was written to the same offset of the {@link IOEngine} at the same time. An
+   * {@link OffHeapBackingMap} returns a new BucketEntry on every lookup, so entries must not be
+   * compared by identity.
+   */
+  boolean isSameBlock(BucketEntry other) {
+    return other == this || (other != null && offset() == other.offset()
+      && cachedTime == other.cachedTime && length == other.length);
+  }
+
   /**
    * The {@link BucketCache} will try to release its reference to this BucketEntry many times. we
    * must make sure the idempotent, otherwise it'll decrease the RPC's reference count in advance,
@@ -184,12 +205,17 @@ public class BucketEntry implements HBaseReferenceCounted {
    * @return true if we deallocate this entry successfully.
    */
   boolean markAsEvicted() {
-    if (markedAsEvicted.compareAndSet(false, true)) {
+    if (MARKED_AS_EVICTED_UPDATER.compareAndSet(this, 0, 1)) {
       return this.release();
     }
     return false;
   }
 
+  /** Returns true if the {@link BucketCache} has already released its reference to this entry. */
+  boolean isMarkedAsEvicted() {
+    return markedAsEvicted != 0;
+  }
+
   /**
    * Check whether have some RPC patch referring this block.<br/>
    * For {@link IOEngine#usesSharedMemory()} is true(eg.{@link ByteBufferIOEngine}), there're two
@@ -207,7 +233,7 @@ public class BucketEntry implements HBaseReferenceCounted {
    * @return true to indicate there're some RPC referring the block.
    */
   boolean isRpcRef() {
-    boolean evicted = markedAsEvicted.get();
+    boolean evicted = isMarkedAsEvicted();
     return this.refCnt() > 1 || (evicted && refCnt() == 1);
   }
 
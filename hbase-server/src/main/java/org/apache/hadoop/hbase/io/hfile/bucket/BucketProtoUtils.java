@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.NavigableSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import org.apache.hadoop.hbase.io.ByteBuffAllocator;
@@ -65,8 +66,7 @@ final class BucketProtoUtils {
 
   public static void serializeAsPB(BucketCache cache, FileOutputStream fos, long chunkSize)
     throws IOException {
-    serializeAsPB(cache, fos, chunkSize, entry -> {
-    });
+    serializeAsPB(cache, fos, chunkSize, null);
   }
 
   static void serializeAsPB(BucketCache cache, FileOutputStream fos, long chunkSize,
@@ -82,11 +82,15 @@ final class BucketProtoUtils {
     toPB(cache, builder).writeDelimitedTo(fos);
 
     int blockCount = 0;
-    // Persist backing map entries in chunks of size 'chunkSize'.
-    for (Map.Entry<BlockCacheKey, BucketEntry> entry : cache.backingMap.entrySet()) {
+    // Persist backing map entries in chunks of size 'chunkSize'. The cursor reads the fields of
+    // the entries in place, the entries themselves are only needed for the copied action.
+    BackingMapCursor cursor = BackingMapCursor.of(cache.backingMap);
+    while (cursor.next()) {
       blockCount++;
-      addEntryToBuilder(entry, entryBuilder, builder);
-      entryCopiedAction.accept(entry);
+      addEntryToBuilder(cursor, entryBuilder, builder);
+      if (entryCopiedAction != null) {
+        entryCopiedAction.accept(cursor.toMapEntry());
+      }
       if (blockCount % chunkSize == 0) {
         builder.build().writeDelimitedTo(fos);
         builder.clear();
@@ -98,18 +102,18 @@ final class BucketProtoUtils {
     }
   }
 
-  private static void addEntryToBuilder(Map.Entry<BlockCacheKey, BucketEntry> entry,
+  private static void addEntryToBuilder(BackingMapCursor entry,
     BucketCacheProtos.BackingMapEntry.Builder entryBuilder,
     BucketCacheProtos.BackingMap.Builder builder) {
     entryBuilder.clear();
-    entryBuilder.setKey(BucketProtoUtils.toPB(entry.getKey()));
-    entryBuilder.setValue(BucketProtoUtils.toPB(entry.getValue()));
+    entryBuilder.setKey(BucketProtoUtils.toKeyPB(entry));
+    entryBuilder.setValue(BucketProtoUtils.toEntryPB(entry));
     builder.addEntry(entryBuilder.build());
   }
 
-  private static BucketCacheProtos.BlockCacheKey toPB(BlockCacheKey key) {
+  private static BucketCacheProtos.BlockCacheKey toKeyPB(BackingMapCursor key) {
     BucketCacheProtos.BlockCacheKey.Builder builder = BucketCacheProtos.BlockCacheKey.newBuilder()
-      .setHfilename(key.getHfileName()).setOffset(key.getOffset())
+      .setHfilename(key.getHfileName()).setOffset(key.getBlockOffset())
       .setPrimaryReplicaBlock(key.isPrimary()).setBlockType(toPB(key.getBlockType()));
     if (key.getCfName() != null) {
       builder.setFamilyName(key.getCfName());
@@ -151,12 +155,12 @@ final class BucketProtoUtils {
     }
   }
 
-  private static BucketCacheProtos.BucketEntry toPB(BucketEntry entry) {
-    return BucketCacheProtos.BucketEntry.newBuilder().setOffset(entry.offset())
+  private static BucketCacheProtos.BucketEntry toEntryPB(BackingMapCursor entry) {
+    return BucketCacheProtos.BucketEntry.newBuilder().setOffset(entry.getBucketOffset())
       .setCachedTime(entry.getCachedTime()).setLength(entry.getLength())
       .setDiskSizeWithHeader(entry.getOnDiskSizeWithHeader())
-      .setDeserialiserIndex(entry.deserializerIndex).setAccessCounter(entry.getAccessCounter())
-      .setPriority(toPB(entry.getPriority())).build();
+      .setDeserialiserIndex(entry.getDeserializerIndex())
+      .setAccessCounter(entry.getAccessCounter()).setPriority(toPB(entry.getPriority())).build();
   }
 
   private static BucketCacheProtos.BlockPriority toPB(BlockPriority p) {
@@ -178,6 +182,20 @@ final class BucketProtoUtils {
     ConcurrentHashMap<BlockCacheKey, BucketEntry> result = new ConcurrentHashMap<>();
     NavigableSet<BlockCacheKey> resultSet = new ConcurrentSkipListSet<>(Comparator
       .comparing(BlockCacheKey::getHfileName).thenComparingLong(BlockCacheKey::getOffset));
+    fromPB(deserializers, backingMap, createRecycler, (key, value) -> {
+      result.put(key, value);
+      resultSet.add(key);
+    });
+    return new Pair<>(result, resultSet);
+  }
+
+  /**
+   * Hands each entry of the backing map to the given action as it is decoded, so that a caller
+   * filling a map of its own does not need the whole backing map on the heap first.
+   */
+  static void fromPB(Map<Integer, String> deserializers, BucketCacheProtos.BackingMap backingMap,
+    Function<BucketEntry, Recycler> createRecycler, BiConsumer<BlockCacheKey, BucketEntry> action)
+    throws IOException {
     for (BucketCacheProtos.BackingMapEntry entry : backingMap.getEntryList()) {
       BucketCacheProtos.BlockCacheKey protoKey = entry.getKey();
       BlockCacheKey key = new BlockCacheKey(protoKey.getHfilename(), protoKey.getFamilyName(),
@@ -206,10 +224,8 @@ final class BucketProtoUtils {
         // of Cacheable outside of tests, so this might not ever matter.
         throw new IOException("Unknown deserializer class found: " + deserializerClass);
       }
-      result.put(key, value);
-      resultSet.add(key);
+      action.accept(key, value);
     }
-    return new Pair<>(result, resultSet);
   }
 
   private static BlockType fromPb(BucketCacheProtos.BlockType blockType) {
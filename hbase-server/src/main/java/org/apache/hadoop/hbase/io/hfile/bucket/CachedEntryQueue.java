@@ -92,6 +92,19 @@ public class CachedEntryQueue {
     }
   }
 
+  /**
+   * Returns whether {@link #add(Map.Entry)} would insert an entry with the given access counter,
+   * so that callers can skip building entries this queue would not keep.
+   */
+  @edu.umd.cs.findbugs.annotations.SuppressWarnings(
+      value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
+      justification = "head can not be null as cacheSize is greater than maxSize,"
+        + " which means we have something in the queue")
+  public boolean wouldAdd(long accessCounter) {
+    // Same order as BucketEntry.COMPARATOR, the least accessed entries are kept.
+    return cacheSize < maxSize || accessCounter < queue.peek().getValue().getAccessCounter();
+  }
+
   /** Returns The next element in this queue, or {@code null} if the queue is empty. */
   public Map.Entry<BlockCacheKey, BucketEntry> poll() {
     return queue.poll();
@@ -19,6 +19,7 @@ package org.apache.hadoop.hbase.io.hfile.bucket;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.function.ObjIntConsumer;
 import org.apache.hadoop.hbase.io.hfile.Cacheable;
 import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.yetus.audience.InterfaceAudience;
@@ -49,6 +50,50 @@ public interface IOEngine {
    */
   Cacheable read(BucketEntry be) throws IOException;
 
+  /**
+   * Transfers data for several {@link BucketEntry}s from IOEngine in one call. Engines that can
+   * overlap or merge the underlying device reads should override this, the default implementation
+   * reads the entries one after another.
+   * @param entries each maintains an (offset,len,refCnt) inside.
+   * @return the Cacheables read, in the same order as {@code entries}.
+   * @throws IOException when any IO error happen, nothing read so far is returned in that case.
+   */
+  default Cacheable[] read(BucketEntry[] entries) throws IOException {
+    Cacheable[] read = new Cacheable[entries.length];
+    try {
+      return read(entries, (cacheable, i) -> read[i] = cacheable);
+    } catch (IOException | RuntimeException e) {
+      for (Cacheable cacheable : read) {
+        if (cacheable != null) {
+          cacheable.release();
+        }
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Same as {@link #read(BucketEntry[])}, but tells the caller about every entry as soon as it has
+   * been read, so that the caller can let go of what protects the entry before the whole batch is
+   * done. {@code onRead} is called in the calling thread. A Cacheable passed to {@code onRead}
+   * belongs to the caller from then on, also when the read fails afterwards, so the caller has to
+   * release it in that case. The engine releases what it read but did not pass on.
+   * @param entries each maintains an (offset,len,refCnt) inside.
+   * @param onRead  called with each Cacheable read and its index in {@code entries}.
+   * @return the Cacheables read, in the same order as {@code entries}.
+   * @throws IOException when any IO error happen, nothing read so far is returned in that case.
+   */
+  default Cacheable[] read(BucketEntry[] entries, ObjIntConsumer<Cacheable> onRead)
+    throws IOException {
+    Cacheable[] result = new Cacheable[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      // handed over right away, so there is nothing to release here when a later read fails
+      result[i] = read(entries[i]);
+      onRead.accept(result[i], i);
+    }
+    return result;
+  }
+
   /**
    * Transfers data from the given byte buffer to IOEngine
    * @param srcBuffer the given byte buffer from which bytes are to be read
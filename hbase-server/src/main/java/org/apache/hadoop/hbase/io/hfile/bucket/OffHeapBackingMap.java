@@ -0,0 +1,918 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator.Recycler;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockPriority;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A {@link BucketCache#backingMap} which keeps its entries in direct memory rather than as
+ * {@link BlockCacheKey} and {@link BucketEntry} objects on the heap. With hundreds of millions of
+ * blocks cached on a large file based {@link IOEngine}, these objects and the map nodes referring
+ * to them take a large share of the heap and of the garbage collection work.
+ * <p>
+ * Every entry is a fixed width slot of {@link #SLOT_SIZE} bytes in an open addressing table with
+ * linear probing. The file name, column family, region, replica and archived attributes of the
+ * keys are interned on the heap once per file, the slot refers to them by an int id and holds the
+ * block offset and type along with the fields of the {@link BucketEntry}. The slots of a file are
+ * chained, so the blocks of a file are found without scanning the table. The table is split into
+ * segments with a lock each, so that operations on different segments do not contend.
+ * <p>
+ * Lookups return a new {@link BucketEntry} built from the slot, accesses recorded on it are written
+ * back to the slot. Its reference count only stands for the reference held by the cache, which is
+ * how a {@link BucketEntry} of an {@link IOEngine} not using shared memory works, the only ones
+ * this map is used for. As entries are not unique, callers compare them with
+ * {@link BucketEntry#isSameBlock(BucketEntry)}, which {@link #remove(Object, Object)} does too.
+ * <p>
+ * Iterators are weakly consistent. They may return an entry twice if its segment is rehashed while
+ * iterating. Scans which only look at the fields of the entries, like the ones freeing space or
+ * persisting the cache, use a {@link #cursor()} rather than building an entry for every slot.
+ */
+@InterfaceAudience.Private
+final class OffHeapBackingMap extends AbstractMap<BlockCacheKey, BucketEntry> {
+
+  // Layout of a slot. The file id is EMPTY for a slot never used and REMOVED for a slot whose entry
+  // was removed, else the id of the FileInfo plus one.
+  private static final int FILE_ID = 0;
+  private static final int BLOCK_TYPE = 4;
+  private static final int DESERIALIZER_INDEX = 5;
+  private static final int PRIORITY = 6;
+  private static final int BLOCK_OFFSET = 8;
+  private static final int BUCKET_OFFSET = 16;
+  private static final int LENGTH = 24;
+  private static final int ON_DISK_SIZE = 28;
+  private static final int ACCESS_COUNTER = 32;
+  private static final int CACHED_TIME = 40;
+  private static final int PREV_IN_FILE = 48;
+  private static final int NEXT_IN_FILE = 52;
+  static final int SLOT_SIZE = 56;
+
+  private static final int EMPTY = 0;
+  private static final int REMOVED = -1;
+  /** End of the chain of a file */
+  private static final int NONE = -1;
+
+  private static final float LOAD_FACTOR = 0.75f;
+  private static final int MIN_SEGMENTS = 64;
+  private static final int MAX_SEGMENTS = 1 << 12;
+  private static final int MIN_SEGMENT_CAPACITY = 64;
+  /** The largest power of two number of slots fitting in a direct ByteBuffer */
+  private static final int MAX_SEGMENT_CAPACITY = 1 << 25;
+  private static final int ITERATOR_BATCH_SIZE = 1024;
+
+  private static final BlockType[] BLOCK_TYPES = BlockType.values();
+  private static final BlockPriority[] PRIORITIES = BlockPriority.values();
+
+  private final Segment[] segments;
+  private final int segmentShift;
+  private final int initialSegmentCapacity;
+  private final Function<BucketEntry, Recycler> createRecycler;
+
+  /**
+   * Allocator of the entries built from slots. The cache uses the same allocator for all its
+   * entries, so the one of the last entry put is kept rather than one per slot.
+   */
+  private volatile ByteBuffAllocator entryAllocator = ByteBuffAllocator.HEAP;
+
+  /** Cached files by name, with a FileInfo for each set of key attributes a file is cached with */
+  private final Map<String, List<FileInfo>> files = new HashMap<>();
+  private volatile FileInfo[] filesById = new FileInfo[64];
+  private final ArrayDeque<Integer> freeFileIds = new ArrayDeque<>();
+  private int nextFileId;
+
+  /**
+   * @param expectedEntries number of entries the table is sized for, it grows beyond as needed
+   * @param createRecycler  creates the recycler freeing the bucket of an entry once the cache
+   *                        releases it
+   */
+  OffHeapBackingMap(long expectedEntries, Function<BucketEntry, Recycler> createRecycler) {
+    int segmentCount = MIN_SEGMENTS;
+    while (
+      segmentCount < MAX_SEGMENTS
+        && expectedEntries / segmentCount > MAX_SEGMENT_CAPACITY * LOAD_FACTOR / 2
+    ) {
+      segmentCount <<= 1;
+    }
+    long perSegment = (long) Math.ceil(expectedEntries / (double) segmentCount / LOAD_FACTOR);
+    int capacity = MIN_SEGMENT_CAPACITY;
+    while (capacity < perSegment && capacity < MAX_SEGMENT_CAPACITY) {
+      capacity <<= 1;
+    }
+    this.initialSegmentCapacity = capacity;
+    this.segmentShift = Integer.SIZE - Integer.numberOfTrailingZeros(segmentCount);
+    this.segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment(i, capacity);
+    }
+    this.createRecycler = createRecycler;
+  }
+
+  private static int hash(String hfileName, long offset) {
+    // Blocks of a file are at nearby offsets, the murmur3 finalizer spreads them over both the
+    // segments and the slots.
+    int h = hfileName.hashCode() * 31 + Long.hashCode(offset);
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    return h ^ (h >>> 16);
+  }
+
+  private Segment segmentFor(int hash) {
+    return segments[hash >>> segmentShift];
+  }
+
+  @Override
+  public BucketEntry get(Object key) {
+    if (!(key instanceof BlockCacheKey)) {
+      return null;
+    }
+    BlockCacheKey cacheKey = (BlockCacheKey) key;
+    int hash = hash(cacheKey.getHfileName(), cacheKey.getOffset());
+    Segment segment = segmentFor(hash);
+    segment.lock.readLock().lock();
+    try {
+      int slot = segment.find(cacheKey.getHfileName(), cacheKey.getOffset(), hash);
+      return slot < 0 ? null : segment.entryAt(slot, cacheKey);
+    } finally {
+      segment.lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return getStoredKey(key) != null;
+  }
+
+  /**
+   * Returns the key the entry for the given key was put with, which carries the region and family
+   * of the block that a lookup key may lack, or null if there is no such entry.
+   */
+  BlockCacheKey getStoredKey(Object key) {
+    if (!(key instanceof BlockCacheKey)) {
+      return null;
+    }
+    BlockCacheKey cacheKey = (BlockCacheKey) key;
+    int hash = hash(cacheKey.getHfileName(), cacheKey.getOffset());
+    Segment segment = segmentFor(hash);
+    segment.lock.readLock().lock();
+    try {
+      int slot = segment.find(cacheKey.getHfileName(), cacheKey.getOffset(), hash);
+      return slot < 0 ? null : segment.keyAt(slot);
+    } finally {
+      segment.lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public BucketEntry put(BlockCacheKey key, BucketEntry entry) {
+    if (entry.allocator != null) {
+      entryAllocator = entry.allocator;
+    }
+    FileInfo file = acquireFile(key);
+    int hash = hash(key.getHfileName(), key.getOffset());
+    Segment segment = segmentFor(hash);
+    segment.lock.writeLock().lock();
+    try {
+      return segment.put(file, key, entry, hash);
+    } catch (RuntimeException e) {
+      releaseFile(file);
+      throw e;
+    } finally {
+      segment.lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public BucketEntry remove(Object key) {
+    if (!(key instanceof BlockCacheKey)) {
+      return null;
+    }
+    BlockCacheKey cacheKey = (BlockCacheKey) key;
+    int hash = hash(cacheKey.getHfileName(), cacheKey.getOffset());
+    Segment segment = segmentFor(hash);
+    segment.lock.writeLock().lock();
+    try {
+      int slot = segment.find(cacheKey.getHfileName(), cacheKey.getOffset(), hash);
+      if (slot < 0) {
+        return null;
+      }
+      BucketEntry previous = segment.entryAt(slot, cacheKey);
+      segment.remove(slot);
+      return previous;
+    } finally {
+      segment.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes the entry of the key only if it is for the same block as the given entry, see
+   * {@link BucketEntry#isSameBlock(BucketEntry)}.
+   */
+  @Override
+  public boolean remove(Object key, Object value) {
+    if (!(key instanceof BlockCacheKey) || !(value instanceof BucketEntry)) {
+      return false;
+    }
+    BlockCacheKey cacheKey = (BlockCacheKey) key;
+    int hash = hash(cacheKey.getHfileName(), cacheKey.getOffset());
+    Segment segment = segmentFor(hash);
+    segment.lock.writeLock().lock();
+    try {
+      int slot = segment.find(cacheKey.getHfileName(), cacheKey.getOffset(), hash);
+      if (slot < 0 || !segment.holds(slot, (BucketEntry) value)) {
+        return false;
+      }
+      segment.remove(slot);
+      return true;
+    } finally {
+      segment.lock.writeLock().unlock();
+    }
+  }
+
+  private void recordAccess(BlockCacheKey key, BucketEntry entry) {
+    int hash = hash(key.getHfileName(), key.getOffset());
+    Segment segment = segmentFor(hash);
+    // The read lock keeps the slot in place. Concurrent accesses of the same entry race on the
+    // counter and the last one wins, just as they do on the fields of a BucketEntry.
+    segment.lock.readLock().lock();
+    try {
+      int slot = segment.find(key.getHfileName(), key.getOffset(), hash);
+      if (slot >= 0 && segment.holds(slot, entry)) {
+        segment.recordAccess(slot, entry);
+      }
+    } finally {
+      segment.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the keys of the blocks of the given file with an offset between init and end, both
+   * inclusive. Follows the chains of the file rather than scanning the table.
+   */
+  List<BlockCacheKey> getKeysForFile(String hfileName, long init, long end) {
+    List<FileInfo> fileInfos;
+    synchronized (files) {
+      List<FileInfo> cached = files.get(hfileName);
+      if (cached == null) {
+        return Collections.emptyList();
+      }
+      fileInfos = new ArrayList<>(cached);
+    }
+    List<BlockCacheKey> keys = new ArrayList<>();
+    for (Segment segment : segments) {
+      segment.lock.readLock().lock();
+      try {
+        for (FileInfo file : fileInfos) {
+          for (int slot = file.heads[segment.index]; slot != NONE; slot = segment.next(slot)) {
+            long offset = segment.blockOffset(slot);
+            if (offset >= init && offset <= end) {
+              keys.add(segment.keyAt(slot));
+            }
+          }
+        }
+      } finally {
+        segment.lock.readLock().unlock();
+      }
+    }
+    return keys;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size;
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (Segment segment : segments) {
+      if (segment.size > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    for (Segment segment : segments) {
+      segment.lock.writeLock().lock();
+      try {
+        segment.clear();
+      } finally {
+        segment.lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /** Returns the size of the direct memory taken by the slots. */
+  long getOffHeapSize() {
+    long size = 0;
+    for (Segment segment : segments) {
+      segment.lock.readLock().lock();
+      try {
+        size += (long) segment.capacity() * SLOT_SIZE;
+      } finally {
+        segment.lock.readLock().unlock();
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public Set<Map.Entry<BlockCacheKey, BucketEntry>> entrySet() {
+    return new AbstractSet<Map.Entry<BlockCacheKey, BucketEntry>>() {
+      @Override
+      public Iterator<Map.Entry<BlockCacheKey, BucketEntry>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return OffHeapBackingMap.this.size();
+      }
+    };
+  }
+
+  /**
+   * Returns a cursor over the entries which reads their fields without building a key and an entry
+   * for each, see {@link BackingMapCursor}.
+   */
+  SlotCursor cursor() {
+    return new SlotCursor();
+  }
+
+  /**
+   * Returns the file of the key, interning it if this is its first block, and counts the slot the
+   * caller is about to fill for it.
+   */
+  private FileInfo acquireFile(BlockCacheKey key) {
+    synchronized (files) {
+      List<FileInfo> fileInfos = files.computeIfAbsent(key.getHfileName(), k -> new ArrayList<>(1));
+      for (FileInfo file : fileInfos) {
+        if (file.matches(key)) {
+          file.slots++;
+          return file;
+        }
+      }
+      Integer freeId = freeFileIds.poll();
+      int id = freeId != null ? freeId : nextFileId++;
+      FileInfo[] byId = filesById;
+      if (id >= byId.length) {
+        byId = Arrays.copyOf(byId, byId.length * 2);
+      }
+      FileInfo file = new FileInfo(id, key, segments.length);
+      file.slots = 1;
+      byId[id] = file;
+      // Publish the new file before any slot refers to it.
+      filesById = byId;
+      fileInfos.add(file);
+      return file;
+    }
+  }
+
+  /** Uncounts a slot of the file, dropping the file and recycling its id once it has none left. */
+  private void releaseFile(FileInfo file) {
+    synchronized (files) {
+      if (--file.slots > 0) {
+        return;
+      }
+      List<FileInfo> fileInfos = files.get(file.hfileName);
+      fileInfos.remove(file);
+      if (fileInfos.isEmpty()) {
+        files.remove(file.hfileName);
+      }
+      filesById[file.id] = null;
+      freeFileIds.add(file.id);
+    }
+  }
+
+  private static final class FileInfo {
+    private final int id;
+    private final String hfileName;
+    private final String cfName;
+    private final String regionName;
+    private final boolean primary;
+    private final boolean archived;
+    /** First slot of the chain of the file in each segment, guarded by the segment lock */
+    private final int[] heads;
+    /** Slots referring to the file, including the ones being put, guarded by files */
+    private int slots;
+
+    FileInfo(int id, BlockCacheKey key, int segmentCount) {
+      this.id = id;
+      this.hfileName = key.getHfileName();
+      this.cfName = key.getCfName();
+      this.regionName = key.getRegionName();
+      this.primary = key.isPrimary();
+      this.archived = key.isArchived();
+      this.heads = new int[segmentCount];
+      Arrays.fill(heads, NONE);
+    }
+
+    boolean matches(BlockCacheKey key) {
+      return hfileName.equals(key.getHfileName()) && Objects.equals(cfName, key.getCfName())
+        && Objects.equals(regionName, key.getRegionName()) && primary == key.isPrimary()
+        && archived == key.isArchived();
+    }
+  }
+
+  /** A part of the table with its own lock. All methods expect the caller to hold the lock. */
+  private final class Segment {
+    private final int index;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ByteBuffer slots;
+    private int mask;
+    private int used;
+    private int removed;
+    /** Changes whenever the entries move, so that iterators know their position is stale */
+    private int generation;
+    private volatile int size;
+
+    Segment(int index, int capacity) {
+      this.index = index;
+      allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+      slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE).order(ByteOrder.nativeOrder());
+      mask = capacity - 1;
+    }
+
+    int capacity() {
+      return mask + 1;
+    }
+
+    int fileId(int slot) {
+      return slots.getInt(slot * SLOT_SIZE + FILE_ID);
+    }
+
+    private FileInfo file(int slot) {
+      return filesById[fileId(slot) - 1];
+    }
+
+    long blockOffset(int slot) {
+      return slots.getLong(slot * SLOT_SIZE + BLOCK_OFFSET);
+    }
+
+    int next(int slot) {
+      return slots.getInt(slot * SLOT_SIZE + NEXT_IN_FILE);
+    }
+
+    /** Returns the slot of the block, or -1 if it is not in the table. */
+    int find(String hfileName, long offset, int hash) {
+      // There is always an empty slot, the table is rehashed before it fills up.
+      for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+        int id = fileId(slot);
+        if (id == EMPTY) {
+          return -1;
+        }
+        if (
+          id != REMOVED && blockOffset(slot) == offset
+            && filesById[id - 1].hfileName.equals(hfileName)
+        ) {
+          return slot;
+        }
+      }
+    }
+
+    private int freeSlot(int hash) {
+      int slot = hash & mask;
+      while (fileId(slot) > EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    boolean holds(int slot, BucketEntry entry) {
+      int base = slot * SLOT_SIZE;
+      return slots.getLong(base + BUCKET_OFFSET) == entry.offset()
+        && slots.getLong(base + CACHED_TIME) == entry.getCachedTime()
+        && slots.getInt(base + LENGTH) == entry.getLength();
+    }
+
+    BucketEntry put(FileInfo file, BlockCacheKey key, BucketEntry entry, int hash) {
+      int slot = find(key.getHfileName(), key.getOffset(), hash);
+      if (slot >= 0) {
+        BucketEntry previous = entryAt(slot, key);
+        FileInfo previousFile = file(slot);
+        if (previousFile != file) {
+          unlink(slot, previousFile);
+          write(slot, file, key, entry);
+          link(slot, file);
+        } else {
+          write(slot, file, key, entry);
+        }
+        // The slot was counted for its previous file already.
+        releaseFile(previousFile);
+        return previous;
+      }
+      if (used + removed + 1 > capacity() * LOAD_FACTOR) {
+        rehash();
+      }
+      slot = freeSlot(hash);
+      if (fileId(slot) == REMOVED) {
+        removed--;
+      }
+      write(slot, file, key, entry);
+      link(slot, file);
+      size = ++used;
+      return null;
+    }
+
+    void remove(int slot) {
+      FileInfo file = file(slot);
+      unlink(slot, file);
+      slots.putInt(slot * SLOT_SIZE + FILE_ID, REMOVED);
+      removed++;
+      size = --used;
+      releaseFile(file);
+    }
+
+    void recordAccess(int slot, BucketEntry entry) {
+      int base = slot * SLOT_SIZE;
+      slots.putLong(base + ACCESS_COUNTER, entry.getAccessCounter());
+      slots.put(base + PRIORITY, (byte) entry.getPriority().ordinal());
+    }
+
+    void clear() {
+      for (int slot = 0; slot < capacity(); slot++) {
+        if (fileId(slot) > EMPTY) {
+          FileInfo file = file(slot);
+          file.heads[index] = NONE;
+          releaseFile(file);
+        }
+      }
+      allocate(initialSegmentCapacity);
+      used = 0;
+      removed = 0;
+      size = 0;
+      generation++;
+    }
+
+    /**
+     * Rebuilds the table without the removed slots, doubling its capacity if the entries would
+     * fill more than half of it.
+     */
+    private void rehash() {
+      int capacity = capacity();
+      int newCapacity = capacity;
+      if (used + 1 > capacity * LOAD_FACTOR / 2) {
+        if (capacity < MAX_SEGMENT_CAPACITY) {
+          newCapacity = capacity * 2;
+        } else if (removed == 0) {
+          // Cannot grow any further, fill up beyond the load factor.
+          if (used + 2 >= capacity) {
+            throw new IllegalStateException(
+              "Off-heap backing map segment is full with " + used + " entries");
+          }
+          return;
+        }
+      }
+      ByteBuffer previous = slots;
+      for (int slot = 0; slot < capacity; slot++) {
+        if (fileId(slot) > EMPTY) {
+          file(slot).heads[index] = NONE;
+        }
+      }
+      allocate(newCapacity);
+      for (int i = 0; i < capacity; i++) {
+        int base = i * SLOT_SIZE;
+        int id = previous.getInt(base + FILE_ID);
+        if (id <= EMPTY) {
+          continue;
+        }
+        FileInfo file = filesById[id - 1];
+        int slot = freeSlot(hash(file.hfileName, previous.getLong(base + BLOCK_OFFSET)));
+        for (int j = 0; j < SLOT_SIZE; j += Long.BYTES) {
+          slots.putLong(slot * SLOT_SIZE + j, previous.getLong(base + j));
+        }
+        link(slot, file);
+      }
+      removed = 0;
+      generation++;
+    }
+
+    /** Copies the slot to the given buffer, which has the byte order of the table. */
+    void copySlot(int slot, ByteBuffer dst, int dstBase) {
+      int base = slot * SLOT_SIZE;
+      for (int j = 0; j < SLOT_SIZE; j += Long.BYTES) {
+        dst.putLong(dstBase + j, slots.getLong(base + j));
+      }
+    }
+
+    private void write(int slot, FileInfo file, BlockCacheKey key, BucketEntry entry) {
+      int base = slot * SLOT_SIZE;
+      BlockType blockType = key.getBlockType();
+      slots.putInt(base + FILE_ID, file.id + 1);
+      slots.put(base + BLOCK_TYPE, (byte) (blockType == null ? -1 : blockType.ordinal()));
+      slots.put(base + DESERIALIZER_INDEX, entry.deserializerIndex);
+      slots.put(base + PRIORITY, (byte) entry.getPriority().ordinal());
+      slots.putLong(base + BLOCK_OFFSET, key.getOffset());
+      slots.putLong(base + BUCKET_OFFSET, entry.offset());
+      slots.putInt(base + LENGTH, entry.getLength());
+      slots.putInt(base + ON_DISK_SIZE, entry.getOnDiskSizeWithHeader());
+      slots.putLong(base + ACCESS_COUNTER, entry.getAccessCounter());
+      slots.putLong(base + CACHED_TIME, entry.getCachedTime());
+    }
+
+    private void link(int slot, FileInfo file) {
+      int head = file.heads[index];
+      slots.putInt(slot * SLOT_SIZE + PREV_IN_FILE, NONE);
+      slots.putInt(slot * SLOT_SIZE + NEXT_IN_FILE, head);
+      if (head != NONE) {
+        slots.putInt(head * SLOT_SIZE + PREV_IN_FILE, slot);
+      }
+      file.heads[index] = slot;
+    }
+
+    private void unlink(int slot, FileInfo file) {
+      int prev = slots.getInt(slot * SLOT_SIZE + PREV_IN_FILE);
+      int next = next(slot);
+      if (prev == NONE) {
+        file.heads[index] = next;
+      } else {
+        slots.putInt(prev * SLOT_SIZE + NEXT_IN_FILE, next);
+      }
+      if (next != NONE) {
+        slots.putInt(next * SLOT_SIZE + PREV_IN_FILE, prev);
+      }
+    }
+
+    BucketEntry entryAt(int slot, BlockCacheKey key) {
+      int base = slot * SLOT_SIZE;
+      return new IndexedBucketEntry(key, slots.getLong(base + BUCKET_OFFSET),
+        slots.getInt(base + LENGTH), slots.getInt(base + ON_DISK_SIZE),
+        slots.getLong(base + ACCESS_COUNTER), slots.getLong(base + CACHED_TIME),
+        PRIORITIES[slots.get(base + PRIORITY)], slots.get(base + DESERIALIZER_INDEX));
+    }
+
+    BlockCacheKey keyAt(int slot) {
+      int base = slot * SLOT_SIZE;
+      FileInfo file = file(slot);
+      byte blockType = slots.get(base + BLOCK_TYPE);
+      return new BlockCacheKey(file.hfileName, file.cfName, file.regionName,
+        slots.getLong(base + BLOCK_OFFSET), file.primary,
+        blockType < 0 ? null : BLOCK_TYPES[blockType], file.archived);
+    }
+  }
+
+  /**
+   * A {@link BucketEntry} built from a slot, which writes its accesses back to the slot. The cache
+   * recycler would register every lookup with the leak detector of its reference count, so the
+   * entry frees its bucket from {@link #release()} instead.
+   */
+  private final class IndexedBucketEntry extends BucketEntry {
+    private final BlockCacheKey key;
+
+    IndexedBucketEntry(BlockCacheKey key, long offset, int length, int onDiskSizeWithHeader,
+      long accessCounter, long cachedTime, BlockPriority priority, byte deserializerIndex) {
+      super(offset, length, onDiskSizeWithHeader, accessCounter, cachedTime, priority,
+        entry -> ByteBuffAllocator.NONE, OffHeapBackingMap.this.entryAllocator);
+      this.key = key;
+      this.deserializerIndex = deserializerIndex;
+    }
+
+    @Override
+    void access(long accessCounter) {
+      super.access(accessCounter);
+      recordAccess(key, this);
+    }
+
+    @Override
+    public boolean release() {
+      if (super.release()) {
+        createRecycler.apply(this).free();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * A cursor copying the slots of a segment in batches, holding its lock for a bounded number of
+   * slots. The getters read the copy, a key and an entry are only built for the callers asking for
+   * them.
+   */
+  final class SlotCursor implements BackingMapCursor {
+    private final ByteBuffer batch =
+      ByteBuffer.allocate(ITERATOR_BATCH_SIZE * SLOT_SIZE).order(ByteOrder.nativeOrder());
+    private final FileInfo[] batchFiles = new FileInfo[ITERATOR_BATCH_SIZE];
+    private int batchSize;
+    private int position = -1;
+    private int segmentIndex;
+    private int cursor;
+    private int generation;
+    /** Key of the current slot, once built */
+    private BlockCacheKey key;
+
+    @Override
+    public boolean next() {
+      key = null;
+      if (++position < batchSize) {
+        return true;
+      }
+      position = 0;
+      batchSize = 0;
+      while (batchSize == 0 && segmentIndex < segments.length) {
+        fill(segments[segmentIndex]);
+      }
+      return batchSize > 0;
+    }
+
+    private void fill(Segment segment) {
+      segment.lock.readLock().lock();
+      try {
+        if (cursor > 0 && generation != segment.generation) {
+          // The entries moved, start over rather than miss some.
+          cursor = 0;
+        }
+        generation = segment.generation;
+        int end = Math.min(segment.capacity(), cursor + ITERATOR_BATCH_SIZE);
+        for (; cursor < end; cursor++) {
+          if (segment.fileId(cursor) > EMPTY) {
+            segment.copySlot(cursor, batch, batchSize * SLOT_SIZE);
+            batchFiles[batchSize++] = segment.file(cursor);
+          }
+        }
+        if (cursor == segment.capacity()) {
+          segmentIndex++;
+          cursor = 0;
+        }
+      } finally {
+        segment.lock.readLock().unlock();
+      }
+    }
+
+    private int base() {
+      return position * SLOT_SIZE;
+    }
+
+    @Override
+    public String getHfileName() {
+      return batchFiles[position].hfileName;
+    }
+
+    @Override
+    public String getCfName() {
+      return batchFiles[position].cfName;
+    }
+
+    @Override
+    public String getRegionName() {
+      return batchFiles[position].regionName;
+    }
+
+    @Override
+    public boolean isPrimary() {
+      return batchFiles[position].primary;
+    }
+
+    @Override
+    public BlockType getBlockType() {
+      byte blockType = batch.get(base() + BLOCK_TYPE);
+      return blockType < 0 ? null : BLOCK_TYPES[blockType];
+    }
+
+    @Override
+    public long getBlockOffset() {
+      return batch.getLong(base() + BLOCK_OFFSET);
+    }
+
+    @Override
+    public long getBucketOffset() {
+      return batch.getLong(base() + BUCKET_OFFSET);
+    }
+
+    @Override
+    public int getLength() {
+      return batch.getInt(base() + LENGTH);
+    }
+
+    @Override
+    public int getOnDiskSizeWithHeader() {
+      return batch.getInt(base() + ON_DISK_SIZE);
+    }
+
+    @Override
+    public long getAccessCounter() {
+      return batch.getLong(base() + ACCESS_COUNTER);
+    }
+
+    @Override
+    public long getCachedTime() {
+      return batch.getLong(base() + CACHED_TIME);
+    }
+
+    @Override
+    public BlockPriority getPriority() {
+      return PRIORITIES[batch.get(base() + PRIORITY)];
+    }
+
+    @Override
+    public byte getDeserializerIndex() {
+      return batch.get(base() + DESERIALIZER_INDEX);
+    }
+
+    /** Entries built from slots are only referenced by the cache, see the class comment. */
+    @Override
+    public boolean isRpcRef() {
+      return false;
+    }
+
+    @Override
+    public BlockCacheKey key() {
+      if (key == null) {
+        FileInfo file = batchFiles[position];
+        key = new BlockCacheKey(file.hfileName, file.cfName, file.regionName, getBlockOffset(),
+          file.primary, getBlockType(), file.archived);
+      }
+      return key;
+    }
+
+    @Override
+    public BucketEntry entry() {
+      return new IndexedBucketEntry(key(), getBucketOffset(), getLength(),
+        getOnDiskSizeWithHeader(), getAccessCounter(), getCachedTime(), getPriority(),
+        getDeserializerIndex());
+    }
+
+    @Override
+    public Map.Entry<BlockCacheKey, BucketEntry> toMapEntry() {
+      return new SimpleImmutableEntry<>(key(), entry());
+    }
+  }
+
+  private final class EntryIterator implements Iterator<Map.Entry<BlockCacheKey, BucketEntry>> {
+    private final SlotCursor cursor = new SlotCursor();
+    private Map.Entry<BlockCacheKey, BucketEntry> next;
+    private Map.Entry<BlockCacheKey, BucketEntry> last;
+
+    @Override
+    public boolean hasNext() {
+      if (next == null && cursor.next()) {
+        next = cursor.toMapEntry();
+      }
+      return next != null;
+    }
+
+    @Override
+    public Map.Entry<BlockCacheKey, BucketEntry> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      next = null;
+      return last;
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      OffHeapBackingMap.this.remove(last.getKey());
+      last = null;
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A {@link BucketCacheAdmissionPolicy} based on TinyLFU (http://arxiv.org/pdf/1512.00727.pdf).
+ * Accesses are counted in a count-min sketch of 4-bit counters, fronted by a doorkeeper bloom
+ * filter that absorbs the first access of every block so that one-hit wonders do not occupy the
+ * sketch. Counters are halved and the doorkeeper cleared every {@code 10 * expectedBlocks}
+ * accesses, so that the frequencies follow the recent workload.
+ * <p>
+ * The BucketCache evicts in batches rather than one victim at a time, so there is no single victim
+ * to compare the candidate with. Instead, while the cache has room every block is admitted, and
+ * once it is full a data block is only admitted if it has been looked up at least
+ * {@link #MIN_FREQUENCY_KEY} times recently. Index, bloom and meta blocks are always admitted, they
+ * are small and costly to miss.
+ * <p>
+ * The sketch takes about 2 bytes and the doorkeeper 1 byte per expected block.
+ */
+@InterfaceAudience.Private
+public class TinyLfuAdmissionPolicy implements BucketCacheAdmissionPolicy {
+
+  public static final String MIN_FREQUENCY_KEY =
+    "hbase.bucketcache.admission.tinylfu.min.frequency";
+  public static final int DEFAULT_MIN_FREQUENCY = 2;
+
+  private static final long[] SEEDS =
+    { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final int DOORKEEPER_HASHES = 3;
+
+  /** 16 4-bit counters per long, each key maps to 4 counters of the same group of 16. */
+  private final AtomicLongArray table;
+  private final int tableMask;
+  private final AtomicLongArray doorkeeper;
+  private final int doorkeeperMask;
+  private final int sampleSize;
+  private final AtomicInteger additions = new AtomicInteger();
+  private final int minFrequency;
+
+  public TinyLfuAdmissionPolicy(Configuration conf, long expectedBlocks) {
+    this(conf.getInt(MIN_FREQUENCY_KEY, DEFAULT_MIN_FREQUENCY), expectedBlocks);
+  }
+
+  TinyLfuAdmissionPolicy(int minFrequency, long expectedBlocks) {
+    int entries = (int) Math.min(Math.max(expectedBlocks, 64), 1 << 30);
+    this.table = new AtomicLongArray(ceilingPowerOfTwo(entries / 4));
+    this.tableMask = table.length() - 1;
+    this.doorkeeper = new AtomicLongArray(ceilingPowerOfTwo(entries / 8));
+    this.doorkeeperMask = doorkeeper.length() * Long.SIZE - 1;
+    this.sampleSize = (int) Math.min(10L * entries, Integer.MAX_VALUE);
+    this.minFrequency = minFrequency;
+  }
+
+  @Override
+  public void recordAccess(BlockCacheKey key) {
+    long hash = spread(key.hashCode());
+    if (!addToDoorkeeper(hash)) {
+      incrementSketch(hash);
+    }
+    if (additions.incrementAndGet() == sampleSize) {
+      reset();
+    }
+  }
+
+  @Override
+  public boolean admit(BlockCacheKey key, Cacheable block, boolean cacheFull) {
+    if (!cacheFull) {
+      return true;
+    }
+    BlockType blockType = block.getBlockType();
+    if (blockType != null && !blockType.isData()) {
+      return true;
+    }
+    return frequency(key) >= minFrequency;
+  }
+
+  /**
+   * Returns the estimated number of recent accesses of the given block.
+   */
+  int frequency(BlockCacheKey key) {
+    long hash = spread(key.hashCode());
+    int start = (int) ((hash & 3) << 2);
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < SEEDS.length; i++) {
+      long value = table.get(indexOf(hash, i));
+      int count = (int) ((value >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return doorkeeperContains(hash) ? frequency + 1 : frequency;
+  }
+
+  private void incrementSketch(long hash) {
+    int start = (int) ((hash & 3) << 2);
+    for (int i = 0; i < SEEDS.length; i++) {
+      incrementAt(indexOf(hash, i), start + i);
+    }
+  }
+
+  private void incrementAt(int index, int counter) {
+    int offset = counter << 2;
+    long mask = 0xfL << offset;
+    while (true) {
+      long value = table.get(index);
+      if ((value & mask) == mask || table.compareAndSet(index, value, value + (1L << offset))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Sets the doorkeeper bits of the given hash, returns true if any of them was not set before.
+   */
+  private boolean addToDoorkeeper(long hash) {
+    boolean added = false;
+    for (int i = 0; i < DOORKEEPER_HASHES; i++) {
+      int bit = (int) (hash >>> (i * 21)) & doorkeeperMask;
+      int index = bit >>> 6;
+      long mask = 1L << bit;
+      while (true) {
+        long value = doorkeeper.get(index);
+        if ((value & mask) != 0) {
+          break;
+        }
+        if (doorkeeper.compareAndSet(index, value, value | mask)) {
+          added = true;
+          break;
+        }
+      }
+    }
+    return added;
+  }
+
+  private boolean doorkeeperContains(long hash) {
+    for (int i = 0; i < DOORKEEPER_HASHES; i++) {
+      int bit = (int) (hash >>> (i * 21)) & doorkeeperMask;
+      if ((doorkeeper.get(bit >>> 6) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Ages the recorded history by halving every counter and clearing the doorkeeper. Concurrent
+   * updates may be lost while this runs, which only makes the estimates slightly lower.
+   */
+  private void reset() {
+    for (int i = 0; i < table.length(); i++) {
+      table.getAndUpdate(i, value -> (value >>> 1) & RESET_MASK);
+    }
+    for (int i = 0; i < doorkeeper.length(); i++) {
+      doorkeeper.set(i, 0);
+    }
+    additions.addAndGet(-(sampleSize / 2));
+  }
+
+  private int indexOf(long hash, int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    h += h >>> 32;
+    return (int) h & tableMask;
+  }
+
+  private static long spread(int hashCode) {
+    long h = hashCode * 0x9e3779b97f4a7c15L;
+    return h ^ (h >>> 29);
+  }
+
+  private static int ceilingPowerOfTwo(int x) {
+    return x <= 1 ? 1 : Integer.highestOneBit(x - 1) << 1;
+  }
+}
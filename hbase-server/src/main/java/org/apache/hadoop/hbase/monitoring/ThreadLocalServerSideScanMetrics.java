@@ -87,6 +87,9 @@ public final class ThreadLocalServerSideScanMetrics {
   private static final ThreadLocal<AtomicLong> FS_READ_TIME =
     ThreadLocal.withInitial(() -> new AtomicLong(0));
 
+  private static final ThreadLocal<AtomicLong> BLOCK_READ_AHEAD_HITS =
+    ThreadLocal.withInitial(() -> new AtomicLong(0));
+
   public static void setScanMetricsEnabled(boolean enable) {
     IS_SCAN_METRICS_ENABLED.set(enable);
   }
@@ -111,6 +114,10 @@ public final class ThreadLocalServerSideScanMetrics {
     return FS_READ_TIME.get().addAndGet(time);
   }
 
+  public static long addBlockReadAheadHits(long count) {
+    return BLOCK_READ_AHEAD_HITS.get().addAndGet(count);
+  }
+
   public static boolean isScanMetricsEnabled() {
     return IS_SCAN_METRICS_ENABLED.get();
   }
@@ -135,6 +142,10 @@ public final class ThreadLocalServerSideScanMetrics {
     return FS_READ_TIME.get();
   }
 
+  public static AtomicLong getBlockReadAheadHitsCounter() {
+    return BLOCK_READ_AHEAD_HITS.get();
+  }
+
   public static long getBytesReadFromFsAndReset() {
     return getBytesReadFromFsCounter().getAndSet(0);
   }
@@ -155,12 +166,17 @@ public final class ThreadLocalServerSideScanMetrics {
     return getFsReadTimeCounter().getAndSet(0);
   }
 
+  public static long getBlockReadAheadHitsAndReset() {
+    return getBlockReadAheadHitsCounter().getAndSet(0);
+  }
+
   public static void reset() {
     getBytesReadFromFsAndReset();
     getBytesReadFromBlockCacheAndReset();
     getBytesReadFromMemstoreAndReset();
     getBlockReadOpsCountAndReset();
     getFsReadTimeAndReset();
+    getBlockReadAheadHitsAndReset();
   }
 
   public static void populateServerSideScanMetrics(ServerSideScanMetrics metrics) {
@@ -177,5 +193,7 @@ public final class ThreadLocalServerSideScanMetrics {
       getBlockReadOpsCountCounter().get());
     metrics.addToCounter(ServerSideScanMetrics.FS_READ_TIME_METRIC_NAME,
       getFsReadTimeCounter().get());
+    metrics.addToCounter(ServerSideScanMetrics.BLOCK_READ_AHEAD_HITS_METRIC_NAME,
+      getBlockReadAheadHitsCounter().get());
   }
 }
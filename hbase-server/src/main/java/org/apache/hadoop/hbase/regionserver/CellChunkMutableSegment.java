@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A mutable segment whose cells are indexed by a {@link CellChunkSkipListMap}, which keeps its
+ * nodes on the chunks of the MSLAB of the segment instead of on the heap. Enabled per column family
+ * with {@link #CHUNK_INDEX_ENABLED_KEY}, requires the MSLAB.
+ * <p>
+ * The index can only reference cells on the chunks of the segment, so the cells the MSLAB does not
+ * copy, i.e. big cells and the cells of upserts, are copied into it anyway. The memory of cells
+ * removed by upserts is only freed with the segment, like for the other cells copied to the MSLAB.
+ * <p>
+ * The index entries are accounted like the ConcurrentSkipListMap entries of a
+ * {@link MutableSegment}, so that the in-memory flush, flattening and snapshot of the segment do
+ * the same size arithmetic. The actual nodes are smaller.
+ */
+@InterfaceAudience.Private
+public class CellChunkMutableSegment extends MutableSegment {
+
+  public static final String CHUNK_INDEX_ENABLED_KEY =
+    "hbase.hregion.memstore.mutable.chunk.index.enabled";
+  public static final boolean CHUNK_INDEX_ENABLED_DEFAULT = false;
+
+  protected CellChunkMutableSegment(CellComparator comparator, MemStoreLAB memStoreLAB,
+    MemStoreSizing memstoreSizing) {
+    super(new CellSet<>(new CellChunkSkipListMap(comparator, memStoreLAB)), comparator,
+      memStoreLAB, memstoreSizing);
+  }
+
+  @Override
+  protected void internalAdd(ExtendedCell cell, boolean mslabUsed, MemStoreSizing memstoreSizing,
+    boolean sizeAddedPreOperation) {
+    if (!mslabUsed) {
+      cell = getMemStoreLAB().forceCopyOfBigCellInto(cell);
+      mslabUsed = true;
+    }
+    super.internalAdd(cell, mslabUsed, memstoreSizing, sizeAddedPreOperation);
+  }
+}
@@ -0,0 +1,895 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.hadoop.hbase.ByteBufferKeyOnlyKeyValue;
+import org.apache.hadoop.hbase.ByteBufferKeyValue;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * CellChunkSkipListMap is a concurrent skip list of Cells, whose nodes are allocated on index
+ * chunks of a {@link MemStoreLAB}, next to the data chunks holding the cells. Unlike the
+ * ConcurrentSkipListMap it allocates no heap objects per cell added, and when the MSLAB is
+ * off-heap neither the cells nor their index are on the heap.
+ * <p>
+ * The memory layout of a node on an index chunk:
+ *
+ * <pre>
+ * --------------------------------------------------------------------------------------- ...
+ *  long        | long      | integer  | integer   | long        |      | long
+ *  8 bytes     | 8 bytes   | 4 bytes  | 4 bytes   | 8 bytes     |      | 8 bytes
+ *  reference   | sequence  | level of | removed   | next node   | ...  | next node on
+ *  to the Cell | ID of the | the node | flag      | on level 0  |      | the top level
+ *  data        | Cell      |          |           |             |      | of the node
+ * --------------------------------------------------------------------------------------- ...
+ * </pre>
+ *
+ * A Cell reference packs the chunk and the offset of the Cell data, and whether the Cell has tags,
+ * the length of the Cell is read from its data. A node reference packs the index chunk and the
+ * offset of the node. Chunks are referenced by their position in a chunk table of the map, so that
+ * following a reference needs no lookup in the {@link ChunkCreator}.
+ * <p>
+ * Nodes are linked with compare-and-set, adding Cells takes no locks. Adding a Cell equal to a Cell
+ * in the map replaces the Cell reference of its node. Removed Cells are only flagged, their nodes
+ * stay in the list and are skipped by all reads. Removals are rare in a memstore, only upserts
+ * remove the versions no scanner can see anymore.
+ * <p>
+ * Only Cells on chunks of the MSLAB of the map can be added, see {@link CellChunkMutableSegment}.
+ * Like {@link CellChunkMap}, the map returns new Cell objects over the chunk data.
+ */
+@InterfaceAudience.Private
+public class CellChunkSkipListMap implements NavigableMap<ExtendedCell, ExtendedCell> {
+
+  private static final VarHandle LONG_HANDLE =
+    MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle INT_HANDLE =
+    MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+  static final int MAX_LEVEL = 16;
+
+  private static final int CELL_REF_OFFSET = 0;
+  private static final int SEQ_ID_OFFSET = 8;
+  private static final int LEVEL_OFFSET = 16;
+  private static final int REMOVED_OFFSET = 20;
+  private static final int NEXT_OFFSET = 24;
+  private static final int MAX_NODE_SIZE = NEXT_OFFSET + MAX_LEVEL * Bytes.SIZEOF_LONG;
+  private static final int MIN_INDEX_CHUNK_SIZE = 64 * MAX_NODE_SIZE;
+
+  // reference to the head of the list, or to no node
+  private static final long NULL = 0;
+  private static final long TAGS_FLAG = 1L << 31;
+
+  private final SkipList list;
+  // bounds of sub maps, null if unbounded
+  private final ExtendedCell lo;
+  private final boolean loInclusive;
+  private final ExtendedCell hi;
+  private final boolean hiInclusive;
+  private final boolean descending;
+
+  public CellChunkSkipListMap(CellComparator comparator, MemStoreLAB memStoreLAB) {
+    this(new SkipList(comparator, memStoreLAB), null, false, null, false, false);
+  }
+
+  private CellChunkSkipListMap(SkipList list, ExtendedCell lo, boolean loInclusive,
+    ExtendedCell hi, boolean hiInclusive, boolean descending) {
+    this.list = list;
+    this.lo = lo;
+    this.loInclusive = loInclusive;
+    this.hi = hi;
+    this.hiInclusive = hiInclusive;
+    this.descending = descending;
+  }
+
+  /** A chunk holding nodes or Cell data, and its position in the chunk table of the map */
+  private static final class ChunkSlot {
+    private final Chunk chunk; // only set for index chunks
+    private final int id;
+    private final int index;
+
+    private ChunkSlot(Chunk chunk, int id, int index) {
+      this.chunk = chunk;
+      this.id = id;
+      this.index = index;
+    }
+  }
+
+  /** The skip list shared by a map and its sub maps */
+  private static final class SkipList {
+    private final CellComparator comparator;
+    private final MemStoreLAB memStoreLAB;
+    private final ChunkCreator.ChunkType chunkType;
+    // the first node on every level
+    private final AtomicLongArray head = new AtomicLongArray(MAX_LEVEL);
+    private final AtomicInteger size = new AtomicInteger();
+    // the chunk table, copied on write
+    private volatile ByteBuffer[] buffers = new ByteBuffer[0];
+    private final ConcurrentMap<Integer, Integer> dataChunks = new ConcurrentHashMap<>();
+    private volatile ChunkSlot lastDataChunk;
+    private volatile ChunkSlot indexChunk;
+
+    private SkipList(CellComparator comparator, MemStoreLAB memStoreLAB) {
+      this.comparator = comparator;
+      this.memStoreLAB = memStoreLAB;
+      // index chunks are smaller and waste less memory, unless they are too small for nodes
+      this.chunkType = ChunkCreator.getInstance().getChunkSize(ChunkCreator.ChunkType.INDEX_CHUNK)
+          >= MIN_INDEX_CHUNK_SIZE
+        ? ChunkCreator.ChunkType.INDEX_CHUNK
+        : ChunkCreator.ChunkType.DATA_CHUNK;
+    }
+
+    // ---------------- Chunks ----------------
+    private synchronized int addBuffer(ByteBuffer buffer) {
+      ByteBuffer[] newBuffers = Arrays.copyOf(buffers, buffers.length + 1);
+      newBuffers[buffers.length] = buffer;
+      buffers = newBuffers;
+      return buffers.length - 1;
+    }
+
+    private int dataChunkIndex(ByteBufferKeyValue cell) {
+      int id = cell.getChunkId();
+      ChunkSlot slot = lastDataChunk;
+      if (slot != null && slot.id == id) {
+        return slot.index;
+      }
+      Integer index = dataChunks.get(id);
+      if (index == null) {
+        synchronized (this) {
+          index = dataChunks.get(id);
+          if (index == null) {
+            index = addBuffer(cell.getBuffer());
+            dataChunks.put(id, index);
+          }
+        }
+      }
+      lastDataChunk = new ChunkSlot(null, id, index);
+      return index;
+    }
+
+    private long allocateNode(int level) {
+      int size = NEXT_OFFSET + level * Bytes.SIZEOF_LONG;
+      ChunkSlot slot = indexChunk;
+      while (true) {
+        if (slot != null) {
+          int offset = slot.chunk.alloc(size);
+          if (offset >= 0) {
+            return ((long) slot.index << 32) | offset;
+          }
+        }
+        slot = newIndexChunk(slot);
+      }
+    }
+
+    private synchronized ChunkSlot newIndexChunk(ChunkSlot fullChunk) {
+      if (indexChunk != fullChunk) {
+        // another thread was faster
+        return indexChunk;
+      }
+      Chunk chunk = memStoreLAB.getNewExternalChunk(chunkType);
+      if (chunk == null || chunk.size < Bytes.SIZEOF_LONG + MAX_NODE_SIZE) {
+        throw new IllegalStateException("No " + chunkType + " for nodes from " + memStoreLAB);
+      }
+      // skip the chunk id in the header, nodes must be 8 bytes aligned for atomic access
+      chunk.alloc(Bytes.SIZEOF_INT);
+      indexChunk = new ChunkSlot(chunk, chunk.getId(), addBuffer(chunk.getData()));
+      return indexChunk;
+    }
+
+    // ---------------- Nodes ----------------
+    private ByteBuffer buffer(long node) {
+      return buffers[(int) (node >>> 32)];
+    }
+
+    private static int offset(long node) {
+      return (int) node;
+    }
+
+    private long cellRef(long node) {
+      return (long) LONG_HANDLE.getAcquire(buffer(node), offset(node) + CELL_REF_OFFSET);
+    }
+
+    private long seqId(long node) {
+      return (long) LONG_HANDLE.get(buffer(node), offset(node) + SEQ_ID_OFFSET);
+    }
+
+    private int level(long node) {
+      return (int) INT_HANDLE.get(buffer(node), offset(node) + LEVEL_OFFSET);
+    }
+
+    private boolean isRemoved(long node) {
+      return (int) INT_HANDLE.getAcquire(buffer(node), offset(node) + REMOVED_OFFSET) != 0;
+    }
+
+    private boolean markRemoved(long node) {
+      if (INT_HANDLE.compareAndSet(buffer(node), offset(node) + REMOVED_OFFSET, 0, 1)) {
+        size.decrementAndGet();
+        return true;
+      }
+      return false;
+    }
+
+    private long next(long node, int level) {
+      if (node == NULL) {
+        return head.get(level);
+      }
+      return (long) LONG_HANDLE.getAcquire(buffer(node),
+        offset(node) + NEXT_OFFSET + level * Bytes.SIZEOF_LONG);
+    }
+
+    private void setNext(long node, int level, long next) {
+      LONG_HANDLE.setRelease(buffer(node), offset(node) + NEXT_OFFSET + level * Bytes.SIZEOF_LONG,
+        next);
+    }
+
+    private boolean casNext(long node, int level, long expected, long next) {
+      if (node == NULL) {
+        return head.compareAndSet(level, expected, next);
+      }
+      return LONG_HANDLE.compareAndSet(buffer(node),
+        offset(node) + NEXT_OFFSET + level * Bytes.SIZEOF_LONG, expected, next);
+    }
+
+    // ---------------- Cells ----------------
+    private ExtendedCell cell(long node) {
+      return cell(cellRef(node), seqId(node));
+    }
+
+    private ExtendedCell cell(long cellRef, long seqId) {
+      ByteBuffer data = buffers[(int) (cellRef >>> 32)];
+      int offset = (int) cellRef & Integer.MAX_VALUE;
+      int length = KeyValue.ROW_OFFSET + ByteBufferUtils.toInt(data, offset)
+        + ByteBufferUtils.toInt(data, offset + Bytes.SIZEOF_INT);
+      if ((cellRef & TAGS_FLAG) == 0) {
+        return new NoTagByteBufferChunkKeyValue(data, offset, length, seqId);
+      }
+      length += KeyValue.TAGS_LENGTH_SIZE
+        + (ByteBufferUtils.toShort(data, offset + length) & 0xffff);
+      return new ByteBufferChunkKeyValue(data, offset, length, seqId);
+    }
+
+    /**
+     * Compares the given Cell with the Cell of the given node, in the order of the comparator of
+     * the map. Compares the keys over the chunk data, without creating a Cell for the node.
+     */
+    private int compare(ExtendedCell cell, long node, ByteBufferKeyOnlyKeyValue nodeKey) {
+      long cellRef = cellRef(node);
+      ByteBuffer data = buffers[(int) (cellRef >>> 32)];
+      int offset = (int) cellRef & Integer.MAX_VALUE;
+      nodeKey.setKey(data, offset + KeyValue.ROW_OFFSET, ByteBufferUtils.toInt(data, offset));
+      int diff = comparator.compare(cell, nodeKey, true);
+      if (diff != 0) {
+        return diff;
+      }
+      // later edits sort first, see CellComparatorImpl
+      return Long.compare(seqId(node), cell.getSequenceId());
+    }
+
+    // ---------------- Searches ----------------
+    /**
+     * Returns the last node on level 0 that is before the given Cell, or NULL for the head. Before
+     * means smaller, or smaller or equal if inclusive.
+     */
+    private long findPredecessor(ExtendedCell cell, boolean inclusive,
+      ByteBufferKeyOnlyKeyValue nodeKey) {
+      long pred = NULL;
+      for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+        long next = next(pred, level);
+        while (next != NULL) {
+          int diff = compare(cell, next, nodeKey);
+          if (diff < 0 || (diff == 0 && !inclusive)) {
+            break;
+          }
+          pred = next;
+          next = next(pred, level);
+        }
+      }
+      return pred;
+    }
+
+    private long nextLive(long node) {
+      long next = next(node, 0);
+      while (next != NULL && isRemoved(next)) {
+        next = next(next, 0);
+      }
+      return next;
+    }
+
+    /** Returns the first live node greater than, or equal if inclusive, to the given Cell */
+    private long ceiling(ExtendedCell cell, boolean inclusive, ByteBufferKeyOnlyKeyValue nodeKey) {
+      return nextLive(findPredecessor(cell, !inclusive, nodeKey));
+    }
+
+    /** Returns the last live node smaller than, or equal if inclusive, to the given Cell */
+    private long floor(ExtendedCell cell, boolean inclusive, ByteBufferKeyOnlyKeyValue nodeKey) {
+      long node = findPredecessor(cell, inclusive, nodeKey);
+      // nodes of removed Cells equal to a Cell added later come before its node, so if the last
+      // node of equal Cells is removed, all of them are
+      while (node != NULL && isRemoved(node)) {
+        node = findPredecessor(cell(node), false, nodeKey);
+      }
+      return node;
+    }
+
+    private long first() {
+      return nextLive(NULL);
+    }
+
+    private long last(ByteBufferKeyOnlyKeyValue nodeKey) {
+      long node = NULL;
+      for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+        long next = next(node, level);
+        while (next != NULL) {
+          node = next;
+          next = next(node, level);
+        }
+      }
+      if (node != NULL && isRemoved(node)) {
+        node = floor(cell(node), false, nodeKey);
+      }
+      return node;
+    }
+
+    // ---------------- Updates ----------------
+    /**
+     * Adds the given Cell, or replaces the equal Cell in the list.
+     * @return the replaced Cell, or null if the Cell was added
+     */
+    private ExtendedCell put(ExtendedCell cell) {
+      ByteBufferKeyValue chunkCell = (ByteBufferKeyValue) cell;
+      long cellRef = ((long) dataChunkIndex(chunkCell) << 32) | chunkCell.getOffset()
+        | (cell.getTagsLength() > 0 ? TAGS_FLAG : 0);
+      ByteBufferKeyOnlyKeyValue nodeKey = new ByteBufferKeyOnlyKeyValue();
+      long[] preds = new long[MAX_LEVEL];
+      long node = NULL;
+      int level = 0;
+      while (true) {
+        long succ = findInsertionPoint(cell, preds, nodeKey);
+        if (succ != NULL && compare(cell, succ, nodeKey) == 0) {
+          long oldCellRef = (long) LONG_HANDLE.getAndSet(buffer(succ),
+            offset(succ) + CELL_REF_OFFSET, cellRef);
+          return cell(oldCellRef, seqId(succ));
+        }
+        if (node == NULL) {
+          level = randomLevel();
+          node = allocateNode(level);
+          ByteBuffer buffer = buffer(node);
+          int offset = offset(node);
+          LONG_HANDLE.set(buffer, offset + CELL_REF_OFFSET, cellRef);
+          LONG_HANDLE.set(buffer, offset + SEQ_ID_OFFSET, cell.getSequenceId());
+          INT_HANDLE.set(buffer, offset + LEVEL_OFFSET, level);
+          INT_HANDLE.set(buffer, offset + REMOVED_OFFSET, 0);
+        }
+        setNext(node, 0, succ);
+        // the node and its Cell are published with the link on level 0
+        if (casNext(preds[0], 0, succ, node)) {
+          break;
+        }
+      }
+      size.incrementAndGet();
+      for (int i = 1; i < level; i++) {
+        long pred = preds[i];
+        while (true) {
+          long succ = next(pred, i);
+          // nodes may have been linked after the predecessor in the meantime
+          while (succ != NULL && isBefore(cell, succ, nodeKey)) {
+            pred = succ;
+            succ = next(pred, i);
+          }
+          setNext(node, i, succ);
+          if (casNext(pred, i, succ, node)) {
+            break;
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Whether the node goes before a node of the given Cell. Nodes of removed Cells go before the
+     * node of an equal Cell, so that a Cell added again after its removal is found again.
+     */
+    private boolean isBefore(ExtendedCell cell, long node, ByteBufferKeyOnlyKeyValue nodeKey) {
+      int diff = compare(cell, node, nodeKey);
+      return diff > 0 || (diff == 0 && isRemoved(node));
+    }
+
+    /**
+     * Fills the given array with the predecessors of the node of the given Cell on every level,
+     * and returns its successor on level 0.
+     */
+    private long findInsertionPoint(ExtendedCell cell, long[] preds,
+      ByteBufferKeyOnlyKeyValue nodeKey) {
+      long pred = NULL;
+      long next = NULL;
+      for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+        next = next(pred, level);
+        while (next != NULL && isBefore(cell, next, nodeKey)) {
+          pred = next;
+          next = next(pred, level);
+        }
+        preds[level] = pred;
+      }
+      return next;
+    }
+
+    private static int randomLevel() {
+      // one in four nodes of a level is also on the next level, like in ConcurrentSkipListMap
+      int random = ThreadLocalRandom.current().nextInt();
+      int level = 1;
+      while (level < MAX_LEVEL && (random & 3) == 0) {
+        level++;
+        random >>>= 2;
+      }
+      return level;
+    }
+
+    private ExtendedCell remove(ExtendedCell cell, ByteBufferKeyOnlyKeyValue nodeKey) {
+      long node = ceiling(cell, true, nodeKey);
+      if (node != NULL && compare(cell, node, nodeKey) == 0 && markRemoved(node)) {
+        return cell(node);
+      }
+      return null;
+    }
+  }
+
+  // ---------------- Bounds ----------------
+  private boolean tooLow(ExtendedCell cell) {
+    if (lo == null) {
+      return false;
+    }
+    int diff = list.comparator.compare(cell, lo);
+    return diff < 0 || (diff == 0 && !loInclusive);
+  }
+
+  private boolean tooHigh(ExtendedCell cell) {
+    if (hi == null) {
+      return false;
+    }
+    int diff = list.comparator.compare(cell, hi);
+    return diff > 0 || (diff == 0 && !hiInclusive);
+  }
+
+  private boolean tooLow(long node, ByteBufferKeyOnlyKeyValue nodeKey) {
+    if (lo == null) {
+      return false;
+    }
+    int diff = list.compare(lo, node, nodeKey);
+    return diff > 0 || (diff == 0 && !loInclusive);
+  }
+
+  private boolean tooHigh(long node, ByteBufferKeyOnlyKeyValue nodeKey) {
+    if (hi == null) {
+      return false;
+    }
+    int diff = list.compare(hi, node, nodeKey);
+    return diff < 0 || (diff == 0 && !hiInclusive);
+  }
+
+  private void checkInRange(ExtendedCell cell) {
+    if (tooLow(cell) || tooHigh(cell)) {
+      throw new IllegalArgumentException("Cell out of range: " + cell);
+    }
+  }
+
+  // ---------------- Nodes in ascending order, within the bounds ----------------
+  private long lowestNode(ByteBufferKeyOnlyKeyValue nodeKey) {
+    long node = lo == null ? list.first() : list.ceiling(lo, loInclusive, nodeKey);
+    return node == NULL || tooHigh(node, nodeKey) ? NULL : node;
+  }
+
+  private long highestNode(ByteBufferKeyOnlyKeyValue nodeKey) {
+    long node = hi == null ? list.last(nodeKey) : list.floor(hi, hiInclusive, nodeKey);
+    return node == NULL || tooLow(node, nodeKey) ? NULL : node;
+  }
+
+  private long ceilingNode(ExtendedCell cell, boolean inclusive,
+    ByteBufferKeyOnlyKeyValue nodeKey) {
+    if (tooLow(cell)) {
+      return lowestNode(nodeKey);
+    }
+    long node = list.ceiling(cell, inclusive, nodeKey);
+    return node == NULL || tooHigh(node, nodeKey) ? NULL : node;
+  }
+
+  private long floorNode(ExtendedCell cell, boolean inclusive, ByteBufferKeyOnlyKeyValue nodeKey) {
+    if (tooHigh(cell)) {
+      return highestNode(nodeKey);
+    }
+    long node = list.floor(cell, inclusive, nodeKey);
+    return node == NULL || tooLow(node, nodeKey) ? NULL : node;
+  }
+
+  // ---------------- Nodes in the order of the map ----------------
+  private long firstNode(ByteBufferKeyOnlyKeyValue nodeKey) {
+    return descending ? highestNode(nodeKey) : lowestNode(nodeKey);
+  }
+
+  private long lastNode(ByteBufferKeyOnlyKeyValue nodeKey) {
+    return descending ? lowestNode(nodeKey) : highestNode(nodeKey);
+  }
+
+  private long nextNode(long node, ByteBufferKeyOnlyKeyValue nodeKey) {
+    long next;
+    if (descending) {
+      next = list.floor(list.cell(node), false, nodeKey);
+      return next == NULL || tooLow(next, nodeKey) ? NULL : next;
+    }
+    next = list.nextLive(node);
+    return next == NULL || tooHigh(next, nodeKey) ? NULL : next;
+  }
+
+  private ExtendedCell cellOrNull(long node) {
+    return node == NULL ? null : list.cell(node);
+  }
+
+  private Entry<ExtendedCell, ExtendedCell> entryOrNull(long node) {
+    if (node == NULL) {
+      return null;
+    }
+    ExtendedCell cell = list.cell(node);
+    return new AbstractMap.SimpleImmutableEntry<>(cell, cell);
+  }
+
+  @Override
+  public Comparator<? super ExtendedCell> comparator() {
+    return descending ? Collections.reverseOrder(list.comparator) : list.comparator;
+  }
+
+  @Override
+  public int size() {
+    if (lo == null && hi == null) {
+      return list.size.get();
+    }
+    int size = 0;
+    for (Iterator<ExtendedCell> it = new CellIterator(); it.hasNext(); it.next()) {
+      size++;
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return lowestNode(new ByteBufferKeyOnlyKeyValue()) == NULL;
+  }
+
+  // ---------------- Sub-Maps ----------------
+  private NavigableMap<ExtendedCell, ExtendedCell> newSubMap(ExtendedCell fromKey,
+    boolean fromInclusive, ExtendedCell toKey, boolean toInclusive) {
+    if (descending) {
+      ExtendedCell key = fromKey;
+      fromKey = toKey;
+      toKey = key;
+      boolean inclusive = fromInclusive;
+      fromInclusive = toInclusive;
+      toInclusive = inclusive;
+    }
+    if (lo != null) {
+      if (fromKey == null) {
+        fromKey = lo;
+        fromInclusive = loInclusive;
+      } else if (tooLow(fromKey)) {
+        throw new IllegalArgumentException("Cell out of range: " + fromKey);
+      }
+    }
+    if (hi != null) {
+      if (toKey == null) {
+        toKey = hi;
+        toInclusive = hiInclusive;
+      } else if (tooHigh(toKey)) {
+        throw new IllegalArgumentException("Cell out of range: " + toKey);
+      }
+    }
+    return new CellChunkSkipListMap(list, fromKey, fromInclusive, toKey, toInclusive, descending);
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> subMap(ExtendedCell fromKey,
+    boolean fromInclusive, ExtendedCell toKey, boolean toInclusive) {
+    return newSubMap(fromKey, fromInclusive, toKey, toInclusive);
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> headMap(ExtendedCell toKey, boolean inclusive) {
+    return newSubMap(null, false, toKey, inclusive);
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> tailMap(ExtendedCell fromKey,
+    boolean inclusive) {
+    return newSubMap(fromKey, inclusive, null, false);
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> descendingMap() {
+    return new CellChunkSkipListMap(list, lo, loInclusive, hi, hiInclusive, !descending);
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> subMap(ExtendedCell fromKey,
+    ExtendedCell toKey) {
+    return subMap(fromKey, true, toKey, false);
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> headMap(ExtendedCell toKey) {
+    return headMap(toKey, false);
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> tailMap(ExtendedCell fromKey) {
+    return tailMap(fromKey, true);
+  }
+
+  // -------------------------------- Key's getters --------------------------------
+  @Override
+  public ExtendedCell firstKey() {
+    ExtendedCell cell = cellOrNull(firstNode(new ByteBufferKeyOnlyKeyValue()));
+    if (cell == null) {
+      throw new NoSuchElementException();
+    }
+    return cell;
+  }
+
+  @Override
+  public ExtendedCell lastKey() {
+    ExtendedCell cell = cellOrNull(lastNode(new ByteBufferKeyOnlyKeyValue()));
+    if (cell == null) {
+      throw new NoSuchElementException();
+    }
+    return cell;
+  }
+
+  @Override
+  public ExtendedCell lowerKey(ExtendedCell k) {
+    return cellOrNull(lowerNode(k));
+  }
+
+  @Override
+  public ExtendedCell floorKey(ExtendedCell k) {
+    return cellOrNull(floorNode(k));
+  }
+
+  @Override
+  public ExtendedCell ceilingKey(ExtendedCell k) {
+    return cellOrNull(ceilingNode(k));
+  }
+
+  @Override
+  public ExtendedCell higherKey(ExtendedCell k) {
+    return cellOrNull(higherNode(k));
+  }
+
+  private long lowerNode(ExtendedCell k) {
+    ByteBufferKeyOnlyKeyValue nodeKey = new ByteBufferKeyOnlyKeyValue();
+    return descending ? ceilingNode(k, false, nodeKey) : floorNode(k, false, nodeKey);
+  }
+
+  private long floorNode(ExtendedCell k) {
+    ByteBufferKeyOnlyKeyValue nodeKey = new ByteBufferKeyOnlyKeyValue();
+    return descending ? ceilingNode(k, true, nodeKey) : floorNode(k, true, nodeKey);
+  }
+
+  private long ceilingNode(ExtendedCell k) {
+    ByteBufferKeyOnlyKeyValue nodeKey = new ByteBufferKeyOnlyKeyValue();
+    return descending ? floorNode(k, true, nodeKey) : ceilingNode(k, true, nodeKey);
+  }
+
+  private long higherNode(ExtendedCell k) {
+    ByteBufferKeyOnlyKeyValue nodeKey = new ByteBufferKeyOnlyKeyValue();
+    return descending ? floorNode(k, false, nodeKey) : ceilingNode(k, false, nodeKey);
+  }
+
+  @Override
+  public boolean containsKey(Object o) {
+    return get(o) != null;
+  }
+
+  @Override
+  public boolean containsValue(Object o) { // use containsKey(Object o) instead
+    throw new UnsupportedOperationException("Use containsKey(Object o) instead");
+  }
+
+  @Override
+  public ExtendedCell get(Object o) {
+    ExtendedCell cell = (ExtendedCell) o;
+    if (tooLow(cell) || tooHigh(cell)) {
+      return null;
+    }
+    ByteBufferKeyOnlyKeyValue nodeKey = new ByteBufferKeyOnlyKeyValue();
+    long node = list.ceiling(cell, true, nodeKey);
+    return node != NULL && list.compare(cell, node, nodeKey) == 0 ? list.cell(node) : null;
+  }
+
+  // -------------------------------- Entry's getters --------------------------------
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> lowerEntry(ExtendedCell k) {
+    return entryOrNull(lowerNode(k));
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> higherEntry(ExtendedCell k) {
+    return entryOrNull(higherNode(k));
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> ceilingEntry(ExtendedCell k) {
+    return entryOrNull(ceilingNode(k));
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> floorEntry(ExtendedCell k) {
+    return entryOrNull(floorNode(k));
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> firstEntry() {
+    return entryOrNull(firstNode(new ByteBufferKeyOnlyKeyValue()));
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> lastEntry() {
+    return entryOrNull(lastNode(new ByteBufferKeyOnlyKeyValue()));
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> pollFirstEntry() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> pollLastEntry() {
+    throw new UnsupportedOperationException();
+  }
+
+  // -------------------------------- Updates --------------------------------
+  /**
+   * Adds the given Cell, which must be on a chunk of the MSLAB of the map. The key is ignored, the
+   * map is only used as a set, with the Cells as their own keys.
+   */
+  @Override
+  public ExtendedCell put(ExtendedCell k, ExtendedCell v) {
+    checkInRange(v);
+    return list.put(v);
+  }
+
+  @Override
+  public ExtendedCell remove(Object o) {
+    ExtendedCell cell = (ExtendedCell) o;
+    if (tooLow(cell) || tooHigh(cell)) {
+      return null;
+    }
+    return list.remove(cell, new ByteBufferKeyOnlyKeyValue());
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void putAll(Map<? extends ExtendedCell, ? extends ExtendedCell> map) {
+    throw new UnsupportedOperationException();
+  }
+
+  // -------------------------------- Sub-Sets --------------------------------
+  @Override
+  public NavigableSet<ExtendedCell> navigableKeySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public NavigableSet<ExtendedCell> descendingKeySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public NavigableSet<ExtendedCell> keySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Collection<ExtendedCell> values() {
+    return new AbstractCollection<ExtendedCell>() {
+      @Override
+      public Iterator<ExtendedCell> iterator() {
+        return new CellIterator();
+      }
+
+      @Override
+      public int size() {
+        return CellChunkSkipListMap.this.size();
+      }
+
+      @Override
+      public boolean isEmpty() {
+        return CellChunkSkipListMap.this.isEmpty();
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return containsKey(o);
+      }
+    };
+  }
+
+  @Override
+  public Set<Entry<ExtendedCell, ExtendedCell>> entrySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  // -------------------------------- Iterator K --------------------------------
+  private final class CellIterator implements Iterator<ExtendedCell> {
+    private final ByteBufferKeyOnlyKeyValue nodeKey = new ByteBufferKeyOnlyKeyValue();
+    private long next;
+    private long last = NULL;
+
+    private CellIterator() {
+      next = firstNode(nodeKey);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != NULL;
+    }
+
+    @Override
+    public ExtendedCell next() {
+      if (next == NULL) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      next = nextNode(next, nodeKey);
+      return list.cell(last);
+    }
+
+    @Override
+    public void remove() {
+      if (last == NULL) {
+        throw new IllegalStateException();
+      }
+      list.markRemoved(last);
+      last = NULL;
+    }
+  }
+}
@@ -79,6 +79,9 @@ public class ChunkCreator {
   private final int chunkSize;
   private int indexChunkSize;
   private MemStoreChunkPool indexChunksPool;
+  // number of chunks created outside of the pools, either because the pool is exhausted or
+  // because the requested size is not the size of any of the pools
+  private final LongAdder unpooledChunkCount = new LongAdder();
 
   ChunkCreator(int chunkSize, boolean offheap, long globalMemStoreSize, float poolSizePercentage,
     float initialCountPercentage, HeapMemoryManager heapMemoryManager,
@@ -170,7 +173,8 @@ public class ChunkCreator {
   }
 
   /**
-   * Creates and inits a chunk.
+   * Creates and inits a chunk. Every pool only serves chunks of its own size, a chunk of any other
+   * size is allocated on demand and is not pooled when it is put back.
    * @return the chunk that was initialized
    * @param size the size of the chunk to be allocated, in bytes
    */
@@ -179,9 +183,15 @@ public class ChunkCreator {
     MemStoreChunkPool pool = null;
 
     // if it is one of the pools
-    if (dataChunksPool != null && chunkType == ChunkType.DATA_CHUNK) {
+    if (
+      dataChunksPool != null && chunkType == ChunkType.DATA_CHUNK
+        && size == dataChunksPool.getChunkSize()
+    ) {
       pool = dataChunksPool;
-    } else if (indexChunksPool != null && chunkType == ChunkType.INDEX_CHUNK) {
+    } else if (
+      indexChunksPool != null && chunkType == ChunkType.INDEX_CHUNK
+        && size == indexChunksPool.getChunkSize()
+    ) {
       pool = indexChunksPool;
     }
 
@@ -200,6 +210,7 @@ public class ChunkCreator {
 
     if (chunk == null) {
       chunk = createChunk(false, chunkType, size);
+      unpooledChunkCount.increment();
     }
 
     // now we need to actually do the expensive memory allocation step in case of a new chunk,
@@ -385,12 +396,20 @@ public class ChunkCreator {
 
     /**
      * Add the chunks to the pool, when the pool achieves the max size, it will skip the remaining
-     * chunks
+     * chunks. Concurrent callers may pass the size check together, so the caller that finds the
+     * pool above the max size drops the excess again.
      */
     private void putbackChunks(Chunk c) {
       int toAdd = this.maxCount - reclaimedChunks.size();
       if (c.isFromPool() && c.size == chunkSize && toAdd > 0) {
         reclaimedChunks.add(c);
+        while (reclaimedChunks.size() > this.maxCount) {
+          Chunk excess = reclaimedChunks.poll();
+          if (excess == null) {
+            break;
+          }
+          ChunkCreator.this.removeChunk(excess.getId());
+        }
       } else {
         // remove the chunk (that is not going to pool)
         // though it is initially from the pool or not
@@ -568,6 +587,44 @@ public class ChunkCreator {
     }
   }
 
+  /** Returns the size in bytes of the free chunks retained by the pools */
+  long getPooledChunksSize() {
+    long size = 0;
+    for (MemStoreChunkPool pool : new MemStoreChunkPool[] { dataChunksPool, indexChunksPool }) {
+      if (pool != null) {
+        size += (long) pool.reclaimedChunks.size() * pool.getChunkSize();
+      }
+    }
+    return size;
+  }
+
+  /** Returns the number of chunks created by the pools */
+  long getPooledChunkCount() {
+    long count = 0;
+    for (MemStoreChunkPool pool : new MemStoreChunkPool[] { dataChunksPool, indexChunksPool }) {
+      if (pool != null) {
+        count += pool.chunkCount.get();
+      }
+    }
+    return count;
+  }
+
+  /** Returns the number of chunks handed out again after they were put back to the pools */
+  long getReusedChunkCount() {
+    long count = 0;
+    for (MemStoreChunkPool pool : new MemStoreChunkPool[] { dataChunksPool, indexChunksPool }) {
+      if (pool != null) {
+        count += pool.reusedChunkCount.sum();
+      }
+    }
+    return count;
+  }
+
+  /** Returns the number of chunks created outside of the pools */
+  long getUnpooledChunkCount() {
+    return unpooledChunkCount.sum();
+  }
+
   int getChunkSize() {
     return getChunkSize(ChunkType.DATA_CHUNK);
   }
@@ -591,7 +648,11 @@ public class ChunkCreator {
     }
   }
 
-  synchronized void putbackChunks(Set<Integer> chunks) {
+  /**
+   * Puts back the chunks of a closed MemStoreLAB. The pools are concurrent queues, so flushes of
+   * different regions put back their chunks without serializing on the ChunkCreator.
+   */
+  void putbackChunks(Set<Integer> chunks) {
     // if there is no pool just try to clear the chunkIdMap in case there is something
     if (dataChunksPool == null && indexChunksPool == null) {
       this.removeChunks(chunks);
@@ -64,6 +64,10 @@ public class CompactingMemStore extends AbstractMemStore {
   public static final String IN_MEMORY_CONPACTION_POOL_SIZE_KEY =
     "hbase.regionserver.inmemory.compaction.pool.size";
   public static final int IN_MEMORY_CONPACTION_POOL_SIZE_DEFAULT = 10;
+  // Pool size for compacting the key ranges of an in-memory compaction in parallel
+  public static final String IN_MEMORY_COMPACTION_RANGES_POOL_SIZE_KEY =
+    "hbase.regionserver.inmemory.compaction.ranges.pool.size";
+  public static final int IN_MEMORY_COMPACTION_RANGES_POOL_SIZE_DEFAULT = 10;
 
   private static final Logger LOG = LoggerFactory.getLogger(CompactingMemStore.class);
   private HStore store;
@@ -598,7 +602,7 @@ public class CompactingMemStore extends AbstractMemStore {
     }
   }
 
-  private RegionServicesForStores getRegionServices() {
+  RegionServicesForStores getRegionServices() {
     return regionServices;
   }
 
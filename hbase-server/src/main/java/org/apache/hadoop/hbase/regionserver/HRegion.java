@@ -60,6 +60,8 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -258,6 +260,23 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   public static final String LOAD_CFS_ON_DEMAND_CONFIG_KEY =
     "hbase.hregion.scan.loadColumnFamiliesOnDemand";
 
+  /**
+   * Whether to load the data blocks hit by the gets of a multi request into the block cache ahead
+   * of executing them, reading the blocks of each store file with one vectored read.
+   */
+  public static final String MULTI_GET_CACHE_DATA_BLOCKS_KEY =
+    "hbase.hregion.multiget.cache.data.blocks";
+  public static final boolean DEFAULT_MULTI_GET_CACHE_DATA_BLOCKS = false;
+
+  /**
+   * Number of threads of the region server pool loading the data blocks of multi request gets, so
+   * that the store files of a request are read in parallel. The loads no pool thread has started
+   * yet when the handler is done with its own load run in the handler thread.
+   */
+  public static final String MULTI_GET_CACHE_DATA_BLOCKS_THREADS_KEY =
+    "hbase.hregion.multiget.cache.data.blocks.threads";
+  public static final int DEFAULT_MULTI_GET_CACHE_DATA_BLOCKS_THREADS = 8;
+
   public static final String HBASE_MAX_CELL_SIZE_KEY =
     ConfigKey.LONG("hbase.server.keyvalue.maxsize");
   public static final int DEFAULT_MAX_CELL_SIZE = 10485760;
@@ -448,6 +467,11 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
    */
   private boolean isLoadingCfsOnDemandDefault = false;
 
+  /**
+   * Whether to load the data blocks of multi gets into the block cache ahead of executing them.
+   */
+  private final boolean multiGetCacheDataBlocks;
+
   private final AtomicInteger majorInProgress = new AtomicInteger(0);
   private final AtomicInteger minorInProgress = new AtomicInteger(0);
 
@@ -889,6 +913,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     this.smallestReadPointCalcLock = new ReadPointCalculationLock(conf);
 
     this.isLoadingCfsOnDemandDefault = conf.getBoolean(LOAD_CFS_ON_DEMAND_CONFIG_KEY, true);
+    this.multiGetCacheDataBlocks =
+      conf.getBoolean(MULTI_GET_CACHE_DATA_BLOCKS_KEY, DEFAULT_MULTI_GET_CACHE_DATA_BLOCKS);
     this.htableDescriptor = htd;
     Set<byte[]> families = this.htableDescriptor.getColumnFamilyNames();
     for (byte[] family : families) {
@@ -1626,6 +1652,72 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     return this.isLoadingCfsOnDemandDefault;
   }
 
+  public boolean isMultiGetCacheDataBlocks() {
+    return this.multiGetCacheDataBlocks;
+  }
+
+  /**
+   * Loads the data blocks the given gets will read into the block cache, so that each store file
+   * is read once for the whole batch instead of once per get. Only the families with the block
+   * cache enabled and the gets which cache blocks are considered.
+   * @param gets the gets about to be executed
+   * @return the number of data blocks read from the file system
+   */
+  int cacheDataBlocksForGets(List<Get> gets) {
+    List<FutureTask<Integer>> loads = new ArrayList<>();
+    for (HStore store : stores.values()) {
+      ColumnFamilyDescriptor family = store.getColumnFamilyDescriptor();
+      if (!family.isBlockCacheEnabled()) {
+        continue;
+      }
+      List<byte[]> rows = new ArrayList<>(gets.size());
+      for (Get get : gets) {
+        if (
+          get.getCacheBlocks() && (!get.hasFamilies() || get.familySet().contains(family.getName()))
+        ) {
+          rows.add(get.getRow());
+        }
+      }
+      if (!rows.isEmpty()) {
+        for (Callable<Integer> load : store.getDataBlockLoadsForRows(rows)) {
+          loads.add(new FutureTask<>(load));
+        }
+      }
+    }
+    if (loads.isEmpty()) {
+      return 0;
+    }
+    // read the store files in parallel, one of them in this thread
+    if (loads.size() > 1) {
+      ThreadPoolExecutor pool = regionServicesForStores.getDataBlockLoadPool();
+      try {
+        for (int i = 1; i < loads.size(); i++) {
+          pool.execute(loads.get(i));
+        }
+      } catch (RejectedExecutionException e) {
+        LOG.debug("Data block loads rejected, the region server is stopping", e);
+      }
+    }
+    // then run the loads no pool thread has started, running a started load does nothing. This
+    // way every load, and the store file it pins, is done with once the waits below return.
+    for (FutureTask<Integer> load : loads) {
+      load.run();
+    }
+    int loaded = 0;
+    for (FutureTask<Integer> load : loads) {
+      try {
+        loaded += load.get();
+      } catch (InterruptedException e) {
+        // the remaining loads carry on, the gets read whatever is not cached yet
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException e) {
+        LOG.debug("Failed to load data blocks into the block cache", e.getCause());
+      }
+    }
+    return loaded;
+  }
+
   /**
    * Close down this HRegion. Flush the cache, shut down each HStore, don't service any more calls.
    * <p>
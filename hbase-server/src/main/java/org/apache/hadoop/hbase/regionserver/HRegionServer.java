@@ -111,6 +111,7 @@ import org.apache.hadoop.hbase.executor.ExecutorType;
 import org.apache.hadoop.hbase.http.InfoServer;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.BlockCacheFactory;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheTracer;
 import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.hadoop.hbase.io.util.MemorySizeUtil;
 import org.apache.hadoop.hbase.ipc.CoprocessorRpcUtils;
@@ -942,6 +943,7 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
       if (blockCache != null) {
         blockCache.shutdown();
       }
+      BlockCacheTracer.stop();
       if (mobFileCache != null) {
         mobFileCache.shutdown();
       }
@@ -76,10 +76,12 @@ import org.apache.hadoop.hbase.conf.PropagatingConfigurationObserver;
 import org.apache.hadoop.hbase.coprocessor.ReadOnlyConfiguration;
 import org.apache.hadoop.hbase.io.HFileLink;
 import org.apache.hadoop.hbase.io.HeapSize;
+import org.apache.hadoop.hbase.io.hfile.BlockReadAhead;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.hadoop.hbase.io.hfile.HFileDataBlockEncoder;
 import org.apache.hadoop.hbase.io.hfile.HFileDataBlockEncoderImpl;
+import org.apache.hadoop.hbase.io.hfile.HFileInfo;
 import org.apache.hadoop.hbase.io.hfile.HFileScanner;
 import org.apache.hadoop.hbase.io.hfile.InvalidHFileException;
 import org.apache.hadoop.hbase.monitoring.MonitoredTask;
@@ -305,6 +307,7 @@ public class HStore
     this.warmup = warmup;
     this.storeEngine = createStoreEngine(this, this.conf, region.getCellComparator());
     storeEngine.initialize(warmup);
+    initCompressionDictionary();
     // if require writing to tmp dir first, then we just return null, which indicate that we do not
     // need to track the creation of store file writer, otherwise we return a new
     // StoreFileWriterCreationTracker.
@@ -349,7 +352,31 @@ public class HStore
       .withFavoredNodesSupplier(this::getFavoredNodes)
       .withFamilyStoreDirectoryPath(
         region.getRegionFileSystem().getStoreDir(family.getNameAsString()))
-      .withRegionCoprocessorHost(region.getCoprocessorHost()).build();
+      .withRegionCoprocessorHost(region.getCoprocessorHost())
+      .withCompressionDictionary(StoreCompressionDictionary.create(conf)).build();
+  }
+
+  /**
+   * Starts the compression dictionary of the store off with the one of the newest store file, so
+   * that new files do not go without a dictionary until the next training.
+   */
+  private void initCompressionDictionary() {
+    StoreCompressionDictionary dictionary = storeContext.getCompressionDictionary();
+    if (dictionary == null) {
+      return;
+    }
+    HStoreFile newest = null;
+    for (HStoreFile sf : getStorefiles()) {
+      if (
+        sf.getMetadataValue(HFileInfo.COMPRESSION_DICTIONARY) != null
+          && (newest == null || sf.getMaxSequenceId() > newest.getMaxSequenceId())
+      ) {
+        newest = sf;
+      }
+    }
+    if (newest != null) {
+      dictionary.setDictionary(newest.getMetadataValue(HFileInfo.COMPRESSION_DICTIONARY));
+    }
   }
 
   private InetSocketAddress[] getFavoredNodes() {
@@ -402,6 +429,9 @@ public class HStore
   protected CacheConfig createCacheConf(final ColumnFamilyDescriptor family) {
     CacheConfig cacheConf = new CacheConfig(conf, family, region.getBlockCache(),
       region.getRegionServicesForStores().getByteBuffAllocator());
+    if (conf.getInt(BlockReadAhead.MAX_BLOCKS_KEY, 0) > 0) {
+      cacheConf.setReadAheadPool(region.getRegionServicesForStores().getReadAheadPool());
+    }
     LOG.info("Created cacheConfig: {}, for column family {} of region {} ", cacheConf,
       family.getNameAsString(), region.getRegionInfo().getEncodedName());
     return cacheConf;
@@ -1653,6 +1683,46 @@ public class HStore
     }
   }
 
+  /**
+   * Returns one task per store file which loads the data blocks of the file which may hold the
+   * given rows into the block cache, with one vectored read. The tasks return the number of data
+   * blocks read from the file system. Failures are only logged, the reads will retry the blocks.
+   * <p>
+   * Each task holds a reference on its store file until it has run, so that the file is not closed
+   * and archived under it after a compaction. The caller must run every task returned.
+   * @param rows the rows about to be read
+   */
+  List<Callable<Integer>> getDataBlockLoadsForRows(List<byte[]> rows) {
+    Collection<HStoreFile> storefiles;
+    this.storeEngine.readLock();
+    try {
+      storefiles = getStorefiles();
+      // increase the refCount under the storeEngine lock, as getScanners does, see HBASE-27484
+      HStoreFile.increaseStoreFilesRefeCount(storefiles);
+    } finally {
+      this.storeEngine.readUnlock();
+    }
+    List<Callable<Integer>> loads = new ArrayList<>(storefiles.size());
+    for (HStoreFile sf : storefiles) {
+      StoreFileReader r = sf.getReader();
+      if (r == null) {
+        sf.decreaseRefCount();
+        continue;
+      }
+      loads.add(() -> {
+        try {
+          return r.cacheDataBlocksForRows(rows);
+        } catch (IOException e) {
+          LOG.warn("Failed to load data blocks of {} into the block cache", sf, e);
+          return 0;
+        } finally {
+          sf.decreaseRefCount();
+        }
+      });
+    }
+    return loads;
+  }
+
   /*
    * @param wantedVersions How many versions were asked for.
    * @return wantedVersions or this families' {@link HConstants#VERSIONS}.
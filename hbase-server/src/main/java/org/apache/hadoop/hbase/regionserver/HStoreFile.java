@@ -105,6 +105,13 @@ public class HStoreFile implements StoreFile {
   /** Last Bloom filter key in FileInfo */
   public static final byte[] LAST_BLOOM_KEY = Bytes.toBytes("LAST_BLOOM_KEY");
 
+  /** Longest row prefix recorded in the row prefix filter, in FileInfo */
+  public static final byte[] ROW_PREFIX_FILTER_MAX_LENGTH_KEY =
+    Bytes.toBytes("ROW_PREFIX_FILTER_MAX_LENGTH");
+
+  /** Name of the meta block holding the row prefix filter metadata */
+  public static final String ROW_PREFIX_FILTER_META_BLOCK = "ROW_PREFIX_FILTER_META";
+
   /** Key for Timerange information in metadata */
   public static final byte[] TIMERANGE_KEY = Bytes.toBytes("TIMERANGE");
 
@@ -512,6 +519,8 @@ public class HStoreFile implements StoreFile {
     // load delete family bloom filter
     initialReader.loadBloomfilter(BlockType.DELETE_FAMILY_BLOOM_META, metrics);
 
+    initialReader.loadRowPrefixFilter();
+
     try {
       byte[] data = metadataMap.get(TIMERANGE_KEY);
       initialReader.timeRange =
@@ -310,6 +310,10 @@ public class HeapMemoryManager {
           alarming = false;
         }
       }
+      ChunkCreator chunkCreator = ChunkCreator.getInstance();
+      if (chunkCreator != null) {
+        metricsHeapMemoryManager.setChunkPoolGauges(chunkCreator);
+      }
       // Autotune if tuning is enabled and allowed
       if (tunerOn && !alarming) {
         tune();
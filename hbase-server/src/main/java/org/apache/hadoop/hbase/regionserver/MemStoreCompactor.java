@@ -26,6 +26,7 @@ import org.apache.hadoop.hbase.MemoryCompactionPolicy;
 import org.apache.hadoop.hbase.exceptions.IllegalArgumentIOException;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,12 +43,21 @@ import org.slf4j.LoggerFactory;
 @InterfaceAudience.Private
 public class MemStoreCompactor {
 
+  // The number of key ranges a compaction of the pipeline is split into and compacted in parallel
+  public static final String COMPACTION_PARALLELISM_KEY =
+    "hbase.hregion.compacting.memstore.compaction.parallelism";
+  public static final int COMPACTION_PARALLELISM_DEFAULT = 1;
+  // The pipeline is only compacted in parallel from this number of cells on
+  public static final String PARALLEL_COMPACTION_MIN_CELLS_KEY =
+    "hbase.hregion.compacting.memstore.compaction.parallel.min.cells";
+  public static final int PARALLEL_COMPACTION_MIN_CELLS_DEFAULT = 100000;
+
   public static final long DEEP_OVERHEAD =
     ClassSize.align(ClassSize.OBJECT + 4 * ClassSize.REFERENCE
     // compactingMemStore, versionedList, isInterrupted, strategy (the reference)
     // "action" is an enum and thus it is a class with static final constants,
     // so counting only the size of the reference to it and not the size of the internals
-      + Bytes.SIZEOF_INT // compactionKVMax
+      + 3 * Bytes.SIZEOF_INT // compactionKVMax, compactionParallelism, parallelCompactionMinCells
       + ClassSize.ATOMIC_BOOLEAN // isInterrupted (the internals)
     );
 
@@ -63,20 +73,34 @@ public class MemStoreCompactor {
   // the limit to the size of the groups to be later provided to MemStoreSegmentsIterator
   private final int compactionKVMax;
 
+  // the number of key ranges to compact in parallel, and the number of cells to do it from
+  private final int compactionParallelism;
+  private final int parallelCompactionMinCells;
+
   private MemStoreCompactionStrategy strategy;
 
+  private boolean hasRegionObservers() {
+    RegionCoprocessorHost cpHost = compactingMemStore.getStore().getCoprocessorHost();
+    return cpHost != null && cpHost.hasRegionObservers();
+  }
+
   public MemStoreCompactor(CompactingMemStore compactingMemStore,
     MemoryCompactionPolicy compactionPolicy) throws IllegalArgumentIOException {
     this.compactingMemStore = compactingMemStore;
     this.compactionKVMax = compactingMemStore.getConfiguration()
       .getInt(HConstants.COMPACTION_KV_MAX, HConstants.COMPACTION_KV_MAX_DEFAULT);
+    this.compactionParallelism = Math.max(1, compactingMemStore.getConfiguration()
+      .getInt(COMPACTION_PARALLELISM_KEY, COMPACTION_PARALLELISM_DEFAULT));
+    this.parallelCompactionMinCells = compactingMemStore.getConfiguration()
+      .getInt(PARALLEL_COMPACTION_MIN_CELLS_KEY, PARALLEL_COMPACTION_MIN_CELLS_DEFAULT);
     initiateCompactionStrategy(compactionPolicy, compactingMemStore.getConfiguration(),
       compactingMemStore.getFamilyName());
   }
 
   @Override
   public String toString() {
-    return this.strategy + ", compactionCellMax=" + this.compactionKVMax;
+    return this.strategy + ", compactionCellMax=" + this.compactionKVMax
+      + ", compactionParallelism=" + this.compactionParallelism;
   }
 
   /**
@@ -163,7 +187,14 @@ public class MemStoreCompactor {
       // Create one segment representing all segments in the compaction pipeline,
       // either by compaction or by merge
       if (!isInterrupted.get()) {
+        long start = EnvironmentEdgeManager.currentTime();
         result = createSubstitution(nextStep);
+        long dataSize = 0;
+        for (ImmutableSegment s : versionedList.getStoreSegments()) {
+          dataSize += s.getDataSize();
+        }
+        compactingMemStore.getRegionServices()
+          .updateInMemoryCompaction(EnvironmentEdgeManager.currentTime() - start, dataSize);
       }
 
       // Substitute the pipeline with one segment
@@ -212,12 +243,29 @@ public class MemStoreCompactor {
 
     switch (action) {
       case COMPACT:
-        iterator = new MemStoreCompactorSegmentsIterator(segments,
-          compactingMemStore.getComparator(), compactionKVMax, compactingMemStore.getStore());
+        int numOfCells = versionedList.getNumOfCells();
+        // The RegionObserver hooks of an in-memory compaction run once, on the compacting thread,
+        // so a store with region observers is always compacted serially
+        if (
+          compactionParallelism > 1 && numOfCells >= parallelCompactionMinCells
+            && !hasRegionObservers()
+        ) {
+          MemStoreParallelCompactorSegmentsIterator parallelIterator =
+            new MemStoreParallelCompactorSegmentsIterator(segments,
+              compactingMemStore.getComparator(), compactionKVMax, compactingMemStore.getStore(),
+              compactionParallelism,
+              compactingMemStore.getRegionServices().getInMemoryCompactionRangesPool());
+          // the exact number of cells, the index chunks are sized after it
+          numOfCells = parallelIterator.getNumOfCells();
+          iterator = parallelIterator;
+        } else {
+          iterator = new MemStoreCompactorSegmentsIterator(segments,
+            compactingMemStore.getComparator(), compactionKVMax, compactingMemStore.getStore());
+        }
 
         result = SegmentFactory.instance().createImmutableSegmentByCompaction(
           compactingMemStore.getConfiguration(), compactingMemStore.getComparator(), iterator,
-          versionedList.getNumOfCells(), compactingMemStore.getIndexType(), action);
+          numOfCells, compactingMemStore.getIndexType(), action);
         iterator.close();
         break;
       case MERGE:
@@ -24,6 +24,8 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import org.apache.hadoop.hbase.CellComparator;
 import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.PrivateConstants;
 import org.apache.hadoop.hbase.coprocessor.CoprocessorException;
 import org.apache.yetus.audience.InterfaceAudience;
@@ -48,16 +50,34 @@ public class MemStoreCompactorSegmentsIterator extends MemStoreSegmentsIterator
   // scanner on top of pipeline scanner that uses ScanQueryMatcher
   private InternalScanner compactingScanner;
 
+  // the exclusive upper bound of the rows to compact, empty for no bound
+  private final byte[] stopRow;
+  private final CellComparator comparator;
+
   // C-tor
   public MemStoreCompactorSegmentsIterator(List<ImmutableSegment> segments,
     CellComparator comparator, int compactionKVMax, HStore store) throws IOException {
+    this(segments, comparator, compactionKVMax, store, HConstants.EMPTY_START_ROW,
+      HConstants.EMPTY_END_ROW);
+  }
+
+  /**
+   * C-tor for compacting only the rows from startRow (inclusive) to stopRow (exclusive) of the
+   * segments. An empty row means no bound. As the compaction of a row never depends on the other
+   * rows, compacting the ranges one by one gives the same cells as compacting all the rows at once.
+   */
+  public MemStoreCompactorSegmentsIterator(List<ImmutableSegment> segments,
+    CellComparator comparator, int compactionKVMax, HStore store, byte[] startRow, byte[] stopRow)
+    throws IOException {
     super(compactionKVMax);
+    this.stopRow = stopRow;
+    this.comparator = comparator;
 
     List<KeyValueScanner> scanners = new ArrayList<KeyValueScanner>();
     AbstractMemStore.addToScanners(segments, Long.MAX_VALUE, scanners);
     // build the scanner based on Query Matcher
     // reinitialize the compacting scanner for each instance of iterator
-    compactingScanner = createScanner(store, scanners);
+    compactingScanner = createScanner(store, scanners, startRow);
     refillKVS();
   }
 
@@ -98,8 +118,8 @@ public class MemStoreCompactorSegmentsIterator extends MemStoreSegmentsIterator
    * Creates the scanner for compacting the pipeline.
    * @return the scanner
    */
-  private InternalScanner createScanner(HStore store, List<KeyValueScanner> scanners)
-    throws IOException {
+  private InternalScanner createScanner(HStore store, List<KeyValueScanner> scanners,
+    byte[] startRow) throws IOException {
     InternalScanner scanner = null;
     boolean success = false;
     try {
@@ -112,6 +132,11 @@ public class MemStoreCompactorSegmentsIterator extends MemStoreSegmentsIterator
       }
       scanner = new StoreScanner(store, scanInfo, scanners, ScanType.COMPACT_RETAIN_DELETES,
         store.getSmallestReadPoint(), PrivateConstants.OLDEST_TIMESTAMP);
+      if (startRow.length > 0) {
+        // the compaction scanner always starts from the first row, skip to the range before
+        // reading any cell
+        ((StoreScanner) scanner).reseek(PrivateCellUtil.createFirstOnRow(startRow));
+      }
       if (cpHost != null) {
         InternalScanner scannerFromCp = cpHost.preMemStoreCompactionCompact(store, scanner);
         if (scannerFromCp == null) {
@@ -153,6 +178,15 @@ public class MemStoreCompactorSegmentsIterator extends MemStoreSegmentsIterator
         // should not happen as all data are in memory
         throw new IllegalStateException(e);
       }
+      // the cells of one call are all from the same row
+      if (
+        !kvs.isEmpty() && stopRow.length > 0
+          && comparator.compareRows(kvs.get(0), stopRow, 0, stopRow.length) >= 0
+      ) {
+        // past the range, done
+        kvs.clear();
+        hasMore = false;
+      }
       if (!kvs.isEmpty()) {
         kvsIterator = kvs.iterator();
         return true;
@@ -54,6 +54,12 @@ public interface MemStoreLAB {
   int CHUNK_SIZE_DEFAULT = 2048 * 1024;
   String INDEX_CHUNK_SIZE_PERCENTAGE_KEY = "hbase.hregion.memstore.mslab.indexchunksize.percent";
   float INDEX_CHUNK_SIZE_PERCENTAGE_DEFAULT = 0.1f;
+  /**
+   * The size of the first chunk of an on-heap MemStoreLAB. Every following chunk doubles in size
+   * until it reaches the chunk size, so stores with few writes retain small chunks only. Defaults
+   * to the chunk size.
+   */
+  String MIN_CHUNK_SIZE_KEY = "hbase.hregion.memstore.mslab.chunksize.min";
   String MAX_ALLOC_KEY = "hbase.hregion.memstore.mslab.max.allocation";
   int MAX_ALLOC_DEFAULT = 256 * 1024; // allocs bigger than this don't go through
                                       // allocator
@@ -52,6 +52,11 @@ import org.apache.hbase.thirdparty.com.google.common.base.Preconditions;
  * heap, and the old generation gets progressively more fragmented until a stop-the-world compacting
  * collection occurs.
  * <p>
+ * When {@link #MIN_CHUNK_SIZE_KEY} is set below the chunk size, an on-heap MemStoreLAB starts with
+ * a chunk of that size and doubles the size of every following chunk until it reaches the regular
+ * chunk size. A store that sees few writes before its flush then retains a small chunk instead of a
+ * full one, while a busy store quickly moves on to regular chunks, which are the only ones pooled.
+ * <p>
  * TODO: we should probably benchmark whether word-aligning the allocations would provide a
  * performance improvement - probably would speed up the Bytes.toLong/Bytes.toInt calls in KeyValue,
  * but some of those are cached anyway. The chunks created by this MemStoreLAB can get pooled at
@@ -76,6 +81,8 @@ public class MemStoreLABImpl implements MemStoreLAB {
   // A set of chunks contained by this memstore LAB
   Set<Integer> chunks = new ConcurrentSkipListSet<Integer>();
   private final int dataChunkSize;
+  // size of the next chunk to get while growing towards dataChunkSize, guarded by lock
+  private int nextChunkSize;
   private final int maxAlloc;
   private final ChunkCreator chunkCreator;
 
@@ -103,6 +110,13 @@ public class MemStoreLABImpl implements MemStoreLAB {
     // if we don't exclude allocations >CHUNK_SIZE, we'd infiniteloop on one!
     Preconditions.checkArgument(maxAlloc <= dataChunkSize,
       MAX_ALLOC_KEY + " must be less than " + CHUNK_SIZE_KEY);
+    int minChunkSize = conf.getInt(MIN_CHUNK_SIZE_KEY, dataChunkSize);
+    Preconditions.checkArgument(
+      minChunkSize > ChunkCreator.SIZEOF_CHUNK_HEADER && minChunkSize <= dataChunkSize,
+      MIN_CHUNK_SIZE_KEY + " must be more than the chunk header and at most " + CHUNK_SIZE_KEY);
+    // chunks other than the regular ones are never pooled, and so are always on heap
+    this.nextChunkSize =
+      chunkCreator != null && chunkCreator.isOffheap() ? dataChunkSize : minChunkSize;
 
     this.refCnt = RefCnt.create(() -> {
       recycleChunks();
@@ -155,7 +169,7 @@ public class MemStoreLABImpl implements MemStoreLAB {
     int allocOffset = 0;
     while (true) {
       // Try to get the chunk
-      c = getOrMakeChunk();
+      c = getOrMakeChunk(size);
       // We may get null because the some other thread succeeded in getting the lock
       // and so the current thread has to try again to make its chunk or grab the chunk
       // that the other thread created
@@ -190,7 +204,7 @@ public class MemStoreLABImpl implements MemStoreLAB {
     int allocOffset = 0;
     while (true) {
       // Try to get the chunk
-      c = getOrMakeChunk();
+      c = getOrMakeChunk(size);
       // we may get null because the some other thread succeeded in getting the lock
       // and so the current thread has to try again to make its chunk or grab the chunk
       // that the other thread created
@@ -308,8 +322,10 @@ public class MemStoreLABImpl implements MemStoreLAB {
 
   /**
    * Get the current chunk, or, if there is no current chunk, allocate a new one from the JVM.
+   * @param size the size of the allocation the chunk is needed for, a growing chunk size skips the
+   *             sizes that could not hold it
    */
-  private Chunk getOrMakeChunk() {
+  private Chunk getOrMakeChunk(int size) {
     // Try to get the chunk
     Chunk c = currChunk.get();
     if (c != null) {
@@ -325,7 +341,17 @@ public class MemStoreLABImpl implements MemStoreLAB {
         if (c != null) {
           return c;
         }
-        c = this.chunkCreator.getChunk();
+        while (
+          nextChunkSize < dataChunkSize && nextChunkSize < size + ChunkCreator.SIZEOF_CHUNK_HEADER
+        ) {
+          nextChunkSize = (int) Math.min(2L * nextChunkSize, dataChunkSize);
+        }
+        if (nextChunkSize < dataChunkSize) {
+          c = this.chunkCreator.getChunk(ChunkCreator.ChunkType.DATA_CHUNK, nextChunkSize);
+          nextChunkSize = (int) Math.min(2L * nextChunkSize, dataChunkSize);
+        } else {
+          c = this.chunkCreator.getChunk();
+        }
         if (c != null) {
           // set the curChunk. No need of CAS as only one thread will be here
           currChunk.set(c);
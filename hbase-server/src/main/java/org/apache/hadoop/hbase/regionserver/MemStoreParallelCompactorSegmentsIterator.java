@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * The MemStoreParallelCompactorSegmentsIterator extends MemStoreSegmentsIterator and performs the
+ * scan for compaction operation like {@link MemStoreCompactorSegmentsIterator}, but it splits the
+ * rows of the segments into ranges and compacts the ranges in parallel. The cells that survived the
+ * compaction are returned range after range, so the iterator returns the same cells in the same
+ * order as a single MemStoreCompactorSegmentsIterator does.
+ * <p>
+ * Every range opens its own store scanner, so the memstore compaction hooks of a RegionObserver
+ * would run once per range and on the threads of the pool. MemStoreCompactor therefore only uses
+ * this iterator for stores without region observers.
+ */
+@InterfaceAudience.Private
+public class MemStoreParallelCompactorSegmentsIterator extends MemStoreSegmentsIterator {
+
+  // the cells that survived the compaction, per range
+  private final List<List<ExtendedCell>> ranges;
+  private final int numOfCells;
+  private int rangeIndex = 0;
+  private Iterator<ExtendedCell> rangeIterator = Collections.emptyIterator();
+
+  // C-tor
+  public MemStoreParallelCompactorSegmentsIterator(List<ImmutableSegment> segments,
+    CellComparator comparator, int compactionKVMax, HStore store, int numOfRanges,
+    ExecutorService pool) throws IOException {
+    super(compactionKVMax);
+    List<byte[]> startRows = getStartRows(segments, numOfRanges);
+    List<Future<List<ExtendedCell>>> futures = new ArrayList<>(startRows.size() - 1);
+    for (int i = 1; i < startRows.size(); i++) {
+      byte[] startRow = startRows.get(i);
+      byte[] stopRow = i + 1 < startRows.size() ? startRows.get(i + 1) : HConstants.EMPTY_END_ROW;
+      futures.add(pool.submit(
+        () -> compactRange(segments, comparator, compactionKVMax, store, startRow, stopRow)));
+    }
+    ranges = new ArrayList<>(startRows.size());
+    IOException error = null;
+    try {
+      // the first range is compacted by this thread while the pool compacts the others
+      ranges.add(compactRange(segments, comparator, compactionKVMax, store,
+        HConstants.EMPTY_START_ROW,
+        startRows.size() > 1 ? startRows.get(1) : HConstants.EMPTY_END_ROW));
+    } catch (IOException | RuntimeException e) {
+      error = e instanceof IOException ? (IOException) e : new IOException(e);
+    }
+    // always wait for all the ranges, they hold scanners on the segments until they are done
+    for (Future<List<ExtendedCell>> future : futures) {
+      try {
+        ranges.add(future.get());
+      } catch (InterruptedException e) {
+        if (error == null) {
+          error = (InterruptedIOException) new InterruptedIOException().initCause(e);
+        }
+        future.cancel(true);
+      } catch (ExecutionException e) {
+        if (error == null) {
+          error = e.getCause() instanceof IOException
+            ? (IOException) e.getCause()
+            : new IOException(e.getCause());
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+    int cells = 0;
+    for (List<ExtendedCell> range : ranges) {
+      cells += range.size();
+    }
+    numOfCells = cells;
+  }
+
+  /** Returns the number of cells that survived the compaction */
+  public int getNumOfCells() {
+    return numOfCells;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!rangeIterator.hasNext()) {
+      if (rangeIndex >= ranges.size()) {
+        return false;
+      }
+      rangeIterator = ranges.get(rangeIndex++).iterator();
+    }
+    return true;
+  }
+
+  @Override
+  public ExtendedCell next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return rangeIterator.next();
+  }
+
+  @Override
+  public void close() {
+    ranges.clear();
+    rangeIterator = Collections.emptyIterator();
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  private static List<ExtendedCell> compactRange(List<ImmutableSegment> segments,
+    CellComparator comparator, int compactionKVMax, HStore store, byte[] startRow, byte[] stopRow)
+    throws IOException {
+    MemStoreCompactorSegmentsIterator iterator = new MemStoreCompactorSegmentsIterator(segments,
+      comparator, compactionKVMax, store, startRow, stopRow);
+    try {
+      List<ExtendedCell> cells = new ArrayList<>();
+      while (iterator.hasNext()) {
+        cells.add(iterator.next());
+      }
+      return cells;
+    } finally {
+      iterator.close();
+    }
+  }
+
+  /**
+   * Splits the rows of the segments into at most numOfRanges ranges with about the same number of
+   * cells of the biggest segment each, which usually holds most of the cells of the pipeline.
+   * @return the start rows of the ranges, the first one is the empty row
+   */
+  static List<byte[]> getStartRows(List<ImmutableSegment> segments, int numOfRanges) {
+    List<byte[]> startRows = new ArrayList<>(numOfRanges);
+    startRows.add(HConstants.EMPTY_START_ROW);
+    ImmutableSegment biggest = null;
+    for (ImmutableSegment segment : segments) {
+      if (biggest == null || segment.getCellsCount() > biggest.getCellsCount()) {
+        biggest = segment;
+      }
+    }
+    int cellsPerRange = biggest == null ? 0 : biggest.getCellsCount() / numOfRanges;
+    if (cellsPerRange == 0) {
+      return startRows;
+    }
+    int index = 0;
+    Iterator<ExtendedCell> iterator = biggest.iterator();
+    while (iterator.hasNext() && startRows.size() < numOfRanges) {
+      ExtendedCell cell = iterator.next();
+      if (++index < startRows.size() * cellsPerRange) {
+        continue;
+      }
+      byte[] lastRow = startRows.get(startRows.size() - 1);
+      // a range holds whole rows, a row with many cells only ends the range at the next row
+      if (lastRow.length == 0 || !CellUtil.matchingRows(cell, lastRow)) {
+        startRows.add(CellUtil.cloneRow(cell));
+      }
+    }
+    return startRows;
+  }
+}
@@ -89,6 +89,16 @@ public class MetricsHeapMemoryManager {
     source.setCurMemStoreOffHeapSizeGauge(memStoreOffHeapSize);
   }
 
+  /**
+   * Set the MSLAB chunk pool gauges from the current statistics of the chunk creator
+   * @param chunkCreator the chunk creator of the regionserver.
+   */
+  public void setChunkPoolGauges(final ChunkCreator chunkCreator) {
+    source.setChunkPoolGauges(chunkCreator.getPooledChunksSize(),
+      chunkCreator.getPooledChunkCount(), chunkCreator.getReusedChunkCount(),
+      chunkCreator.getUnpooledChunkCount());
+  }
+
   /**
    * Update the increase/decrease memstore size histogram
    * @param memStoreDeltaSize the tuning result of memstore.
@@ -229,6 +229,13 @@ public class MetricsRegionServer {
 
   }
 
+  public void updateInMemoryCompaction(long t, long inputBytes) {
+    serverSource.updateInMemoryCompactionTime(t);
+    // the time is in milliseconds, count at least one for the rate
+    serverSource.updateInMemoryCompactionInputSize(inputBytes,
+      inputBytes * 1000 / Math.max(t, 1));
+  }
+
   public void updateCompaction(String table, boolean isMajor, long t, int inputFileCount,
     int outputFileCount, long inputBytes, long outputBytes) {
     serverSource.updateCompactionTime(isMajor, t);
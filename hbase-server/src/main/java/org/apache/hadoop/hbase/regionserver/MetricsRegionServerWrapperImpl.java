@@ -40,6 +40,8 @@ import org.apache.hadoop.hbase.io.asyncfs.monitor.ExcludeDatanodeManager;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.CacheStats;
 import org.apache.hadoop.hbase.io.hfile.CombinedBlockCache;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCacheStats;
 import org.apache.hadoop.hbase.mob.MobFileCache;
 import org.apache.hadoop.hbase.regionserver.wal.MetricsWALSource;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
@@ -336,6 +338,16 @@ class MetricsRegionServerWrapperImpl implements MetricsRegionServerWrapper {
     return this.cacheStats != null ? this.cacheStats.getFailedInserts() : 0L;
   }
 
+  @Override
+  public long getBlockCacheCompressedHitCount() {
+    return this.cacheStats != null ? this.cacheStats.getCompressedHitCount() : 0L;
+  }
+
+  @Override
+  public double getBlockCacheDecompressTimePerHit() {
+    return this.cacheStats != null ? this.cacheStats.getDecompressTimePerHit() : 0.0;
+  }
+
   public long getL1CacheSize() {
     return this.l1Cache != null ? this.l1Cache.getCurrentSize() : 0L;
   }
@@ -448,6 +460,59 @@ class MetricsRegionServerWrapperImpl implements MetricsRegionServerWrapper {
     return this.l2Stats != null ? this.l2Stats.getMissCachingRatio() : 0.0;
   }
 
+  @Override
+  public int getL2CacheTierCount() {
+    if (!(this.l2Cache instanceof BucketCache)) {
+      return this.l2Cache != null ? 1 : 0;
+    }
+    int tiers = 0;
+    for (BucketCache tier = (BucketCache) this.l2Cache; tier != null; tier = tier.getNextTier()) {
+      tiers++;
+    }
+    return tiers;
+  }
+
+  /** Returns the given tier of the L2 bucket cache, or null if there is no such tier */
+  private BucketCache getL2CacheTier(int tier) {
+    if (!(this.l2Cache instanceof BucketCache)) {
+      return null;
+    }
+    BucketCache cache = (BucketCache) this.l2Cache;
+    for (int i = 0; i < tier && cache != null; i++) {
+      cache = cache.getNextTier();
+    }
+    return cache;
+  }
+
+  @Override
+  public long getL2CacheTierSize(int tier) {
+    BucketCache cache = getL2CacheTier(tier);
+    return cache != null ? cache.getCurrentSize() : 0L;
+  }
+
+  @Override
+  public long getL2CacheTierHitCount(int tier) {
+    BucketCache cache = getL2CacheTier(tier);
+    if (cache == null) {
+      return 0L;
+    }
+    // A tier counts the hits served by the tiers below it as its own hits too.
+    BucketCacheStats stats = (BucketCacheStats) cache.getStats();
+    return stats.getHitCount() - stats.getNextTierHitCount();
+  }
+
+  @Override
+  public long getL2CacheTierEvictedCount(int tier) {
+    BucketCache cache = getL2CacheTier(tier);
+    return cache != null ? cache.getStats().getEvictedCount() : 0L;
+  }
+
+  @Override
+  public long getL2CacheTierDemotedCount(int tier) {
+    BucketCache cache = getL2CacheTier(tier);
+    return cache != null ? ((BucketCacheStats) cache.getStats()).getDemotedCount() : 0L;
+  }
+
   @Override
   public void forceRecompute() {
     this.runnable.run();
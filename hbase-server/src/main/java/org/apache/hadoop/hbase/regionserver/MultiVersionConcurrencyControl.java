@@ -17,8 +17,10 @@
  */
 package org.apache.hadoop.hbase.regionserver;
 
-import java.util.LinkedList;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
@@ -43,6 +45,8 @@ public class MultiVersionConcurrencyControl {
   final AtomicLong readPoint = new AtomicLong(0);
   final AtomicLong writePoint = new AtomicLong(0);
   private final Object readWaiters = new Object();
+  // the number of threads waiting on readWaiters, the read point is only notified when not zero
+  private final AtomicInteger readWaitersCount = new AtomicInteger(0);
   /**
    * Represents no value, or not set.
    */
@@ -50,11 +54,11 @@ public class MultiVersionConcurrencyControl {
 
   // This is the pending queue of writes.
   //
-  // TODO(eclark): Should this be an array of fixed size to
-  // reduce the number of allocations on the write path?
-  // This could be equal to the number of handlers + a small number.
-  // TODO: St.Ack 20150903 Sounds good to me.
-  private final LinkedList<WriteEntry> writeQueue = new LinkedList<>();
+  // Entries are added under the monitor of the queue, so that they are in write number order and
+  // begin actions run in the same order. They are removed without it, by the one thread at a time
+  // that holds advancingReadPoint, see complete(WriteEntry).
+  private final ConcurrentLinkedQueue<WriteEntry> writeQueue = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean advancingReadPoint = new AtomicBoolean(false);
 
   public MultiVersionConcurrencyControl() {
     this(null);
@@ -97,22 +101,31 @@ public class MultiVersionConcurrencyControl {
    */
   boolean tryAdvanceTo(long newStartPoint, long expected) {
     synchronized (writeQueue) {
-      long currentRead = this.readPoint.get();
-      long currentWrite = this.writePoint.get();
-      if (currentRead != currentWrite) {
-        throw new RuntimeException("Already used this mvcc; currentRead=" + currentRead
-          + ", currentWrite=" + currentWrite + "; too late to tryAdvanceTo");
-      }
-      if (expected != NONE && expected != currentRead) {
-        return false;
+      // a thread advancing the read point may have removed the last writes from the queue without
+      // having published the read point yet, wait for it to be done
+      while (!advancingReadPoint.compareAndSet(false, true)) {
+        Thread.onSpinWait();
       }
+      try {
+        long currentRead = this.readPoint.get();
+        long currentWrite = this.writePoint.get();
+        if (currentRead != currentWrite) {
+          throw new RuntimeException("Already used this mvcc; currentRead=" + currentRead
+            + ", currentWrite=" + currentWrite + "; too late to tryAdvanceTo");
+        }
+        if (expected != NONE && expected != currentRead) {
+          return false;
+        }
 
-      if (newStartPoint < currentRead) {
-        return false;
-      }
+        if (newStartPoint < currentRead) {
+          return false;
+        }
 
-      readPoint.set(newStartPoint);
-      writePoint.set(newStartPoint);
+        readPoint.set(newStartPoint);
+        writePoint.set(newStartPoint);
+      } finally {
+        advancingReadPoint.set(false);
+      }
     }
     return true;
   }
@@ -174,44 +187,69 @@ public class MultiVersionConcurrencyControl {
    * so we can clean up the outstanding transaction. How much is the read point advanced? Let S be
    * the set of all write numbers that are completed. Set the read point to the highest numbered
    * write of S.
+   * <p>
+   * Completing does not take a lock. One thread at a time advances the read point past all the
+   * completed writes at the head of the queue, including the ones completed by other threads in
+   * the meantime. The others spin until the read point has passed their write or they can advance
+   * it themselves, so that, as with a lock, only a write before them that is not complete yet makes
+   * them return false. Before giving up, the advancing thread checks the head of the queue again,
+   * so a write completed while it was advancing is never missed.
    * @return true if e is visible to MVCC readers (that is, readpoint >= e.writeNumber)
    */
   public boolean complete(WriteEntry writeEntry) {
-    synchronized (writeQueue) {
-      writeEntry.markCompleted();
-      long nextReadValue = NONE;
-      boolean ranOnce = false;
-      while (!writeQueue.isEmpty()) {
-        ranOnce = true;
-        WriteEntry queueFirst = writeQueue.getFirst();
-
-        if (nextReadValue > 0) {
-          if (nextReadValue + 1 != queueFirst.getWriteNumber()) {
-            throw new RuntimeException("Invariant in complete violated, nextReadValue="
-              + nextReadValue + ", writeNumber=" + queueFirst.getWriteNumber());
-          }
-        }
-
-        if (queueFirst.isCompleted()) {
-          nextReadValue = queueFirst.getWriteNumber();
-          writeQueue.removeFirst();
-          queueFirst.runCompletionAction();
-        } else {
-          break;
-        }
+    writeEntry.markCompleted();
+    long writeNumber = writeEntry.getWriteNumber();
+    while (readPoint.get() < writeNumber) {
+      if (!advancingReadPoint.compareAndSet(false, true)) {
+        // the advancing thread is about to pass our write, or to stop before an earlier write
+        Thread.onSpinWait();
+        continue;
       }
-
-      if (!ranOnce) {
-        throw new RuntimeException("There is no first!");
+      try {
+        advanceReadPoint();
+      } finally {
+        advancingReadPoint.set(false);
+      }
+      WriteEntry queueFirst = writeQueue.peek();
+      if (queueFirst == null || !queueFirst.isCompleted()) {
+        break;
       }
+    }
+    return readPoint.get() >= writeNumber;
+  }
 
+  /**
+   * Removes the completed writes at the head of the queue and advances the read point past them.
+   * Must only be called by the thread that holds {@link #advancingReadPoint}, which
+   * {@link #tryAdvanceTo(long, long)} also takes so that it never sees a half done advance.
+   */
+  private void advanceReadPoint() {
+    long nextReadValue = NONE;
+    for (;;) {
+      WriteEntry queueFirst = writeQueue.peek();
+      if (queueFirst == null || !queueFirst.isCompleted()) {
+        break;
+      }
       if (nextReadValue > 0) {
+        if (nextReadValue + 1 != queueFirst.getWriteNumber()) {
+          throw new RuntimeException("Invariant in complete violated, nextReadValue="
+            + nextReadValue + ", writeNumber=" + queueFirst.getWriteNumber());
+        }
+      }
+      nextReadValue = queueFirst.getWriteNumber();
+      writeQueue.poll();
+      queueFirst.runCompletionAction();
+    }
+
+    if (nextReadValue > 0) {
+      readPoint.set(nextReadValue);
+      // waiters count themselves before they check the read point, so either they see the new
+      // read point or we see them here
+      if (readWaitersCount.get() > 0) {
         synchronized (readWaiters) {
-          readPoint.set(nextReadValue);
           readWaiters.notifyAll();
         }
       }
-      return readPoint.get() >= writeEntry.getWriteNumber();
     }
   }
 
@@ -221,21 +259,26 @@ public class MultiVersionConcurrencyControl {
   void waitForRead(WriteEntry e) {
     boolean interrupted = false;
     int count = 0;
-    synchronized (readWaiters) {
-      while (readPoint.get() < e.getWriteNumber()) {
-        if (count % 100 == 0 && count > 0) {
-          long totalWaitTillNow = READPOINT_ADVANCE_WAIT_TIME * count;
-          LOG.warn("STUCK for : " + totalWaitTillNow + " millis. " + this);
-        }
-        count++;
-        try {
-          readWaiters.wait(READPOINT_ADVANCE_WAIT_TIME);
-        } catch (InterruptedException ie) {
-          // We were interrupted... finish the loop -- i.e. cleanup --and then
-          // on our way out, reset the interrupt flag.
-          interrupted = true;
+    readWaitersCount.incrementAndGet();
+    try {
+      synchronized (readWaiters) {
+        while (readPoint.get() < e.getWriteNumber()) {
+          if (count % 100 == 0 && count > 0) {
+            long totalWaitTillNow = READPOINT_ADVANCE_WAIT_TIME * count;
+            LOG.warn("STUCK for : " + totalWaitTillNow + " millis. " + this);
+          }
+          count++;
+          try {
+            readWaiters.wait(READPOINT_ADVANCE_WAIT_TIME);
+          } catch (InterruptedException ie) {
+            // We were interrupted... finish the loop -- i.e. cleanup --and then
+            // on our way out, reset the interrupt flag.
+            interrupted = true;
+          }
         }
       }
+    } finally {
+      readWaitersCount.decrementAndGet();
     }
     if (interrupted) {
       Thread.currentThread().interrupt();
@@ -267,7 +310,7 @@ public class MultiVersionConcurrencyControl {
   @InterfaceAudience.Private
   public static final class WriteEntry {
     private final long writeNumber;
-    private boolean completed = false;
+    private volatile boolean completed = false;
     /**
      * Will be called after completion, i.e, when being removed from the
      * {@link MultiVersionConcurrencyControl#writeQueue}.
@@ -75,7 +75,8 @@ public class MutableSegment extends Segment {
     while (it.hasNext()) {
       ExtendedCell cur = it.next();
 
-      if (cell == cur) {
+      // a segment may return a copy of the one just put in, see CellChunkMutableSegment
+      if (cell == cur || getComparator().compare(cell, cur) == 0) {
         // ignore the one just put in
         continue;
       }
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -736,6 +737,35 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
     return r == null ? Result.EMPTY_RESULT : r;
   }
 
+  /**
+   * Loads the data blocks read by the gets of the given region action into the block cache, so
+   * that each store file is read once for the whole batch. A failure here only costs the gets the
+   * single block reads they would have done anyway.
+   * @return the gets converted from the actions, to be reused when executing them, or null if there
+   *         is no get
+   */
+  private Map<ClientProtos.Action, Get> cacheDataBlocksForGets(HRegion region,
+    RegionAction actions) {
+    Map<ClientProtos.Action, Get> gets = null;
+    for (ClientProtos.Action action : actions.getActionList()) {
+      if (action.hasGet() && !action.getGet().getClosestRowBefore()) {
+        if (gets == null) {
+          gets = new IdentityHashMap<>(actions.getActionCount());
+        }
+        try {
+          gets.put(action, ProtobufUtil.toGet(action.getGet()));
+        } catch (IOException e) {
+          // The get fails the same way when it is converted again for execution, no need to load
+          // anything for it.
+        }
+      }
+    }
+    if (gets != null && gets.size() > 1) {
+      region.cacheDataBlocksForGets(new ArrayList<>(gets.values()));
+    }
+    return gets;
+  }
+
   /**
    * Run through the regionMutation <code>rm</code> and per Mutation, do the work, and then when
    * done, add an instance of a {@link ResultOrException} that corresponds to each Mutation.
@@ -761,6 +791,8 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
     ClientProtos.ResultOrException.Builder resultOrExceptionBuilder =
       ResultOrException.newBuilder();
     boolean hasResultOrException = false;
+    Map<ClientProtos.Action, Get> convertedGets =
+      region.isMultiGetCacheDataBlocks() ? cacheDataBlocksForGets(region, actions) : null;
     for (ClientProtos.Action action : actions.getActionList()) {
       hasResultOrException = false;
       resultOrExceptionBuilder.clear();
@@ -813,7 +845,10 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
               + "reverse Scan.");
           }
           try {
-            Get get = ProtobufUtil.toGet(pbGet);
+            Get get = convertedGets != null ? convertedGets.get(action) : null;
+            if (get == null) {
+              get = ProtobufUtil.toGet(pbGet);
+            }
             if (context != null) {
               r = get(get, (region), closeCallBack, context);
             } else {
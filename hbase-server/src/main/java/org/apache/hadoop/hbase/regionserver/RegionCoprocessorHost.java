@@ -114,6 +114,18 @@ public class RegionCoprocessorHost
     return hasCustomPostScannerFilterRow;
   }
 
+  /**
+   * Returns true if any of the loaded coprocessors is a {@link RegionObserver}
+   */
+  public boolean hasRegionObservers() {
+    for (RegionCoprocessorEnvironment env : coprocEnvironments) {
+      if (env.getInstance().getRegionObserver().isPresent()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Encapsulation of the environment of each coprocessor
    */
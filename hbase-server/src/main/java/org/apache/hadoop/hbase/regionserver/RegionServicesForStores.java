@@ -25,6 +25,7 @@ import org.apache.hadoop.hbase.executor.ExecutorService;
 import org.apache.hadoop.hbase.executor.ExecutorService.ExecutorConfig;
 import org.apache.hadoop.hbase.executor.ExecutorType;
 import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.hfile.BlockReadAhead;
 import org.apache.hadoop.hbase.keymeta.ManagedKeyDataCache;
 import org.apache.hadoop.hbase.keymeta.SystemKeyCache;
 import org.apache.hadoop.hbase.wal.WAL;
@@ -44,6 +45,9 @@ public class RegionServicesForStores {
   private final HRegion region;
   private final RegionServerServices rsServices;
   private int inMemoryPoolSize;
+  private int inMemoryRangesPoolSize;
+  private int dataBlockLoadPoolSize;
+  private int readAheadPoolSize;
 
   public RegionServicesForStores(HRegion region, RegionServerServices rsServices) {
     this.region = region;
@@ -52,6 +56,14 @@ public class RegionServicesForStores {
       this.inMemoryPoolSize =
         rsServices.getConfiguration().getInt(CompactingMemStore.IN_MEMORY_CONPACTION_POOL_SIZE_KEY,
           CompactingMemStore.IN_MEMORY_CONPACTION_POOL_SIZE_DEFAULT);
+      this.inMemoryRangesPoolSize = rsServices.getConfiguration().getInt(
+        CompactingMemStore.IN_MEMORY_COMPACTION_RANGES_POOL_SIZE_KEY,
+        CompactingMemStore.IN_MEMORY_COMPACTION_RANGES_POOL_SIZE_DEFAULT);
+      this.dataBlockLoadPoolSize =
+        rsServices.getConfiguration().getInt(HRegion.MULTI_GET_CACHE_DATA_BLOCKS_THREADS_KEY,
+          HRegion.DEFAULT_MULTI_GET_CACHE_DATA_BLOCKS_THREADS);
+      this.readAheadPoolSize = rsServices.getConfiguration().getInt(BlockReadAhead.THREADS_KEY,
+        BlockReadAhead.DEFAULT_THREADS);
     }
   }
 
@@ -108,6 +120,96 @@ public class RegionServicesForStores {
     }
   }
 
+  private static ThreadPoolExecutor INMEMORY_COMPACTION_RANGES_POOL_FOR_TEST;
+
+  private static synchronized ThreadPoolExecutor getInMemoryCompactionRangesPoolForTest() {
+    if (INMEMORY_COMPACTION_RANGES_POOL_FOR_TEST == null) {
+      INMEMORY_COMPACTION_RANGES_POOL_FOR_TEST = new ThreadPoolExecutor(10, 10, 60,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setDaemon(true)
+          .setNameFormat("InMemoryCompactionRangesForTest-%d").build());
+    }
+    return INMEMORY_COMPACTION_RANGES_POOL_FOR_TEST;
+  }
+
+  /**
+   * Returns the pool compacting the key ranges of one in-memory compaction in parallel. It is kept
+   * apart from the {@link #getInMemoryCompactionPool()} the compactions themselves run in, so that
+   * a compaction waiting for its ranges never waits for a thread of its own pool.
+   */
+  ThreadPoolExecutor getInMemoryCompactionRangesPool() {
+    if (rsServices != null) {
+      ExecutorService executorService = rsServices.getExecutorService();
+      ExecutorConfig config = executorService.new ExecutorConfig()
+        .setExecutorType(ExecutorType.RS_IN_MEMORY_COMPACTION_RANGES)
+        .setCorePoolSize(inMemoryRangesPoolSize);
+      return executorService.getExecutorLazily(config);
+    } else {
+      // this could only happen in tests
+      return getInMemoryCompactionRangesPoolForTest();
+    }
+  }
+
+  private static ThreadPoolExecutor DATA_BLOCK_LOAD_POOL_FOR_TEST;
+
+  private static synchronized ThreadPoolExecutor getDataBlockLoadPoolForTest() {
+    if (DATA_BLOCK_LOAD_POOL_FOR_TEST == null) {
+      DATA_BLOCK_LOAD_POOL_FOR_TEST = new ThreadPoolExecutor(10, 10, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setDaemon(true)
+          .setNameFormat("DataBlockLoadsForTest-%d").build());
+    }
+    return DATA_BLOCK_LOAD_POOL_FOR_TEST;
+  }
+
+  /**
+   * Returns the pool loading the data blocks of multi request gets, see
+   * {@link HRegion#MULTI_GET_CACHE_DATA_BLOCKS_THREADS_KEY}.
+   */
+  ThreadPoolExecutor getDataBlockLoadPool() {
+    if (rsServices != null) {
+      ExecutorService executorService = rsServices.getExecutorService();
+      ExecutorConfig config = executorService.new ExecutorConfig()
+        .setExecutorType(ExecutorType.RS_MULTIGET_BLOCK_LOAD)
+        .setCorePoolSize(dataBlockLoadPoolSize).setAllowCoreThreadTimeout(true);
+      return executorService.getExecutorLazily(config);
+    } else {
+      // this could only happen in tests
+      return getDataBlockLoadPoolForTest();
+    }
+  }
+
+  private static ThreadPoolExecutor READ_AHEAD_POOL_FOR_TEST;
+
+  private static synchronized ThreadPoolExecutor getReadAheadPoolForTest() {
+    if (READ_AHEAD_POOL_FOR_TEST == null) {
+      READ_AHEAD_POOL_FOR_TEST = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setDaemon(true)
+          .setNameFormat("ReadAheadForTest-%d").build());
+    }
+    return READ_AHEAD_POOL_FOR_TEST;
+  }
+
+  /**
+   * Returns the pool reading blocks ahead of the scanners, see {@link BlockReadAhead#THREADS_KEY}.
+   */
+  ThreadPoolExecutor getReadAheadPool() {
+    if (rsServices != null) {
+      ExecutorService executorService = rsServices.getExecutorService();
+      ExecutorConfig config = executorService.new ExecutorConfig()
+        .setExecutorType(ExecutorType.RS_HFILE_READ_AHEAD).setCorePoolSize(readAheadPoolSize)
+        .setAllowCoreThreadTimeout(true);
+      return executorService.getExecutorLazily(config);
+    } else {
+      // this could only happen in tests
+      return getReadAheadPoolForTest();
+    }
+  }
+
+  void updateInMemoryCompaction(long time, long bytes) {
+    if (rsServices != null && rsServices.getMetrics() != null) {
+      rsServices.getMetrics().updateInMemoryCompaction(time, bytes);
+    }
+  }
+
   public long getMemStoreFlushSize() {
     return region.getMemStoreFlushSize();
   }
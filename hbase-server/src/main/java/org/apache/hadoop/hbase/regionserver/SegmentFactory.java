@@ -139,8 +139,18 @@ public final class SegmentFactory {
 
   private MutableSegment generateMutableSegment(final Configuration conf, CellComparator comparator,
     MemStoreLAB memStoreLAB, MemStoreSizing memstoreSizing) {
-    // TBD use configuration to set type of segment
-    CellSet<ExtendedCell> set = new CellSet<>(comparator);
+    if (
+      memStoreLAB != null && conf.getBoolean(CellChunkMutableSegment.CHUNK_INDEX_ENABLED_KEY,
+        CellChunkMutableSegment.CHUNK_INDEX_ENABLED_DEFAULT)
+    ) {
+      return new CellChunkMutableSegment(comparator, memStoreLAB, memstoreSizing);
+    }
+    int shards = conf == null
+      ? ShardedCellMap.MEMSTORE_SHARDS_DEFAULT
+      : conf.getInt(ShardedCellMap.MEMSTORE_SHARDS_KEY, ShardedCellMap.MEMSTORE_SHARDS_DEFAULT);
+    CellSet<ExtendedCell> set = shards > 1
+      ? new CellSet<>(new ShardedCellMap(comparator, shards))
+      : new CellSet<>(comparator);
     return new MutableSegment(set, comparator, memStoreLAB, memstoreSizing);
   }
 
@@ -0,0 +1,446 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.UnaryOperator;
+import org.apache.hadoop.hbase.ByteBufferExtendedCell;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A NavigableMap of cells that partitions the cells by the hash of their row into several
+ * ConcurrentSkipListMaps, the shards. All the cells of a row are in the same shard, and writers of
+ * different rows mostly update different skip lists instead of all contending on the head and the
+ * upper index levels of the same one. Reads that are not for a single row merge the shards in cell
+ * order, at the cost of comparing the next cell of every shard.
+ * <p>
+ * Views returned by headMap, tailMap, subMap and descendingMap are sharded maps over the
+ * corresponding views of the shards. Like {@link CellFlatMap}, only the operations needed by
+ * {@link CellSet} and the segment scanners are supported.
+ */
+@InterfaceAudience.Private
+public class ShardedCellMap implements NavigableMap<ExtendedCell, ExtendedCell> {
+
+  /**
+   * The number of shards of the index of the active memstore segment. One, the default, keeps a
+   * single ConcurrentSkipListMap. Can be set per column family.
+   */
+  public static final String MEMSTORE_SHARDS_KEY = "hbase.hregion.memstore.mutable.shards";
+  public static final int MEMSTORE_SHARDS_DEFAULT = 1;
+
+  private final NavigableMap<ExtendedCell, ExtendedCell>[] shards;
+  // the order of this view, reversed for descending views
+  private final Comparator<? super ExtendedCell> order;
+
+  public ShardedCellMap(CellComparator comparator, int numOfShards) {
+    this(newShards(comparator, numOfShards));
+  }
+
+  private ShardedCellMap(NavigableMap<ExtendedCell, ExtendedCell>[] shards) {
+    this.shards = shards;
+    this.order = shards[0].comparator();
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static NavigableMap<ExtendedCell, ExtendedCell>[] newShardArray(int length) {
+    return new NavigableMap[length];
+  }
+
+  private static NavigableMap<ExtendedCell, ExtendedCell>[] newShards(CellComparator comparator,
+    int numOfShards) {
+    if (numOfShards < 1) {
+      throw new IllegalArgumentException("Number of shards must be positive: " + numOfShards);
+    }
+    NavigableMap<ExtendedCell, ExtendedCell>[] shards = newShardArray(numOfShards);
+    for (int i = 0; i < numOfShards; i++) {
+      shards[i] = new ConcurrentSkipListMap<>(comparator);
+    }
+    return shards;
+  }
+
+  private ShardedCellMap view(
+    UnaryOperator<NavigableMap<ExtendedCell, ExtendedCell>> shardView) {
+    NavigableMap<ExtendedCell, ExtendedCell>[] views = newShardArray(shards.length);
+    for (int i = 0; i < shards.length; i++) {
+      views[i] = shardView.apply(shards[i]);
+    }
+    return new ShardedCellMap(views);
+  }
+
+  /** Returns the shard holding the row of the given cell */
+  private NavigableMap<ExtendedCell, ExtendedCell> shard(Object o) {
+    if (shards.length == 1) {
+      return shards[0];
+    }
+    Cell cell = (Cell) o;
+    int hash;
+    if (cell instanceof ByteBufferExtendedCell) {
+      ByteBufferExtendedCell bbCell = (ByteBufferExtendedCell) cell;
+      hash = ByteBufferUtils.hashCode(bbCell.getRowByteBuffer(), bbCell.getRowPosition(),
+        bbCell.getRowLength());
+    } else {
+      hash = Bytes.hashCode(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength());
+    }
+    return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+  }
+
+  /** Returns the entry that comes first in the order of this view, or null if both are null */
+  private Entry<ExtendedCell, ExtendedCell> first(Entry<ExtendedCell, ExtendedCell> e1,
+    Entry<ExtendedCell, ExtendedCell> e2) {
+    if (e1 == null) {
+      return e2;
+    }
+    if (e2 == null) {
+      return e1;
+    }
+    return order.compare(e1.getKey(), e2.getKey()) <= 0 ? e1 : e2;
+  }
+
+  /** Returns the entry that comes last in the order of this view, or null if both are null */
+  private Entry<ExtendedCell, ExtendedCell> last(Entry<ExtendedCell, ExtendedCell> e1,
+    Entry<ExtendedCell, ExtendedCell> e2) {
+    if (e1 == null) {
+      return e2;
+    }
+    if (e2 == null) {
+      return e1;
+    }
+    return order.compare(e1.getKey(), e2.getKey()) >= 0 ? e1 : e2;
+  }
+
+  private static ExtendedCell key(Entry<ExtendedCell, ExtendedCell> entry) {
+    return entry == null ? null : entry.getKey();
+  }
+
+  @Override
+  public Comparator<? super ExtendedCell> comparator() {
+    return order;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (NavigableMap<ExtendedCell, ExtendedCell> shard : shards) {
+      size += shard.size();
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (NavigableMap<ExtendedCell, ExtendedCell> shard : shards) {
+      if (!shard.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> subMap(ExtendedCell fromKey,
+    boolean fromInclusive, ExtendedCell toKey, boolean toInclusive) {
+    return view(shard -> shard.subMap(fromKey, fromInclusive, toKey, toInclusive));
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> headMap(ExtendedCell toKey, boolean inclusive) {
+    return view(shard -> shard.headMap(toKey, inclusive));
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> tailMap(ExtendedCell fromKey,
+    boolean inclusive) {
+    return view(shard -> shard.tailMap(fromKey, inclusive));
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> descendingMap() {
+    return view(NavigableMap::descendingMap);
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> subMap(ExtendedCell fromKey,
+    ExtendedCell toKey) {
+    return subMap(fromKey, true, toKey, false);
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> headMap(ExtendedCell toKey) {
+    return headMap(toKey, false);
+  }
+
+  @Override
+  public NavigableMap<ExtendedCell, ExtendedCell> tailMap(ExtendedCell fromKey) {
+    return tailMap(fromKey, true);
+  }
+
+  @Override
+  public ExtendedCell firstKey() {
+    Entry<ExtendedCell, ExtendedCell> entry = firstEntry();
+    if (entry == null) {
+      throw new NoSuchElementException();
+    }
+    return entry.getKey();
+  }
+
+  @Override
+  public ExtendedCell lastKey() {
+    Entry<ExtendedCell, ExtendedCell> entry = lastEntry();
+    if (entry == null) {
+      throw new NoSuchElementException();
+    }
+    return entry.getKey();
+  }
+
+  @Override
+  public ExtendedCell lowerKey(ExtendedCell k) {
+    return key(lowerEntry(k));
+  }
+
+  @Override
+  public ExtendedCell floorKey(ExtendedCell k) {
+    return key(floorEntry(k));
+  }
+
+  @Override
+  public ExtendedCell ceilingKey(ExtendedCell k) {
+    return key(ceilingEntry(k));
+  }
+
+  @Override
+  public ExtendedCell higherKey(ExtendedCell k) {
+    return key(higherEntry(k));
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> lowerEntry(ExtendedCell k) {
+    Entry<ExtendedCell, ExtendedCell> result = null;
+    for (NavigableMap<ExtendedCell, ExtendedCell> shard : shards) {
+      result = last(result, shard.lowerEntry(k));
+    }
+    return result;
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> floorEntry(ExtendedCell k) {
+    Entry<ExtendedCell, ExtendedCell> result = null;
+    for (NavigableMap<ExtendedCell, ExtendedCell> shard : shards) {
+      result = last(result, shard.floorEntry(k));
+    }
+    return result;
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> ceilingEntry(ExtendedCell k) {
+    Entry<ExtendedCell, ExtendedCell> result = null;
+    for (NavigableMap<ExtendedCell, ExtendedCell> shard : shards) {
+      result = first(result, shard.ceilingEntry(k));
+    }
+    return result;
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> higherEntry(ExtendedCell k) {
+    Entry<ExtendedCell, ExtendedCell> result = null;
+    for (NavigableMap<ExtendedCell, ExtendedCell> shard : shards) {
+      result = first(result, shard.higherEntry(k));
+    }
+    return result;
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> firstEntry() {
+    Entry<ExtendedCell, ExtendedCell> result = null;
+    for (NavigableMap<ExtendedCell, ExtendedCell> shard : shards) {
+      result = first(result, shard.firstEntry());
+    }
+    return result;
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> lastEntry() {
+    Entry<ExtendedCell, ExtendedCell> result = null;
+    for (NavigableMap<ExtendedCell, ExtendedCell> shard : shards) {
+      result = last(result, shard.lastEntry());
+    }
+    return result;
+  }
+
+  @Override
+  public boolean containsKey(Object o) {
+    return shard(o).containsKey(o);
+  }
+
+  @Override
+  public ExtendedCell get(Object o) {
+    return shard(o).get(o);
+  }
+
+  @Override
+  public ExtendedCell put(ExtendedCell k, ExtendedCell v) {
+    return shard(k).put(k, v);
+  }
+
+  @Override
+  public ExtendedCell remove(Object o) {
+    return shard(o).remove(o);
+  }
+
+  @Override
+  public void clear() {
+    for (NavigableMap<ExtendedCell, ExtendedCell> shard : shards) {
+      shard.clear();
+    }
+  }
+
+  @Override
+  public Collection<ExtendedCell> values() {
+    return new AbstractCollection<ExtendedCell>() {
+      @Override
+      public Iterator<ExtendedCell> iterator() {
+        return shards.length == 1 ? shards[0].values().iterator() : new MergingIterator();
+      }
+
+      @Override
+      public int size() {
+        return ShardedCellMap.this.size();
+      }
+    };
+  }
+
+  @Override
+  public boolean containsValue(Object o) { // use containsKey(Object o) instead
+    throw new UnsupportedOperationException("Use containsKey(Object o) instead");
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> pollFirstEntry() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Entry<ExtendedCell, ExtendedCell> pollLastEntry() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void putAll(Map<? extends ExtendedCell, ? extends ExtendedCell> map) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public NavigableSet<ExtendedCell> navigableKeySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public NavigableSet<ExtendedCell> descendingKeySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public NavigableSet<ExtendedCell> keySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Set<Entry<ExtendedCell, ExtendedCell>> entrySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  /** The next cell of one shard, and the iterator over the rest of the shard */
+  private static final class ShardIterator {
+    private final NavigableMap<ExtendedCell, ExtendedCell> shard;
+    private final Iterator<ExtendedCell> iterator;
+    private ExtendedCell current;
+
+    private ShardIterator(NavigableMap<ExtendedCell, ExtendedCell> shard) {
+      this.shard = shard;
+      this.iterator = shard.values().iterator();
+    }
+
+    private boolean advance() {
+      current = iterator.hasNext() ? iterator.next() : null;
+      return current != null;
+    }
+  }
+
+  /**
+   * Iterates over the shards in the order of the view, keeping the next cell of every shard in a
+   * heap like {@link KeyValueHeap} does for the scanners of a store.
+   */
+  private final class MergingIterator implements Iterator<ExtendedCell> {
+    private final PriorityQueue<ShardIterator> heap;
+    private ShardIterator lastShard;
+    private ExtendedCell lastCell;
+
+    private MergingIterator() {
+      heap = new PriorityQueue<>(shards.length, (s1, s2) -> order.compare(s1.current, s2.current));
+      for (NavigableMap<ExtendedCell, ExtendedCell> shard : shards) {
+        ShardIterator shardIterator = new ShardIterator(shard);
+        if (shardIterator.advance()) {
+          heap.add(shardIterator);
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heap.isEmpty();
+    }
+
+    @Override
+    public ExtendedCell next() {
+      ShardIterator shardIterator = heap.poll();
+      if (shardIterator == null) {
+        throw new NoSuchElementException();
+      }
+      lastShard = shardIterator;
+      lastCell = shardIterator.current;
+      if (shardIterator.advance()) {
+        heap.add(shardIterator);
+      }
+      return lastCell;
+    }
+
+    @Override
+    public void remove() {
+      if (lastCell == null) {
+        throw new IllegalStateException();
+      }
+      // the iterator of the shard is already past the cell, remove it by key
+      lastShard.shard.remove(lastCell);
+      lastCell = null;
+    }
+  }
+}
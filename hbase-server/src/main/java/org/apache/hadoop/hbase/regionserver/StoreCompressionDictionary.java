@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The compression dictionary of a store, trained from samples of the cells its flushes and
+ * compactions write. A store file is compressed with the dictionary trained before it was written
+ * and carries that dictionary in its file info, so reading it needs nothing but the file. The
+ * dictionary is retrained at most once per retrain interval, only the writers started when a
+ * retraining is due sample their cells.
+ * <p>
+ * Training takes a while on the default sample size, so it runs on a small pool shared by all
+ * stores rather than in the flush or compaction which sampled the cells. Files written meanwhile
+ * use the previous dictionary. A store trains one dictionary at a time, and samples are dropped
+ * when the pool is backed up.
+ * <p>
+ * Only used with a compression codec that supports dictionary training, see
+ * {@link Compression.Algorithm#supportsDictionaryTraining()}.
+ */
+@InterfaceAudience.Private
+public class StoreCompressionDictionary {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StoreCompressionDictionary.class);
+
+  public static final String TRAINING_ENABLED_KEY =
+    "hbase.hstore.compression.dictionary.training.enabled";
+  public static final boolean DEFAULT_TRAINING_ENABLED = false;
+
+  public static final String MAX_SIZE_KEY = "hbase.hstore.compression.dictionary.max.size";
+  public static final int DEFAULT_MAX_SIZE = 32 * 1024;
+
+  /** The size of the samples to train a dictionary from, as a multiple of the dictionary size */
+  public static final String SAMPLE_RATIO_KEY = "hbase.hstore.compression.dictionary.sample.ratio";
+  public static final int DEFAULT_SAMPLE_RATIO = 100;
+
+  public static final String RETRAIN_INTERVAL_KEY =
+    "hbase.hstore.compression.dictionary.retrain.interval";
+  public static final long DEFAULT_RETRAIN_INTERVAL = 60 * 60 * 1000L;
+
+  /**
+   * Number of threads shared by all stores for training dictionaries. A region server wide setting,
+   * the pool is created from the configuration of the first store which trains a dictionary.
+   */
+  public static final String TRAINING_THREADS_KEY =
+    "hbase.hstore.compression.dictionary.training.threads";
+  public static final int DEFAULT_TRAINING_THREADS = 1;
+
+  /** Number of trainings waiting for a thread, further ones are dropped */
+  static final int TRAINING_QUEUE_SIZE = 16;
+
+  /** Executor pool shared among all stores, created on first use */
+  private static volatile ExecutorService sharedTrainingPool;
+
+  private static ExecutorService getTrainingPool(Configuration conf) {
+    ExecutorService pool = sharedTrainingPool;
+    if (pool == null) {
+      synchronized (StoreCompressionDictionary.class) {
+        pool = sharedTrainingPool;
+        if (pool == null) {
+          int threads = conf.getInt(TRAINING_THREADS_KEY, DEFAULT_TRAINING_THREADS);
+          ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60,
+            TimeUnit.SECONDS, new ArrayBlockingQueue<>(TRAINING_QUEUE_SIZE),
+            new ThreadFactoryBuilder().setNameFormat("store-dictionary-trainer-%d")
+              .setDaemon(true).build());
+          executor.allowCoreThreadTimeOut(true);
+          pool = executor;
+          sharedTrainingPool = pool;
+        }
+      }
+    }
+    return pool;
+  }
+
+  /** A dictionary is only trained from at least this many times its size of samples */
+  static final int MIN_SAMPLE_RATIO = 10;
+
+  /** Cells larger than this are not sampled, they compress well without a dictionary */
+  static final int MAX_SAMPLE_LENGTH = 4096;
+
+  private final int maxDictionarySize;
+  private final long maxSampleSize;
+  private final long retrainInterval;
+  private final Executor trainingPool;
+  private final AtomicBoolean training = new AtomicBoolean();
+  private volatile byte[] dictionary;
+  private volatile long lastTrainingTime;
+
+  StoreCompressionDictionary(int maxDictionarySize, int sampleRatio, long retrainInterval,
+    Executor trainingPool) {
+    this.maxDictionarySize = maxDictionarySize;
+    this.maxSampleSize = (long) maxDictionarySize * sampleRatio;
+    this.retrainInterval = retrainInterval;
+    this.trainingPool = trainingPool;
+  }
+
+  /**
+   * Returns the compression dictionary of a store, or null if dictionary training is not enabled
+   * for it.
+   */
+  static StoreCompressionDictionary create(Configuration conf) {
+    if (!conf.getBoolean(TRAINING_ENABLED_KEY, DEFAULT_TRAINING_ENABLED)) {
+      return null;
+    }
+    int sampleRatio =
+      Math.max(conf.getInt(SAMPLE_RATIO_KEY, DEFAULT_SAMPLE_RATIO), MIN_SAMPLE_RATIO);
+    return new StoreCompressionDictionary(conf.getInt(MAX_SIZE_KEY, DEFAULT_MAX_SIZE), sampleRatio,
+      conf.getLong(RETRAIN_INTERVAL_KEY, DEFAULT_RETRAIN_INTERVAL), getTrainingPool(conf));
+  }
+
+  /** Returns the dictionary new store files are compressed with, or null if none was trained */
+  byte[] getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * Sets the dictionary, e.g. the one of the newest store file when the store is opened. Does not
+   * postpone the next training.
+   */
+  void setDictionary(byte[] dictionary) {
+    this.dictionary = dictionary;
+  }
+
+  /** Returns a sampler for a new store file writer, or null if no training is due */
+  Sampler newSampler() {
+    if (
+      training.get() || (dictionary != null
+        && EnvironmentEdgeManager.currentTime() - lastTrainingTime < retrainInterval)
+    ) {
+      return null;
+    }
+    return new Sampler();
+  }
+
+  /** Returns whether a dictionary is being trained, or waiting for a thread to train it */
+  boolean isTraining() {
+    return training.get();
+  }
+
+  /**
+   * Trains a new dictionary from the cells of the given sampler on the training pool, if it sampled
+   * enough of them and no other training of this store is running.
+   * @return true if a training was started
+   */
+  boolean trainInBackground(Compression.Algorithm compression, Sampler sampler) {
+    if (!hasEnoughSamples(sampler) || !training.compareAndSet(false, true)) {
+      return false;
+    }
+    try {
+      trainingPool.execute(() -> {
+        try {
+          train(compression, sampler);
+        } catch (RuntimeException e) {
+          LOG.warn("Failed to train a compression dictionary", e);
+        } finally {
+          training.set(false);
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Dropped {} samples, too many dictionaries waiting to be trained",
+        sampler.samples.size());
+      training.set(false);
+      return false;
+    }
+  }
+
+  private boolean hasEnoughSamples(Sampler sampler) {
+    return sampler.size >= (long) maxDictionarySize * MIN_SAMPLE_RATIO;
+  }
+
+  /**
+   * Trains a new dictionary from the cells of the given sampler, if it sampled enough of them.
+   * @return true if a new dictionary was trained
+   */
+  boolean train(Compression.Algorithm compression, Sampler sampler) {
+    if (!hasEnoughSamples(sampler)) {
+      return false;
+    }
+    long start = EnvironmentEdgeManager.currentTime();
+    byte[] trained = compression.trainDictionary(sampler.samples, maxDictionarySize);
+    lastTrainingTime = EnvironmentEdgeManager.currentTime();
+    if (trained == null) {
+      LOG.debug("No dictionary trained from {} samples of {} bytes", sampler.samples.size(),
+        sampler.size);
+      return false;
+    }
+    setDictionary(trained);
+    LOG.debug("Trained a dictionary of {} bytes from {} samples of {} bytes in {} ms",
+      trained.length, sampler.samples.size(), sampler.size, lastTrainingTime - start);
+    return true;
+  }
+
+  /**
+   * Samples the cells written to a store file. Samples every cell until the sample size limit is
+   * reached, then drops every other sample and from then on only samples every other cell, and so
+   * on, so that the samples are spread over the whole file.
+   */
+  class Sampler {
+    private final List<byte[]> samples = new ArrayList<>();
+    private long size;
+    private long count;
+    private int interval = 1;
+
+    void sample(ExtendedCell cell) {
+      if (count++ % interval != 0) {
+        return;
+      }
+      int length = KeyValueUtil.length(cell.getRowLength(), cell.getFamilyLength(),
+        cell.getQualifierLength(), cell.getValueLength(), cell.getTagsLength(), true);
+      if (length > MAX_SAMPLE_LENGTH) {
+        return;
+      }
+      samples.add(KeyValueUtil.copyToNewByteArray(cell));
+      size += length;
+      if (size > maxSampleSize) {
+        int kept = 0;
+        size = 0;
+        for (int i = 0; i < samples.size(); i += 2) {
+          byte[] sample = samples.get(i);
+          samples.set(kept++, sample);
+          size += sample.length;
+        }
+        samples.subList(kept, samples.size()).clear();
+        interval *= 2;
+      }
+    }
+
+    long getSize() {
+      return size;
+    }
+  }
+}
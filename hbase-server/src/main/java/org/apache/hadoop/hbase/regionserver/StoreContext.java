@@ -51,6 +51,7 @@ public final class StoreContext implements HeapSize {
   private final ColumnFamilyDescriptor family;
   private final Path familyStoreDirectoryPath;
   private final RegionCoprocessorHost coprocessorHost;
+  private final StoreCompressionDictionary compressionDictionary;
 
   private StoreContext(Builder builder) {
     this.blockSize = builder.blockSize;
@@ -64,6 +65,7 @@ public final class StoreContext implements HeapSize {
     this.family = builder.family;
     this.familyStoreDirectoryPath = builder.familyStoreDirectoryPath;
     this.coprocessorHost = builder.coprocessorHost;
+    this.compressionDictionary = builder.compressionDictionary;
   }
 
   public int getBlockSize() {
@@ -110,6 +112,11 @@ public final class StoreContext implements HeapSize {
     return coprocessorHost;
   }
 
+  /** Returns the compression dictionary of the store, or null if it trains none */
+  public StoreCompressionDictionary getCompressionDictionary() {
+    return compressionDictionary;
+  }
+
   public TableName getTableName() {
     return getRegionInfo().getTable();
   }
@@ -151,6 +158,7 @@ public final class StoreContext implements HeapSize {
     private ColumnFamilyDescriptor family;
     private Path familyStoreDirectoryPath;
     private RegionCoprocessorHost coprocessorHost;
+    private StoreCompressionDictionary compressionDictionary;
 
     public Builder withBlockSize(int blockSize) {
       this.blockSize = blockSize;
@@ -208,6 +216,11 @@ public final class StoreContext implements HeapSize {
       return this;
     }
 
+    public Builder withCompressionDictionary(StoreCompressionDictionary compressionDictionary) {
+      this.compressionDictionary = compressionDictionary;
+      return this;
+    }
+
     public StoreContext build() {
       return new StoreContext(this);
     }
@@ -21,13 +21,19 @@ import static org.apache.hadoop.hbase.regionserver.HStoreFile.BLOOM_FILTER_PARAM
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.BLOOM_FILTER_TYPE_KEY;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.DELETE_FAMILY_COUNT;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.LAST_BLOOM_KEY;
+import static org.apache.hadoop.hbase.regionserver.HStoreFile.ROW_PREFIX_FILTER_MAX_LENGTH_KEY;
+import static org.apache.hadoop.hbase.regionserver.HStoreFile.ROW_PREFIX_FILTER_META_BLOCK;
 
 import com.google.errorprone.annotations.RestrictedApi;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellComparator;
@@ -37,6 +43,7 @@ import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ByteBuffInputStream;
 import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 import org.apache.hadoop.hbase.io.hfile.BlockType;
@@ -45,6 +52,7 @@ import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.hadoop.hbase.io.hfile.HFileBlock;
 import org.apache.hadoop.hbase.io.hfile.HFileInfo;
+import org.apache.hadoop.hbase.io.hfile.HFileReaderImpl;
 import org.apache.hadoop.hbase.io.hfile.HFileScanner;
 import org.apache.hadoop.hbase.io.hfile.ReaderContext;
 import org.apache.hadoop.hbase.io.hfile.ReaderContext.ReaderType;
@@ -67,6 +75,7 @@ public class StoreFileReader {
 
   protected BloomFilter generalBloomFilter = null;
   protected BloomFilter deleteFamilyBloomFilter = null;
+  protected BloomFilter rowPrefixFilter = null;
   private BloomFilterMetrics bloomFilterMetrics = null;
   protected BloomType bloomFilterType;
   protected final HFile.Reader reader;
@@ -78,6 +87,7 @@ public class StoreFileReader {
   private KeyValue.KeyOnlyKeyValue lastBloomKeyOnlyKV = null;
   private boolean skipResetSeqId = true;
   private int prefixLength = -1;
+  private int rowPrefixFilterMaxLength = 0;
   protected Configuration conf;
 
   /**
@@ -88,6 +98,12 @@ public class StoreFileReader {
   private final StoreFileInfo storeFileInfo;
   private final ReaderContext context;
 
+  /**
+   * Scanners and background reads of scanners using this reader. A stream reader is closed when
+   * none is left.
+   */
+  private final AtomicInteger users = new AtomicInteger();
+
   private StoreFileReader(HFile.Reader reader, StoreFileInfo storeFileInfo, ReaderContext context,
     Configuration conf) {
     this.reader = reader;
@@ -95,6 +111,20 @@ public class StoreFileReader {
     this.storeFileInfo = storeFileInfo;
     this.context = context;
     this.conf = conf;
+    if (reader instanceof HFileReaderImpl) {
+      // the block read-aheads of the scanners hold the file like the scanners themselves
+      ((HFileReaderImpl) reader).setFilePin(new HFileReaderImpl.FilePin() {
+        @Override
+        public void pin() {
+          incrementRefCount();
+        }
+
+        @Override
+        public void unpin() {
+          readCompleted();
+        }
+      });
+    }
   }
 
   public StoreFileReader(ReaderContext context, HFileInfo fileInfo, CacheConfig cacheConf,
@@ -114,6 +144,8 @@ public class StoreFileReader {
     this.lastBloomKeyOnlyKV = storeFileReader.lastBloomKeyOnlyKV;
     this.skipResetSeqId = storeFileReader.skipResetSeqId;
     this.prefixLength = storeFileReader.prefixLength;
+    this.rowPrefixFilter = storeFileReader.rowPrefixFilter;
+    this.rowPrefixFilterMaxLength = storeFileReader.rowPrefixFilterMaxLength;
   }
 
   public boolean isPrimaryReplicaReader() {
@@ -149,7 +181,18 @@ public class StoreFileReader {
     boolean isCompaction, long readPt, long scannerOrder, boolean canOptimizeForNonNullColumn) {
     return new StoreFileScanner(this, getScanner(cacheBlocks, pread, isCompaction), !isCompaction,
       reader.hasMVCCInfo(), readPt, scannerOrder, canOptimizeForNonNullColumn,
-      reader.getDataBlockEncoding() == DataBlockEncoding.ROW_INDEX_V1);
+      isFastSeekingEncoding());
+  }
+
+  /**
+   * Whether the data block encoding seeks quickly from the beginning of a block. PREFIX_RESTART
+   * only does when the tags are not compressed, else its seeker scans the block linearly.
+   */
+  private boolean isFastSeekingEncoding() {
+    DataBlockEncoding encoding = reader.getDataBlockEncoding();
+    return encoding == DataBlockEncoding.ROW_INDEX_V1
+      || (encoding == DataBlockEncoding.PREFIX_RESTART
+        && !reader.getFileContext().isCompressTags());
   }
 
   /**
@@ -166,15 +209,17 @@ public class StoreFileReader {
    */
   void incrementRefCount() {
     storeFileInfo.increaseRefCount();
+    users.incrementAndGet();
   }
 
   /**
    * Indicate that the scanner has finished reading with this reader. We need to decrement the ref
-   * count, and also, if this is not the common pread reader, we should close it.
+   * count, and also, if this is not the common pread reader, we should close it once no scanner or
+   * background read of a scanner uses it anymore.
    */
   void readCompleted() {
     storeFileInfo.decreaseRefCount();
-    if (context.getReaderType() == ReaderType.STREAM) {
+    if (users.decrementAndGet() == 0 && context.getReaderType() == ReaderType.STREAM) {
       try {
         reader.close(false);
       } catch (IOException e) {
@@ -455,6 +500,94 @@ public class StoreFileReader {
     return !nonOverLapping;
   }
 
+  /**
+   * Loads the data blocks which may hold the given rows into the block cache, reading the blocks
+   * that are not cached yet with one vectored read. Rows outside the key range of the file, or
+   * ruled out by a row Bloom filter, are skipped.
+   * @param rows the rows about to be read, in any order
+   * @return the number of data blocks read from the file system
+   */
+  public int cacheDataBlocksForRows(List<byte[]> rows) throws IOException {
+    Optional<ExtendedCell> firstKeyKV = this.getFirstKey();
+    Optional<ExtendedCell> lastKeyKV = this.getLastKey();
+    if (!firstKeyKV.isPresent() || !lastKeyKV.isPresent()) {
+      // the file is empty
+      return 0;
+    }
+    BloomFilter bloomFilter = this.generalBloomFilter;
+    boolean checkBloom = bloomFilterType == BloomType.ROW && bloomFilter != null
+      && bloomFilter.supportsAutoLoading();
+    List<ExtendedCell> keys = new ArrayList<>(rows.size());
+    for (byte[] row : rows) {
+      if (
+        getComparator().compareRows(firstKeyKV.get(), row, 0, row.length) > 0
+          || getComparator().compareRows(lastKeyKV.get(), row, 0, row.length) < 0
+      ) {
+        continue;
+      }
+      if (checkBloom) {
+        try {
+          if (!bloomFilter.contains(row, 0, row.length, null)) {
+            continue;
+          }
+        } catch (IllegalArgumentException e) {
+          // The scanners will flag the faulty Bloom filter, just load the block here.
+        }
+      }
+      keys.add(PrivateCellUtil.createFirstOnRow(row));
+    }
+    return keys.isEmpty() ? 0 : reader.cacheDataBlocks(keys);
+  }
+
+  /**
+   * Checks whether the store file may hold a row in the row range of the given scan, using the row
+   * prefix filter written along with the file. All rows in the range share a common prefix, the
+   * file can be skipped when none of its rows starts with it. Always passes when the file has no
+   * row prefix filter or the rows in the range share no prefix.
+   * @param scan the scan specification
+   * @return false if the file holds no row in the range of the scan
+   */
+  public boolean passesRowPrefixFilter(Scan scan) {
+    BloomFilter filter = this.rowPrefixFilter;
+    if (filter == null) {
+      return true;
+    }
+    byte[] lower = scan.isReversed() ? scan.getStopRow() : scan.getStartRow();
+    byte[] upper = scan.isReversed() ? scan.getStartRow() : scan.getStopRow();
+    boolean upperInclusive = scan.isReversed() ? scan.includeStartRow() : scan.includeStopRow();
+    int length = Math.min(getCommonRowPrefixLength(lower, upper, upperInclusive),
+      rowPrefixFilterMaxLength);
+    if (length == 0) {
+      return true;
+    }
+    return filter.contains(lower, 0, length, null);
+  }
+
+  /**
+   * Returns the length of the longest prefix of {@code lower} that all rows between {@code lower}
+   * and {@code upper} start with. Besides the common prefix of both bounds, this catches ranges
+   * made by {@link Scan#setStartStopRowForPrefixScan(byte[])}, where an exclusive {@code upper} is
+   * the closest row after all rows starting with the prefix. An empty {@code upper} is unbounded.
+   */
+  static int getCommonRowPrefixLength(byte[] lower, byte[] upper, boolean upperInclusive) {
+    int length = upper.length;
+    if (length > 0) {
+      int common = Bytes.findCommonPrefix(lower, upper, lower.length, length, 0, 0);
+      // upper has to be lower[0..common] with its last byte incremented, apart from trailing 0xFF
+      // bytes of lower, which the increment drops
+      if (
+        upperInclusive || common != length - 1 || common == lower.length
+          || lower[common] == (byte) 0xFF || (byte) (lower[common] + 1) != upper[common]
+      ) {
+        return common;
+      }
+    }
+    while (length < lower.length && lower[length] == (byte) 0xFF) {
+      length++;
+    }
+    return length;
+  }
+
   public Map<byte[], byte[]> loadFileInfo() throws IOException {
     Map<byte[], byte[]> fi = reader.getHFileInfo();
 
@@ -477,6 +610,11 @@ public class StoreFileReader {
       deleteFamilyCnt = Bytes.toLong(cnt);
     }
 
+    byte[] maxLength = fi.get(ROW_PREFIX_FILTER_MAX_LENGTH_KEY);
+    if (maxLength != null) {
+      rowPrefixFilterMaxLength = Bytes.toInt(maxLength);
+    }
+
     return fi;
   }
 
@@ -532,6 +670,40 @@ public class StoreFileReader {
     }
   }
 
+  /**
+   * Loads the row prefix filter written along with the file, if there is one. Its metadata lives
+   * in a meta block rather than in the load-on-open section, see
+   * {@link BloomFilterFactory#IO_STOREFILE_ROW_PREFIX_FILTER_MAX_LENGTH}.
+   */
+  public void loadRowPrefixFilter() {
+    if (rowPrefixFilter != null || rowPrefixFilterMaxLength <= 0) {
+      return;
+    }
+    HFileBlock block = null;
+    try {
+      block = reader.getMetaBlock(ROW_PREFIX_FILTER_META_BLOCK, true);
+      if (block != null) {
+        DataInput meta =
+          new DataInputStream(new ByteBuffInputStream(block.getBufferWithoutHeader()));
+        rowPrefixFilter = BloomFilterFactory.createFromMeta(meta, reader, null);
+        if (LOG.isTraceEnabled()) {
+          LOG.trace("Loaded row prefix filter " + rowPrefixFilter.getClass().getSimpleName()
+            + " metadata for " + reader.getName());
+        }
+      }
+    } catch (IOException e) {
+      LOG.error("Error reading row prefix filter meta -- proceeding without", e);
+      rowPrefixFilter = null;
+    } catch (IllegalArgumentException e) {
+      LOG.error("Bad row prefix filter meta -- proceeding without", e);
+      rowPrefixFilter = null;
+    } finally {
+      if (block != null) {
+        block.release();
+      }
+    }
+  }
+
   @RestrictedApi(explanation = "Should only be called in tests", link = "",
       allowedOnPath = ".*/StoreFileReader.java|.*/src/test/.*")
   void setBloomFilterFaulty(BlockType blockType) {
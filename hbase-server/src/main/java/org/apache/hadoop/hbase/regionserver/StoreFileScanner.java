@@ -36,6 +36,7 @@ import org.apache.hadoop.hbase.HBaseInterfaceAudience;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.TimestampsFilter;
 import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.io.hfile.HFileScanner;
 import org.apache.hadoop.hbase.regionserver.querymatcher.ScanQueryMatcher;
@@ -99,7 +100,8 @@ public class StoreFileScanner implements KeyValueScanner {
    * @param canOptimizeForNonNullColumn {@code true} if we can make sure there is no null column,
    *                                    otherwise {@code false}. This is a hint for optimization.
    * @param isFastSeekingEncoding       {@code true} if the data block encoding can seek quickly
-   *                                    from the beginning of a block (i.e. RIV1), otherwise
+   *                                    from the beginning of a block (i.e. RIV1, or
+   *                                    PREFIX_RESTART without compressed tags), otherwise
    *                                    {@code false}. This is a hint for optimization.
    */
   public StoreFileScanner(StoreFileReader reader, HFileScanner hfs, boolean useMVCC,
@@ -513,9 +515,21 @@ public class StoreFileScanner implements KeyValueScanner {
     if (timeRange == null) {
       timeRange = scan.getTimeRange();
     }
-    return reader.passesTimerangeFilter(timeRange, oldestUnexpiredTS)
-      && reader.passesKeyRangeFilter(scan)
+    boolean useScanner = reader.passesTimerangeFilter(timeRange, oldestUnexpiredTS)
+      && reader.passesKeyRangeFilter(scan) && reader.passesRowPrefixFilter(scan)
       && reader.passesBloomFilter(scan, scan.getFamilyMap().get(cf));
+    if (useScanner && !scan.isReversed()) {
+      // Cells older than the time range are never returned, and delete markers older than it only
+      // mask cells that are older still, so data blocks holding only such cells can be skipped
+      long minTimestamp = timeRange.getMin();
+      if (!scan.isRaw() && scan.getFilter() instanceof TimestampsFilter) {
+        minTimestamp = Math.max(minTimestamp, ((TimestampsFilter) scan.getFilter()).getMin());
+      }
+      if (minTimestamp > 0) {
+        hfs.skipDataBlocksOlderThan(minTimestamp);
+      }
+    }
+    return useScanner;
   }
 
   @Override
@@ -27,6 +27,8 @@ import static org.apache.hadoop.hbase.regionserver.HStoreFile.MAJOR_COMPACTION_K
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MAX_SEQ_ID_KEY;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MOB_CELLS_COUNT;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MOB_FILE_REFS;
+import static org.apache.hadoop.hbase.regionserver.HStoreFile.ROW_PREFIX_FILTER_MAX_LENGTH_KEY;
+import static org.apache.hadoop.hbase.regionserver.HStoreFile.ROW_PREFIX_FILTER_META_BLOCK;
 import static org.apache.hadoop.hbase.regionserver.StoreEngine.STORE_ENGINE_CLASS_KEY;
 
 import java.io.IOException;
@@ -69,6 +71,7 @@ import org.apache.hadoop.hbase.util.CommonFSUtils;
 import org.apache.hadoop.hbase.util.RowBloomContext;
 import org.apache.hadoop.hbase.util.RowColBloomContext;
 import org.apache.hadoop.hbase.util.RowPrefixFixedLengthBloomContext;
+import org.apache.hadoop.hbase.util.RowPrefixesBloomContext;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -117,6 +120,10 @@ public class StoreFileWriter implements CellSink, ShipperListener {
   private int livePutCellCount;
   private final int maxVersions;
   private final boolean newVersionBehavior;
+  private final StoreCompressionDictionary compressionDictionary;
+  // The dictionary the files of this writer are compressed with
+  private final byte[] dictionary;
+  private final StoreCompressionDictionary.Sampler sampler;
 
   /**
    * Creates an HFile.Writer that also write helpful meta data.
@@ -134,13 +141,15 @@ public class StoreFileWriter implements CellSink, ShipperListener {
    * @param comparator             Cell comparator
    * @param maxVersions            max cell versions
    * @param newVersionBehavior     enable new version behavior
+   * @param compressionDictionary  the compression dictionary of the store, or null
    * @throws IOException problem writing to FS
    */
   private StoreFileWriter(FileSystem fs, Path liveFilePath, Path historicalFilePath,
     final Configuration conf, CacheConfig cacheConf, BloomType bloomType, long maxKeys,
     InetSocketAddress[] favoredNodes, HFileContext fileContext, boolean shouldDropCacheBehind,
     Supplier<Collection<HStoreFile>> compactedFilesSupplier, CellComparator comparator,
-    int maxVersions, boolean newVersionBehavior) throws IOException {
+    int maxVersions, boolean newVersionBehavior,
+    StoreCompressionDictionary compressionDictionary) throws IOException {
     this.fs = fs;
     this.historicalFilePath = historicalFilePath;
     this.conf = conf;
@@ -154,8 +163,17 @@ public class StoreFileWriter implements CellSink, ShipperListener {
     this.comparator = comparator;
     this.maxVersions = maxVersions;
     this.newVersionBehavior = newVersionBehavior;
+    this.compressionDictionary = compressionDictionary;
+    if (compressionDictionary != null) {
+      this.dictionary = compressionDictionary.getDictionary();
+      this.sampler = compressionDictionary.newSampler();
+    } else {
+      this.dictionary = null;
+      this.sampler = null;
+    }
     liveFileWriter = new SingleStoreFileWriter(fs, liveFilePath, conf, cacheConf, bloomType,
-      maxKeys, favoredNodes, fileContext, shouldDropCacheBehind, compactedFilesSupplier);
+      maxKeys, favoredNodes, fileContext, shouldDropCacheBehind, compactedFilesSupplier,
+      dictionary, sampler);
   }
 
   public static boolean shouldEnableHistoricalCompactionFiles(Configuration conf) {
@@ -303,6 +321,9 @@ public class StoreFileWriter implements CellSink, ShipperListener {
       historicalFileWriter.appendFileInfo(HISTORICAL_KEY, Bytes.toBytes(true));
       historicalFileWriter.close();
     }
+    if (sampler != null) {
+      compressionDictionary.trainInBackground(fileContext.getCompression(), sampler);
+    }
   }
 
   public void appendFileInfo(byte[] key, byte[] value) throws IOException {
@@ -334,7 +355,8 @@ public class StoreFileWriter implements CellSink, ShipperListener {
     if (historicalFileWriter == null) {
       historicalFileWriter =
         new SingleStoreFileWriter(fs, historicalFilePath, conf, cacheConf, bloomType, maxKeys,
-          favoredNodes, fileContext, shouldDropCacheBehind, compactedFilesSupplier);
+          favoredNodes, fileContext, shouldDropCacheBehind, compactedFilesSupplier, dictionary,
+          sampler);
     }
     return historicalFileWriter;
   }
@@ -506,7 +528,11 @@ public class StoreFileWriter implements CellSink, ShipperListener {
     private long deleteFamilyCnt = 0;
     private BloomContext bloomContext = null;
     private BloomContext deleteFamilyBloomContext = null;
+    private final BloomFilterWriter rowPrefixFilterWriter;
+    private final int rowPrefixFilterMaxLength;
+    private BloomContext rowPrefixFilterContext = null;
     private final Supplier<Collection<HStoreFile>> compactedFilesSupplier;
+    private final StoreCompressionDictionary.Sampler sampler;
 
     private HFile.Writer writer;
 
@@ -522,17 +548,22 @@ public class StoreFileWriter implements CellSink, ShipperListener {
      * @param fileContext            The HFile context
      * @param shouldDropCacheBehind  Drop pages written to page cache after writing the store file.
      * @param compactedFilesSupplier Returns the {@link HStore} compacted files which not archived
+     * @param dictionary             the dictionary to compress the data blocks with, or null
+     * @param sampler                samples the cells for the next dictionary, or null
      * @throws IOException problem writing to FS
      */
     private SingleStoreFileWriter(FileSystem fs, Path path, final Configuration conf,
       CacheConfig cacheConf, BloomType bloomType, long maxKeys, InetSocketAddress[] favoredNodes,
       HFileContext fileContext, boolean shouldDropCacheBehind,
-      Supplier<Collection<HStoreFile>> compactedFilesSupplier) throws IOException {
+      Supplier<Collection<HStoreFile>> compactedFilesSupplier, byte[] dictionary,
+      StoreCompressionDictionary.Sampler sampler) throws IOException {
       this.compactedFilesSupplier = compactedFilesSupplier;
+      this.sampler = sampler;
       // TODO : Change all writers to be specifically created for compaction context
       writer =
         HFile.getWriterFactory(conf, cacheConf).withPath(fs, path).withFavoredNodes(favoredNodes)
-          .withFileContext(fileContext).withShouldDropCacheBehind(shouldDropCacheBehind).create();
+          .withFileContext(fileContext).withShouldDropCacheBehind(shouldDropCacheBehind)
+          .withCompressionDictionary(dictionary).create();
 
       generalBloomFilterWriter = BloomFilterFactory.createGeneralBloomAtWrite(conf, cacheConf,
         bloomType, (int) Math.min(maxKeys, Integer.MAX_VALUE), writer);
@@ -583,6 +614,16 @@ public class StoreFileWriter implements CellSink, ShipperListener {
         LOG.trace("Delete Family Bloom filter type for " + path + ": "
           + deleteFamilyBloomFilterWriter.getClass().getSimpleName());
       }
+
+      this.rowPrefixFilterWriter =
+        BloomFilterFactory.createRowPrefixFilterAtWrite(conf, cacheConf, writer);
+      if (rowPrefixFilterWriter != null) {
+        this.rowPrefixFilterMaxLength = BloomFilterFactory.getRowPrefixFilterMaxLength(conf);
+        this.rowPrefixFilterContext = new RowPrefixesBloomContext(rowPrefixFilterWriter,
+          fileContext.getCellComparator(), rowPrefixFilterMaxLength);
+      } else {
+        this.rowPrefixFilterMaxLength = 0;
+      }
     }
 
     private long getPos() throws IOException {
@@ -702,10 +743,20 @@ public class StoreFileWriter implements CellSink, ShipperListener {
       }
     }
 
+    private void appendRowPrefixFilter(final ExtendedCell cell) throws IOException {
+      if (this.rowPrefixFilterWriter != null) {
+        rowPrefixFilterContext.writeBloom(cell);
+      }
+    }
+
     private void append(final ExtendedCell cell) throws IOException {
       appendGeneralBloomfilter(cell);
       appendDeleteFamilyBloomFilter(cell);
+      appendRowPrefixFilter(cell);
       writer.append(cell);
+      if (sampler != null) {
+        sampler.sample(cell);
+      }
     }
 
     private void beforeShipped() throws IOException {
@@ -718,6 +769,9 @@ public class StoreFileWriter implements CellSink, ShipperListener {
       if (deleteFamilyBloomFilterWriter != null) {
         deleteFamilyBloomFilterWriter.beforeShipped();
       }
+      if (rowPrefixFilterWriter != null) {
+        rowPrefixFilterWriter.beforeShipped();
+      }
     }
 
     private Path getPath() {
@@ -774,9 +828,23 @@ public class StoreFileWriter implements CellSink, ShipperListener {
       return hasDeleteFamilyBloom;
     }
 
+    private boolean closeRowPrefixFilter() throws IOException {
+      boolean hasRowPrefixFilter = closeBloomFilter(rowPrefixFilterWriter);
+
+      // the row prefix filter goes to a meta block of its own, the load-on-open section only has
+      // room for the general and delete family Bloom filters
+      if (hasRowPrefixFilter) {
+        writer.appendMetaBlock(ROW_PREFIX_FILTER_META_BLOCK, rowPrefixFilterWriter.getMetaWriter());
+        writer.appendFileInfo(ROW_PREFIX_FILTER_MAX_LENGTH_KEY,
+          Bytes.toBytes(rowPrefixFilterMaxLength));
+      }
+      return hasRowPrefixFilter;
+    }
+
     private void close() throws IOException {
       boolean hasGeneralBloom = this.closeGeneralBloomFilter();
       boolean hasDeleteFamilyBloom = this.closeDeleteFamilyBloomFilter();
+      this.closeRowPrefixFilter();
 
       writer.close();
 
@@ -830,6 +898,7 @@ public class StoreFileWriter implements CellSink, ShipperListener {
     private boolean newVersionBehavior;
     private CellComparator comparator;
     private boolean isCompaction;
+    private StoreCompressionDictionary compressionDictionary;
 
     public Builder(Configuration conf, CacheConfig cacheConf, FileSystem fs) {
       this.conf = conf;
@@ -939,6 +1008,15 @@ public class StoreFileWriter implements CellSink, ShipperListener {
       return this;
     }
 
+    /**
+     * Compresses the files with the dictionary of the store, and samples their cells to train the
+     * next one when a training is due.
+     */
+    public Builder withCompressionDictionary(StoreCompressionDictionary compressionDictionary) {
+      this.compressionDictionary = compressionDictionary;
+      return this;
+    }
+
     /**
      * Create a store file writer. Client is responsible for closing file when done. If metadata,
      * add BEFORE closing using {@link StoreFileWriter#appendMetadata}.
@@ -1003,7 +1081,7 @@ public class StoreFileWriter implements CellSink, ShipperListener {
       }
       return new StoreFileWriter(fs, liveFilePath, historicalFilePath, conf, cacheConf, bloomType,
         maxKeyCount, favoredNodes, fileContext, shouldDropCacheBehind, compactedFilesSupplier,
-        comparator, maxVersions, newVersionBehavior);
+        comparator, maxVersions, newVersionBehavior, compressionDictionary);
     }
   }
 }
@@ -51,6 +51,8 @@ public class ParallelSeekHandler extends EventHandler {
   private final AtomicLong bytesReadFromBlockCache;
   // Thread-local counter for block read operations count.
   private final AtomicLong blockReadOpsCount;
+  // Thread-local counter for blocks found read ahead.
+  private final AtomicLong blockReadAheadHits;
 
   public ParallelSeekHandler(KeyValueScanner scanner, ExtendedCell keyValue, long readPoint,
     CountDownLatch latch) {
@@ -64,6 +66,7 @@ public class ParallelSeekHandler extends EventHandler {
     this.bytesReadFromBlockCache =
       ThreadLocalServerSideScanMetrics.getBytesReadFromBlockCacheCounter();
     this.blockReadOpsCount = ThreadLocalServerSideScanMetrics.getBlockReadOpsCountCounter();
+    this.blockReadAheadHits = ThreadLocalServerSideScanMetrics.getBlockReadAheadHitsCounter();
   }
 
   @Override
@@ -87,6 +90,10 @@ public class ParallelSeekHandler extends EventHandler {
         if (metricValue > 0) {
           blockReadOpsCount.addAndGet(metricValue);
         }
+        metricValue = ThreadLocalServerSideScanMetrics.getBlockReadAheadHitsAndReset();
+        if (metricValue > 0) {
+          blockReadAheadHits.addAndGet(metricValue);
+        }
       }
     } catch (IOException e) {
       LOG.error("", e);
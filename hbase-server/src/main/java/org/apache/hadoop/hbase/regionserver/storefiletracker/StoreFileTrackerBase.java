@@ -219,6 +219,12 @@ abstract class StoreFileTrackerBase implements StoreFileTracker {
         .withWriterCreationTracker(params.writerCreationTracker())
         .withMaxVersions(ctx.getMaxVersions()).withNewVersionBehavior(ctx.getNewVersionBehavior())
         .withCellComparator(ctx.getComparator()).withIsCompaction(params.isCompaction());
+    if (
+      ctx.getCompressionDictionary() != null
+        && hFileContext.getCompression().supportsDictionaryTraining()
+    ) {
+      builder.withCompressionDictionary(ctx.getCompressionDictionary());
+    }
     return builder.build();
   }
 
@@ -0,0 +1,384 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A chunk of a {@link org.apache.hadoop.hbase.io.hfile.CompoundBloomFilter} stored as a 3-wise
+ * binary fuse filter (Graf and Lemire, "Binary Fuse Filters: Fast and Smaller Than Xor Filters")
+ * instead of a Bloom filter bit array. Every key is mapped to three slots of an array of
+ * fingerprints, and a key is reported present when the xor of its three slots matches its own
+ * fingerprint. With f bit fingerprints the false positive rate is 2^-f and the filter takes about
+ * 1.125 to 1.2 * f bits per key, against 1.44 * log2(1 / error rate) bits per key for a Bloom
+ * filter.
+ * <p>
+ * The filter has to be built from all the keys at once, so the chunk keeps a 64 bit hash of every
+ * key added and builds the filter when the chunk is compacted, just before it is written out. The
+ * hash count of the chunk is the fingerprint width in bits. Format:
+ *
+ * <pre>
+ * seed (long) | segment length (int) | segment count (int) | fingerprints, packed
+ * </pre>
+ */
+@InterfaceAudience.Private
+public class BinaryFuseFilterChunk extends BloomFilterChunk {
+
+  private static final int ARITY = 3;
+
+  private static final int HEADER_SIZE = Bytes.SIZEOF_LONG + 2 * Bytes.SIZEOF_INT;
+
+  /** Slack after the fingerprints so that any fingerprint can be read as three whole bytes */
+  private static final int PADDING = 2;
+
+  private static final int MAX_FINGERPRINT_BITS = 16;
+
+  private static final int MAX_ATTEMPTS = 100;
+
+  /** 64 bit hashes of the keys added so far, only while writing */
+  private long[] keyHashes;
+
+  public BinaryFuseFilterChunk(int hashType, BloomType bloomType) {
+    super(hashType, bloomType);
+  }
+
+  /**
+   * Creates a binary fuse filter chunk that holds as many keys as fit in the given size.
+   * @param byteSizeHint the desired number of bytes for the filter
+   * @param errorRate    target false positive rate, rounded down to a power of two
+   * @param hashType     hash function type
+   * @return the new, empty chunk
+   */
+  public static BinaryFuseFilterChunk createBySize(int byteSizeHint, double errorRate,
+    int hashType, BloomType bloomType) {
+    BinaryFuseFilterChunk chunk = new BinaryFuseFilterChunk(hashType, bloomType);
+    chunk.hashCount = fingerprintBits(errorRate);
+    int maxKeys = (int) (byteSizeHint * 8L / (chunk.hashCount * 1.125));
+    while (maxKeys > 1 && byteSize(maxKeys, chunk.hashCount) > byteSizeHint) {
+      maxKeys -= Math.max(1, maxKeys / 100);
+    }
+    chunk.maxKeys = Math.max(1, maxKeys);
+    chunk.byteSize = byteSize(chunk.maxKeys, chunk.hashCount);
+    return chunk;
+  }
+
+  /** Returns the fingerprint width that gets a false positive rate no higher than the given one */
+  static int fingerprintBits(double errorRate) {
+    int bits = (int) Math.ceil(-Math.log(errorRate) / Math.log(2) - 1e-9);
+    return Math.max(1, Math.min(MAX_FINGERPRINT_BITS, bits));
+  }
+
+  /** Returns the size of the filter for the given number of keys */
+  static int byteSize(int keyCount, int fingerprintBits) {
+    int segmentLength = segmentLength(keyCount);
+    int arrayLength = (segmentCount(keyCount, segmentLength) + ARITY - 1) * segmentLength;
+    return HEADER_SIZE + (int) ((arrayLength * (long) fingerprintBits + 7) / 8) + PADDING;
+  }
+
+  private static int segmentLength(int keyCount) {
+    if (keyCount == 0) {
+      return 4;
+    }
+    return Math.min(1 << 18, 1 << (int) Math.floor(Math.log(keyCount) / Math.log(3.33) + 2.25));
+  }
+
+  private static int segmentCount(int keyCount, int segmentLength) {
+    double sizeFactor =
+      keyCount <= 1 ? 0 : Math.max(1.125, 0.875 + 0.25 * Math.log(1000000) / Math.log(keyCount));
+    int capacity = (int) Math.round(keyCount * sizeFactor);
+    int segmentCount = (capacity + segmentLength - 1) / segmentLength - (ARITY - 1);
+    return Math.max(1, segmentCount);
+  }
+
+  @Override
+  public BloomFilterChunk createAnother() {
+    BinaryFuseFilterChunk chunk = new BinaryFuseFilterChunk(hashType, bloomType);
+    chunk.byteSize = byteSize;
+    chunk.hashCount = hashCount;
+    chunk.maxKeys = maxKeys;
+    return chunk;
+  }
+
+  @Override
+  public void allocBloom() {
+    if (this.keyHashes != null || this.bloom != null) {
+      throw new IllegalArgumentException("can only create bloom once.");
+    }
+    this.keyHashes = new long[maxKeys];
+  }
+
+  @Override
+  protected void setHashLoc(int hash1, int hash2) {
+    if (keyCount == keyHashes.length) {
+      keyHashes = Arrays.copyOf(keyHashes, keyHashes.length * 2);
+    }
+    keyHashes[keyCount++] = keyHash(hash1, hash2);
+  }
+
+  private static long keyHash(int hash1, int hash2) {
+    return ((long) hash1 << 32) | (hash2 & 0xFFFFFFFFL);
+  }
+
+  @Override
+  public double actualErrorRate() {
+    return Math.pow(2, -hashCount);
+  }
+
+  /**
+   * Builds the filter from the keys added so far. The key hashes are dropped after that, so no keys
+   * can be added once the chunk is compacted.
+   */
+  @Override
+  public void compactBloom() {
+    if (bloom != null) {
+      return;
+    }
+    long[] hashes = keyHashes;
+    Arrays.sort(hashes, 0, keyCount);
+    int size = 0;
+    for (int i = 0; i < keyCount; i++) {
+      // the same key may be added twice, and a duplicate would never peel
+      if (size == 0 || hashes[i] != hashes[size - 1]) {
+        hashes[size++] = hashes[i];
+      }
+    }
+    keyHashes = null;
+    bloom = ByteBuffer.wrap(build(hashes, size, hashCount));
+    byteSize = bloom.limit();
+    maxKeys = keyCount;
+  }
+
+  /**
+   * Builds the filter by peeling: a slot that only one key maps to can be given whatever
+   * fingerprint that key needs, after which the key no longer constrains its other two slots. Keys
+   * are peeled off until none are left, then fingerprints are assigned in the reverse order.
+   */
+  private static byte[] build(long[] keys, int size, int fingerprintBits) {
+    int segmentLength = segmentLength(size);
+    int segmentCount = segmentCount(size, segmentLength);
+    int arrayLength = (segmentCount + ARITY - 1) * segmentLength;
+    int segmentCountLength = segmentCount * segmentLength;
+    long[] reverseOrder = new long[size + 1];
+    byte[] reverseH = new byte[size];
+    int[] t2count = new int[arrayLength];
+    long[] t2hash = new long[arrayLength];
+    int[] alone = new int[arrayLength];
+    int[] h012 = new int[5];
+    int blockBits = 1;
+    while ((1 << blockBits) < segmentCount) {
+      blockBits++;
+    }
+    int block = 1 << blockBits;
+    int[] startPos = new int[block];
+    long seed = 0;
+    for (int attempt = 0;; attempt++) {
+      if (attempt == MAX_ATTEMPTS) {
+        throw new IllegalStateException("Could not build a binary fuse filter of " + size
+          + " keys in " + MAX_ATTEMPTS + " attempts");
+      }
+      seed = mix(0x9E3779B97F4A7C15L * (attempt + 1));
+      Arrays.fill(reverseOrder, 0, size, 0);
+      reverseOrder[size] = 1;
+      Arrays.fill(t2count, 0);
+      Arrays.fill(t2hash, 0);
+      // sort the hashes by segment, so that the slots are visited roughly in order
+      for (int i = 0; i < block; i++) {
+        startPos[i] = (int) ((long) i * size >> blockBits);
+      }
+      for (int i = 0; i < size; i++) {
+        long hash = mix(keys[i] + seed);
+        int segmentIndex = (int) (hash >>> (64 - blockBits));
+        while (reverseOrder[startPos[segmentIndex]] != 0) {
+          segmentIndex = (segmentIndex + 1) & (block - 1);
+        }
+        reverseOrder[startPos[segmentIndex]] = hash;
+        startPos[segmentIndex]++;
+      }
+      boolean overflow = false;
+      for (int i = 0; i < size; i++) {
+        long hash = reverseOrder[i];
+        positions(hash, segmentLength, segmentCountLength, h012);
+        for (int j = 0; j < ARITY; j++) {
+          int index = h012[j];
+          t2count[index] += 4;
+          t2count[index] ^= j;
+          t2hash[index] ^= hash;
+          overflow |= t2count[index] < 4;
+        }
+      }
+      if (overflow) {
+        continue;
+      }
+      int queueSize = 0;
+      for (int i = 0; i < arrayLength; i++) {
+        alone[queueSize] = i;
+        if ((t2count[i] >> 2) == 1) {
+          queueSize++;
+        }
+      }
+      int stackSize = 0;
+      while (queueSize > 0) {
+        int index = alone[--queueSize];
+        if ((t2count[index] >> 2) == 1) {
+          long hash = t2hash[index];
+          int found = t2count[index] & 3;
+          reverseH[stackSize] = (byte) found;
+          reverseOrder[stackSize] = hash;
+          stackSize++;
+          positions(hash, segmentLength, segmentCountLength, h012);
+          h012[3] = h012[0];
+          h012[4] = h012[1];
+          for (int j = 1; j < ARITY; j++) {
+            int other = h012[found + j];
+            alone[queueSize] = other;
+            if ((t2count[other] >> 2) == 2) {
+              queueSize++;
+            }
+            t2count[other] -= 4;
+            t2count[other] ^= (found + j) % ARITY;
+            t2hash[other] ^= hash;
+          }
+        }
+      }
+      if (stackSize == size) {
+        break;
+      }
+    }
+    byte[] filter = new byte[byteSize(size, fingerprintBits)];
+    Bytes.putLong(filter, 0, seed);
+    Bytes.putInt(filter, Bytes.SIZEOF_LONG, segmentLength);
+    Bytes.putInt(filter, Bytes.SIZEOF_LONG + Bytes.SIZEOF_INT, segmentCount);
+    for (int i = size - 1; i >= 0; i--) {
+      long hash = reverseOrder[i];
+      int found = reverseH[i];
+      positions(hash, segmentLength, segmentCountLength, h012);
+      h012[3] = h012[0];
+      h012[4] = h012[1];
+      int fingerprint = fingerprint(hash, fingerprintBits)
+        ^ getFingerprint(filter, h012[found + 1], fingerprintBits)
+        ^ getFingerprint(filter, h012[found + 2], fingerprintBits);
+      setFingerprint(filter, h012[found], fingerprintBits, fingerprint);
+    }
+    return filter;
+  }
+
+  /** The murmur3 64 bit finalizer */
+  private static long mix(long x) {
+    x ^= x >>> 33;
+    x *= 0xff51afd7ed558ccdL;
+    x ^= x >>> 33;
+    x *= 0xc4ceb9fe1a85ec53L;
+    x ^= x >>> 33;
+    return x;
+  }
+
+  /** Picks one slot in each of three consecutive segments */
+  private static void positions(long hash, int segmentLength, int segmentCountLength,
+    int[] h012) {
+    // the high half of an unsigned 64 x 32 bit multiply, a start segment in [0, segmentCount)
+    long hi = Math.multiplyHigh(hash, segmentCountLength) + ((hash >> 63) & segmentCountLength);
+    int segmentLengthMask = segmentLength - 1;
+    h012[0] = (int) hi;
+    h012[1] = (h012[0] + segmentLength) ^ (int) ((hash >>> 18) & segmentLengthMask);
+    h012[2] = (h012[0] + 2 * segmentLength) ^ (int) (hash & segmentLengthMask);
+  }
+
+  private static int fingerprint(long hash, int fingerprintBits) {
+    return (int) (hash ^ (hash >>> 32)) & ((1 << fingerprintBits) - 1);
+  }
+
+  private static int getFingerprint(byte[] filter, int index, int fingerprintBits) {
+    long bitPos = (long) index * fingerprintBits;
+    int pos = HEADER_SIZE + (int) (bitPos >>> 3);
+    int word =
+      (filter[pos] & 0xFF) | (filter[pos + 1] & 0xFF) << 8 | (filter[pos + 2] & 0xFF) << 16;
+    return (word >>> (bitPos & 7)) & ((1 << fingerprintBits) - 1);
+  }
+
+  private static void setFingerprint(byte[] filter, int index, int fingerprintBits,
+    int fingerprint) {
+    long bitPos = (long) index * fingerprintBits;
+    int pos = HEADER_SIZE + (int) (bitPos >>> 3);
+    int shift = (int) (bitPos & 7);
+    int mask = ((1 << fingerprintBits) - 1) << shift;
+    int word =
+      (filter[pos] & 0xFF) | (filter[pos + 1] & 0xFF) << 8 | (filter[pos + 2] & 0xFF) << 16;
+    word = (word & ~mask) | (fingerprint << shift);
+    filter[pos] = (byte) word;
+    filter[pos + 1] = (byte) (word >>> 8);
+    filter[pos + 2] = (byte) (word >>> 16);
+  }
+
+  @Override
+  public void writeBloom(DataOutput out) throws IOException {
+    if (bloom == null) {
+      compactBloom();
+    }
+    super.writeBloom(out);
+  }
+
+  public static boolean contains(byte[] buf, int offset, int length, ByteBuff filter,
+    int filterOffset, Hash hash, int fingerprintBits) {
+    return contains(filter, filterOffset, hash, fingerprintBits,
+      new ByteArrayHashKey(buf, offset, length));
+  }
+
+  public static boolean contains(Cell cell, ByteBuff filter, int filterOffset, Hash hash,
+    int fingerprintBits, BloomType type) {
+    HashKey<Cell> hashKey =
+      type == BloomType.ROWCOL ? new RowColBloomHashKey(cell) : new RowBloomHashKey(cell);
+    return contains(filter, filterOffset, hash, fingerprintBits, hashKey);
+  }
+
+  private static <T> boolean contains(ByteBuff filter, int filterOffset, Hash hash,
+    int fingerprintBits, HashKey<T> hashKey) {
+    int hash1 = hash.hash(hashKey, 0);
+    int hash2 = hash.hash(hashKey, hash1);
+    long seed = filter.getLong(filterOffset);
+    int segmentLength = filter.getInt(filterOffset + Bytes.SIZEOF_LONG);
+    int segmentCount = filter.getInt(filterOffset + Bytes.SIZEOF_LONG + Bytes.SIZEOF_INT);
+    long h = mix(keyHash(hash1, hash2) + seed);
+    int segmentCountLength = segmentCount * segmentLength;
+    long hi = Math.multiplyHigh(h, segmentCountLength) + ((h >> 63) & segmentCountLength);
+    int segmentLengthMask = segmentLength - 1;
+    int h0 = (int) hi;
+    int h1 = (h0 + segmentLength) ^ (int) ((h >>> 18) & segmentLengthMask);
+    int h2 = (h0 + 2 * segmentLength) ^ (int) (h & segmentLengthMask);
+    int fingerprintsOffset = filterOffset + HEADER_SIZE;
+    return fingerprint(h, fingerprintBits)
+        == (getFingerprint(filter, fingerprintsOffset, h0, fingerprintBits)
+          ^ getFingerprint(filter, fingerprintsOffset, h1, fingerprintBits)
+          ^ getFingerprint(filter, fingerprintsOffset, h2, fingerprintBits));
+  }
+
+  private static int getFingerprint(ByteBuff filter, int fingerprintsOffset, int index,
+    int fingerprintBits) {
+    long bitPos = (long) index * fingerprintBits;
+    int pos = fingerprintsOffset + (int) (bitPos >>> 3);
+    int word = (filter.get(pos) & 0xFF) | (filter.get(pos + 1) & 0xFF) << 8
+      | (filter.get(pos + 2) & 0xFF) << 16;
+    return (word >>> (bitPos & 7)) & ((1 << fingerprintBits) - 1);
+  }
+}
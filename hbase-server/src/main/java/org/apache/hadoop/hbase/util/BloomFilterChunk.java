@@ -186,7 +186,10 @@ public class BloomFilterChunk implements BloomFilterBase {
     setHashLoc(hash1, hash2);
   }
 
-  private void setHashLoc(int hash1, int hash2) {
+  /**
+   * Records a key by the two hashes it was given, every hash location is derived from those two.
+   */
+  protected void setHashLoc(int hash1, int hash2) {
     for (int i = 0; i < this.hashCount; i++) {
       long hashLoc = Math.abs((hash1 + i * hash2) % (this.byteSize * 8));
       set(hashLoc);
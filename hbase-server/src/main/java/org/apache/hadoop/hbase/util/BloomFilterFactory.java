@@ -74,6 +74,22 @@ public final class BloomFilterFactory {
    */
   public static final String IO_STOREFILE_BLOOM_BLOCK_SIZE = "io.storefile.bloom.block.size";
 
+  /**
+   * Whether to write general and Delete Family Bloom filters as binary fuse filters, which reach
+   * the same false positive rate in fewer bits per key. Can be set per column family through the
+   * family configuration. Readers that do not know the format turn the filter off.
+   */
+  public static final String IO_STOREFILE_BLOOM_BINARY_FUSE = "io.storefile.bloom.binary.fuse";
+
+  /**
+   * Longest row prefix recorded in a store file's row prefix filter. Every distinct row prefix of
+   * length 1 up to this value is added to the filter, so that scans bounded to a row prefix can
+   * skip files that hold no row starting with it. 0, the default, writes no row prefix filter. Can
+   * be set per column family through the family configuration.
+   */
+  public static final String IO_STOREFILE_ROW_PREFIX_FILTER_MAX_LENGTH =
+    "io.storefile.row.prefix.filter.max.length";
+
   /** Maximum number of times a Bloom filter can be "folded" if oversized */
   private static final int MAX_ALLOWED_FOLD_FACTOR = 7;
 
@@ -96,6 +112,9 @@ public final class BloomFilterFactory {
       case CompoundBloomFilterBase.VERSION:
         return new CompoundBloomFilter(meta, reader, metrics);
 
+      case CompoundBloomFilterBase.BINARY_FUSE_VERSION:
+        return new CompoundBloomFilter(meta, reader, metrics, true);
+
       default:
         throw new IllegalArgumentException("Bad bloom filter format version " + version);
     }
@@ -113,6 +132,16 @@ public final class BloomFilterFactory {
     return conf.getBoolean(IO_STOREFILE_DELETEFAMILY_BLOOM_ENABLED, true);
   }
 
+  /** Returns true if Bloom filters are to be written as binary fuse filters */
+  public static boolean isBinaryFuse(Configuration conf) {
+    return conf.getBoolean(IO_STOREFILE_BLOOM_BINARY_FUSE, false);
+  }
+
+  /** Returns the longest row prefix to record in the row prefix filter, 0 if disabled */
+  public static int getRowPrefixFilterMaxLength(Configuration conf) {
+    return conf.getInt(IO_STOREFILE_ROW_PREFIX_FILTER_MAX_LENGTH, 0);
+  }
+
   /** Returns the Bloom filter error rate in the given configuration */
   public static float getErrorRate(Configuration conf) {
     return conf.getFloat(IO_STOREFILE_BLOOM_ERROR_RATE, (float) 0.01);
@@ -169,7 +198,8 @@ public final class BloomFilterFactory {
     // In case of compound Bloom filters we ignore the maxKeys hint.
     CompoundBloomFilterWriter bloomWriter = new CompoundBloomFilterWriter(getBloomBlockSize(conf),
       err, Hash.getHashType(conf), maxFold, cacheConf.shouldCacheBloomsOnWrite(),
-      bloomType == BloomType.ROWCOL ? CellComparatorImpl.COMPARATOR : null, bloomType);
+      bloomType == BloomType.ROWCOL ? CellComparatorImpl.COMPARATOR : null, bloomType,
+      isBinaryFuse(conf));
     writer.addInlineBlockWriter(bloomWriter);
     return bloomWriter;
   }
@@ -197,7 +227,28 @@ public final class BloomFilterFactory {
     // In case of compound Bloom filters we ignore the maxKeys hint.
     CompoundBloomFilterWriter bloomWriter =
       new CompoundBloomFilterWriter(getBloomBlockSize(conf), err, Hash.getHashType(conf), maxFold,
-        cacheConf.shouldCacheBloomsOnWrite(), null, BloomType.ROW);
+        cacheConf.shouldCacheBloomsOnWrite(), null, BloomType.ROW, isBinaryFuse(conf));
+    writer.addInlineBlockWriter(bloomWriter);
+    return bloomWriter;
+  }
+
+  /**
+   * Creates a new row prefix filter at the time of
+   * {@link org.apache.hadoop.hbase.regionserver.HStoreFile} writing. The filter is a row Bloom
+   * filter over the row prefixes of the file, see
+   * {@link #IO_STOREFILE_ROW_PREFIX_FILTER_MAX_LENGTH}.
+   * @param writer the HFile writer
+   * @return the new filter, or null in case the row prefix filter is disabled
+   */
+  public static BloomFilterWriter createRowPrefixFilterAtWrite(Configuration conf,
+    CacheConfig cacheConf, HFile.Writer writer) {
+    if (getRowPrefixFilterMaxLength(conf) <= 0) {
+      return null;
+    }
+
+    CompoundBloomFilterWriter bloomWriter = new CompoundBloomFilterWriter(getBloomBlockSize(conf),
+      getErrorRate(conf), Hash.getHashType(conf), getMaxFold(conf),
+      cacheConf.shouldCacheBloomsOnWrite(), null, BloomType.ROW, isBinaryFuse(conf));
     writer.addInlineBlockWriter(bloomWriter);
     return bloomWriter;
   }
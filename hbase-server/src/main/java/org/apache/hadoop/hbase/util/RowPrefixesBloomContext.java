@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import java.io.IOException;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Handles the row prefix filter context. For every new row it adds the row prefixes of length 1 up
+ * to {@code maxLength} that the previous row did not already add. Rows come in sorted order, so
+ * the prefixes are added in strictly increasing order and each one is added once, which lets a
+ * plain row Bloom lookup of a prefix find the chunk holding it.
+ */
+@InterfaceAudience.Private
+public class RowPrefixesBloomContext extends BloomContext {
+  private final int maxLength;
+
+  public RowPrefixesBloomContext(BloomFilterWriter bloomFilterWriter, CellComparator comparator,
+    int maxLength) {
+    super(bloomFilterWriter, comparator);
+    this.maxLength = maxLength;
+  }
+
+  @Override
+  public void writeBloom(ExtendedCell cell) throws IOException {
+    if (!isNewKey(cell)) {
+      return;
+    }
+    byte[] row = CellUtil.cloneRow(cell);
+    int length = Math.min(row.length, maxLength);
+    // The last added prefix is the previous row capped at maxLength, so everything up to the
+    // common prefix with it has been added already
+    Cell last = getLastCell();
+    int added = last == null
+      ? 0
+      : Bytes.findCommonPrefix(row, last.getRowArray(), length, last.getRowLength(), 0,
+        last.getRowOffset());
+    for (int i = added + 1; i <= length; i++) {
+      bloomFilterWriter.append(PrivateCellUtil.createFirstOnRow(row, 0, (short) i));
+    }
+  }
+
+  @Override
+  public void addLastBloomKey(HFile.Writer writer) throws IOException {
+    // Lookups only go through the chunk index, there is no last key to record
+  }
+
+  @Override
+  protected boolean isNewKey(ExtendedCell cell) {
+    Cell last = getLastCell();
+    if (last == null) {
+      return true;
+    }
+    // The last added prefix is the previous row capped at maxLength, only a row with another capped
+    // prefix has something to add
+    short length = (short) Math.min(cell.getRowLength(), maxLength);
+    return !CellUtil.matchingRows(cell, length, last, last.getRowLength());
+  }
+}
@@ -191,6 +191,17 @@ public class TestRegionCoprocessorHost {
       "Region coprocessor doesn't implement postScannerFilterRow");
   }
 
+  @Test
+  public void testHasRegionObservers() throws IOException {
+    RegionCoprocessorHost host = new RegionCoprocessorHost(region, rsServices, conf);
+    assertTrue(host.hasRegionObservers());
+
+    when(region.getTableDescriptor())
+      .thenReturn(TableDescriptorBuilder.newBuilder(regionInfo.getTable()).build());
+    host = new RegionCoprocessorHost(region, rsServices, conf);
+    assertFalse(host.hasRegionObservers());
+  }
+
   private void verifyScanInfo(ScanInfo newScanInfo) {
     assertEquals(KeepDeletedCells.TRUE, newScanInfo.getKeepDeletedCells());
     assertEquals(MAX_VERSIONS, newScanInfo.getMaxVersions());
@@ -361,6 +361,105 @@ public class TestDataBlockEncoders {
     }
   }
 
+  /**
+   * PREFIX_RESTART jumps to a restart point before scanning, so it must land on exactly the cell
+   * PREFIX reaches by decoding from the current position, for fresh seeks as well as reseeks.
+   */
+  @TestTemplate
+  public void testPrefixRestartSeeksLikePrefix() throws IOException {
+    List<KeyValue> sampleKv = generator.generateTestKeyValues(NUMBER_OF_KV, includesTags);
+    HFileContext meta =
+      new HFileContextBuilder().withHBaseCheckSum(false).withIncludesMvcc(includesMemstoreTS)
+        .withIncludesTags(includesTags).withCompression(Compression.Algorithm.NONE).build();
+    DataBlockEncoder.EncodedSeeker[] seekers = new DataBlockEncoder.EncodedSeeker[2];
+    DataBlockEncoding[] encodings = { DataBlockEncoding.PREFIX, DataBlockEncoding.PREFIX_RESTART };
+    for (int i = 0; i < encodings.length; i++) {
+      DataBlockEncoder encoder = encodings[i].getEncoder();
+      ByteBuffer encodedBuffer = encodeKeyValues(encodings[i], sampleKv,
+        getEncodingContext(conf, Compression.Algorithm.NONE, encodings[i]), this.useOffheapData);
+      seekers[i] = encoder.createSeeker(encoder.newDataBlockDecodingContext(conf, meta));
+      seekers[i].setCurrentBuffer(new SingleByteBuff(encodedBuffer));
+    }
+    Random rand = ThreadLocalRandom.current();
+    for (boolean seekBefore : new boolean[] { false, true }) {
+      for (int i = 0; i < NUM_RANDOM_SEEKS; ++i) {
+        KeyValue kv = sampleKv.get(rand.nextInt(sampleKv.size() - 1) + 1);
+        ExtendedCell seekKey = rand.nextBoolean() ? kv : PrivateCellUtil.createLastOnRowCol(kv);
+        int[] results = new int[2];
+        for (int j = 0; j < seekers.length; j++) {
+          seekers[j].rewind();
+          results[j] = seekers[j].seekToKeyInBlock(seekKey, seekBefore);
+        }
+        assertEquals(results[0], results[1]);
+        assertTrue(PrivateCellUtil.equals(seekers[0].getCell(), seekers[1].getCell()));
+        assertEquals(seekers[0].getValueShallowCopy(), seekers[1].getValueShallowCopy());
+      }
+    }
+
+    // ascending seeks without rewinding, as reseek does
+    for (DataBlockEncoder.EncodedSeeker seeker : seekers) {
+      seeker.rewind();
+    }
+    for (int i = 0; i < sampleKv.size(); i += 1 + rand.nextInt(40)) {
+      KeyValue kv = sampleKv.get(i);
+      assertEquals(seekers[0].seekToKeyInBlock(kv, false), seekers[1].seekToKeyInBlock(kv, false));
+      assertTrue(PrivateCellUtil.equals(seekers[0].getCell(), seekers[1].getCell()));
+    }
+  }
+
+  /**
+   * Wide rows repeating the same qualifiers and timestamp, which COLUMNAR should store in less
+   * space than FAST_DIFF while still seeking to every cell.
+   */
+  @TestTemplate
+  public void testColumnarOnWideRows() throws IOException {
+    List<KeyValue> kvs = new ArrayList<>();
+    Random rand = new Random(12345);
+    for (int r = 0; r < 10; r++) {
+      byte[] row = Bytes.toBytes(String.format("row-%08d", rand.nextInt(100000000)) + r);
+      for (int q = 0; q < 200; q++) {
+        byte[] qualifier = Bytes.toBytes(String.format("metric_%04d", q));
+        byte[] value = Bytes.toBytes(rand.nextLong());
+        kvs.add(includesTags
+          ? new KeyValue(row, Bytes.toBytes("f"), qualifier, 1000L, value,
+            new Tag[] { new ArrayBackedTag((byte) 1, Bytes.toBytes(q)) })
+          : new KeyValue(row, Bytes.toBytes("f"), qualifier, 1000L, value));
+      }
+    }
+    kvs.sort(CellComparatorImpl.COMPARATOR);
+    for (KeyValue kv : kvs) {
+      kv.setSequenceId(includesMemstoreTS ? rand.nextInt(1000) : 0);
+    }
+    ByteBuffer fastDiff = encodeKeyValues(DataBlockEncoding.FAST_DIFF, kvs,
+      getEncodingContext(conf, Compression.Algorithm.NONE, DataBlockEncoding.FAST_DIFF),
+      this.useOffheapData);
+    DataBlockEncoding encoding = DataBlockEncoding.COLUMNAR;
+    DataBlockEncoder encoder = encoding.getEncoder();
+    ByteBuffer columnar = encodeKeyValues(encoding, kvs,
+      getEncodingContext(conf, Compression.Algorithm.NONE, encoding), this.useOffheapData);
+    assertTrue(columnar.remaining() < fastDiff.remaining(),
+      "COLUMNAR " + columnar.remaining() + " FAST_DIFF " + fastDiff.remaining());
+
+    HFileContext meta =
+      new HFileContextBuilder().withHBaseCheckSum(false).withIncludesMvcc(includesMemstoreTS)
+        .withIncludesTags(includesTags).withCompression(Compression.Algorithm.NONE).build();
+    DataBlockEncoder.EncodedSeeker seeker =
+      encoder.createSeeker(encoder.newDataBlockDecodingContext(conf, meta));
+    seeker.setCurrentBuffer(new SingleByteBuff(columnar));
+    for (int i = 0; i < kvs.size(); i += 7) {
+      seeker.rewind();
+      assertEquals(0, seeker.seekToKeyInBlock(kvs.get(i), false));
+      assertTrue(PrivateCellUtil.equals(kvs.get(i), seeker.getCell()));
+      assertTrue(CellUtil.matchingValue(kvs.get(i), seeker.getCell()));
+      if (i > 0) {
+        seeker.rewind();
+        assertEquals(1, seeker.seekToKeyInBlock(kvs.get(i), true));
+        assertTrue(PrivateCellUtil.equals(kvs.get(i - 1), seeker.getCell()));
+        assertTrue(CellUtil.matchingValue(kvs.get(i - 1), seeker.getCell()));
+      }
+    }
+  }
+
   @TestTemplate
   public void testRowIndexWithTagsButNoTagsInCell() throws IOException {
     List<KeyValue> kvList = new ArrayList<>();
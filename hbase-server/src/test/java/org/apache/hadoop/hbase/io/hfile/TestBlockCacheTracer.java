@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseCommonTestingUtil;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheTraceRecord.Caller;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag(IOTests.TAG)
+@Tag(SmallTests.TAG)
+public class TestBlockCacheTracer {
+
+  private static final HBaseCommonTestingUtil TEST_UTIL = new HBaseCommonTestingUtil();
+
+  @AfterEach
+  public void tearDown() {
+    BlockCacheTracer.stop();
+  }
+
+  private File startTrace(String name, long capacity) {
+    File file = new File(TEST_UTIL.getDataTestDir(name).toString());
+    file.getParentFile().mkdirs();
+    Configuration conf = TEST_UTIL.getConfiguration();
+    conf.set(BlockCacheTracer.TRACE_FILE_KEY, file.getAbsolutePath());
+    conf.setLong(BlockCacheTracer.TRACE_MAX_RECORDS_KEY, capacity);
+    BlockCacheTracer.startIfConfigured(conf);
+    assertTrue(BlockCacheTracer.isEnabled());
+    return file;
+  }
+
+  @Test
+  public void testRecordsRoundTrip() throws Exception {
+    File file = startTrace("testRecordsRoundTrip", 100);
+    BlockCacheKey data = new BlockCacheKey("file1", 0, true, BlockType.DATA);
+    BlockCacheKey index = new BlockCacheKey("file1", 65536, false, BlockType.LEAF_INDEX);
+    BlockCacheTracer.record(data, BlockType.DATA, 65536, Caller.GET, false, true, false);
+    BlockCacheTracer.record(data, BlockType.DATA, 65536, Caller.SCAN, true, true, false);
+    BlockCacheTracer.record(index, BlockType.LEAF_INDEX, 1024, Caller.COMPACTION, false, false,
+      true);
+    BlockCacheTracer.stop();
+    assertFalse(BlockCacheTracer.isEnabled());
+
+    try (BlockCacheTraceReader reader = new BlockCacheTraceReader(file)) {
+      assertEquals(3, reader.getCount());
+      BlockCacheTraceRecord r1 = reader.next();
+      assertEquals(BlockType.DATA, r1.getBlockType());
+      assertEquals(65536, r1.getSize());
+      assertEquals(Caller.GET, r1.getCaller());
+      assertFalse(r1.isHit());
+      assertTrue(r1.isCache());
+      assertTrue(r1.isPrimary());
+      BlockCacheTraceRecord r2 = reader.next();
+      assertEquals(r1.getKeyHash(), r2.getKeyHash());
+      assertEquals(Caller.SCAN, r2.getCaller());
+      assertTrue(r2.isHit());
+      BlockCacheTraceRecord r3 = reader.next();
+      assertNotEquals(r1.getKeyHash(), r3.getKeyHash());
+      assertEquals(BlockType.LEAF_INDEX, r3.getBlockType());
+      assertEquals(Caller.COMPACTION, r3.getCaller());
+      assertFalse(r3.isCache());
+      assertTrue(r3.isInMemory());
+      assertFalse(r3.isPrimary());
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void testRingKeepsNewestRecords() throws Exception {
+    File file = startTrace("testRingKeepsNewestRecords", 4);
+    for (int i = 0; i < 10; i++) {
+      BlockCacheTracer.record(new BlockCacheKey("file1", i), BlockType.DATA, i, Caller.GET, false,
+        true, false);
+    }
+    BlockCacheTracer.stop();
+
+    try (BlockCacheTraceReader reader = new BlockCacheTraceReader(file)) {
+      assertEquals(4, reader.getCount());
+      for (int i = 6; i < 10; i++) {
+        assertEquals(i, reader.next().getSize());
+      }
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void testNotEnabledByDefault() {
+    BlockCacheTracer.startIfConfigured(new Configuration());
+    assertFalse(BlockCacheTracer.isEnabled());
+    // must be a no-op
+    BlockCacheTracer.record(new BlockCacheKey("file1", 0), BlockType.DATA, 1, Caller.GET, true,
+      true, false);
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.Waiter;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.monitoring.ThreadLocalServerSideScanMetrics;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test that scanners read the blocks following their current block into the block cache.
+ */
+@Tag(IOTests.TAG)
+@Tag(SmallTests.TAG)
+public class TestBlockReadAhead {
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int NUM_ROWS = 2000;
+
+  private static ThreadPoolExecutor pool;
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @BeforeAll
+  public static void setUpBeforeClass() {
+    pool = newPool(4);
+  }
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setInt(BlockReadAhead.MAX_BLOCKS_KEY, 8);
+    fs = TEST_UTIL.getTestFileSystem();
+  }
+
+  @AfterAll
+  public static void tearDownAfterClass() throws Exception {
+    pool.shutdownNow();
+    TEST_UTIL.cleanupTestDir();
+  }
+
+  private static ThreadPoolExecutor newPool(int threads) {
+    return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>());
+  }
+
+  @Test
+  public void testReadAhead() throws Exception {
+    Path path = writeHFile("testReadAhead");
+    BlockCache cache = BlockCacheFactory.createBlockCache(conf);
+    CacheConfig cacheConf = new CacheConfig(conf, null, cache, ByteBuffAllocator.HEAP);
+    cacheConf.setReadAheadPool(pool);
+    boolean scanMetricsEnabled = ThreadLocalServerSideScanMetrics.isScanMetricsEnabled();
+    ThreadLocalServerSideScanMetrics.setScanMetricsEnabled(true);
+    ThreadLocalServerSideScanMetrics.reset();
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf);
+      HFileScanner scanner = reader.getScanner(conf, true, true)) {
+      HFileReaderImpl.HFileScannerImpl scannerImpl = (HFileReaderImpl.HFileScannerImpl) scanner;
+      BlockReadAhead readAhead = scannerImpl.getReadAhead();
+      assertNotNull(readAhead);
+      assertTrue(scanner.seekTo());
+      int rows = 0;
+      int blocks = 1;
+      long blockOffset = scannerImpl.getCurBlock().getOffset();
+      do {
+        assertEquals(Bytes.toString(row(rows)), Bytes.toString(
+          Bytes.copy(scanner.getCell().getRowArray(), scanner.getCell().getRowOffset(),
+            scanner.getCell().getRowLength())));
+        rows++;
+        if (scannerImpl.getCurBlock().getOffset() != blockOffset) {
+          blockOffset = scannerImpl.getCurBlock().getOffset();
+          blocks++;
+          // let the background reads finish, so that the scanner never catches up with them
+          Waiter.waitFor(conf, 10000, () -> !readAhead.isReading());
+        }
+      } while (scanner.next());
+      assertEquals(NUM_ROWS, rows);
+      assertTrue(blocks > 10, "Too few data blocks: " + blocks);
+      // the first block is found by the seek and the second restarts the read-ahead after it,
+      // every other block was read ahead
+      assertEquals(blocks - 2, readAhead.getHits());
+      assertEquals(BlockReadAhead.INITIAL_BLOCKS, readAhead.getWindow());
+      assertEquals(blocks - 2, ThreadLocalServerSideScanMetrics.getBlockReadAheadHitsAndReset());
+    } finally {
+      ThreadLocalServerSideScanMetrics.setScanMetricsEnabled(scanMetricsEnabled);
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testReadAheadFastScanner() throws Exception {
+    Path path = writeHFile("testReadAheadFastScanner");
+    BlockCache cache = BlockCacheFactory.createBlockCache(conf);
+    CacheConfig cacheConf = new CacheConfig(conf, null, cache, ByteBuffAllocator.HEAP);
+    cacheConf.setReadAheadPool(pool);
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf);
+      HFileScanner scanner = reader.getScanner(conf, true, true)) {
+      BlockReadAhead readAhead = ((HFileReaderImpl.HFileScannerImpl) scanner).getReadAhead();
+      assertTrue(scanner.seekTo());
+      int rows = 0;
+      do {
+        assertEquals(Bytes.toString(row(rows)), Bytes.toString(
+          Bytes.copy(scanner.getCell().getRowArray(), scanner.getCell().getRowOffset(),
+            scanner.getCell().getRowLength())));
+        rows++;
+      } while (scanner.next());
+      assertEquals(NUM_ROWS, rows);
+      // the window grows when the scanner catches up with the read-ahead, never past the maximum
+      assertTrue(readAhead.getWindow() >= BlockReadAhead.INITIAL_BLOCKS);
+      assertTrue(readAhead.getWindow() <= 8);
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testNoReadAheadWithoutBlockCaching() throws Exception {
+    Path path = writeHFile("testNoReadAheadWithoutBlockCaching");
+    BlockCache cache = BlockCacheFactory.createBlockCache(conf);
+    CacheConfig cacheConf = new CacheConfig(conf, null, cache, ByteBuffAllocator.HEAP);
+    cacheConf.setReadAheadPool(pool);
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      try (HFileScanner scanner = reader.getScanner(conf, false, true)) {
+        assertNull(((HFileReaderImpl.HFileScannerImpl) scanner).getReadAhead());
+      }
+      try (HFileScanner scanner = reader.getScanner(conf, true, true, true)) {
+        assertNull(((HFileReaderImpl.HFileScannerImpl) scanner).getReadAhead());
+      }
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testNoReadAheadWithoutPool() throws Exception {
+    Path path = writeHFile("testNoReadAheadWithoutPool");
+    BlockCache cache = BlockCacheFactory.createBlockCache(conf);
+    CacheConfig cacheConf = new CacheConfig(conf, null, cache, ByteBuffAllocator.HEAP);
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf);
+      HFileScanner scanner = reader.getScanner(conf, true, true)) {
+      assertNull(((HFileReaderImpl.HFileScannerImpl) scanner).getReadAhead());
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testDropReadAheadWhenQueueIsFull() throws Exception {
+    Path path = writeHFile("testDropReadAheadWhenQueueIsFull");
+    conf.setInt(BlockReadAhead.QUEUE_SIZE_KEY, 1);
+    BlockCache cache = BlockCacheFactory.createBlockCache(conf);
+    CacheConfig cacheConf = new CacheConfig(conf, null, cache, ByteBuffAllocator.HEAP);
+    ThreadPoolExecutor busyPool = newPool(1);
+    cacheConf.setReadAheadPool(busyPool);
+    CountDownLatch latch = new CountDownLatch(1);
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf);
+      HFileScanner scanner = reader.getScanner(conf, true, true)) {
+      // the only thread is busy and the queue is full
+      busyPool.execute(() -> {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      busyPool.execute(() -> {
+      });
+      BlockReadAhead readAhead = ((HFileReaderImpl.HFileScannerImpl) scanner).getReadAhead();
+      assertTrue(scanner.seekTo());
+      int rows = 0;
+      do {
+        rows++;
+      } while (scanner.next());
+      assertEquals(NUM_ROWS, rows);
+      // every read-ahead was dropped, the scanner read all blocks itself
+      assertFalse(readAhead.isReading());
+      assertEquals(0, readAhead.getHits());
+      assertEquals(1, busyPool.getQueue().size());
+    } finally {
+      latch.countDown();
+      busyPool.shutdownNow();
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testQueuedReadAheadPinsFile() throws Exception {
+    Path path = writeHFile("testQueuedReadAheadPinsFile");
+    BlockCache cache = BlockCacheFactory.createBlockCache(conf);
+    CacheConfig cacheConf = new CacheConfig(conf, null, cache, ByteBuffAllocator.HEAP);
+    ThreadPoolExecutor busyPool = newPool(1);
+    cacheConf.setReadAheadPool(busyPool);
+    CountDownLatch latch = new CountDownLatch(1);
+    AtomicInteger pins = new AtomicInteger();
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      ((HFileReaderImpl) reader).setFilePin(new HFileReaderImpl.FilePin() {
+        @Override
+        public void pin() {
+          pins.incrementAndGet();
+        }
+
+        @Override
+        public void unpin() {
+          pins.decrementAndGet();
+        }
+      });
+      busyPool.execute(() -> {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      BlockReadAhead readAhead;
+      long cachedBlocks;
+      try (HFileScanner scanner = reader.getScanner(conf, true, true)) {
+        HFileReaderImpl.HFileScannerImpl scannerImpl = (HFileReaderImpl.HFileScannerImpl) scanner;
+        readAhead = scannerImpl.getReadAhead();
+        assertTrue(scanner.seekTo());
+        long blockOffset = scannerImpl.getCurBlock().getOffset();
+        while (scannerImpl.getCurBlock().getOffset() == blockOffset) {
+          assertTrue(scanner.next());
+        }
+        // the scanner moved to its second block and queued a read-ahead, which pins the file
+        assertTrue(readAhead.isReading());
+        assertEquals(1, pins.get());
+        cachedBlocks = cache.getBlockCount();
+      }
+      // the scanner is closed, the queued read-ahead does not read and lets the file go
+      latch.countDown();
+      Waiter.waitFor(conf, 10000, () -> !readAhead.isReading());
+      assertEquals(0, pins.get());
+      assertEquals(cachedBlocks, cache.getBlockCount());
+    } finally {
+      latch.countDown();
+      busyPool.shutdownNow();
+      cache.shutdown();
+    }
+  }
+
+  private Path writeHFile(String name) throws IOException {
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name);
+    HFileContext context = new HFileContextBuilder().withBlockSize(1024).build();
+    try (HFile.Writer writer =
+      HFile.getWriterFactoryNoCache(conf).withPath(fs, path).withFileContext(context).create()) {
+      for (int i = 0; i < NUM_ROWS; i++) {
+        writer.append(new KeyValue(row(i), FAMILY, QUALIFIER, 1L, Bytes.toBytes(i)));
+      }
+    }
+    return path;
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row%05d", i));
+  }
+}
@@ -19,6 +19,7 @@ package org.apache.hadoop.hbase.io.hfile;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -262,6 +263,24 @@ public class TestCacheConfig {
     assertFalse(cacheConfig.shouldCacheIndexesOnWrite());
   }
 
+  @Test
+  public void testCacheDataCompressedPerFamily() {
+    Configuration conf = HBaseConfiguration.create();
+    ColumnFamilyDescriptor family = ColumnFamilyDescriptorBuilder.newBuilder(Bytes.toBytes("f"))
+      .setConfiguration(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_KEY, "true").build();
+    CacheConfig cacheConfig = new CacheConfig(conf, family, null, ByteBuffAllocator.HEAP);
+    assertTrue(cacheConfig.shouldCacheDataCompressed());
+    assertFalse(new CacheConfig(conf).shouldCacheDataCompressed());
+
+    // the family setting wins over the global one
+    conf.setBoolean(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_KEY, true);
+    family = ColumnFamilyDescriptorBuilder.newBuilder(Bytes.toBytes("f"))
+      .setConfiguration(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_KEY, "false").build();
+    cacheConfig = new CacheConfig(conf, family, null, ByteBuffAllocator.HEAP);
+    assertFalse(cacheConfig.shouldCacheDataCompressed());
+    assertTrue(new CacheConfig(conf).shouldCacheDataCompressed());
+  }
+
   @Test
   public void testCacheConfigDefaultLRUBlockCache() {
     CacheConfig cc = new CacheConfig(this.conf);
@@ -367,6 +386,25 @@ public class TestCacheConfig {
     assertEquals(initialL1BlockCount, lbc.getBlockCount());
   }
 
+  @Test
+  public void testTieredBucketCacheConfig() {
+    this.conf.set(HConstants.BUCKET_CACHE_IOENGINE_KEY, "offheap");
+    this.conf.setInt(HConstants.BUCKET_CACHE_SIZE_KEY, 32);
+    String tierPrefix = BlockCacheFactory.BUCKET_CACHE_TIER_KEY_PREFIX + 1;
+    this.conf.set(tierPrefix + BlockCacheFactory.BUCKET_CACHE_TIER_IOENGINE_SUFFIX, "offheap");
+    this.conf.set(tierPrefix + BlockCacheFactory.BUCKET_CACHE_TIER_SIZE_SUFFIX, "64m");
+    BlockCache blockCache = BlockCacheFactory.createBlockCache(this.conf);
+    try {
+      BucketCache bc = (BucketCache) ((CombinedBlockCache) blockCache).l2Cache;
+      assertEquals(32 * 1024 * 1024, bc.getMaxSize());
+      BucketCache nextTier = bc.getNextTier();
+      assertEquals(64 * 1024 * 1024, nextTier.getMaxSize());
+      assertNull(nextTier.getNextTier());
+    } finally {
+      blockCache.shutdown();
+    }
+  }
+
   @Test
   public void testL2CacheWithInvalidBucketSize() {
     Configuration c = new Configuration(this.conf);
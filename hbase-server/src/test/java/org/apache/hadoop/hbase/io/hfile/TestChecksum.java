@@ -109,11 +109,44 @@ public class TestChecksum {
     mbb.position(0).limit(buf.remaining());
     assertEquals(mbb.remaining(), buf.remaining());
     assertTrue(mbb.remaining() > size);
-    ChecksumUtil.validateChecksum(mbb, "test", 0, HConstants.HFILEBLOCK_HEADER_SIZE_NO_CHECKSUM);
+    assertTrue(
+      ChecksumUtil.validateChecksum(mbb, "test", 0, HConstants.HFILEBLOCK_HEADER_SIZE_NO_CHECKSUM));
   }
 
   private void verifySBBCheckSum(ByteBuff buf) throws IOException {
-    ChecksumUtil.validateChecksum(buf, "test", 0, HConstants.HFILEBLOCK_HEADER_SIZE_NO_CHECKSUM);
+    assertTrue(
+      ChecksumUtil.validateChecksum(buf, "test", 0, HConstants.HFILEBLOCK_HEADER_SIZE_NO_CHECKSUM));
+  }
+
+  /**
+   * Spreads the block over direct buffers of uneven sizes, so checksum chunks start and end in the
+   * middle of them, and checks that a flipped bit in any of the buffers is caught.
+   */
+  private void verifyDirectMBBCheckSum(ByteBuff buf, ChecksumType ckt) throws IOException {
+    int[] sizes = { 1000, 777, 1, 4099 };
+    ByteBuffer[] items = new ByteBuffer[sizes.length + 1];
+    int total = 0;
+    for (int i = 0; i < sizes.length; i++) {
+      items[i] = ByteBuffer.allocateDirect(sizes[i]);
+      total += sizes[i];
+    }
+    assertTrue(buf.remaining() > total);
+    items[sizes.length] = ByteBuffer.allocateDirect(buf.remaining() - total);
+    ByteBuff mbb = new MultiByteBuff(items);
+    for (int i = buf.position(); i < buf.limit(); i++) {
+      mbb.put(buf.get(i));
+    }
+    mbb.rewind();
+    assertTrue(
+      ChecksumUtil.validateChecksum(mbb, "test", 0, HConstants.HFILEBLOCK_HEADER_SIZE_NO_CHECKSUM));
+    int onDiskDataSizeWithHeader =
+      mbb.getInt(HFileBlock.Header.ON_DISK_DATA_SIZE_WITH_HEADER_INDEX);
+    for (int corrupt : new int[] { 1500, 1777, 5000, onDiskDataSizeWithHeader - 1 }) {
+      mbb.put(corrupt, (byte) (mbb.get(corrupt) ^ 1));
+      assertEquals(ckt == ChecksumType.NULL, ChecksumUtil.validateChecksum(mbb, "test", 0,
+        HConstants.HFILEBLOCK_HEADER_SIZE_NO_CHECKSUM));
+      mbb.put(corrupt, (byte) (mbb.get(corrupt) ^ 1));
+    }
   }
 
   @Test
@@ -151,6 +184,7 @@ public class TestChecksum {
 
       // verify MultiByteBuff checksum.
       verifyMBBCheckSum(bufferWithChecksum);
+      verifyDirectMBBCheckSum(bufferWithChecksum, ckt);
 
       ByteBuff data = b.getBufferWithoutHeader();
       for (int i = 0; i < intCount; i++) {
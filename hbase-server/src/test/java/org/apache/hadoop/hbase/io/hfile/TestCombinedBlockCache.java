@@ -21,6 +21,7 @@ import static org.apache.hadoop.hbase.HConstants.BUCKET_CACHE_IOENGINE_KEY;
 import static org.apache.hadoop.hbase.HConstants.BUCKET_CACHE_SIZE_KEY;
 import static org.apache.hadoop.hbase.io.ByteBuffAllocator.HEAP;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.ByteBuffer;
@@ -129,6 +130,34 @@ public class TestCombinedBlockCache {
     testCombinedBlockCacheStats(null, 0, 1);
   }
 
+  @Test
+  public void testGetBlocks() throws Exception {
+    CombinedBlockCache blockCache = createCombinedBlockCache();
+    BlockCacheKey metaKey = new BlockCacheKey("key1", 0, false, BlockType.META);
+    BlockCacheKey dataKey = new BlockCacheKey("key1", 200, false, BlockType.DATA);
+    BlockCacheKey missingKey = new BlockCacheKey("key1", 400, false, BlockType.DATA);
+    blockCache.cacheBlock(metaKey, createBlock(BlockType.META));
+    blockCache.cacheBlock(dataKey, createBlock(BlockType.DATA));
+    Cacheable[] blocks =
+      blockCache.getBlocks(new BlockCacheKey[] { metaKey, dataKey, missingKey }, true, true);
+    assertEquals(BlockType.META, blocks[0].getBlockType());
+    assertEquals(BlockType.DATA, blocks[1].getBlockType());
+    assertNull(blocks[2]);
+    blocks[0].release();
+    blocks[1].release();
+    assertEquals(1, blockCache.getFirstLevelCache().getStats().getHitCount());
+    assertEquals(0, blockCache.getFirstLevelCache().getStats().getMissCount());
+    assertEquals(1, blockCache.getSecondLevelCache().getStats().getHitCount());
+    assertEquals(1, blockCache.getSecondLevelCache().getStats().getMissCount());
+  }
+
+  private static HFileBlock createBlock(BlockType type) {
+    int size = 100;
+    byte[] byteArr = new byte[HConstants.HFILEBLOCK_HEADER_SIZE + size];
+    return new HFileBlock(type, size, size, -1, ByteBuff.wrap(ByteBuffer.wrap(byteArr, 0, size)),
+      HFileBlock.FILL_HEADER, -1, 52, -1, new HFileContextBuilder().build(), HEAP);
+  }
+
   private CombinedBlockCache createCombinedBlockCache() {
     Configuration conf = UTIL.getConfiguration();
     conf.set(BUCKET_CACHE_IOENGINE_KEY, "offheap");
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.HStore;
+import org.apache.hadoop.hbase.regionserver.HStoreFile;
+import org.apache.hadoop.hbase.regionserver.InternalScanner;
+import org.apache.hadoop.hbase.regionserver.StoreFileScanner;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test that data block time ranges survive a round trip and let time range scans skip old blocks.
+ */
+@Tag(IOTests.TAG)
+@Tag(SmallTests.TAG)
+public class TestDataBlockTimeRanges {
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int NUM_ROWS = 500;
+
+  @AfterAll
+  public static void tearDownAfterClass() throws Exception {
+    TEST_UTIL.cleanupTestDir();
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    DataBlockTimeRanges ranges = new DataBlockTimeRanges();
+    long offset = 0;
+    for (int i = 0; i < 100; i++) {
+      ranges.add(offset, 1000 + i, i * 10L, i % 7 == 0 ? Long.MAX_VALUE : i * 10L + 5);
+      // leave a gap every now and then, like inline index and Bloom blocks do
+      offset += 1000 + i + (i % 10 == 0 ? 333 : 0);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ranges.write(new DataOutputStream(bytes));
+
+    DataBlockTimeRanges read = new DataBlockTimeRanges();
+    read.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(ranges.size(), read.size());
+    for (int i = 0; i < ranges.size(); i++) {
+      assertEquals(ranges.getOffset(i), read.getOffset(i));
+      assertEquals(ranges.getOnDiskSize(i), read.getOnDiskSize(i));
+      assertEquals(ranges.getMinTimestamp(i), read.getMinTimestamp(i));
+      assertEquals(ranges.getMaxTimestamp(i), read.getMaxTimestamp(i));
+      assertEquals(i, read.indexOf(ranges.getOffset(i)));
+    }
+    assertEquals(-1, read.indexOf(1));
+  }
+
+  @Test
+  public void testSkipOldDataBlocks() throws IOException {
+    TableDescriptor td = TableDescriptorBuilder.newBuilder(TableName.valueOf("testSkip"))
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.newBuilder(FAMILY).setBlocksize(1024)
+        .setConfiguration(HFileWriterImpl.DATA_BLOCK_TIMERANGES_ENABLED, "true").build())
+      .build();
+    HRegion region = HBaseTestingUtil.createRegionAndWAL(
+      RegionInfoBuilder.newBuilder(td.getTableName()).build(), TEST_UTIL.getDataTestDir(),
+      TEST_UTIL.getConfiguration(), td);
+    try {
+      // timestamps grow with the row, so most data blocks are older than the scanned range
+      for (int i = 0; i < NUM_ROWS; i++) {
+        region.put(new Put(row(i)).addColumn(FAMILY, QUALIFIER, i + 1, Bytes.toBytes(i)));
+      }
+      region.flush(true);
+      // a delete marker in the memstore still masks a cell of the file
+      region.delete(new Delete(row(NUM_ROWS - 50)).addColumns(FAMILY, QUALIFIER, NUM_ROWS));
+
+      HStore store = region.getStore(FAMILY);
+      HStoreFile file = store.getStorefiles().iterator().next();
+      HFile.Reader reader = file.getReader().getHFileReader();
+      // the ranges are only loaded by the first scan asking for them, and then count towards the
+      // index size of the reader
+      long indexSize = reader.indexSize();
+      assertEquals(0, reader.getHFileInfo().getDataBlockTimeRangesHeapSize());
+      DataBlockTimeRanges ranges = reader.getHFileInfo().getDataBlockTimeRanges(reader);
+      assertNotNull(ranges);
+      assertSame(ranges, reader.getHFileInfo().getDataBlockTimeRanges(reader));
+      assertTrue(ranges.heapSize() > ranges.size() * 28L);
+      assertEquals(indexSize + ranges.heapSize(), reader.indexSize());
+      assertEquals(reader.getTrailer().getDataIndexCount(), ranges.size());
+      assertTrue(ranges.size() > 10, "Too few data blocks: " + ranges.size());
+
+      long minTimestamp = NUM_ROWS - 100;
+      Scan scan = new Scan().setTimeRange(minTimestamp, Long.MAX_VALUE);
+
+      // the store file scanner skips the old blocks but returns every cell of the range
+      int cells = 0;
+      int cellsInRange = 0;
+      try (StoreFileScanner scanner =
+        file.getReader().getStoreFileScanner(false, false, false, Long.MAX_VALUE, 0, false)) {
+        assertTrue(scanner.shouldUseScanner(scan, store, Long.MIN_VALUE));
+        scanner.seek(KeyValue.LOWESTKEY);
+        for (ExtendedCell cell = scanner.next(); cell != null; cell = scanner.next()) {
+          cells++;
+          if (cell.getTimestamp() >= minTimestamp) {
+            cellsInRange++;
+          }
+        }
+      }
+      assertEquals(101, cellsInRange);
+      assertTrue(cells < NUM_ROWS / 2, "Old data blocks were not skipped, read " + cells);
+
+      List<Cell> results = new ArrayList<>();
+      try (InternalScanner scanner = region.getScanner(scan)) {
+        List<Cell> row = new ArrayList<>();
+        boolean more;
+        do {
+          more = scanner.next(row);
+          results.addAll(row);
+          row.clear();
+        } while (more);
+      }
+      assertEquals(100, results.size());
+      for (Cell cell : results) {
+        assertTrue(cell.getTimestamp() >= minTimestamp);
+        assertFalse(CellUtil.matchingRows(cell, row(NUM_ROWS - 50)));
+      }
+    } finally {
+      HBaseTestingUtil.closeRegionAndWAL(region);
+    }
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row%05d", i));
+  }
+}
@@ -802,6 +802,70 @@ public class TestHFileBlockIndex {
     assertArrayEqualsBuffer(msgPrefix + "Invalid value", expectedValue, valueRead);
   }
 
+  /**
+   * Writes the same cells with and without the PREFIX_TREE index block encoding and checks that
+   * the encoded index is smaller and answers every lookup the same way.
+   */
+  @TestTemplate
+  public void testPrefixTreeIndexBlockEncoding() throws IOException {
+    CacheConfig cacheConf = new CacheConfig(conf);
+    for (int indexBlockSize : INDEX_CHUNK_SIZES) {
+      conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, indexBlockSize);
+      byte[][] keys = new byte[NUM_KV][];
+      HFile.Reader[] readers = new HFile.Reader[2];
+      IndexBlockEncoding[] encodings = { IndexBlockEncoding.NONE, IndexBlockEncoding.PREFIX_TREE };
+      for (int e = 0; e < encodings.length; e++) {
+        Path hfilePath = new Path(TEST_UTIL.getDataTestDir(),
+          "hfile_for_index_encoding_" + encodings[e] + "_" + indexBlockSize);
+        HFileContext meta = new HFileContextBuilder().withBlockSize(SMALL_BLOCK_SIZE)
+          .withCompression(compr).withIndexBlockEncoding(encodings[e]).build();
+        try (HFile.Writer writer = HFile.getWriterFactory(conf, cacheConf).withPath(fs, hfilePath)
+          .withFileContext(meta).create()) {
+          Random rand = new Random(19231737);
+          for (int i = 0; i < NUM_KV; ++i) {
+            byte[] row = RandomKeyValueUtil.randomOrderedKey(rand, i);
+            KeyValue kv = new KeyValue(row, Bytes.toBytes("f"), Bytes.toBytes("q"), 1L,
+              RandomKeyValueUtil.randomValue(rand));
+            writer.append(kv);
+            keys[i] = kv.getKey();
+          }
+        }
+        readers[e] = HFile.createReader(fs, hfilePath, cacheConf, true, conf);
+      }
+      HFile.Reader plain = readers[0];
+      HFile.Reader encoded = readers[1];
+      assertEquals(IndexBlockEncoding.PREFIX_TREE.name(), Bytes
+        .toString(encoded.getHFileInfo().get(HFileIndexBlockEncoder.INDEX_BLOCK_ENCODING)));
+      assertEquals(plain.getTrailer().getNumDataIndexLevels(),
+        encoded.getTrailer().getNumDataIndexLevels());
+      assertTrue(encoded.getTrailer().getUncompressedDataIndexSize()
+          < plain.getTrailer().getUncompressedDataIndexSize(),
+        "Encoded index is not smaller");
+      assertEquals(plain.midKey(), encoded.midKey());
+      assertTrue(Bytes.equals(keys[0], ((KeyValue) encoded.getFirstKey().get()).getKey()));
+      assertTrue(Bytes.equals(keys[NUM_KV - 1], ((KeyValue) encoded.getLastKey().get()).getKey()));
+
+      for (boolean pread : new boolean[] { false, true }) {
+        HFileScanner scanner = encoded.getScanner(conf, true, pread);
+        for (int i = 0; i < NUM_KV; ++i) {
+          checkSeekTo(keys, scanner, i);
+        }
+        for (int i = NUM_KV - 1; i >= 0; --i) {
+          checkSeekTo(keys, scanner, i);
+          if (i > 0) {
+            assertTrue(scanner.seekBefore(KeyValueUtil.createKeyValueFromKey(keys[i])));
+            assertTrue(Bytes.equals(keys[i - 1], ((KeyValue) scanner.getKey()).getKey()));
+          } else {
+            assertFalse(scanner.seekBefore(KeyValueUtil.createKeyValueFromKey(keys[i])));
+          }
+        }
+        scanner.close();
+      }
+      plain.close();
+      encoded.close();
+    }
+  }
+
   @TestTemplate
   public void testIntermediateLevelIndicesWithLargeKeys() throws IOException {
     testIntermediateLevelIndicesWithLargeKeys(16);
@@ -37,6 +37,8 @@ import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.io.FSDataInputStreamWrapper;
 import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache;
+import org.apache.hadoop.hbase.io.hfile.bucket.TestBucketCache;
 import org.apache.hadoop.hbase.testclassification.IOTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -132,6 +134,34 @@ public class TestLazyDataBlockDecompression {
     reader.close();
   }
 
+  @TestTemplate
+  public void testCompressedHitsInBucketCache() throws Exception {
+    Path hfilePath = new Path(TEST_UTIL.getDataTestDir(), "testCompressedHitsInBucketCache");
+    HFileContext context =
+      new HFileContextBuilder().withCompression(Compression.Algorithm.GZ).build();
+    Configuration conf = HBaseConfiguration.create(TEST_UTIL.getConfiguration());
+    conf.setBoolean(CacheConfig.CACHE_BLOCKS_ON_WRITE_KEY, cacheOnWrite);
+    conf.setBoolean(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_KEY, true);
+    BucketCache bucketCache = new BucketCache("offheap", 32 * 1024 * 1024,
+      HConstants.DEFAULT_BLOCKSIZE, null, 1, 64, null);
+    try {
+      CacheConfig cc = new CacheConfig(conf, bucketCache);
+      assertTrue(cc.shouldCacheDataCompressed(), "test improperly configured.");
+      writeHFile(conf, cc, fs, hfilePath, context, 2000);
+      cacheBlocks(conf, cc, fs, hfilePath, context);
+      TestBucketCache.waitUntilAllFlushedToBucket(bucketCache);
+
+      // every data block is now served from the bucket cache and unpacked on the way out
+      long compressedHits = bucketCache.getStats().getCompressedHitCount();
+      cacheBlocks(conf, cc, fs, hfilePath, context);
+      assertTrue(bucketCache.getStats().getCompressedHitCount() > compressedHits,
+        "reading cached compressed blocks should be counted as compressed hits");
+      assertTrue(bucketCache.getStats().getDecompressTimePerHit() > 0);
+    } finally {
+      bucketCache.shutdown();
+    }
+  }
+
   @TestTemplate
   public void testCompressionIncreasesEffectiveBlockCacheSize() throws Exception {
     // enough room for 2 uncompressed block
@@ -601,6 +601,76 @@ public class TestLruBlockCache {
 
   }
 
+  @Test
+  public void testArcAdaptsSingleMultiSplitOnGhostHits() throws Exception {
+    long maxSize = 100000;
+    long blockSize = calculateBlockSize(maxSize, 10);
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(LruBlockCache.LRU_EVICTION_POLICY_CONFIG_NAME, "arc");
+    conf.setFloat("hbase.lru.blockcache.min.factor", 0.66f);
+    conf.setFloat("hbase.lru.blockcache.single.percentage", 0.33f);
+    conf.setFloat("hbase.lru.blockcache.multi.percentage", 0.33f);
+    conf.setFloat("hbase.lru.blockcache.memory.percentage", 0.34f);
+    LruBlockCache cache = new LruBlockCache(maxSize, blockSize, false, conf);
+
+    CachedItem[] singleBlocks = generateFixedBlocks(5, blockSize, "single");
+    CachedItem[] multiBlocks = generateFixedBlocks(5, blockSize, "multi");
+    for (CachedItem block : multiBlocks) {
+      cache.cacheBlock(block.cacheKey, block);
+      cache.getBlock(block.cacheKey, true, false, true);
+    }
+    for (CachedItem block : singleBlocks) {
+      cache.cacheBlock(block.cacheKey, block);
+    }
+    // As in testScanResistance, two single and two multi blocks went
+    assertEquals(4, cache.getStats().getEvictedCount());
+    assertEquals(0.33f, cache.getSingleFactor(), 0.0001f);
+
+    // Asking for an evicted multi block again shifts space from single to multi access blocks
+    assertNull(cache.getBlock(multiBlocks[0].cacheKey, true, false, true));
+    float afterMultiGhostHit = cache.getSingleFactor();
+    assertTrue(afterMultiGhostHit < 0.33f);
+    // a repeated miss on the same key is no longer a ghost hit
+    assertNull(cache.getBlock(multiBlocks[0].cacheKey, true, false, true));
+    assertEquals(afterMultiGhostHit, cache.getSingleFactor(), 0.0001f);
+
+    // and an evicted single block moves it back
+    assertNull(cache.getBlock(singleBlocks[0].cacheKey, true, false, true));
+    assertTrue(cache.getSingleFactor() > afterMultiGhostHit);
+    assertTrue(cache.getSingleFactor() <= 0.66f);
+  }
+
+  @Test
+  public void testCostAwareEvictionKeepsIndexBlocks() throws Exception {
+    long maxSize = 100000;
+    long blockSize = calculateBlockSizeDefault(maxSize, 10);
+    for (boolean costAware : new boolean[] { false, true }) {
+      Configuration conf = HBaseConfiguration.create();
+      conf.setBoolean(LruBlockCache.LRU_COST_AWARE_EVICTION_CONFIG_NAME, costAware);
+      LruBlockCache cache = new LruBlockCache(maxSize, blockSize, false, conf);
+      // the index block is the least recently used one
+      CachedItem index = new CachedItem("index", (int) blockSize, BlockType.ROOT_INDEX);
+      cache.cacheBlock(index.cacheKey, index);
+      CachedItem[] dataBlocks = generateFixedBlocks(10, blockSize, "data");
+      int cached = 0;
+      while (cache.getStats().getEvictionCount() == 0) {
+        cache.cacheBlock(dataBlocks[cached].cacheKey, dataBlocks[cached]);
+        cached++;
+      }
+      assertEquals(1, cache.getStats().getEvictedCount());
+      if (costAware) {
+        // it is four times as costly to miss, the oldest data block goes instead
+        assertNotNull(cache.getBlock(index.cacheKey, true, false, true));
+        assertNull(cache.getBlock(dataBlocks[0].cacheKey, true, false, true));
+        assertEquals(1.0, cache.getStats().getHitRatio(BlockType.BlockCategory.INDEX), 0.0001);
+        assertEquals(0.0, cache.getStats().getHitRatio(BlockType.BlockCategory.DATA), 0.0001);
+      } else {
+        assertNull(cache.getBlock(index.cacheKey, true, false, true));
+        assertNotNull(cache.getBlock(dataBlocks[0].cacheKey, true, false, true));
+      }
+    }
+  }
+
   @Test
   public void testMaxBlockSize() throws Exception {
     long maxSize = 100000;
@@ -882,6 +952,13 @@ public class TestLruBlockCache {
   private static class CachedItem implements Cacheable {
     BlockCacheKey cacheKey;
     int size;
+    BlockType blockType = BlockType.DATA;
+
+    CachedItem(String blockName, int size, BlockType blockType) {
+      this.cacheKey = new BlockCacheKey(blockName, 0, true, blockType);
+      this.size = size;
+      this.blockType = blockType;
+    }
 
     CachedItem(String blockName, int size, int offset) {
       this.cacheKey = new BlockCacheKey(blockName, offset);
@@ -921,7 +998,7 @@ public class TestLruBlockCache {
 
     @Override
     public BlockType getBlockType() {
-      return BlockType.DATA;
+      return blockType;
     }
   }
 
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test reading several blocks of an HFile with one vectored read.
+ */
+@Tag(IOTests.TAG)
+@Tag(SmallTests.TAG)
+public class TestMultiBlockRead {
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int NUM_ROWS = 2000;
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    fs = TEST_UTIL.getTestFileSystem();
+  }
+
+  @AfterAll
+  public static void tearDownAfterClass() throws Exception {
+    TEST_UTIL.cleanupTestDir();
+  }
+
+  @Test
+  public void testReadBlocksData() throws Exception {
+    Path path = writeHFile("testReadBlocksData");
+    CacheConfig cacheConf = new CacheConfig(conf, null, null, ByteBuffAllocator.HEAP);
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      HFileBlock.FSReader fsReader = reader.getUncachedBlockReader();
+      // walk the data blocks, keeping every block but each third one so that some of the blocks
+      // are adjacent and some are not
+      List<HFileBlock> expected = new ArrayList<>();
+      long offset = reader.getTrailer().getFirstDataBlockOffset();
+      long end = reader.getTrailer().getLastDataBlockOffset();
+      for (int i = 0; offset <= end; i++) {
+        HFileBlock block = fsReader.readBlockData(offset, -1, true, false, true);
+        offset += block.getOnDiskSizeWithHeader();
+        if (i % 3 == 2) {
+          block.release();
+        } else {
+          expected.add(block);
+        }
+      }
+      assertTrue(expected.size() > 10, "Too few data blocks: " + expected.size());
+      long[] offsets = new long[expected.size()];
+      int[] sizes = new int[expected.size()];
+      for (int i = 0; i < expected.size(); i++) {
+        offsets[i] = expected.get(i).getOffset();
+        sizes[i] = expected.get(i).getOnDiskSizeWithHeader();
+      }
+      List<HFileBlock> blocks = fsReader.readBlocksData(offsets, sizes, false, true);
+      try {
+        assertEquals(expected.size(), blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+          HFileBlock block = blocks.get(i);
+          assertEquals(offsets[i], block.getOffset());
+          assertEquals(BlockType.DATA, block.getBlockType());
+          assertEquals(expected.get(i).getNextBlockOnDiskSize(), block.getNextBlockOnDiskSize());
+          assertEquals(expected.get(i).getBufferWithoutHeader(), block.getBufferWithoutHeader());
+        }
+      } finally {
+        expected.forEach(HFileBlock::release);
+        blocks.forEach(HFileBlock::release);
+      }
+    }
+  }
+
+  @Test
+  public void testReadBlocksDataChecksumFailure() throws Exception {
+    Path path = writeHFile("testReadBlocksDataChecksumFailure");
+    long[] offsets = new long[4];
+    int[] sizes = new int[offsets.length];
+    List<HFileBlock> expected = new ArrayList<>();
+    CacheConfig cacheConf = new CacheConfig(conf, null, null, ByteBuffAllocator.HEAP);
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      HFileBlock.FSReader fsReader = reader.getUncachedBlockReader();
+      long offset = reader.getTrailer().getFirstDataBlockOffset();
+      for (int i = 0; i < offsets.length; i++) {
+        HFileBlock block = fsReader.readBlockData(offset, -1, true, false, true);
+        offsets[i] = offset;
+        sizes[i] = block.getOnDiskSizeWithHeader();
+        offset += sizes[i];
+        expected.add(block);
+      }
+    }
+    // Corrupt the data of the second block. The file is rewritten through the checksummed file
+    // system so that the file system checksums still match, only the HBase checksum fails.
+    byte[] bytes = new byte[(int) fs.getFileStatus(path).getLen()];
+    try (FSDataInputStream in = fs.open(path)) {
+      in.readFully(0, bytes);
+    }
+    int corrupted = (int) offsets[1] + expected.get(1).headerSize() + 10;
+    bytes[corrupted] ^= 0xff;
+    try (FSDataOutputStream out = fs.create(path, true)) {
+      out.write(bytes);
+    }
+    HFile.getAndResetChecksumFailuresCount();
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      List<HFileBlock> blocks =
+        reader.getUncachedBlockReader().readBlocksData(offsets, sizes, false, true);
+      try {
+        // the block failing the checksum of the vectored read was read again alone, which counts
+        // the failure and retries with the file system checksums
+        assertEquals(1, HFile.getAndResetChecksumFailuresCount());
+        assertEquals(offsets.length, blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+          assertEquals(offsets[i], blocks.get(i).getOffset());
+          if (i != 1) {
+            assertEquals(expected.get(i).getBufferWithoutHeader(),
+              blocks.get(i).getBufferWithoutHeader());
+          }
+        }
+      } finally {
+        expected.forEach(HFileBlock::release);
+        blocks.forEach(HFileBlock::release);
+      }
+    }
+  }
+
+  @Test
+  public void testCacheDataBlocks() throws Exception {
+    assertCacheDataBlocks(writeHFile("testCacheDataBlocks"), 1);
+  }
+
+  @Test
+  public void testCacheDataBlocksMultiLevelIndex() throws Exception {
+    conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, 128);
+    conf.setInt(HFileBlockIndex.MIN_INDEX_NUM_ENTRIES_KEY, 2);
+    assertCacheDataBlocks(writeHFile("testCacheDataBlocksMultiLevelIndex"), 3);
+  }
+
+  @Test
+  public void testCacheDataBlocksPrefixTreeIndex() throws Exception {
+    assertCacheDataBlocks(writeHFile("testCacheDataBlocksPrefixTreeIndex",
+      IndexBlockEncoding.PREFIX_TREE), 1);
+    conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, 128);
+    conf.setInt(HFileBlockIndex.MIN_INDEX_NUM_ENTRIES_KEY, 2);
+    assertCacheDataBlocks(writeHFile("testCacheDataBlocksPrefixTreeMultiLevelIndex",
+      IndexBlockEncoding.PREFIX_TREE), 3);
+  }
+
+  /**
+   * Loads the blocks of a few keys and checks that they are the blocks the scanner seeks to.
+   * @param minIndexLevels the minimum number of levels the data block index of the file must have
+   */
+  private void assertCacheDataBlocks(Path path, int minIndexLevels) throws IOException {
+    BlockCache cache = BlockCacheFactory.createBlockCache(conf);
+    CacheConfig cacheConf = new CacheConfig(conf, null, cache, ByteBuffAllocator.HEAP);
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      int levels = reader.getTrailer().getNumDataIndexLevels();
+      assertTrue(levels >= minIndexLevels, "Too few index levels: " + levels);
+      // two rows in the same block, and rows far apart
+      List<ExtendedCell> keys = new ArrayList<>();
+      for (int i : new int[] { 1700, 3, 4, 500, 1000 }) {
+        keys.add(PrivateCellUtil.createFirstOnRow(row(i)));
+      }
+      assertEquals(4, reader.cacheDataBlocks(keys));
+      // everything is cached now
+      assertEquals(0, reader.cacheDataBlocks(keys));
+      try (HFileScanner scanner = reader.getScanner(conf, true, true)) {
+        for (ExtendedCell key : keys) {
+          // the seek loads the block the index points the key to
+          scanner.seekTo(key);
+          HFileBlock block = ((HFileReaderImpl.HFileScannerImpl) scanner).getCurBlock();
+          BlockCacheKey cacheKey = new BlockCacheKey(reader.getName(), block.getOffset());
+          Cacheable cached = cache.getBlock(cacheKey, false, false, false);
+          assertNotNull(cached, "Block of " + key + " not cached");
+          cached.release();
+        }
+      }
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  private Path writeHFile(String name) throws IOException {
+    return writeHFile(name, IndexBlockEncoding.NONE);
+  }
+
+  private Path writeHFile(String name, IndexBlockEncoding indexEncoding) throws IOException {
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name);
+    HFileContext context =
+      new HFileContextBuilder().withBlockSize(1024).withIndexBlockEncoding(indexEncoding).build();
+    try (HFile.Writer writer =
+      HFile.getWriterFactoryNoCache(conf).withPath(fs, path).withFileContext(context).create()) {
+      for (int i = 0; i < NUM_ROWS; i++) {
+        writer.append(new KeyValue(row(i), FAMILY, QUALIFIER, 1L, Bytes.toBytes(i)));
+      }
+    }
+    return path;
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row%05d", i));
+  }
+}
@@ -48,11 +48,16 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Stream;
@@ -71,6 +76,8 @@ import org.apache.hadoop.hbase.io.hfile.CacheStats;
 import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
 import org.apache.hadoop.hbase.io.hfile.CacheTestUtils.HFileBlockPair;
 import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.io.hfile.CacheableDeserializer;
+import org.apache.hadoop.hbase.io.hfile.CacheableDeserializerIdManager;
 import org.apache.hadoop.hbase.io.hfile.HFileBlock;
 import org.apache.hadoop.hbase.io.hfile.HFileContext;
 import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
@@ -234,6 +241,53 @@ public class TestBucketCache {
     assertEquals(0, mAllocator.getUsedSize());
   }
 
+  @TestTemplate
+  public void testBucketAllocatorConcurrentAllocateAndFree() throws Exception {
+    BucketAllocator allocator = new BucketAllocator(capacitySize, constructedBlockSizes);
+    final List<Integer> blockSizes = Arrays.asList(4 * 1024, 8 * 1024, 64 * 1024, 96 * 1024);
+    Set<Long> allocated = ConcurrentHashMap.newKeySet();
+    Thread[] threads = new Thread[16];
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        List<Pair<Long, Integer>> held = new ArrayList<>();
+        try {
+          for (int i = 0; i < 2000; i++) {
+            if (held.size() < 32 && ThreadLocalRandom.current().nextBoolean()) {
+              int blockSize = randFrom(blockSizes);
+              try {
+                long offset = allocator.allocateBlock(blockSize);
+                assertTrue(allocated.add(offset), "offset " + offset + " allocated twice");
+                held.add(new Pair<>(offset, blockSize));
+              } catch (CacheFullException e) {
+                // other threads hold the space, free some of ours below
+              }
+            } else if (!held.isEmpty()) {
+              Pair<Long, Integer> allocation = held.remove(held.size() - 1);
+              assertTrue(allocated.remove(allocation.getFirst()));
+              allocator.freeBlock(allocation.getFirst(), allocation.getSecond());
+            }
+          }
+          for (Pair<Long, Integer> allocation : held) {
+            assertTrue(allocated.remove(allocation.getFirst()));
+            allocator.freeBlock(allocation.getFirst(), allocation.getSecond());
+          }
+        } catch (Throwable e) {
+          errors.add(e);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(errors.isEmpty(), "errors: " + errors);
+    assertEquals(0, allocator.getUsedSize());
+    for (IndexStatistics stats : allocator.getIndexStatistics()) {
+      assertEquals(0, stats.usedCount());
+    }
+  }
+
   @TestTemplate
   public void testCacheSimple() throws Exception {
     CacheTestUtils.testCacheSimple(cache, BLOCK_SIZE, NUM_QUERIES);
@@ -458,6 +512,381 @@ public class TestBucketCache {
     }
   }
 
+  @TestTemplate
+  public void testGetBlocks() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setInt(FileIOEngine.READER_THREADS_KEY, 2);
+    final Path testDir = createAndGetTestDir();
+    BucketCache bucketCache = new BucketCache("file:" + testDir + "/bucket.cache", capacitySize,
+      constructedBlockSize, constructedBlockSizes, writeThreads, writerQLen, null,
+      DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    try {
+      assertTrue(bucketCache.waitForCacheInitialization(10000));
+      HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(constructedBlockSize, 10);
+      BlockCacheKey[] keys = new BlockCacheKey[blocks.length + 1];
+      for (int i = 0; i < blocks.length; i++) {
+        cacheAndWaitUntilFlushedToBucket(bucketCache, blocks[i].getBlockName(),
+          blocks[i].getBlock(), false);
+        keys[i] = blocks[i].getBlockName();
+      }
+      keys[blocks.length] = new BlockCacheKey("not-cached", 0);
+      Cacheable[] result = bucketCache.getBlocks(keys, true, true);
+      assertEquals(keys.length, result.length);
+      assertNull(result[blocks.length]);
+      for (int i = 0; i < blocks.length; i++) {
+        Cacheable expected = blocks[i].getBlock();
+        ByteBuffer expectedBuffer = ByteBuffer.allocate(expected.getSerializedLength());
+        expected.serialize(expectedBuffer, true);
+        ByteBuffer actualBuffer = ByteBuffer.allocate(result[i].getSerializedLength());
+        result[i].serialize(actualBuffer, true);
+        assertEquals(expectedBuffer, actualBuffer);
+        result[i].release();
+      }
+      assertEquals(blocks.length, bucketCache.getStats().getHitCount());
+      assertEquals(1, bucketCache.getStats().getMissCount());
+    } finally {
+      bucketCache.shutdown();
+      HBASE_TESTING_UTILITY.cleanupTestDir();
+    }
+  }
+
+  /**
+   * Counts the lookups of each block and admits everything.
+   */
+  public static class CountingAdmissionPolicy implements BucketCacheAdmissionPolicy {
+    static final Map<BlockCacheKey, LongAdder> ACCESSES = new ConcurrentHashMap<>();
+
+    public CountingAdmissionPolicy(Configuration conf, long blockNumCapacity) {
+    }
+
+    @Override
+    public void recordAccess(BlockCacheKey key) {
+      ACCESSES.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public boolean admit(BlockCacheKey key, Cacheable block, boolean cacheFull) {
+      return true;
+    }
+  }
+
+  @TestTemplate
+  public void testGetBlocksFallback() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(BucketCache.ADMISSION_POLICY_ENABLED_KEY, true);
+    conf.setClass(BucketCache.ADMISSION_POLICY_CLASS_KEY, CountingAdmissionPolicy.class,
+      BucketCacheAdmissionPolicy.class);
+    CountingAdmissionPolicy.ACCESSES.clear();
+    final Path testDir = createAndGetTestDir();
+    BucketCache bucketCache = new BucketCache("file:" + testDir + "/bucket.cache", capacitySize,
+      constructedBlockSize, constructedBlockSizes, writeThreads, writerQLen,
+      testDir + "/bucket.persistence", DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    try {
+      assertTrue(bucketCache.waitForCacheInitialization(10000));
+      HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(constructedBlockSize, 3);
+      BlockCacheKey[] keys = new BlockCacheKey[blocks.length];
+      for (int i = 0; i < blocks.length; i++) {
+        cacheAndWaitUntilFlushedToBucket(bucketCache, blocks[i].getBlockName(),
+          blocks[i].getBlock(), false);
+        keys[i] = blocks[i].getBlockName();
+      }
+      // A cached time which does not match its entry fails the whole batch, so every key is looked
+      // up again on its own.
+      BucketEntry corrupted = bucketCache.backingMap.get(keys[1]);
+      ByteBuffer invalidCachedTime = ByteBuffer.allocate(Long.BYTES);
+      invalidCachedTime.putLong(corrupted.getCachedTime() + 1).flip();
+      bucketCache.ioEngine.write(invalidCachedTime, corrupted.offset());
+      bucketCache.ioEngine.sync();
+      BucketEntry[] entries = new BucketEntry[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        entries[i] = bucketCache.backingMap.get(keys[i]);
+      }
+
+      Cacheable[] result = bucketCache.getBlocks(keys, true, true);
+      assertNotNull(result[0]);
+      assertNull(result[1]);
+      assertNotNull(result[2]);
+      result[0].release();
+      result[2].release();
+      assertFalse(bucketCache.backingMap.containsKey(keys[1]));
+      assertEquals(2, bucketCache.getStats().getHitCount());
+      assertEquals(1, bucketCache.getStats().getMissCount());
+      for (int i = 0; i < keys.length; i++) {
+        // the retry of a key is not another access for the admission policy
+        assertEquals(1, CountingAdmissionPolicy.ACCESSES.get(keys[i]).sum());
+        // and no offset lock is left behind
+        ReentrantReadWriteLock lock = bucketCache.offsetLock.getLock(entries[i].offset());
+        assertEquals(0, lock.getReadLockCount());
+      }
+    } finally {
+      bucketCache.shutdown();
+      HBASE_TESTING_UTILITY.cleanupTestDir();
+    }
+  }
+
+  /**
+   * Fails every block it is asked to deserialize.
+   */
+  private static final class FailingDeserializer implements CacheableDeserializer<Cacheable> {
+    private static final FailingDeserializer INSTANCE = new FailingDeserializer();
+    private static final int IDENTIFIER =
+      CacheableDeserializerIdManager.registerDeserializer(INSTANCE);
+
+    @Override
+    public Cacheable deserialize(ByteBuff b, ByteBuffAllocator allocator) throws IOException {
+      throw new IOException("Injected deserialization failure");
+    }
+
+    @Override
+    public int getDeserializerIdentifier() {
+      return IDENTIFIER;
+    }
+  }
+
+  @TestTemplate
+  public void testGetBlocksReleasesBlocksWhenReadFails() throws Exception {
+    BucketCache bucketCache = new BucketCache("offheap", capacitySize, constructedBlockSize,
+      constructedBlockSizes, writeThreads, writerQLen, null, DEFAULT_ERROR_TOLERATION_DURATION,
+      HBaseConfiguration.create());
+    try {
+      assertTrue(bucketCache.waitForCacheInitialization(10000));
+      assertTrue(bucketCache.ioEngine.usesSharedMemory());
+      HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(constructedBlockSize, 3);
+      BlockCacheKey[] keys = new BlockCacheKey[blocks.length];
+      BucketEntry[] entries = new BucketEntry[blocks.length];
+      Integer[] byOffset = new Integer[blocks.length];
+      for (int i = 0; i < blocks.length; i++) {
+        cacheAndWaitUntilFlushedToBucket(bucketCache, blocks[i].getBlockName(),
+          blocks[i].getBlock(), false);
+        keys[i] = blocks[i].getBlockName();
+        entries[i] = bucketCache.backingMap.get(keys[i]);
+        byOffset[i] = i;
+      }
+      // The batch reads in offset order. The block in the middle fails after the first block was
+      // handed over with the RPC reference taken on its bucket.
+      Arrays.sort(byOffset, Comparator.comparingLong(i -> entries[i].offset()));
+      int failing = byOffset[1];
+      entries[failing].setDeserializerReference(FailingDeserializer.INSTANCE);
+
+      Cacheable[] result = bucketCache.getBlocks(keys, true, true);
+      assertNull(result[failing]);
+      for (int i = 0; i < blocks.length; i++) {
+        if (i != failing) {
+          // read again on its own, with exactly one RPC reference next to the cache's own
+          assertNotNull(result[i]);
+          assertEquals(2, entries[i].refCnt());
+          result[i].release();
+        }
+        assertEquals(1, entries[i].refCnt());
+      }
+      // nothing holds on to the buckets anymore, so they are all freed on eviction
+      for (BlockCacheKey key : keys) {
+        assertTrue(bucketCache.evictBlock(key));
+      }
+      assertEquals(0, bucketCache.getAllocator().getUsedSize());
+    } finally {
+      bucketCache.shutdown();
+    }
+  }
+
+  @TestTemplate
+  public void testOffHeapBackingMap() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(BucketCache.OFFHEAP_BACKING_MAP_KEY, true);
+    final Path testDir = createAndGetTestDir();
+    String ioEngineName = "file:" + testDir + "/bucket.cache";
+    String persistencePath = testDir + "/bucket.persistence";
+    BucketCache bucketCache = new BucketCache(ioEngineName, capacitySize, constructedBlockSize,
+      constructedBlockSizes, writeThreads, writerQLen, persistencePath,
+      DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    try {
+      assertTrue(bucketCache.waitForCacheInitialization(10000));
+      assertTrue(bucketCache.backingMap instanceof OffHeapBackingMap);
+      HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(constructedBlockSize, 4);
+      BlockCacheKey[] keys = new BlockCacheKey[blocks.length];
+      for (int i = 0; i < blocks.length; i++) {
+        keys[i] = new BlockCacheKey("hfile", "cf", "region", (long) i * constructedBlockSize,
+          true, BlockType.DATA, false);
+        cacheAndWaitUntilFlushedToBucket(bucketCache, keys[i], blocks[i].getBlock(), false);
+      }
+      Cacheable block = bucketCache.getBlock(new BlockCacheKey("hfile", 0), true, false, true);
+      assertNotNull(block);
+      block.release();
+      assertEquals(BlockPriority.MULTI, bucketCache.backingMap.get(keys[0]).getPriority());
+      long usedSize = bucketCache.getAllocator().getUsedSize();
+      assertNotEquals(0, usedSize);
+
+      // persist and restore into a new off-heap map
+      bucketCache.shutdown();
+      assertTrue(new File(persistencePath).exists());
+      bucketCache = new BucketCache(ioEngineName, capacitySize, constructedBlockSize,
+        constructedBlockSizes, writeThreads, writerQLen, persistencePath,
+        DEFAULT_ERROR_TOLERATION_DURATION, conf);
+      assertTrue(bucketCache.waitForCacheInitialization(10000));
+      assertTrue(bucketCache.backingMap instanceof OffHeapBackingMap);
+      assertEquals(blocks.length, bucketCache.backingMap.size());
+      assertEquals(usedSize, bucketCache.getAllocator().getUsedSize());
+      assertTrue(bucketCache.getRegionCachedInfo().get().containsKey("region"));
+      block = bucketCache.getBlock(keys[1], true, false, true);
+      assertNotNull(block);
+      block.release();
+
+      // the blocks of the file are found without blocksByHFile
+      assertTrue(bucketCache.blocksByHFile.isEmpty());
+      assertEquals(blocks.length, bucketCache.evictBlocksByHfileName("hfile"));
+      assertTrue(bucketCache.backingMap.isEmpty());
+      assertEquals(0, bucketCache.getAllocator().getUsedSize());
+    } finally {
+      bucketCache.shutdown();
+      HBASE_TESTING_UTILITY.cleanupTestDir();
+    }
+  }
+
+  @TestTemplate
+  public void testAdmissionPolicy() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(BucketCache.ADMISSION_POLICY_ENABLED_KEY, true);
+    // an acceptable size of zero makes the cache always full, so admission depends on frequency
+    conf.setFloat(BucketCache.ACCEPT_FACTOR_CONFIG_NAME, 0.0f);
+    conf.setFloat(BucketCache.MIN_FACTOR_CONFIG_NAME, 0.0f);
+    BucketCache bucketCache = new BucketCache(ioEngineName, capacitySize, constructedBlockSize,
+      constructedBlockSizes, writeThreads, writerQLen, null, DEFAULT_ERROR_TOLERATION_DURATION,
+      conf);
+    try {
+      assertTrue(bucketCache.waitForCacheInitialization(10000));
+      HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(constructedBlockSize, 1);
+      BlockCacheKey key = blocks[0].getBlockName();
+      Cacheable block = blocks[0].getBlock();
+      BucketCacheStats stats = (BucketCacheStats) bucketCache.getStats();
+
+      // never read, e.g. cached on write or by a scan that read it once
+      bucketCache.cacheBlock(key, block);
+      assertEquals(1, stats.getRejectedCount());
+      assertFalse(bucketCache.ramCache.containsKey(key));
+      assertNull(bucketCache.getBlock(key, true, false, true));
+      bucketCache.cacheBlock(key, block);
+      assertEquals(2, stats.getRejectedCount());
+      assertEquals(0, stats.getAdmittedCount());
+
+      // read a second time, now it earns a slot. Whether it stays cached is up to the eviction,
+      // which runs right away here as the cache is over its acceptable size.
+      assertNull(bucketCache.getBlock(key, true, false, true));
+      bucketCache.cacheBlock(key, block);
+      assertEquals(1, stats.getAdmittedCount());
+      assertEquals(2, stats.getRejectedCount());
+    } finally {
+      bucketCache.shutdown();
+    }
+  }
+
+  @TestTemplate
+  public void testDemoteToAndPromoteFromNextTier() throws Exception {
+    Path testDir = createAndGetTestDir();
+    BucketCache fastTier = new BucketCache(ioEngineName, capacitySize, constructedBlockSize,
+      constructedBlockSizes, writeThreads, writerQLen, null);
+    BucketCache slowTier = new BucketCache("file:" + testDir + "/bucket.cache", capacitySize,
+      constructedBlockSize, constructedBlockSizes, writeThreads, writerQLen, null);
+    fastTier.setNextTier(slowTier);
+    try {
+      assertTrue(fastTier.waitForCacheInitialization(10000));
+      assertTrue(slowTier.waitForCacheInitialization(10000));
+      HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(constructedBlockSize, 1);
+      BlockCacheKey key = blocks[0].getBlockName();
+      cacheAndWaitUntilFlushedToBucket(fastTier, key, blocks[0].getBlock(), true);
+
+      // the eviction process hands the block down instead of dropping it
+      assertTrue(fastTier.evictBlockIfNoRpcReferenced(key));
+      waitUntilFlushedToBucket(slowTier, key);
+      assertFalse(fastTier.backingMap.containsKey(key));
+      BucketCacheStats fastStats = (BucketCacheStats) fastTier.getStats();
+      assertEquals(1, fastStats.getDemotedCount());
+
+      // a miss in the fast tier is served by, and promoted from, the slow tier
+      Cacheable block = fastTier.getBlock(key, true, false, true);
+      assertNotNull(block);
+      block.release();
+      assertEquals(1, fastStats.getNextTierHitCount());
+      assertEquals(1, fastStats.getHitCount());
+      assertEquals(1, slowTier.getStats().getHitCount());
+      waitUntilFlushedToBucket(fastTier, key);
+      assertTrue(slowTier.backingMap.containsKey(key));
+
+      // demoting it again finds the block already in the slow tier and does not rewrite it
+      assertTrue(fastTier.evictBlockIfNoRpcReferenced(key));
+      assertEquals(1, fastStats.getDemotedCount());
+
+      // an explicit eviction, e.g. on file close, clears every tier
+      cacheAndWaitUntilFlushedToBucket(fastTier, key, blocks[0].getBlock(), true);
+      assertTrue(fastTier.evictBlock(key));
+      assertFalse(fastTier.backingMap.containsKey(key));
+      assertFalse(slowTier.backingMap.containsKey(key));
+      assertNull(fastTier.getBlock(key, true, false, true));
+    } finally {
+      fastTier.shutdown();
+      assertFalse(slowTier.isCacheEnabled());
+    }
+  }
+
+  @TestTemplate
+  public void testDemotionRunsInBackground() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setInt(BucketCache.DEMOTION_QUEUE_SIZE_KEY, 1);
+    BucketCache fastTier = new BucketCache(ioEngineName, capacitySize, constructedBlockSize,
+      constructedBlockSizes, writeThreads, writerQLen, null, DEFAULT_ERROR_TOLERATION_DURATION,
+      conf);
+    CountDownLatch demotionStarted = new CountDownLatch(1);
+    CountDownLatch resumeDemotion = new CountDownLatch(1);
+    BucketCache slowTier = new BucketCache(ioEngineName, capacitySize, constructedBlockSize,
+      constructedBlockSizes, writeThreads, writerQLen, null) {
+      @Override
+      public void cacheBlock(BlockCacheKey cacheKey, Cacheable cachedItem, boolean inMemory,
+        boolean waitWhenCache) {
+        demotionStarted.countDown();
+        try {
+          resumeDemotion.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.cacheBlock(cacheKey, cachedItem, inMemory, waitWhenCache);
+      }
+    };
+    fastTier.setNextTier(slowTier);
+    try {
+      assertTrue(fastTier.waitForCacheInitialization(10000));
+      assertTrue(slowTier.waitForCacheInitialization(10000));
+      assertEquals(0, fastTier.getTier());
+      assertEquals(1, slowTier.getTier());
+      HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(constructedBlockSize, 3);
+      for (HFileBlockPair block : blocks) {
+        cacheAndWaitUntilFlushedToBucket(fastTier, block.getBlockName(), block.getBlock(), false);
+      }
+      BucketCacheStats fastStats = (BucketCacheStats) fastTier.getStats();
+      long usedSize = fastTier.getAllocator().getUsedSize();
+
+      // The eviction does not wait for the next tier, even while it is stuck writing a block. The
+      // first demotion is running, the second one is queued and the third one is dropped.
+      assertTrue(fastTier.evictBlockIfNoRpcReferenced(blocks[0].getBlockName()));
+      assertTrue(demotionStarted.await(10, TimeUnit.SECONDS));
+      assertTrue(fastTier.evictBlockIfNoRpcReferenced(blocks[1].getBlockName()));
+      assertEquals(1, fastTier.getPendingDemotionCount());
+      assertTrue(fastTier.evictBlockIfNoRpcReferenced(blocks[2].getBlockName()));
+      assertEquals(1, fastStats.getDemotionDroppedCount());
+      // Only the bucket of the dropped block is free, the others wait for their demotion.
+      long blockSize = usedSize / blocks.length;
+      assertEquals(usedSize - blockSize, fastTier.getAllocator().getUsedSize());
+
+      resumeDemotion.countDown();
+      waitUntilFlushedToBucket(slowTier, blocks[0].getBlockName());
+      waitUntilFlushedToBucket(slowTier, blocks[1].getBlockName());
+      assertFalse(slowTier.backingMap.containsKey(blocks[2].getBlockName()));
+      assertEquals(2, fastStats.getDemotedCount());
+      Waiter.waitFor(conf, 10000, () -> fastTier.getAllocator().getUsedSize() == 0);
+    } finally {
+      resumeDemotion.countDown();
+      fastTier.shutdown();
+    }
+  }
+
   @TestTemplate
   public void testRetrieveFromFileWithoutPersistence() throws Exception {
     BucketCache bucketCache = new BucketCache(ioEngineName, capacitySize, constructedBlockSize,
@@ -23,6 +23,9 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.File;
@@ -31,7 +34,12 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.io.hfile.CacheableDeserializer;
+import org.apache.hadoop.hbase.io.hfile.CacheableDeserializerIdManager;
 import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.nio.RefCnt;
 import org.apache.hadoop.hbase.testclassification.IOTests;
@@ -192,4 +200,132 @@ public class TestFileIOEngine {
       assertEquals(fileChannels[i], reopenedFileChannels[i]);
     }
   }
+
+  @Test
+  public void testCoalesce() {
+    BucketEntry[] entries = new BucketEntry[] { createAlignedBucketEntry(512 * 1024, 1000),
+      createAlignedBucketEntry(1024, 1000), createAlignedBucketEntry(0, 1000),
+      createAlignedBucketEntry(2048 + FileIOEngine.MAX_COALESCE_GAP + 256, 100) };
+    List<int[]> runs = FileIOEngine.coalesce(entries);
+    assertEquals(3, runs.size());
+    assertArrayEquals(new int[] { 2, 1 }, runs.get(0));
+    assertArrayEquals(new int[] { 3 }, runs.get(1));
+    assertArrayEquals(new int[] { 0 }, runs.get(2));
+  }
+
+  @Test
+  public void testBatchedRead() throws IOException {
+    String[] paths = { "testBatchedRead1", "testBatchedRead2" };
+    long sizePerFile = TOTAL_CAPACITY / paths.length;
+    FileIOEngine engine = new FileIOEngine(TOTAL_CAPACITY, false, 2, paths);
+    try {
+      Random rand = new Random();
+      // Adjacent blocks, a block crossing the file boundary and blocks far from the others.
+      long[] offsets = { 0, 1024, 2048, sizePerFile - 512, sizePerFile + 4096, 4 * 1024 * 1024,
+        TOTAL_CAPACITY - 2048 };
+      int[] lengths = { 1000, 1024, 700, 1000, 3000, 64 * 1024, 2048 };
+      byte[][] data = new byte[offsets.length][];
+      BucketEntry[] entries = new BucketEntry[offsets.length];
+      for (int i = 0; i < offsets.length; i++) {
+        data[i] = new byte[lengths[i]];
+        rand.nextBytes(data[i]);
+        engine.write(ByteBuffer.wrap(data[i]), offsets[i]);
+        // Read them back in reverse order to check results are placed by index, not by offset.
+        entries[offsets.length - 1 - i] = createAlignedBucketEntry(offsets[i], lengths[i]);
+      }
+      // Every entry is handed to the caller once, in the calling thread, as soon as it is read.
+      Thread caller = Thread.currentThread();
+      Cacheable[] notified = new Cacheable[entries.length];
+      Cacheable[] result = engine.read(entries, (cacheable, i) -> {
+        assertSame(caller, Thread.currentThread());
+        assertNull(notified[i]);
+        notified[i] = cacheable;
+      });
+      assertArrayEquals(result, notified);
+      assertEquals(entries.length, result.length);
+      for (int i = 0; i < offsets.length; i++) {
+        ByteBuff buf = ((BufferHolder) result[offsets.length - 1 - i]).buf;
+        assertEquals(lengths[i], buf.remaining());
+        byte[] read = new byte[lengths[i]];
+        buf.get(read);
+        assertArrayEquals(data[i], read);
+        assertTrue(result[offsets.length - 1 - i].release());
+      }
+    } finally {
+      engine.shutdown();
+      for (String path : paths) {
+        new File(path).delete();
+      }
+    }
+  }
+
+  private static BucketEntry createAlignedBucketEntry(long offset, int len) {
+    BucketEntry be = new BucketEntry(offset, len, len, 0, false, entry -> ByteBuffAllocator.NONE,
+      ByteBuffAllocator.HEAP);
+    be.setDeserializerReference(HOLDER_DESERIALIZER);
+    return be;
+  }
+
+  private static final BufferHolderDeserializer HOLDER_DESERIALIZER =
+    new BufferHolderDeserializer();
+  static {
+    HOLDER_DESERIALIZER.identifier =
+      CacheableDeserializerIdManager.registerDeserializer(HOLDER_DESERIALIZER);
+  }
+
+  /**
+   * Keeps the buffer it was deserialized from, so that every entry of a batched read can be
+   * checked.
+   */
+  private static final class BufferHolder implements Cacheable {
+    private final ByteBuff buf;
+
+    BufferHolder(ByteBuff buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public long heapSize() {
+      return 0;
+    }
+
+    @Override
+    public int getSerializedLength() {
+      return buf.limit();
+    }
+
+    @Override
+    public void serialize(ByteBuffer destination, boolean includeNextBlockMetadata) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CacheableDeserializer<Cacheable> getDeserializer() {
+      return HOLDER_DESERIALIZER;
+    }
+
+    @Override
+    public BlockType getBlockType() {
+      return BlockType.DATA;
+    }
+
+    @Override
+    public boolean release() {
+      return buf.release();
+    }
+  }
+
+  private static final class BufferHolderDeserializer implements CacheableDeserializer<Cacheable> {
+    private int identifier;
+
+    @Override
+    public Cacheable deserialize(ByteBuff b, ByteBuffAllocator alloc) {
+      return new BufferHolder(b);
+    }
+
+    @Override
+    public int getDeserializerIdentifier() {
+      return identifier;
+    }
+  }
 }
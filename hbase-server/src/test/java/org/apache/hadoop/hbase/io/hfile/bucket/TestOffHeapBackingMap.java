@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockPriority;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag(IOTests.TAG)
+@Tag(SmallTests.TAG)
+public class TestOffHeapBackingMap {
+
+  private final List<Long> freed = new ArrayList<>();
+  private OffHeapBackingMap map;
+
+  @BeforeEach
+  public void setUp() {
+    freed.clear();
+    map = new OffHeapBackingMap(100, entry -> () -> freed.add(entry.offset()));
+  }
+
+  private static BlockCacheKey key(String hfileName, long offset) {
+    return new BlockCacheKey(hfileName, "cf", "region", offset, true, BlockType.DATA, false);
+  }
+
+  private static BucketEntry entry(long bucketOffset) {
+    return new BucketEntry(bucketOffset, 100, 120, 1, System.nanoTime(), false,
+      e -> ByteBuffAllocator.NONE, ByteBuffAllocator.HEAP);
+  }
+
+  @Test
+  public void testPutGetRemove() {
+    BlockCacheKey key = key("file", 0);
+    BucketEntry entry = entry(256);
+    assertNull(map.put(key, entry));
+    assertEquals(1, map.size());
+    assertTrue(map.containsKey(new BlockCacheKey("file", 0)));
+    assertFalse(map.containsKey(new BlockCacheKey("file", 1)));
+    assertFalse(map.containsKey(new BlockCacheKey("other", 0)));
+
+    BucketEntry found = map.get(new BlockCacheKey("file", 0));
+    assertNotSame(entry, found);
+    assertTrue(entry.isSameBlock(found));
+    assertEquals(120, found.getOnDiskSizeWithHeader());
+    assertEquals(BlockPriority.SINGLE, found.getPriority());
+
+    // Only the entry of the same block is removed
+    assertFalse(map.remove(key, entry(512)));
+    assertTrue(map.remove(key, found));
+    assertTrue(map.isEmpty());
+    assertNull(map.get(key));
+  }
+
+  @Test
+  public void testReplaceAndFree() {
+    BlockCacheKey key = key("file", 0);
+    map.put(key, entry(256));
+    BucketEntry previous = map.put(new BlockCacheKey("file", 0, false, BlockType.META), entry(512));
+    assertEquals(256, previous.offset());
+    assertEquals(1, map.size());
+    // The attributes of the latest key are kept
+    assertFalse(map.getStoredKey(key).isPrimary());
+    assertEquals(BlockType.META, map.getStoredKey(key).getBlockType());
+
+    // The bucket is freed once the cache releases its reference
+    BucketEntry current = map.remove(key);
+    assertEquals(512, current.offset());
+    assertTrue(current.markAsEvicted());
+    assertFalse(current.markAsEvicted());
+    assertEquals(1, freed.size());
+    assertEquals(512, freed.get(0).longValue());
+    assertTrue(previous.markAsEvicted());
+    assertEquals(2, freed.size());
+  }
+
+  @Test
+  public void testAccessIsWrittenBack() {
+    BlockCacheKey key = key("file", 0);
+    map.put(key, entry(256));
+    map.get(key).access(42);
+    BucketEntry found = map.get(key);
+    assertEquals(42, found.getAccessCounter());
+    assertEquals(BlockPriority.MULTI, found.getPriority());
+  }
+
+  @Test
+  public void testStoredKey() {
+    map.put(key("file", 1024), entry(256));
+    BlockCacheKey stored = map.getStoredKey(new BlockCacheKey("file", 1024));
+    assertEquals("region", stored.getRegionName());
+    assertEquals("cf", stored.getCfName());
+    assertEquals(1024, stored.getOffset());
+    assertEquals(BlockType.DATA, stored.getBlockType());
+    assertNull(map.getStoredKey(new BlockCacheKey("file", 0)));
+  }
+
+  @Test
+  public void testGrowIterateAndKeysForFile() {
+    int count = 20000;
+    for (int i = 0; i < count; i++) {
+      map.put(key("file" + (i % 10), i), entry((i + 1) * 256L));
+    }
+    assertEquals(count, map.size());
+    Set<BlockCacheKey> keys = new HashSet<>();
+    for (Map.Entry<BlockCacheKey, BucketEntry> e : map.entrySet()) {
+      assertTrue(keys.add(e.getKey()));
+      assertEquals((e.getKey().getOffset() + 1) * 256L, e.getValue().offset());
+    }
+    assertEquals(count, keys.size());
+    assertEquals(count / 10, map.getKeysForFile("file3", 0, Long.MAX_VALUE).size());
+    assertEquals(10, map.getKeysForFile("file3", 0, 99).size());
+    assertTrue(map.getKeysForFile("file10", 0, Long.MAX_VALUE).isEmpty());
+
+    // Remove the even offsets through the iterator
+    Iterator<Map.Entry<BlockCacheKey, BucketEntry>> it = map.entrySet().iterator();
+    while (it.hasNext()) {
+      if (it.next().getKey().getOffset() % 2 == 0) {
+        it.remove();
+      }
+    }
+    assertEquals(count / 2, map.size());
+    for (BlockCacheKey key : map.getKeysForFile("file3", 0, Long.MAX_VALUE)) {
+      assertEquals(1, key.getOffset() % 2);
+    }
+    // Refill the removed slots
+    for (int i = 0; i < count; i += 2) {
+      map.put(key("file" + (i % 10), i), entry((i + 1) * 256L));
+    }
+    assertEquals(count, map.size());
+    assertEquals(count / 10, map.getKeysForFile("file4", 0, Long.MAX_VALUE).size());
+  }
+
+  @Test
+  public void testCursor() {
+    int count = 5000;
+    for (int i = 0; i < count; i++) {
+      map.put(key("file" + (i % 10), i), entry((i + 1) * 256L));
+    }
+    map.get(key("file7", 7)).access(42);
+    Set<Long> offsets = new HashSet<>();
+    BackingMapCursor cursor = BackingMapCursor.of(map);
+    while (cursor.next()) {
+      long offset = cursor.getBlockOffset();
+      assertTrue(offsets.add(offset));
+      assertEquals("file" + (offset % 10), cursor.getHfileName());
+      assertEquals("cf", cursor.getCfName());
+      assertEquals("region", cursor.getRegionName());
+      assertEquals(BlockType.DATA, cursor.getBlockType());
+      assertEquals((offset + 1) * 256L, cursor.getBucketOffset());
+      assertEquals(100, cursor.getLength());
+      assertEquals(120, cursor.getOnDiskSizeWithHeader());
+      assertEquals(offset == 7 ? 42 : 1, cursor.getAccessCounter());
+      assertEquals(offset == 7 ? BlockPriority.MULTI : BlockPriority.SINGLE, cursor.getPriority());
+      assertFalse(cursor.isRpcRef());
+      // The key is built once per entry, and the built entry is the one of the map
+      assertSame(cursor.key(), cursor.key());
+      assertEquals(offset, cursor.key().getOffset());
+      assertTrue(map.get(cursor.key()).isSameBlock(cursor.entry()));
+      // Entries may be removed while walking, the cursor holds no lock between entries
+      if (offset % 2 == 0) {
+        assertTrue(map.remove(cursor.key(), cursor.entry()));
+      }
+    }
+    assertEquals(count, offsets.size());
+    assertEquals(count / 2, map.size());
+  }
+
+  @Test
+  public void testClear() {
+    for (int i = 0; i < 1000; i++) {
+      map.put(key("file", i), entry((i + 1) * 256L));
+    }
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertFalse(map.entrySet().iterator().hasNext());
+    assertTrue(map.getKeysForFile("file", 0, Long.MAX_VALUE).isEmpty());
+    map.put(key("file", 0), entry(256));
+    assertEquals(1, map.getKeysForFile("file", 0, Long.MAX_VALUE).size());
+  }
+}
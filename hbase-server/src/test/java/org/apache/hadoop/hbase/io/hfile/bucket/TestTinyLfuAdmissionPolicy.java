@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag(IOTests.TAG)
+@Tag(SmallTests.TAG)
+public class TestTinyLfuAdmissionPolicy {
+
+  private static final Cacheable DATA_BLOCK = new CacheTestUtils.ByteArrayCacheable(new byte[10]);
+
+  @Test
+  public void testAdmitAllWhenNotFull() {
+    TinyLfuAdmissionPolicy policy = new TinyLfuAdmissionPolicy(2, 1024);
+    BlockCacheKey key = new BlockCacheKey("file", 0);
+    assertEquals(0, policy.frequency(key));
+    assertTrue(policy.admit(key, DATA_BLOCK, false));
+  }
+
+  @Test
+  public void testAdmitByFrequencyWhenFull() {
+    TinyLfuAdmissionPolicy policy = new TinyLfuAdmissionPolicy(2, 1024);
+    BlockCacheKey key = new BlockCacheKey("file", 0);
+    assertFalse(policy.admit(key, DATA_BLOCK, true));
+    policy.recordAccess(key);
+    assertEquals(1, policy.frequency(key));
+    assertFalse(policy.admit(key, DATA_BLOCK, true));
+    policy.recordAccess(key);
+    assertEquals(2, policy.frequency(key));
+    assertTrue(policy.admit(key, DATA_BLOCK, true));
+    // a block read once does not earn a slot, however often other blocks are read
+    BlockCacheKey other = new BlockCacheKey("file", 1);
+    policy.recordAccess(other);
+    assertFalse(policy.admit(other, DATA_BLOCK, true));
+  }
+
+  @Test
+  public void testNonDataBlocksAlwaysAdmitted() {
+    TinyLfuAdmissionPolicy policy = new TinyLfuAdmissionPolicy(2, 1024);
+    Cacheable indexBlock = mock(Cacheable.class);
+    when(indexBlock.getBlockType()).thenReturn(BlockType.LEAF_INDEX);
+    assertTrue(policy.admit(new BlockCacheKey("file", 0), indexBlock, true));
+  }
+
+  @Test
+  public void testCountersSaturate() {
+    TinyLfuAdmissionPolicy policy = new TinyLfuAdmissionPolicy(2, 1024);
+    BlockCacheKey key = new BlockCacheKey("file", 0);
+    for (int i = 0; i < 100; i++) {
+      policy.recordAccess(key);
+    }
+    // 15 in the sketch plus one in the doorkeeper
+    assertEquals(16, policy.frequency(key));
+  }
+
+  @Test
+  public void testAging() {
+    // 64 expected blocks, so the history is aged every 640 accesses
+    TinyLfuAdmissionPolicy policy = new TinyLfuAdmissionPolicy(2, 64);
+    BlockCacheKey hot = new BlockCacheKey("file", 0);
+    BlockCacheKey other = new BlockCacheKey("file", 1);
+    for (int i = 0; i < 9; i++) {
+      policy.recordAccess(hot);
+    }
+    assertEquals(9, policy.frequency(hot));
+    for (int i = 9; i < 639; i++) {
+      policy.recordAccess(other);
+    }
+    assertEquals(9, policy.frequency(hot));
+    policy.recordAccess(other);
+    // the sketch counter is halved and the doorkeeper cleared
+    assertEquals(4, policy.frequency(hot));
+  }
+}
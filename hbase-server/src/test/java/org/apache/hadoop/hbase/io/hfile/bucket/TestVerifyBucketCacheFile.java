@@ -19,6 +19,7 @@ package org.apache.hadoop.hbase.io.hfile.bucket;
 
 import static org.apache.hadoop.hbase.io.hfile.CacheConfig.BUCKETCACHE_PERSIST_INTERVAL_KEY;
 import static org.apache.hadoop.hbase.io.hfile.bucket.BucketCache.BACKING_MAP_PERSISTENCE_CHUNK_SIZE;
+import static org.apache.hadoop.hbase.io.hfile.bucket.BucketCache.BACKING_MAP_RETRIEVAL_THREADS;
 import static org.apache.hadoop.hbase.io.hfile.bucket.BucketCache.DEFAULT_ERROR_TOLERATION_DURATION;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
@@ -423,12 +424,29 @@ public class TestVerifyBucketCacheFile {
     testChunkedBackingMapRecovery(5, 13);
   }
 
+  @TestTemplate
+  public void testChunksRetrievedSequentially() throws Exception {
+    testChunkedBackingMapRecovery(3, 13, 1);
+  }
+
+  @TestTemplate
+  public void testChunksRetrievedInParallel() throws Exception {
+    // more chunks than the retriever keeps in flight
+    testChunkedBackingMapRecovery(1, 20, 4);
+  }
+
   private void testChunkedBackingMapRecovery(int chunkSize, int numBlocks) throws Exception {
+    testChunkedBackingMapRecovery(chunkSize, numBlocks, Runtime.getRuntime().availableProcessors());
+  }
+
+  private void testChunkedBackingMapRecovery(int chunkSize, int numBlocks, int retrieveThreads)
+    throws Exception {
     HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
     Path testDir = TEST_UTIL.getDataTestDir();
     TEST_UTIL.getTestFileSystem().mkdirs(testDir);
     Configuration conf = HBaseConfiguration.create();
     conf.setLong(BACKING_MAP_PERSISTENCE_CHUNK_SIZE, chunkSize);
+    conf.setInt(BACKING_MAP_RETRIEVAL_THREADS, retrieveThreads);
 
     String mapFileName = testDir + "/bucket.persistence" + EnvironmentEdgeManager.currentTime();
     BucketCache bucketCache = null;
@@ -382,6 +382,16 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 36;
   }
 
+  @Override
+  public long getBlockCacheCompressedHitCount() {
+    return 42;
+  }
+
+  @Override
+  public double getBlockCacheDecompressTimePerHit() {
+    return 12.5;
+  }
+
   @Override
   public long getL1CacheSize() {
     return 123;
@@ -502,6 +512,31 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 10;
   }
 
+  @Override
+  public int getL2CacheTierCount() {
+    return 2;
+  }
+
+  @Override
+  public long getL2CacheTierSize(int tier) {
+    return tier == 0 ? 456 : 1024;
+  }
+
+  @Override
+  public long getL2CacheTierHitCount(int tier) {
+    return tier == 0 ? 700 : 100;
+  }
+
+  @Override
+  public long getL2CacheTierEvictedCount(int tier) {
+    return tier == 0 ? 2000 : 300;
+  }
+
+  @Override
+  public long getL2CacheTierDemotedCount(int tier) {
+    return tier == 0 ? 1500 : 0;
+  }
+
   @Override
   public long getUpdatesBlockedTime() {
     return 419;
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ArrayBackedTag;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.Tag;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@org.junit.jupiter.api.Tag(RegionServerTests.TAG)
+@org.junit.jupiter.api.Tag(SmallTests.TAG)
+public class TestCellChunkSkipListMap {
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final CellComparator COMPARATOR = CellComparator.getInstance();
+
+  private MemStoreLAB mslab;
+  private CellChunkSkipListMap map;
+
+  @BeforeAll
+  public static void setUpBeforeClass() {
+    ChunkCreator.initialize(MemStoreLAB.CHUNK_SIZE_DEFAULT, false, 0, 0, 0, null,
+      MemStoreLAB.INDEX_CHUNK_SIZE_PERCENTAGE_DEFAULT);
+  }
+
+  @BeforeEach
+  public void setUp() {
+    mslab = new MemStoreLABImpl(new Configuration());
+    map = new CellChunkSkipListMap(COMPARATOR, mslab);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    mslab.close();
+  }
+
+  @Test
+  public void testPutAndNavigate() {
+    Random rand = new Random(1234);
+    TreeSet<ExtendedCell> expected = new TreeSet<>(COMPARATOR);
+    for (int i = 0; i < 5000; i++) {
+      ExtendedCell cell = cell(rand.nextInt(2000), rand.nextInt(3), i % 7 == 0);
+      boolean added = expected.add(cell);
+      assertEquals(added, map.put(copy(cell), copy(cell)) == null);
+    }
+    assertEquals(expected.size(), map.size());
+    assertCells(expected, map.values().iterator());
+    assertCells(expected.descendingSet(), map.descendingMap().values().iterator());
+    assertEquals(expected.first(), map.firstKey());
+    assertEquals(expected.last(), map.lastKey());
+
+    for (int i = 0; i < 200; i++) {
+      ExtendedCell key = PrivateCellUtil.createFirstOnRow(row(rand.nextInt(2100)));
+      assertEquals(expected.ceiling(key), map.ceilingKey(key));
+      assertEquals(expected.lower(key), map.lowerKey(key));
+      assertCells(expected.tailSet(key, true), map.tailMap(key, true).values().iterator());
+      NavigableMap<ExtendedCell, ExtendedCell> head = map.headMap(key, false);
+      assertCells(expected.headSet(key, false), head.values().iterator());
+      assertEquals(expected.headSet(key, false).isEmpty(), head.isEmpty());
+      if (!head.isEmpty()) {
+        assertEquals(expected.headSet(key, false).last(), head.lastEntry().getValue());
+      }
+    }
+    for (ExtendedCell cell : expected) {
+      assertEquals(cell, map.get(cell));
+    }
+    assertNull(map.get(cell(3000, 0, false)));
+  }
+
+  @Test
+  public void testReplaceAndRemove() {
+    ExtendedCell first = cell(1, 0, false);
+    assertNull(map.put(copy(first), copy(first)));
+    // an equal cell with another value replaces the cell
+    KeyValue replacement = new KeyValue(row(1), FAMILY, QUALIFIER, 0L, Bytes.toBytes("other"));
+    replacement.setSequenceId(first.getSequenceId());
+    assertNotNull(map.put(copy(replacement), copy(replacement)));
+    assertEquals(1, map.size());
+    assertTrue(Bytes.equals(Bytes.toBytes("other"), CellUtil.cloneValue(map.get(first))));
+
+    for (int i = 2; i < 10; i++) {
+      map.put(copy(cell(i, 0, false)), copy(cell(i, 0, false)));
+    }
+    assertNotNull(map.remove(cell(5, 0, false)));
+    assertNull(map.remove(cell(5, 0, false)));
+    assertNull(map.get(cell(5, 0, false)));
+    assertEquals(8, map.size());
+    // removal through the iterator, as upserts do
+    Iterator<ExtendedCell> it = map.tailMap(cell(7, 0, false), true).values().iterator();
+    it.next();
+    it.remove();
+    assertFalse(map.containsKey(cell(7, 0, false)));
+    assertEquals(cell(6, 0, false), map.lowerKey(cell(8, 0, false)));
+    assertEquals(cell(8, 0, false), map.higherKey(cell(6, 0, false)));
+
+    // a removed cell can be added again
+    assertNull(map.put(copy(cell(5, 0, false)), copy(cell(5, 0, false))));
+    assertEquals(cell(5, 0, false), map.get(cell(5, 0, false)));
+    assertEquals(8, map.size());
+    List<ExtendedCell> cells = new ArrayList<>(map.values());
+    for (int i = 1; i < cells.size(); i++) {
+      assertTrue(COMPARATOR.compare(cells.get(i - 1), cells.get(i)) < 0);
+    }
+  }
+
+  @Test
+  public void testConcurrentPut() throws Exception {
+    int threads = 8;
+    int cellsPerThread = 5000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < cellsPerThread; i++) {
+            ExtendedCell cell = copy(cell(i * threads + thread, 0, false));
+            map.put(cell, cell);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(threads * cellsPerThread, map.size());
+    int i = 0;
+    for (ExtendedCell cell : map.values()) {
+      assertEquals(cell(i++, 0, false), cell);
+    }
+    assertEquals(threads * cellsPerThread, i);
+  }
+
+  @Test
+  public void testMemStoreWithChunkIndex() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(CellChunkMutableSegment.CHUNK_INDEX_ENABLED_KEY, true);
+    DefaultMemStore memstore = new DefaultMemStore(conf, COMPARATOR);
+    assertTrue(memstore.getActive() instanceof CellChunkMutableSegment);
+    TreeSet<ExtendedCell> expected = new TreeSet<>(COMPARATOR);
+    for (int i = 0; i < 100; i++) {
+      ExtendedCell cell = cell(i, 0, i % 3 == 0);
+      expected.add(cell);
+      memstore.add(cell, null);
+    }
+    // a big cell the MSLAB does not copy by itself
+    KeyValue big = new KeyValue(row(1000), FAMILY, QUALIFIER, 1L,
+      new byte[MemStoreLAB.MAX_ALLOC_DEFAULT + 1]);
+    expected.add(big);
+    memstore.add(big, null);
+    // upserts are not copied to the MSLAB by the memstore, and remove the versions no scanner
+    // can see anymore
+    for (long i = 1; i <= 3; i++) {
+      KeyValue kv = new KeyValue(row(2000), FAMILY, QUALIFIER, i, Bytes.toBytes(i));
+      kv.setSequenceId(i);
+      memstore.upsert(List.of(kv), i - 1, null);
+      if (i > 1) {
+        expected.add(kv);
+      }
+    }
+
+    List<ExtendedCell> cells = new ArrayList<>();
+    try (SegmentScanner scanner = new SegmentScanner(memstore.getActive(), Long.MAX_VALUE)) {
+      for (ExtendedCell cell = scanner.next(); cell != null; cell = scanner.next()) {
+        cells.add(cell);
+      }
+    }
+    assertEquals(new ArrayList<>(expected), cells);
+    assertEquals(expected.size(), memstore.getActive().getCellsCount());
+  }
+
+  private static void assertCells(Iterable<ExtendedCell> expected, Iterator<ExtendedCell> actual) {
+    for (ExtendedCell cell : expected) {
+      assertTrue(actual.hasNext());
+      assertEquals(cell, actual.next());
+    }
+    assertFalse(actual.hasNext());
+  }
+
+  private ExtendedCell copy(ExtendedCell cell) {
+    return mslab.copyCellInto(cell);
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row%05d", i));
+  }
+
+  private static ExtendedCell cell(int row, int version, boolean withTags) {
+    KeyValue kv;
+    if (withTags) {
+      kv = new KeyValue(row(row), FAMILY, QUALIFIER, version, Bytes.toBytes(row), new Tag[] {
+        new ArrayBackedTag((byte) 1, Bytes.toBytes("tag")) });
+    } else {
+      kv = new KeyValue(row(row), FAMILY, QUALIFIER, version, Bytes.toBytes(row));
+    }
+    kv.setSequenceId(row % 5);
+    return kv;
+  }
+}
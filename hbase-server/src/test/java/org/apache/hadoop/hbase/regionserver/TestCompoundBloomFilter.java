@@ -317,6 +317,59 @@ public class TestCompoundBloomFilter {
     return w.getPath();
   }
 
+  @Test
+  public void testBinaryFuseFilter() throws IOException {
+    conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_ENABLED, true);
+    // a ROW and a ROWCOL test, both at a 1% target error rate
+    for (int t : new int[] { 1, 3 }) {
+      conf.setFloat(BloomFilterFactory.IO_STOREFILE_BLOOM_ERROR_RATE,
+        (float) TARGET_ERROR_RATES[t]);
+      testIdMsg = "in binary fuse test #" + t + ":";
+      List<KeyValue> kvs = createSortedKeyValues(new Random(GENERATION_SEED), NUM_KV[t]);
+      BloomType bt = BLOOM_TYPES[t];
+      StoreFileReader bloomReader = openStoreFile(writeStoreFile(t, bt, kvs), bt);
+      long bloomSize = bloomReader.getGeneralBloomFilter().getByteSize();
+      bloomReader.close(true);
+
+      conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_BINARY_FUSE, true);
+      Path sfPath;
+      try {
+        sfPath = writeStoreFile(t, bt, kvs);
+      } finally {
+        conf.unset(BloomFilterFactory.IO_STOREFILE_BLOOM_BINARY_FUSE);
+      }
+      StoreFileReader r = openStoreFile(sfPath, bt);
+      CompoundBloomFilter cbf = (CompoundBloomFilter) r.getGeneralBloomFilter();
+      // small chunks need relatively more slots, so the saving here is less than for 128KB ones
+      assertTrue(cbf.getByteSize() < bloomSize,
+        testIdMsg + " binary fuse filter of " + cbf.getByteSize() + " bytes, Bloom " + bloomSize);
+      StoreFileScanner scanner = r.getStoreFileScanner(true, true, false, 0, 0, false);
+      for (KeyValue kv : kvs) {
+        assertTrue(isInBloom(scanner, CellUtil.cloneRow(kv), CellUtil.cloneQualifier(kv)),
+          testIdMsg + " false negative on row " + Bytes.toStringBinary(CellUtil.cloneRow(kv)));
+      }
+      int numFalsePos = 0;
+      Random rand = new Random(EVALUATION_SEED);
+      int nTrials = NUM_KV[t] * 10;
+      for (int i = 0; i < nTrials; ++i) {
+        if (isInBloom(scanner, RandomKeyValueUtil.randomRowOrQualifier(rand), bt, rand)) {
+          numFalsePos += 1;
+        }
+      }
+      double falsePosRate = numFalsePos * 1.0 / nTrials;
+      assertTrue(falsePosRate < TARGET_ERROR_RATES[t],
+        testIdMsg + " false positive rate " + falsePosRate);
+      r.close(true);
+    }
+  }
+
+  private StoreFileReader openStoreFile(Path sfPath, BloomType bt) throws IOException {
+    StoreFileInfo storeFileInfo = StoreFileInfo.createStoreFileInfoForHFile(conf, fs, sfPath, true);
+    HStoreFile sf = new HStoreFile(storeFileInfo, bt, cacheConf);
+    sf.initReader();
+    return sf.getReader();
+  }
+
   @Test
   public void testCompoundBloomSizing() {
     int bloomBlockByteSize = 4096;
@@ -25,6 +25,8 @@ import static org.junit.jupiter.api.Assertions.fail;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -280,6 +282,52 @@ public class TestMemStoreChunkPool {
   }
 
   // This test is for HBASE-26142, which throws NPE when indexChunksPool is null.
+  @Test
+  public void testGrowingChunkSizes() {
+    Configuration conf = new Configuration(TestMemStoreChunkPool.conf);
+    int chunkSize = chunkCreator.getChunkSize();
+    conf.setInt(MemStoreLAB.MIN_CHUNK_SIZE_KEY, chunkSize / 8);
+    long unpooledChunkCount = chunkCreator.getUnpooledChunkCount();
+    MemStoreLABImpl mslab = new MemStoreLABImpl(conf);
+    final KeyValue kv =
+      new KeyValue(Bytes.toBytes("r"), Bytes.toBytes("f"), Bytes.toBytes("q"), new byte[1000]);
+    List<Integer> chunkSizes = new ArrayList<>();
+    ByteBuffer lastBuffer = null;
+    while (chunkSizes.size() < 5) {
+      ByteBufferKeyValue newKv = (ByteBufferKeyValue) mslab.copyCellInto(kv);
+      if (newKv.getBuffer() != lastBuffer) {
+        lastBuffer = newKv.getBuffer();
+        chunkSizes.add(lastBuffer.capacity());
+      }
+    }
+    // every chunk doubles in size until it reaches the regular chunk size
+    assertEquals(
+      Arrays.asList(chunkSize / 8, chunkSize / 4, chunkSize / 2, chunkSize, chunkSize), chunkSizes);
+    assertEquals(unpooledChunkCount + 3, chunkCreator.getUnpooledChunkCount());
+    int poolSize = chunkCreator.getPoolSize();
+    mslab.close();
+    // only the regular chunks go back to the pool
+    assertEquals(poolSize + 2, chunkCreator.getPoolSize());
+    assertEquals((long) (poolSize + 2) * chunkSize, chunkCreator.getPooledChunksSize());
+  }
+
+  @Test
+  public void testGrowingChunkSizesSkipTooSmallChunks() {
+    Configuration conf = new Configuration(TestMemStoreChunkPool.conf);
+    int chunkSize = chunkCreator.getChunkSize();
+    conf.setInt(MemStoreLAB.MIN_CHUNK_SIZE_KEY, chunkSize / 16);
+    long unpooledChunkCount = chunkCreator.getUnpooledChunkCount();
+    MemStoreLABImpl mslab = new MemStoreLABImpl(conf);
+    final KeyValue kv = new KeyValue(Bytes.toBytes("r"), Bytes.toBytes("f"), Bytes.toBytes("q"),
+      new byte[chunkSize / 16 + 1000]);
+    ByteBufferKeyValue newKv = (ByteBufferKeyValue) mslab.copyCellInto(kv);
+    // the cell goes straight into the first growing chunk that can hold it
+    assertEquals(chunkSize / 8, newKv.getBuffer().capacity());
+    assertEquals(1, mslab.chunks.size());
+    assertEquals(unpooledChunkCount + 1, chunkCreator.getUnpooledChunkCount());
+    mslab.close();
+  }
+
   @Test
   public void testNoIndexChunksPoolOrNoDataChunksPool() throws Exception {
     final int maxCount = 10;
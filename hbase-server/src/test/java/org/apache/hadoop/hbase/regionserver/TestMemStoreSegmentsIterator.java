@@ -21,8 +21,11 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.CellComparator;
@@ -103,6 +106,60 @@ public class TestMemStoreSegmentsIterator {
     closeTestSegments(segments);
   }
 
+  @Test
+  public void testMemStoreParallelCompactorSegmentsIterator() throws IOException {
+    List<ImmutableSegment> segments =
+      Arrays.asList(createVersionedImmutableSegment(0), createVersionedImmutableSegment(3));
+    List<byte[]> startRows = MemStoreParallelCompactorSegmentsIterator.getStartRows(segments, 4);
+    assertEquals(4, startRows.size());
+    ExecutorService pool = Executors.newFixedThreadPool(3);
+    try {
+      List<ExtendedCell> expected = new ArrayList<>();
+      MemStoreCompactorSegmentsIterator iterator = new MemStoreCompactorSegmentsIterator(segments,
+        this.comparator, this.compactionKVMax, this.store);
+      iterator.forEachRemaining(expected::add);
+      iterator.close();
+      MemStoreParallelCompactorSegmentsIterator parallelIterator =
+        new MemStoreParallelCompactorSegmentsIterator(segments, this.comparator, 10, this.store, 4,
+          pool);
+      assertEquals(expected.size(), parallelIterator.getNumOfCells());
+      List<ExtendedCell> cells = new ArrayList<>();
+      parallelIterator.forEachRemaining(cells::add);
+      parallelIterator.close();
+      assertEquals(expected, cells);
+      for (int i = 0; i < cells.size(); i++) {
+        assertEquals(expected.get(i).getSequenceId(), cells.get(i).getSequenceId());
+      }
+    } finally {
+      pool.shutdown();
+      closeTestSegments(segments);
+    }
+  }
+
+  /**
+   * Creates a segment with 3 versions of 1000 rows, and delete markers for every tenth row.
+   */
+  private ImmutableSegment createVersionedImmutableSegment(long firstSeqId) {
+    ImmutableSegment segment = SegmentFactory.instance().createImmutableSegment(this.comparator);
+    final byte[] f = Bytes.toBytes(FAMILY);
+    final byte[] q = Bytes.toBytes(COLUMN);
+    long ts = EnvironmentEdgeManager.currentTime();
+    for (int i = 0; i < 1000; i++) {
+      byte[] row = Bytes.toBytes(String.format("row%04d", i));
+      for (long v = 0; v < 3; v++) {
+        KeyValue kv = new KeyValue(row, f, q, ts + firstSeqId + v, Bytes.toBytes(v));
+        kv.setSequenceId(firstSeqId + v + 1);
+        segment.internalAdd(kv, false, null, true);
+      }
+      if (i % 10 == 0) {
+        KeyValue delete = new KeyValue(row, f, q, ts + firstSeqId, KeyValue.Type.Delete);
+        delete.setSequenceId(firstSeqId + 3);
+        segment.internalAdd(delete, false, null, true);
+      }
+    }
+    return segment;
+  }
+
   protected ImmutableSegment createTestImmutableSegment() {
     ImmutableSegment segment1 = SegmentFactory.instance().createImmutableSegment(this.comparator);
     final byte[] one = Bytes.toBytes(1);
@@ -19,6 +19,8 @@ package org.apache.hadoop.hbase.regionserver;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import org.apache.hadoop.hbase.CompatibilitySingletonFactory;
 import org.apache.hadoop.hbase.test.MetricsAssertHelper;
 import org.apache.hadoop.hbase.testclassification.RegionServerTests;
@@ -80,4 +82,21 @@ public class TestMetricsHeapMemoryManager {
     HELPER.assertGauge("memStoreOffHeapSize", 128 * 1024 * 1024, source);
     HELPER.assertGauge("blockCacheSize", 100 * 1024 * 1024, source);
   }
+
+  @Test
+  public void testChunkPoolGauges() {
+    ChunkCreator chunkCreator = new ChunkCreator(1024, false, 10 * 1024, 1, 0.5f, null, 0);
+    Chunk pooledChunk = chunkCreator.getChunk();
+    Chunk unpooledChunk = chunkCreator.getChunk(ChunkCreator.ChunkType.DATA_CHUNK, 512);
+    chunkCreator.putbackChunks(new HashSet<>(Arrays.asList(pooledChunk.getId(),
+      unpooledChunk.getId())));
+    chunkCreator.getChunk();
+    hmm.setChunkPoolGauges(chunkCreator);
+
+    // 5 of the 10 chunks are created upfront, and chunks are taken from the pool twice
+    HELPER.assertGauge("chunkPoolSize", 4 * 1024, source);
+    HELPER.assertGauge("chunkPoolCreatedChunks", 5, source);
+    HELPER.assertGauge("chunkPoolReusedChunks", 2, source);
+    HELPER.assertGauge("unpooledChunks", 1, source);
+  }
 }
@@ -126,6 +126,8 @@ public class TestMetricsRegionServer {
     HELPER.assertGauge("blockCacheCountHitPercent", 98, serverSource);
     HELPER.assertGauge("blockCacheExpressHitPercent", 97, serverSource);
     HELPER.assertCounter("blockCacheFailedInsertionCount", 36, serverSource);
+    HELPER.assertCounter("blockCacheCompressedHitCount", 42, serverSource);
+    HELPER.assertGauge("blockCacheDecompressTimePerHit", 12.5, serverSource);
     HELPER.assertGauge("l1CacheFreeSize", 100, serverSource);
     HELPER.assertGauge("l1CacheSize", 123, serverSource);
     HELPER.assertGauge("l1CacheCount", 50, serverSource);
@@ -148,6 +150,14 @@ public class TestMetricsRegionServer {
     HELPER.assertGauge("l2CacheMissCachingCount", 200, serverSource);
     HELPER.assertGauge("l2CacheHitRatio", 90, serverSource);
     HELPER.assertGauge("l2CacheHitCachingRatio", 90, serverSource);
+    HELPER.assertGauge("l2CacheTier0Size", 456, serverSource);
+    HELPER.assertGauge("l2CacheTier1Size", 1024, serverSource);
+    HELPER.assertGauge("l2CacheTier0HitCount", 700, serverSource);
+    HELPER.assertGauge("l2CacheTier1HitCount", 100, serverSource);
+    HELPER.assertCounter("l2CacheTier0EvictionCount", 2000, serverSource);
+    HELPER.assertCounter("l2CacheTier1EvictionCount", 300, serverSource);
+    HELPER.assertCounter("l2CacheTier0DemotedCount", 1500, serverSource);
+    HELPER.assertCounter("l2CacheTier1DemotedCount", 0, serverSource);
     HELPER.assertGauge("l2CacheMissRatio", 10, serverSource);
     HELPER.assertGauge("l2CacheMissCachingRatio", 10, serverSource);
     HELPER.assertCounter("updatesBlockedTime", 419, serverSource);
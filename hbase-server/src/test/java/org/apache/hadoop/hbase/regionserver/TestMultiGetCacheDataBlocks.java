@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.io.hfile.CacheStats;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test loading the data blocks of the gets of a multi request before executing them.
+ */
+@Tag(RegionServerTests.TAG)
+@Tag(MediumTests.TAG)
+public class TestMultiGetCacheDataBlocks {
+
+  private static final HBaseTestingUtil UTIL = new HBaseTestingUtil();
+  private static final TableName TABLE_NAME = TableName.valueOf("testMultiGetCacheDataBlocks");
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int NUM_ROWS = 2000;
+
+  @BeforeAll
+  public static void setUpBeforeClass() throws Exception {
+    UTIL.getConfiguration().setBoolean(HRegion.MULTI_GET_CACHE_DATA_BLOCKS_KEY, true);
+    UTIL.startMiniCluster(1);
+    UTIL.getAdmin().createTable(TableDescriptorBuilder.newBuilder(TABLE_NAME)
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.newBuilder(FAMILY).setBlocksize(1024)
+        .setBloomFilterType(BloomType.NONE).build())
+      .build());
+    // two store files, each holding half of the rows
+    try (Table table = UTIL.getConnection().getTable(TABLE_NAME)) {
+      for (int i = 0; i < NUM_ROWS; i++) {
+        table.put(new Put(row(i)).addColumn(FAMILY, QUALIFIER, Bytes.toBytes(i)));
+        if (i == NUM_ROWS / 2 - 1) {
+          UTIL.flush(TABLE_NAME);
+        }
+      }
+    }
+    UTIL.flush(TABLE_NAME);
+  }
+
+  @AfterAll
+  public static void tearDownAfterClass() throws Exception {
+    UTIL.shutdownMiniCluster();
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row%05d", i));
+  }
+
+  @Test
+  public void testMultiGet() throws Exception {
+    HRegionServer rs = UTIL.getRSForFirstRegionInTable(TABLE_NAME);
+    HRegion region = rs.getRegions(TABLE_NAME).get(0);
+    assertEquals(2, region.getStore(FAMILY).getStorefilesCount());
+    CacheStats stats = rs.getBlockCache().get().getStats();
+
+    // rows far apart, in both store files, go through RSRpcServices
+    int[] rows = { 10, 400, 900, 1100, 1500, 1990 };
+    List<Get> gets = new ArrayList<>();
+    for (int i : rows) {
+      gets.add(new Get(row(i)));
+    }
+    long dataMisses = stats.getDataMissCount();
+    long dataHits = stats.getDataHitCount();
+    try (Table table = UTIL.getConnection().getTable(TABLE_NAME)) {
+      Result[] results = table.get(gets);
+      assertEquals(rows.length, results.length);
+      for (int i = 0; i < rows.length; i++) {
+        assertEquals(rows[i], Bytes.toInt(results[i].getValue(FAMILY, QUALIFIER)));
+      }
+    }
+    // the blocks were loaded ahead of the gets, which only hit the cache
+    assertEquals(dataMisses, stats.getDataMissCount());
+    assertEquals(dataHits + rows.length, stats.getDataHitCount());
+
+    // and directly through the region, only the blocks not cached yet are read
+    gets.clear();
+    for (int i : new int[] { 10, 600, 1300 }) {
+      gets.add(new Get(row(i)));
+    }
+    assertEquals(2, region.cacheDataBlocksForGets(gets));
+    assertEquals(0, region.cacheDataBlocksForGets(gets));
+  }
+
+  @Test
+  public void testLoadsPinStoreFiles() throws Exception {
+    HStore store = UTIL.getRSForFirstRegionInTable(TABLE_NAME).getRegions(TABLE_NAME).get(0)
+      .getStore(FAMILY);
+    List<Callable<Integer>> loads =
+      store.getDataBlockLoadsForRows(Collections.singletonList(row(700)));
+    assertEquals(2, loads.size());
+    // the files can not be closed and archived under the loads until they have run
+    for (HStoreFile sf : store.getStorefiles()) {
+      assertEquals(1, sf.getRefCount());
+      assertTrue(sf.isReferencedInReads());
+    }
+    for (Callable<Integer> load : loads) {
+      load.call();
+    }
+    for (HStoreFile sf : store.getStorefiles()) {
+      assertEquals(0, sf.getRefCount());
+    }
+  }
+}
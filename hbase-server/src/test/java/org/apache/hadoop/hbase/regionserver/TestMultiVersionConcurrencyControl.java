@@ -17,14 +17,21 @@
  */
 package org.apache.hadoop.hbase.regionserver;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.hadoop.hbase.testclassification.MediumTests;
 import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Threads;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
@@ -134,4 +141,88 @@ public class TestMultiVersionConcurrencyControl {
       assertTrue(statuses[i].get());
     }
   }
+
+  @Test
+  public void testCompletionActionsInOrder() throws Exception {
+    final MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    // the completion actions only run one at a time, no need for a concurrent list
+    final List<Long> completed = new ArrayList<>();
+    int n = 64;
+    int writesPerThread = 2000;
+    Thread[] writers = new Thread[n];
+    AtomicBoolean failed = new AtomicBoolean(false);
+    for (int i = 0; i < n; ++i) {
+      writers[i] = new Thread(() -> {
+        for (int j = 0; j < writesPerThread; j++) {
+          MultiVersionConcurrencyControl.WriteEntry e = mvcc.begin();
+          e.attachCompletionAction(() -> completed.add(e.getWriteNumber()));
+          mvcc.completeAndWait(e);
+          if (mvcc.getReadPoint() < e.getWriteNumber()) {
+            failed.set(true);
+          }
+        }
+      });
+      writers[i].start();
+    }
+    for (int i = 0; i < n; ++i) {
+      writers[i].join();
+    }
+    assertFalse(failed.get());
+    assertEquals(n * writesPerThread, mvcc.getReadPoint());
+    assertEquals(mvcc.getWritePoint(), mvcc.getReadPoint());
+    assertEquals(n * writesPerThread, completed.size());
+    for (int i = 0; i < completed.size(); i++) {
+      assertEquals(i + 1, completed.get(i).longValue());
+    }
+  }
+
+  @Test
+  public void testTryAdvanceToWhileCompleting() throws Exception {
+    final MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    int rounds = 200;
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    for (int i = 0; i < rounds; i++) {
+      CountDownLatch polled = new CountDownLatch(1);
+      MultiVersionConcurrencyControl.WriteEntry e = mvcc.begin();
+      // the completion action runs once the write has left the queue, before the read point is
+      // published, which is when tryAdvanceTo used to see an mvcc in use
+      e.attachCompletionAction(() -> {
+        polled.countDown();
+        Threads.sleep(1);
+      });
+      Thread advancer = new Thread(() -> {
+        try {
+          polled.await();
+          assertTrue(mvcc.tryAdvanceTo(e.getWriteNumber(), MultiVersionConcurrencyControl.NONE));
+        } catch (Throwable t) {
+          error.set(t);
+        }
+      });
+      advancer.start();
+      assertTrue(mvcc.complete(e));
+      advancer.join();
+      assertNull(error.get());
+      assertEquals(e.getWriteNumber(), mvcc.getReadPoint());
+      assertEquals(e.getWriteNumber(), mvcc.getWritePoint());
+    }
+  }
+
+  @Test
+  public void testCompleteWhileAnotherThreadAdvances() throws Exception {
+    final MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    MultiVersionConcurrencyControl.WriteEntry first = mvcc.begin();
+    MultiVersionConcurrencyControl.WriteEntry second = mvcc.begin();
+    AtomicBoolean secondVisible = new AtomicBoolean();
+    Thread completer = new Thread(() -> secondVisible.set(mvcc.complete(second)));
+    // the second write completes while the first thread is advancing the read point
+    first.attachCompletionAction(() -> {
+      completer.start();
+      Threads.sleep(100);
+    });
+    assertTrue(mvcc.complete(first));
+    completer.join();
+    // every write before it is complete, so the second write is visible once complete returns
+    assertTrue(secondVisible.get());
+    assertEquals(second.getWriteNumber(), mvcc.getReadPoint());
+  }
 }
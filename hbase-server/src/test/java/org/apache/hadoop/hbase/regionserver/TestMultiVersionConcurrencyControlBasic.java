@@ -18,6 +18,8 @@
 package org.apache.hadoop.hbase.regionserver;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.apache.hadoop.hbase.testclassification.RegionServerTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
@@ -44,4 +46,17 @@ public class TestMultiVersionConcurrencyControlBasic {
     mvcc.complete(writeEntry);
     assertEquals(readPoint + 2, mvcc.getWritePoint());
   }
+
+  @Test
+  public void testCompleteOutOfOrder() {
+    MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    long readPoint = mvcc.getReadPoint();
+    MultiVersionConcurrencyControl.WriteEntry first = mvcc.begin();
+    MultiVersionConcurrencyControl.WriteEntry second = mvcc.begin();
+    // the second write is not visible until the first one completes
+    assertFalse(mvcc.complete(second));
+    assertEquals(readPoint, mvcc.getReadPoint());
+    assertTrue(mvcc.complete(first));
+    assertEquals(readPoint + 2, mvcc.getReadPoint());
+  }
 }
@@ -32,6 +32,8 @@ import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.io.hfile.BloomFilterMetrics;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.io.hfile.HFileContext;
 import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
@@ -355,4 +357,86 @@ public class TestRowPrefixBloomFilter {
     reader.close(true); // evict because we are about to delete the file
     fs.delete(f, true);
   }
+
+  @Test
+  public void testRowPrefixFilterWithPrefixScan() throws Exception {
+    FileSystem fs = FileSystem.getLocal(conf);
+    // write the file with a row prefix filter and no general Bloom filter
+    if (!fs.exists(testDir)) {
+      fs.mkdirs(testDir);
+    }
+    Path f = StoreFileWriter.getUniqueFile(fs, testDir);
+    conf.setInt(BloomFilterFactory.IO_STOREFILE_ROW_PREFIX_FILTER_MAX_LENGTH, prefixLength);
+    try {
+      writeStoreFile(f, BloomType.NONE, fixedLengthExpKeys);
+    } finally {
+      conf.unset(BloomFilterFactory.IO_STOREFILE_ROW_PREFIX_FILTER_MAX_LENGTH);
+    }
+
+    ReaderContext context = new ReaderContextBuilder().withFileSystemAndPath(fs, f).build();
+    StoreFileInfo storeFileInfo = StoreFileInfo.createStoreFileInfoForHFile(conf, fs, f, true);
+    storeFileInfo.initHFileInfo(context);
+    StoreFileReader reader = storeFileInfo.createReader(context, cacheConf);
+    storeFileInfo.getHFileInfo().initMetaAndIndex(reader.getHFileReader());
+    reader.loadFileInfo();
+    reader.loadBloomfilter(BlockType.DELETE_FAMILY_BLOOM_META, new BloomFilterMetrics());
+    reader.loadRowPrefixFilter();
+
+    StoreFileScanner scanner = getStoreFileScanner(reader);
+    HStore store = mock(HStore.class);
+    when(store.getColumnFamilyDescriptor()).thenReturn(ColumnFamilyDescriptorBuilder.of("family"));
+
+    int falsePos = 0;
+    int falseNeg = 0;
+    for (int i = 0; i < prefixRowCount; i++) {
+      String prefixRow = String.format(prefixFormatter, i);
+      Scan scan = new Scan().setStartStopRowForPrefixScan(Bytes.toBytes(prefixRow));
+      Scan reversed = new Scan().withStartRow(Bytes.toBytes(prefixRow + "$"))
+        .withStopRow(Bytes.toBytes(prefixRow), true).setReversed(true);
+      for (Scan s : new Scan[] { scan, reversed }) {
+        boolean exists = scanner.shouldUseScanner(s, store, Long.MIN_VALUE);
+        if (i % 2 == 0 && !exists) {
+          falseNeg++;
+        } else if (i % 2 != 0 && exists) {
+          falsePos++;
+        }
+      }
+    }
+    assertEquals(0, falseNeg, "False negatives: " + falseNeg);
+    assertTrue(falsePos <= 2, "Too many false positives: " + falsePos);
+
+    // rows shorter than the longest recorded prefix
+    Scan scan = new Scan(new Get(Bytes.toBytes(String.format(invalidFormatter, prefixRowCount))));
+    assertTrue(scanner.shouldUseScanner(scan, store, Long.MIN_VALUE));
+    scan = new Scan(new Get(Bytes.toBytes(String.format(invalidFormatter, prefixRowCount + 1))));
+    assertFalse(scanner.shouldUseScanner(scan, store, Long.MIN_VALUE));
+
+    // the rows of a range over several prefixes only share a shorter prefix
+    scan = new Scan().withStartRow(Bytes.toBytes(String.format(prefixFormatter, 1)))
+      .withStopRow(Bytes.toBytes(String.format(prefixFormatter, 3)));
+    assertTrue(scanner.shouldUseScanner(scan, store, Long.MIN_VALUE));
+
+    reader.close(true); // evict because we are about to delete the file
+    fs.delete(f, true);
+  }
+
+  @Test
+  public void testCommonRowPrefixLength() {
+    assertEquals(2, commonRowPrefixLength("ab", "ac", false));
+    assertEquals(1, commonRowPrefixLength("ab", "ac", true));
+    assertEquals(3, commonRowPrefixLength("abc", "abd", false));
+    assertEquals(2, commonRowPrefixLength("abc", "abz", false));
+    assertEquals(2, commonRowPrefixLength("ab", "abc", false));
+    assertEquals(0, commonRowPrefixLength("ab", "", false));
+    assertEquals(0, commonRowPrefixLength("", "b", false));
+    assertEquals(3, StoreFileReader.getCommonRowPrefixLength(new byte[] { 'a', -1, -1 },
+      new byte[] { 'b' }, false));
+    assertEquals(2, StoreFileReader.getCommonRowPrefixLength(new byte[] { -1, -1, 'a' },
+      new byte[0], false));
+  }
+
+  private static int commonRowPrefixLength(String lower, String upper, boolean upperInclusive) {
+    return StoreFileReader.getCommonRowPrefixLength(Bytes.toBytes(lower), Bytes.toBytes(upper),
+      upperInclusive);
+  }
 }
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag(RegionServerTests.TAG)
+@Tag(SmallTests.TAG)
+public class TestShardedCellMap {
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final CellComparator COMPARATOR = CellComparator.getInstance();
+
+  @Test
+  public void testNavigate() {
+    ShardedCellMap map = new ShardedCellMap(COMPARATOR, 4);
+    TreeSet<ExtendedCell> expected = new TreeSet<>(COMPARATOR);
+    Random rand = new Random(1234);
+    for (int i = 0; i < 3000; i++) {
+      ExtendedCell cell = cell(rand.nextInt(1000), rand.nextInt(3));
+      assertEquals(expected.add(cell), map.put(cell, cell) == null);
+    }
+    assertEquals(expected.size(), map.size());
+    assertCells(expected, map.values().iterator());
+    assertCells(expected.descendingSet(), map.descendingMap().values().iterator());
+    assertEquals(expected.first(), map.firstKey());
+    assertEquals(expected.last(), map.lastKey());
+    assertEquals(expected.last(), map.descendingMap().firstKey());
+
+    for (int i = 0; i < 200; i++) {
+      ExtendedCell key = PrivateCellUtil.createFirstOnRow(row(rand.nextInt(1100)));
+      assertEquals(expected.ceiling(key), map.ceilingKey(key));
+      assertEquals(expected.higher(key), map.higherKey(key));
+      assertEquals(expected.lower(key), map.lowerKey(key));
+      assertEquals(expected.floor(key), map.floorKey(key));
+      assertCells(expected.tailSet(key, true), map.tailMap(key, true).values().iterator());
+      assertCells(expected.headSet(key, false).descendingSet(),
+        map.headMap(key, false).descendingMap().values().iterator());
+      assertEquals(expected.headSet(key, false).isEmpty(), map.headMap(key, false).isEmpty());
+    }
+    for (ExtendedCell cell : expected) {
+      assertEquals(cell, map.get(cell));
+      assertTrue(map.containsKey(cell));
+    }
+    assertNull(map.get(cell(2000, 0)));
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    ShardedCellMap map = new ShardedCellMap(COMPARATOR, 3);
+    for (int i = 0; i < 100; i++) {
+      map.put(cell(i, 0), cell(i, 0));
+    }
+    // remove every other cell through the iterator, as upserts do
+    Iterator<ExtendedCell> it = map.tailMap(cell(50, 0), true).values().iterator();
+    int i = 50;
+    while (it.hasNext()) {
+      assertEquals(cell(i, 0), it.next());
+      if (i % 2 == 0) {
+        it.remove();
+      }
+      i++;
+    }
+    assertEquals(75, map.size());
+    List<ExtendedCell> cells = new ArrayList<>(map.values());
+    assertEquals(75, cells.size());
+    for (int j = 1; j < cells.size(); j++) {
+      assertTrue(COMPARATOR.compare(cells.get(j - 1), cells.get(j)) < 0);
+    }
+    assertFalse(map.containsKey(cell(52, 0)));
+    assertTrue(map.containsKey(cell(53, 0)));
+  }
+
+  @Test
+  public void testMemStoreWithShards() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setInt(ShardedCellMap.MEMSTORE_SHARDS_KEY, 4);
+    conf.setBoolean(MemStoreLAB.USEMSLAB_KEY, false);
+    DefaultMemStore memstore = new DefaultMemStore(conf, COMPARATOR);
+    assertTrue(memstore.getActive().getCellSet().getDelegatee() instanceof ShardedCellMap);
+    TreeSet<ExtendedCell> expected = new TreeSet<>(COMPARATOR);
+    for (int i = 0; i < 500; i++) {
+      ExtendedCell cell = cell(i, i % 3);
+      expected.add(cell);
+      memstore.add(cell, null);
+    }
+    List<ExtendedCell> cells = new ArrayList<>();
+    try (SegmentScanner scanner = new SegmentScanner(memstore.getActive(), Long.MAX_VALUE)) {
+      for (ExtendedCell cell = scanner.next(); cell != null; cell = scanner.next()) {
+        cells.add(cell);
+      }
+    }
+    assertEquals(new ArrayList<>(expected), cells);
+    // the snapshot keeps the sharded index
+    memstore.snapshot();
+    assertEquals(expected.size(), memstore.getSnapshot().getCellsCount());
+    assertEquals(expected.first(), memstore.getSnapshot().getCellSet().first());
+    assertEquals(expected.last(), memstore.getSnapshot().last());
+  }
+
+  private static void assertCells(Iterable<ExtendedCell> expected, Iterator<ExtendedCell> actual) {
+    for (ExtendedCell cell : expected) {
+      assertTrue(actual.hasNext());
+      assertEquals(cell, actual.next());
+    }
+    assertFalse(actual.hasNext());
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row%05d", i));
+  }
+
+  private static ExtendedCell cell(int row, int version) {
+    KeyValue kv = new KeyValue(row(row), FAMILY, QUALIFIER, version, Bytes.toBytes(row));
+    kv.setSequenceId(row % 5);
+    return kv;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the sampling of {@link StoreCompressionDictionary}. Training itself needs a codec that
+ * supports it and is tested with that codec.
+ */
+@Tag(RegionServerTests.TAG)
+@Tag(SmallTests.TAG)
+public class TestStoreCompressionDictionary {
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  @Test
+  public void testDisabledByDefault() {
+    Configuration conf = HBaseConfiguration.create();
+    assertNull(StoreCompressionDictionary.create(conf));
+    conf.setBoolean(StoreCompressionDictionary.TRAINING_ENABLED_KEY, true);
+    assertNotNull(StoreCompressionDictionary.create(conf));
+  }
+
+  @Test
+  public void testSamplerKeepsSampleSizeLimit() {
+    StoreCompressionDictionary dictionary =
+      new StoreCompressionDictionary(1024, 10, 0, Runnable::run);
+    StoreCompressionDictionary.Sampler sampler = dictionary.newSampler();
+    assertNotNull(sampler);
+    for (int i = 0; i < 10000; i++) {
+      sampler.sample(cell(i, new byte[64]));
+    }
+    assertTrue(sampler.getSize() <= 1024 * 10, "Sample size: " + sampler.getSize());
+    // after dropping every other sample at least half of the limit is left
+    assertTrue(sampler.getSize() >= 1024 * 10 / 2 - 200, "Sample size: " + sampler.getSize());
+  }
+
+  @Test
+  public void testSamplerSkipsLargeCells() {
+    StoreCompressionDictionary dictionary =
+      new StoreCompressionDictionary(1024, 10, 0, Runnable::run);
+    StoreCompressionDictionary.Sampler sampler = dictionary.newSampler();
+    sampler.sample(cell(0, new byte[StoreCompressionDictionary.MAX_SAMPLE_LENGTH]));
+    assertEquals(0, sampler.getSize());
+    // too few samples to train from, the codec is never asked for a dictionary
+    assertFalse(dictionary.train(Compression.Algorithm.NONE, sampler));
+    assertNull(dictionary.getDictionary());
+  }
+
+  @Test
+  public void testLoadedDictionaryDoesNotPostponeTraining() {
+    StoreCompressionDictionary dictionary = new StoreCompressionDictionary(1024, 10,
+      StoreCompressionDictionary.DEFAULT_RETRAIN_INTERVAL, Runnable::run);
+    assertNotNull(dictionary.newSampler());
+    dictionary.setDictionary(new byte[8]);
+    // a dictionary loaded from a store file is retrained by the first writer
+    assertNotNull(dictionary.newSampler());
+  }
+
+  @Test
+  public void testTrainsInBackground() {
+    List<Runnable> trainings = new ArrayList<>();
+    StoreCompressionDictionary dictionary =
+      new StoreCompressionDictionary(1024, 100, 0, trainings::add);
+    StoreCompressionDictionary.Sampler sampler = dictionary.newSampler();
+    for (int i = 0; i < 1000; i++) {
+      sampler.sample(cell(i, new byte[64]));
+    }
+    assertTrue(dictionary.trainInBackground(Compression.Algorithm.NONE, sampler));
+    assertEquals(1, trainings.size());
+    assertTrue(dictionary.isTraining());
+    // nothing is sampled while the store trains, and a store trains one dictionary at a time
+    assertNull(dictionary.newSampler());
+    assertFalse(dictionary.trainInBackground(Compression.Algorithm.NONE, sampler));
+    assertEquals(1, trainings.size());
+    // the codec can not train a dictionary, which is only logged
+    trainings.get(0).run();
+    assertFalse(dictionary.isTraining());
+    assertNull(dictionary.getDictionary());
+    assertNotNull(dictionary.newSampler());
+  }
+
+  @Test
+  public void testTrainingDroppedWhenPoolIsBackedUp() {
+    StoreCompressionDictionary dictionary = new StoreCompressionDictionary(1024, 100, 0, task -> {
+      throw new RejectedExecutionException();
+    });
+    StoreCompressionDictionary.Sampler sampler = dictionary.newSampler();
+    for (int i = 0; i < 1000; i++) {
+      sampler.sample(cell(i, new byte[64]));
+    }
+    assertFalse(dictionary.trainInBackground(Compression.Algorithm.NONE, sampler));
+    assertFalse(dictionary.isTraining());
+    assertNotNull(dictionary.newSampler());
+  }
+
+  private static KeyValue cell(int i, byte[] value) {
+    return new KeyValue(Bytes.toBytes(String.format("row%05d", i)), FAMILY, QUALIFIER, 1L, value);
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.MultiByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.testclassification.MiscTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag(MiscTests.TAG)
+@Tag(SmallTests.TAG)
+public class TestBinaryFuseFilterChunk {
+
+  private static ByteBuff write(BinaryFuseFilterChunk chunk) throws Exception {
+    chunk.compactBloom();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    chunk.writeBloom(new DataOutputStream(out));
+    assertEquals(chunk.getByteSize(), out.size());
+    // read it back from an offset, as the filter is read right after the block header
+    byte[] block = new byte[out.size() + 33];
+    System.arraycopy(out.toByteArray(), 0, block, 33, out.size());
+    return new MultiByteBuff(ByteBuffer.wrap(block));
+  }
+
+  private static boolean contains(byte[] key, ByteBuff filter, BinaryFuseFilterChunk chunk) {
+    return BinaryFuseFilterChunk.contains(key, 0, key.length, filter, 33, chunk.hash,
+      chunk.getHashCount());
+  }
+
+  @Test
+  public void testFalsePositiveRateAndSize() throws Exception {
+    double errorRate = 0.01;
+    BinaryFuseFilterChunk chunk =
+      BinaryFuseFilterChunk.createBySize(64 * 1024, errorRate, Hash.MURMUR_HASH, BloomType.ROW);
+    assertEquals(7, chunk.getHashCount());
+    assertTrue(chunk.getByteSize() <= 64 * 1024);
+    int keyCount = (int) chunk.getMaxKeys();
+    chunk.allocBloom();
+    for (int i = 0; i < keyCount; i++) {
+      byte[] key = Bytes.toBytes("row-" + i);
+      chunk.add(key, 0, key.length);
+    }
+    ByteBuff filter = write(chunk);
+    for (int i = 0; i < keyCount; i++) {
+      assertTrue(contains(Bytes.toBytes("row-" + i), filter, chunk));
+    }
+    int falsePositives = 0;
+    int trials = 200000;
+    for (int i = 0; i < trials; i++) {
+      if (contains(Bytes.toBytes("absent-" + i), filter, chunk)) {
+        falsePositives++;
+      }
+    }
+    double falsePositiveRate = falsePositives * 1.0 / trials;
+    assertTrue(falsePositiveRate < errorRate, "false positive rate " + falsePositiveRate);
+    // a Bloom filter needs 1.44 * log2(1 / errorRate), or 9.6, bits per key for the same rate
+    double bitsPerKey = chunk.getByteSize() * 8.0 / keyCount;
+    assertTrue(bitsPerKey < BloomFilterUtil.computeBitSize(keyCount, errorRate) * 0.9 / keyCount,
+      "bits per key " + bitsPerKey);
+  }
+
+  @Test
+  public void testDuplicateAndFewKeys() throws Exception {
+    for (int keyCount : new int[] { 0, 1, 2, 3, 10, 100 }) {
+      BinaryFuseFilterChunk chunk =
+        BinaryFuseFilterChunk.createBySize(4096, 0.001, Hash.MURMUR_HASH3, BloomType.ROW);
+      assertEquals(10, chunk.getHashCount());
+      chunk.allocBloom();
+      for (int i = 0; i < keyCount; i++) {
+        byte[] key = Bytes.toBytes(i);
+        chunk.add(key, 0, key.length);
+        // the same key twice must not break the construction
+        chunk.add(key, 0, key.length);
+      }
+      ByteBuff filter = write(chunk);
+      for (int i = 0; i < keyCount; i++) {
+        assertTrue(contains(Bytes.toBytes(i), filter, chunk));
+      }
+      if (keyCount == 0) {
+        assertFalse(contains(Bytes.toBytes(0), filter, chunk));
+      }
+    }
+  }
+
+  @Test
+  public void testGrowsPastMaxKeys() throws Exception {
+    BinaryFuseFilterChunk chunk =
+      BinaryFuseFilterChunk.createBySize(100, 0.05, Hash.MURMUR_HASH, BloomType.ROW);
+    BloomFilterChunk another = chunk.createAnother();
+    assertTrue(another instanceof BinaryFuseFilterChunk);
+    assertEquals(chunk.getMaxKeys(), another.getMaxKeys());
+    chunk.allocBloom();
+    Random rand = new Random(11);
+    byte[][] keys = new byte[(int) chunk.getMaxKeys() * 3][];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = Bytes.toBytes(rand.nextLong());
+      chunk.add(keys[i], 0, keys[i].length);
+    }
+    ByteBuff filter = write(chunk);
+    for (byte[] key : keys) {
+      assertTrue(contains(key, filter, chunk));
+    }
+  }
+
+  @Test
+  public void testFingerprintBits() {
+    assertEquals(1, BinaryFuseFilterChunk.fingerprintBits(0.5));
+    assertEquals(7, BinaryFuseFilterChunk.fingerprintBits(0.01));
+    assertEquals(8, BinaryFuseFilterChunk.fingerprintBits(1.0 / 256));
+    assertEquals(16, BinaryFuseFilterChunk.fingerprintBits(1e-9));
+  }
+}